@@ -0,0 +1,450 @@
+package com.smattme;
+
+import org.testcontainers.containers.MySQLContainer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The end to end benchmark of a backup and restore against MySQL in a container.
+ * It seeds a database of the configured shape, then runs the export and the import
+ * of every configuration a few times and records the wall time, rows/s, MB/s,
+ * peak heap and bytes written of each run in a JSON report, so runs on different
+ * commits or with different settings can be compared.
+ * The options are key=value arguments:
+ * <pre>
+ * tables=4 rows=100000 rowWidth=200 blobShare=0.05 blobBytes=16384 runs=3
+ * configs=default,stream,parallel,chunked,gzip,zstd,tsv
+ * config.&lt;name&gt;.&lt;EXPORT_PROPERTY&gt;=value   a custom configuration, IMPORT_THREADS sets the import threads
+ * image=mysql:8.1.0 output=target/backup-benchmark.json
+ * </pre>
+ * rows is the number of rows of each table, rowWidth the length of the text column of a row,
+ * blobShare the fraction of the rows that have a BLOB of blobBytes
+ */
+public class BackupBenchmark {
+
+    private static final String SOURCE_DB = "bench_source";
+    private static final String RESTORED_DB = "bench_restored";
+    private static final String USERNAME = "root";
+    private static final String PASSWORD = "backup4j";
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final Map<String, Properties> configs = new LinkedHashMap<>();
+    private String host;
+    private String port;
+    private long seededRows;
+
+    public static void main(String[] args) throws Exception {
+        BackupBenchmark benchmark = new BackupBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+    }
+
+    private void parse(String[] args) {
+        options.put("tables", "4");
+        options.put("rows", "100000");
+        options.put("rowWidth", "200");
+        options.put("blobShare", "0.05");
+        options.put("blobBytes", "16384");
+        options.put("runs", "3");
+        options.put("configs", "default,stream,parallel,chunked,gzip,zstd,tsv");
+        options.put("image", "mysql:8.1.0");
+        options.put("output", "target/backup-benchmark.json");
+
+        Map<String, Properties> custom = new LinkedHashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            String key = arg.substring(0, equals);
+            String value = arg.substring(equals + 1);
+            if (key.startsWith("config.")) {
+                String[] parts = key.split("\\.", 3);
+                custom.computeIfAbsent(parts[1], k -> new Properties()).setProperty(parts[2], value);
+            } else {
+                options.put(key, value);
+            }
+        }
+
+        long rows = Long.parseLong(options.get("rows"));
+        for (String name : options.get("configs").split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) continue;
+            configs.put(name, preset(name, rows));
+        }
+        configs.putAll(custom);
+    }
+
+    /**
+     * The export properties of a named configuration.
+     * IMPORT_THREADS is the number of threads of the import
+     */
+    private static Properties preset(String name, long rows) {
+        Properties properties = new Properties();
+        switch (name) {
+            case "default":
+                break;
+            case "stream":
+                properties.setProperty(MysqlExportService.STREAM_RESULTS, "true");
+                break;
+            case "parallel":
+                properties.setProperty(MysqlExportService.PARALLEL_THREADS, "4");
+                properties.setProperty("IMPORT_THREADS", "4");
+                break;
+            case "chunked":
+                properties.setProperty(MysqlExportService.PARALLEL_THREADS, "4");
+                properties.setProperty(MysqlExportService.CHUNK_ROWS, String.valueOf(Math.max(1, rows / 4)));
+                properties.setProperty("IMPORT_THREADS", "4");
+                break;
+            case "gzip":
+            case "zstd":
+                properties.setProperty(MysqlExportService.COMPRESSION, name);
+                properties.setProperty(MysqlExportService.COMPRESSION_THREADS, "4");
+                break;
+            case "tsv":
+                properties.setProperty(MysqlExportService.DATA_FORMAT, "tsv");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown configuration " + name + ", define it with config." + name + ".<PROPERTY>=value");
+        }
+        return properties;
+    }
+
+    private void run() throws Exception {
+
+        try (MySQLContainer<?> mysql = new MySQLContainer<>(options.get("image"))) {
+            mysql.withUsername(USERNAME)
+                    .withPassword(PASSWORD)
+                    .withCommand("--local-infile=1", "--max-allowed-packet=268435456")
+                    .start();
+            host = mysql.getHost();
+            port = mysql.getMappedPort(3306).toString();
+
+            long start = System.nanoTime();
+            seed();
+            log("seeded %d rows in %d s", seededRows, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+
+            List<Map<String, Object>> results = new ArrayList<>();
+            int runs = Integer.parseInt(options.get("runs"));
+            for (Map.Entry<String, Properties> config : configs.entrySet()) {
+                for (int run = 1; run <= runs; run++) {
+                    Map<String, Object> result = runOnce(config.getKey(), config.getValue());
+                    result.put("run", run);
+                    results.add(result);
+                    log("%s run %d: export %.1f s %.0f rows/s %.1f MB/s, import %.1f s %.0f rows/s", config.getKey(), run,
+                            result.get("exportSeconds"), result.get("exportRowsPerSecond"), result.get("exportMegabytesPerSecond"),
+                            result.get("importSeconds"), result.get("importRowsPerSecond"));
+                }
+            }
+            writeReport(results);
+        }
+    }
+
+    private Connection connect(String database) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("rewriteBatchedStatements", "true");
+        return MysqlBaseService.connect(USERNAME, PASSWORD, host, port, database, null, properties);
+    }
+
+    /**
+     * This creates the tables of the source database and fills them
+     * with generated rows of the configured width and BLOB share
+     */
+    private void seed() throws Exception {
+
+        int tables = Integer.parseInt(options.get("tables"));
+        long rows = Long.parseLong(options.get("rows"));
+        int rowWidth = Integer.parseInt(options.get("rowWidth"));
+        double blobShare = Double.parseDouble(options.get("blobShare"));
+        int blobBytes = Integer.parseInt(options.get("blobBytes"));
+        Random random = new Random(42);
+
+        try (Connection connection = connect("mysql"); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE " + SOURCE_DB);
+            statement.execute("SET GLOBAL local_infile = 1");
+        }
+
+        try (Connection connection = connect(SOURCE_DB)) {
+            connection.setAutoCommit(false);
+            for (int t = 0; t < tables; t++) {
+                String table = "bench_" + t;
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE TABLE " + table + " (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(64), " +
+                            "amount DECIMAL(12,2), created DATETIME(6), payload TEXT, data MEDIUMBLOB)");
+                }
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table +
+                        " (name, amount, created, payload, data) VALUES (?, ?, ?, ?, ?)")) {
+                    for (long r = 0; r < rows; r++) {
+                        insert.setString(1, "name " + r);
+                        insert.setLong(2, random.nextInt(100000000));
+                        insert.setTimestamp(3, new Timestamp(1700000000000L + random.nextInt(Integer.MAX_VALUE)));
+                        insert.setString(4, text(random, rowWidth));
+                        if (random.nextDouble() < blobShare) {
+                            byte[] blob = new byte[blobBytes];
+                            random.nextBytes(blob);
+                            insert.setBytes(5, blob);
+                        } else {
+                            insert.setNull(5, Types.BLOB);
+                        }
+                        insert.addBatch();
+                        if (r % 1000 == 999) {
+                            insert.executeBatch();
+                            connection.commit();
+                        }
+                    }
+                    insert.executeBatch();
+                    connection.commit();
+                }
+                seededRows += rows;
+            }
+        }
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int pick = random.nextInt(64);
+            text.append(pick == 0 ? '\'' : pick == 1 ? '\n' : (char) ('a' + pick % 26));
+        }
+        return text.toString();
+    }
+
+    /**
+     * This exports the source database with the configuration and
+     * imports the export into an empty database, and measures both
+     */
+    private Map<String, Object> runOnce(String name, Properties config) throws Exception {
+
+        Path tempDir = Files.createTempDirectory("backup-benchmark-");
+        Properties properties = new Properties();
+        properties.putAll(config);
+        properties.remove("IMPORT_THREADS");
+        properties.setProperty(MysqlExportService.DB_NAME, SOURCE_DB);
+        properties.setProperty(MysqlExportService.DB_USERNAME, USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, PASSWORD);
+        properties.setProperty(MysqlExportService.DB_HOST, host);
+        properties.setProperty(MysqlExportService.DB_PORT, port);
+        properties.setProperty(MysqlExportService.TEMP_DIR, tempDir.toString());
+        properties.setProperty(MysqlExportService.SQL_FILE_NAME, "benchmark");
+        properties.setProperty(MysqlExportService.PRESERVE_GENERATED_SQL_FILE, "true");
+        properties.setProperty(MysqlExportService.PRESERVE_GENERATED_ZIP, "true");
+
+        try (Connection connection = connect("mysql"); Statement statement = connection.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + RESTORED_DB);
+            statement.execute("CREATE DATABASE " + RESTORED_DB);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("config", name);
+        result.put("properties", new LinkedHashMap<>(config));
+        try {
+            //export
+            System.gc();
+            resetPeakHeap();
+            MysqlExportService exportService = new MysqlExportService(properties);
+            long start = System.nanoTime();
+            exportService.export();
+            double exportSeconds = (System.nanoTime() - start) / 1e9;
+            long exportPeakHeap = getPeakHeap();
+
+            File sqlFolder = new File(tempDir.toFile(), "sql");
+            File dump = properties.getProperty(MysqlExportService.COMPRESSION) != null
+                    ? exportService.getGeneratedZipFile()
+                    : new File(sqlFolder, exportService.getSqlFileName());
+            long bytesWritten = size(dump.toPath()) + size(new File(sqlFolder, "data").toPath());
+
+            //import
+            System.gc();
+            resetPeakHeap();
+            MysqlImportService importService = MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setSqlSource(dump.toPath())
+                    .setLoadDataDirectory(sqlFolder.toPath())
+                    .setUsername(USERNAME)
+                    .setPassword(PASSWORD)
+                    .setHost(host)
+                    .setPort(port)
+                    .setParallelThreads(Integer.parseInt(config.getProperty("IMPORT_THREADS", "1")));
+            start = System.nanoTime();
+            importService.importDatabase();
+            double importSeconds = (System.nanoTime() - start) / 1e9;
+            long importPeakHeap = getPeakHeap();
+
+            double megabytes = bytesWritten / (1024.0 * 1024.0);
+            result.put("rows", seededRows);
+            result.put("bytesWritten", bytesWritten);
+            result.put("exportSeconds", exportSeconds);
+            result.put("exportRowsPerSecond", seededRows / exportSeconds);
+            result.put("exportMegabytesPerSecond", megabytes / exportSeconds);
+            result.put("exportPeakHeapBytes", exportPeakHeap);
+            result.put("importSeconds", importSeconds);
+            result.put("importRowsPerSecond", seededRows / importSeconds);
+            result.put("importMegabytesPerSecond", megabytes / importSeconds);
+            result.put("importPeakHeapBytes", importPeakHeap);
+            result.put("restoredRows", countRestoredRows());
+        } finally {
+            delete(tempDir);
+        }
+        return result;
+    }
+
+    private long countRestoredRows() throws Exception {
+        long rows = 0;
+        try (Connection connection = connect(RESTORED_DB); Statement statement = connection.createStatement()) {
+            for (String table : SchemaMetadata.load(connection, RESTORED_DB).getTables()) {
+                try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM `" + table + "`")) {
+                    rs.next();
+                    rows += rs.getLong(1);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * The sum of the peak usage of the heap pools since the last reset,
+     * an upper bound of the peak heap since the pools peak at different times
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static long size(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            long size = 0;
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) size += Files.size(file);
+            }
+            return size;
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            List<Path> paths = new ArrayList<>();
+            files.forEach(paths::add);
+            Collections.reverse(paths);
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * This writes the options, the environment and the result of every run
+     */
+    private void writeReport(List<Map<String, Object>> results) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("date", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").format(new Date()));
+        report.put("commit", gitCommit());
+        report.put("java", System.getProperty("java.version"));
+        report.put("processors", Runtime.getRuntime().availableProcessors());
+        report.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        report.put("options", options);
+        report.put("results", results);
+
+        Path output = Paths.get(options.get("output"));
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writeJson(report, writer, "");
+            writer.write("\n");
+        }
+        log("report written to %s", output.toAbsolutePath());
+    }
+
+    private static String gitCommit() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "HEAD").redirectErrorStream(true).start();
+            try (InputStream in = process.getInputStream()) {
+                byte[] buffer = new byte[128];
+                int read = in.read(buffer);
+                return process.waitFor() == 0 && read > 0 ? new String(buffer, 0, read, StandardCharsets.UTF_8).trim() : "unknown";
+            }
+        } catch (IOException e) {
+            return "unknown";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+
+    private static void writeJson(Object value, Writer writer, String indent) throws IOException {
+        if (value instanceof Map) {
+            writer.write("{");
+            String separator = "\n";
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.write(separator + indent + "  ");
+                writeJson(String.valueOf(entry.getKey()), writer, indent + "  ");
+                writer.write(": ");
+                writeJson(entry.getValue(), writer, indent + "  ");
+                separator = ",\n";
+            }
+            writer.write("\n" + indent + "}");
+        } else if (value instanceof List) {
+            writer.write("[");
+            String separator = "\n";
+            for (Object element : (List<?>) value) {
+                writer.write(separator + indent + "  ");
+                writeJson(element, writer, indent + "  ");
+                separator = ",\n";
+            }
+            writer.write("\n" + indent + "]");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            writer.write(String.valueOf(value));
+        } else {
+            StringBuilder escaped = new StringBuilder("\"");
+            for (char c : String.valueOf(value).toCharArray()) {
+                if (c == '"' || c == '\\') escaped.append('\\').append(c);
+                else if (c < 0x20) escaped.append(String.format("\\u%04x", (int) c));
+                else escaped.append(c);
+            }
+            writer.write(escaped.append('"').toString());
+        }
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.println("[backup-benchmark] " + String.format(format, args));
+    }
+}
@@ -0,0 +1,69 @@
+package com.smattme;
+
+import com.smattme.helpers.MysqlExportServiceHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hex encoding of binary values and the escaping
+ * of strings, for values of increasing size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingHelpersBenchmark {
+
+    @Param({"16", "256", "65536"})
+    public int size;
+
+    private byte[] bytes;
+    private String text;
+    private final StringBuilder out = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        bytes = new byte[size];
+        random.nextBytes(bytes);
+        StringBuilder value = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            //about one character in 40 must be escaped
+            value.append(random.nextInt(40) == 0 ? '\'' : (char) ('a' + random.nextInt(26)));
+        }
+        text = value.toString();
+    }
+
+    @Benchmark
+    public String bytesToHex() {
+        return MysqlExportServiceHelper.bytesToHex(bytes);
+    }
+
+    @Benchmark
+    public int appendHex() {
+        out.setLength(0);
+        MysqlExportServiceHelper.appendHex(bytes, out);
+        return out.length();
+    }
+
+    @Benchmark
+    public int appendEscaped() {
+        out.setLength(0);
+        MysqlExportServiceHelper.appendEscaped(text, out);
+        return out.length();
+    }
+}
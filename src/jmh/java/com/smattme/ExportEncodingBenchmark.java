@@ -0,0 +1,101 @@
+package com.smattme;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The encoding of rows into the VALUES of INSERT statements, as done by the export,
+ * for tables of different shapes. The score is in rows per second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportEncodingBenchmark {
+
+    private static final int ROWS = 1000;
+
+    @Param({"WIDE", "BLOB", "STRING", "NUMERIC"})
+    public String shape;
+
+    private SyntheticResultSet table;
+    private ColumnEncoder[] encoders;
+    private final StringBuilder row = new StringBuilder();
+    private char[] rowChars = new char[256];
+    private final CountingWriter writer = new CountingWriter();
+
+    @Setup
+    public void setUp() throws SQLException {
+        table = new SyntheticResultSet(SyntheticResultSet.Shape.valueOf(shape), 42);
+        encoders = ColumnEncoders.forColumns(table.open(0).getMetaData());
+    }
+
+    /**
+     * The loop of the export that builds each row and writes it
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long encodeRows() throws Exception {
+        ResultSet rs = table.open(ROWS);
+        do {
+            row.setLength(0);
+            row.append("(");
+            for (int i = 0; i < encoders.length; i++) {
+                if (i > 0) row.append(", ");
+                encoders[i].encode(rs, i + 1, row);
+            }
+            row.append(")");
+            if (rowChars.length < row.length()) {
+                rowChars = new char[Math.max(row.length(), rowChars.length * 2)];
+            }
+            row.getChars(0, row.length(), rowChars, 0);
+            writer.write(rowChars, 0, row.length());
+            writer.write(",\n");
+        } while (rs.next());
+        return writer.written;
+    }
+
+    /**
+     * Counts what is written, so the output is
+     * neither kept nor optimized away
+     */
+    private static class CountingWriter extends Writer {
+
+        private long written;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            written += len + cbuf[off];
+        }
+
+        @Override
+        public void write(String str) {
+            written += str.length();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
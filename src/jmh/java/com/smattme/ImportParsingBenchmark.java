@@ -0,0 +1,86 @@
+package com.smattme;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The splitting of dumps of increasing size into statements by the import,
+ * with the start and end markers of the export and with mysqldump style delimiters.
+ * The score is the time to split the whole dump
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportParsingBenchmark {
+
+    private static final int ROWS_PER_INSERT = 100;
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private String markerDump;
+    private String delimiterDump;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder marker = new StringBuilder();
+        StringBuilder delimiter = new StringBuilder();
+        String create = "CREATE TABLE `items` (`id` bigint NOT NULL, `name` varchar(255), `price` decimal(10,2), PRIMARY KEY (`id`))";
+        marker.append("\n\n--\n-- start  table dump : items\n--\n\n").append(create).append(";\n\n\n\n--\n-- end  table dump : items\n--\n\n");
+        delimiter.append("DROP TABLE IF EXISTS `items`;\n").append(create).append(";\n");
+
+        for (int start = 0; start < rows; start += ROWS_PER_INSERT) {
+            StringBuilder insert = new StringBuilder("INSERT INTO `items`(`id`, `name`, `price`) VALUES \n");
+            for (int id = start; id < Math.min(rows, start + ROWS_PER_INSERT); id++) {
+                if (id > start) insert.append(",\n");
+                //names with quotes and semicolons, which the delimiter parsing must not split on
+                insert.append('(').append(id).append(", 'item ").append(id)
+                        .append(random.nextInt(10) == 0 ? " \\'special\\'; edition" : "").append("', ")
+                        .append(random.nextInt(100000) / 100.0).append(')');
+            }
+            marker.append("\n--\n-- start table insert : items\n--\n").append(insert).append(";\n--\n-- end table insert : items\n--\n");
+            delimiter.append("/*!40000 ALTER TABLE `items` DISABLE KEYS */;\n").append(insert).append(";\n");
+        }
+        markerDump = marker.toString();
+        delimiterDump = delimiter.toString();
+    }
+
+    @Benchmark
+    public long markerStatements() throws IOException {
+        return count(new MarkerStatementReader(new StringReader(markerDump)));
+    }
+
+    @Benchmark
+    public long delimiterStatements() throws IOException {
+        return count(new DelimiterStatementReader(new StringReader(delimiterDump)));
+    }
+
+    private static long count(StatementReader reader) throws IOException {
+        long length = 0;
+        try (StatementReader statements = reader) {
+            String statement;
+            while ((statement = statements.next()) != null) {
+                length += statement.length();
+            }
+        }
+        return length;
+    }
+}
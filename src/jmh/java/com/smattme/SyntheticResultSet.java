@@ -0,0 +1,174 @@
+package com.smattme;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.Random;
+
+/**
+ * An in-memory result set of generated rows for the benchmarks, in one of
+ * a few shapes. The rows are generated once and cycled through, so the
+ * benchmarks measure the encoding and not the generation of the values.
+ * Only the methods the export calls are implemented, through a dynamic proxy.
+ * The proxy boxes the primitive values it returns, a constant overhead
+ * that is the same for every run being compared
+ */
+class SyntheticResultSet {
+
+    /**
+     * The shapes of the generated tables
+     */
+    enum Shape {
+        /** 40 columns of every kind */
+        WIDE,
+        /** an id and two 4KB BLOBs */
+        BLOB,
+        /** an id and five strings of up to 200 characters, with characters to escape */
+        STRING,
+        /** integers, BIGINTs, DECIMALs and DOUBLEs */
+        NUMERIC
+    }
+
+    private static final int POOL_SIZE = 1024;
+
+    private final int[] types;
+    private final String[] typeNames;
+    private final Object[][] pool;
+    private final ResultSet resultSet;
+    private final ResultSetMetaData metaData;
+
+    private int remaining;
+    private int row = -1;
+    private boolean wasNull;
+
+    SyntheticResultSet(Shape shape, long seed) {
+        Random random = new Random(seed);
+        switch (shape) {
+            case WIDE:
+                types = new int[40];
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = new int[] {Types.INTEGER, Types.BIGINT, Types.DECIMAL, Types.DOUBLE,
+                            Types.VARCHAR, Types.TIMESTAMP, Types.VARBINARY, Types.VARCHAR}[i % 8];
+                }
+                break;
+            case BLOB:
+                types = new int[] {Types.BIGINT, Types.LONGVARBINARY, Types.LONGVARBINARY};
+                break;
+            case STRING:
+                types = new int[] {Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.VARCHAR};
+                break;
+            default:
+                types = new int[] {Types.BIGINT, Types.INTEGER, Types.INTEGER, Types.DECIMAL, Types.DECIMAL, Types.DOUBLE, Types.BIGINT};
+        }
+        typeNames = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            typeNames[i] = types[i] == Types.TIMESTAMP ? "DATETIME" : "";
+        }
+
+        pool = new Object[POOL_SIZE][types.length];
+        for (int r = 0; r < POOL_SIZE; r++) {
+            for (int c = 0; c < types.length; c++) {
+                pool[r][c] = c == 0 ? (Object) (long) r : value(shape, types[c], random);
+            }
+        }
+
+        metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount": return types.length;
+                        case "getColumnType": return types[(Integer) args[0] - 1];
+                        case "getColumnTypeName": return typeNames[(Integer) args[0] - 1];
+                        case "getColumnName": return "c" + args[0];
+                        case "getPrecision": return 0;
+                        case "isSigned": return true;
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        resultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next": return next();
+                        case "wasNull": return wasNull;
+                        case "getMetaData": return metaData;
+                        case "getLong": return get(args) == null ? 0L : ((Number) get(args)).longValue();
+                        case "getDouble": return get(args) == null ? 0d : ((Number) get(args)).doubleValue();
+                        case "getBytes": return (byte[]) get(args);
+                        case "getString": return get(args) == null ? null : get(args).toString();
+                        case "close": return null;
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static Object value(Shape shape, int type, Random random) {
+        if (random.nextInt(20) == 0) {
+            return null;
+        }
+        switch (type) {
+            case Types.INTEGER:
+                return (long) random.nextInt();
+            case Types.BIGINT:
+                return random.nextLong();
+            case Types.DECIMAL:
+                return BigDecimal.valueOf(random.nextLong() % 100000000000L, 4);
+            case Types.DOUBLE:
+                return random.nextDouble() * 1e6;
+            case Types.TIMESTAMP:
+                return String.format("2024-%02d-%02d %02d:%02d:%02d.%06d", 1 + random.nextInt(12), 1 + random.nextInt(28),
+                        random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000000));
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                byte[] bytes = new byte[shape == Shape.BLOB ? 4096 : 16];
+                random.nextBytes(bytes);
+                return bytes;
+            default:
+                return text(random, shape == Shape.STRING ? 1 + random.nextInt(200) : 24);
+        }
+    }
+
+    private static String text(Random random, int length) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int pick = random.nextInt(100);
+            //a few characters that must be escaped, and some that are not ASCII
+            if (pick == 0) text.append('\'');
+            else if (pick == 1) text.append('\n');
+            else if (pick == 2) text.append('\\');
+            else if (pick == 3) text.append('\u00e9');
+            else text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    private Object get(Object[] args) {
+        Object value = pool[row % POOL_SIZE][(Integer) args[0] - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    private boolean next() {
+        if (remaining <= 0) {
+            return false;
+        }
+        remaining--;
+        row++;
+        return true;
+    }
+
+    /**
+     * This will make the result set return the supplied number of rows
+     * and position it on the first one, as the export receives it
+     * @param rows the number of rows
+     * @return the result set
+     */
+    ResultSet open(int rows) {
+        remaining = rows;
+        row = -1;
+        next();
+        return resultSet;
+    }
+}
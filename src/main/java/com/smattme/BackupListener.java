@@ -0,0 +1,92 @@
+package com.smattme;
+
+/**
+ * This receives the progress and the timings of an export or an import.
+ * It's set with MysqlExportService.setListener() or MysqlImportService.setListener().
+ * Nothing is measured when no listener is set.
+ * The callbacks are made on the threads doing the work, at the same time
+ * from several threads in the parallel modes, so they should be quick and thread safe.
+ * An exception thrown by a callback is logged and does not fail the backup.
+ * All the methods do nothing by default
+ */
+public interface BackupListener {
+
+    /**
+     * The operation being reported
+     */
+    enum Operation {
+        EXPORT,
+        IMPORT
+    }
+
+    /**
+     * The phases the time of a backup is split into
+     */
+    enum Phase {
+        /** reading the tables of the database and their estimated sizes, and splitting them into key ranges */
+        METADATA,
+        /** reading the table definitions on export, executing the statements that are not data on import */
+        DDL,
+        /** executing the query of a table and fetching its rows */
+        DATA_READ,
+        /** turning the rows into SQL or delimited text */
+        ENCODE,
+        /** writing the SQL to the output, including the compression done on the same thread */
+        WRITE,
+        /** the time the export spent in the compressing stream, less that of writing the compressed bytes */
+        COMPRESS,
+        /** sending the backup by email */
+        UPLOAD,
+        /** executing the data statements of a table on import */
+        EXECUTE
+    }
+
+    /**
+     * This is called when the operation starts
+     * @param operation the operation
+     * @param database the database
+     */
+    default void started(Operation operation, String database) {
+    }
+
+    /**
+     * This is called before the first row of a table is processed
+     * @param operation the operation
+     * @param table the table
+     * @param estimatedRows the estimated number of rows of the table or -1 if unknown
+     */
+    default void tableStarted(Operation operation, String table, long estimatedRows) {
+    }
+
+    /**
+     * This is called when all the rows of a table have been processed
+     * @param metrics the rows, bytes and phase timings of the table
+     */
+    default void tableFinished(TableMetrics metrics) {
+    }
+
+    /**
+     * This is called for the phases that are not
+     * of a single table, e.g. METADATA, COMPRESS and UPLOAD
+     * @param operation the operation
+     * @param phase the phase
+     * @param nanos the time spent in the phase, in nanoseconds
+     */
+    default void phaseCompleted(Operation operation, Phase phase, long nanos) {
+    }
+
+    /**
+     * This is called at most once a second while rows are processed
+     * @param progress the rows and bytes processed so far and the ETA
+     */
+    default void progress(BackupProgress progress) {
+    }
+
+    /**
+     * This is called when the operation ends, successfully or not
+     * @param progress the totals of the operation
+     * @param error the exception the operation failed with, or null
+     */
+    default void finished(BackupProgress progress, Throwable error) {
+    }
+}
@@ -0,0 +1,172 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * This records the metrics of a single export or import and reports them to its
+ * {@link BackupListener}. Without a listener every method returns straight away,
+ * time() returns 0 and the tables share a single {@link TableMetrics} that records
+ * nothing, so System.nanoTime() is never called on the rows of a backup that is not observed
+ */
+class BackupMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupMetrics.class);
+    private static final String LOG_PREFIX = "mysql-backup4j";
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final BackupListener listener;
+    private final BackupListener.Operation operation;
+    private final TableMetrics disabled;
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong lastProgressNanos = new AtomicLong();
+    private volatile String database;
+    private volatile long startNanos;
+    private volatile long estimatedRows = -1;
+    private volatile long estimatedBytes = -1;
+    private volatile LongSupplier sourceBytes;
+    private volatile boolean started;
+
+    BackupMetrics(BackupListener listener, BackupListener.Operation operation) {
+        this.listener = listener;
+        this.operation = operation;
+        this.disabled = new TableMetrics(null, operation, null, -1, 1);
+    }
+
+    boolean isEnabled() {
+        return listener != null;
+    }
+
+    /**
+     * @return the current time, or 0 when no listener is set
+     */
+    long time() {
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * This reports the start of the operation
+     * @param database the database
+     */
+    void started(String database) {
+        this.database = database;
+        if (listener == null) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        lastProgressNanos.set(startNanos);
+        started = true;
+        notify(l -> l.started(operation, database));
+    }
+
+    void setEstimatedRows(long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+    }
+
+    void setEstimatedBytes(long estimatedBytes) {
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * This makes the progress report the bytes of the SQL source read by
+     * the import, instead of the sum of the bytes of the tables
+     * @param sourceBytes the bytes read so far
+     */
+    void setSourceBytes(LongSupplier sourceBytes) {
+        this.sourceBytes = sourceBytes;
+    }
+
+    /**
+     * This will return the metrics of a table, which is processed
+     * in the supplied number of segments, e.g. the key ranges of the parallel export
+     * @param table the table
+     * @param estimatedRows the estimated number of rows or -1 if unknown
+     * @param segments the number of times end() is called on the metrics
+     * @return TableMetrics
+     */
+    TableMetrics table(String table, long estimatedRows, int segments) {
+        return listener == null ? disabled : new TableMetrics(this, operation, table, estimatedRows, segments);
+    }
+
+    /**
+     * This reports a phase that is not of a single table
+     * @param phase the phase
+     * @param since the value of time() the phase started at
+     */
+    void phase(BackupListener.Phase phase, long since) {
+        if (listener != null) {
+            phaseCompleted(phase, System.nanoTime() - since);
+        }
+    }
+
+    /**
+     * This reports the time spent in a phase that is not of a single table
+     * @param phase the phase
+     * @param nanos the time in nanoseconds
+     */
+    void phaseCompleted(BackupListener.Phase phase, long nanos) {
+        if (listener != null) {
+            notify(l -> l.phaseCompleted(operation, phase, nanos));
+        }
+    }
+
+    void tableStarted(TableMetrics table) {
+        notify(l -> l.tableStarted(operation, table.getTable(), table.getEstimatedRows()));
+    }
+
+    void tableFinished(TableMetrics table) {
+        notify(l -> l.tableFinished(table));
+    }
+
+    /**
+     * This will count rows and bytes of the operation and report
+     * the progress if it was last reported more than a second ago
+     * @param rowCount the number of rows
+     * @param byteCount the number of bytes
+     * @param now the current time
+     */
+    void add(long rowCount, long byteCount, long now) {
+        if (listener == null) {
+            return;
+        }
+        rows.add(rowCount);
+        bytes.add(byteCount);
+        long last = lastProgressNanos.get();
+        if (now - last >= PROGRESS_INTERVAL_NANOS && lastProgressNanos.compareAndSet(last, now)) {
+            BackupProgress progress = getProgress(now);
+            notify(l -> l.progress(progress));
+        }
+    }
+
+    /**
+     * This reports the end of the operation, if it was started
+     * @param error the exception the operation failed with, or null
+     */
+    void finished(Throwable error) {
+        if (listener != null && started) {
+            BackupProgress progress = getProgress(System.nanoTime());
+            notify(l -> l.finished(progress, error));
+        }
+    }
+
+    private BackupProgress getProgress(long now) {
+        LongSupplier source = sourceBytes;
+        return new BackupProgress(operation, database, rows.sum(), estimatedRows,
+                source != null ? source.getAsLong() : bytes.sum(), estimatedBytes, now - startNanos);
+    }
+
+    private void notify(Consumer<BackupListener> callback) {
+        try {
+            callback.accept(listener);
+        } catch (RuntimeException e) {
+            logger.warn(LOG_PREFIX + ": the backup listener failed", e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.smattme;
+
+/**
+ * A snapshot of the progress of an export or an import.
+ * The ETA is estimated from the rows processed so far against the estimated
+ * row count of the tables, read from information_schema by the export.
+ * The import does not know how many rows there are, its ETA is estimated
+ * from the bytes of the SQL file read so far against the size of the file
+ */
+public class BackupProgress {
+
+    private final BackupListener.Operation operation;
+    private final String database;
+    private final long rows;
+    private final long estimatedRows;
+    private final long bytes;
+    private final long estimatedBytes;
+    private final long elapsedNanos;
+
+    BackupProgress(BackupListener.Operation operation, String database, long rows, long estimatedRows,
+                   long bytes, long estimatedBytes, long elapsedNanos) {
+        this.operation = operation;
+        this.database = database;
+        this.rows = rows;
+        this.estimatedRows = estimatedRows;
+        this.bytes = bytes;
+        this.estimatedBytes = estimatedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public BackupListener.Operation getOperation() {
+        return operation;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * @return the rows exported, or inserted by the import, so far
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the estimated number of rows of the whole operation or -1 if unknown
+     */
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    /**
+     * @return the characters of SQL of the rows exported so far,
+     * or the bytes of the SQL source read by the import so far
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the size of the SQL source of the import or -1 if unknown
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * This will estimate the time left from the rate so far.
+     * The estimated row counts of InnoDB are approximate, so the ETA
+     * is 0 once more rows than estimated have been processed
+     * @return the estimated time left in nanoseconds or -1 if it cannot be estimated
+     */
+    public long getEtaNanos() {
+        if (estimatedRows > 0 && rows > 0) {
+            return getEtaNanos(rows, estimatedRows);
+        }
+        if (estimatedBytes > 0 && bytes > 0) {
+            return getEtaNanos(bytes, estimatedBytes);
+        }
+        return -1;
+    }
+
+    private long getEtaNanos(long done, long total) {
+        if (done >= total) {
+            return 0;
+        }
+        return (long) (elapsedNanos * ((double) (total - done) / done));
+    }
+
+    @Override
+    public String toString() {
+        return "BackupProgress{" +
+                "operation=" + operation +
+                ", database=" + database +
+                ", rows=" + rows +
+                ", estimatedRows=" + estimatedRows +
+                ", bytes=" + bytes +
+                ", estimatedBytes=" + estimatedBytes +
+                ", elapsedNanos=" + elapsedNanos +
+                '}';
+    }
+}
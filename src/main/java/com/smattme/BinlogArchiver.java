@@ -0,0 +1,290 @@
+package com.smattme;
+
+import com.smattme.exceptions.MysqlBackup4JException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This continuously archives the changes of a database from the binary log of the
+ * server, starting from the position recorded by an export, so the database can be
+ * restored to any point in time: the export is imported first and the archived segments
+ * are then replayed with MysqlImportService.replayBinlog() up to the desired time or GTID.
+ * The server needs binlog_format=ROW and the user the REPLICATION SLAVE and
+ * REPLICATION CLIENT privileges. It requires com.zendesk:mysql-binlog-connector-java
+ * on the classpath.
+ * Usage:
+ * <pre>
+ * BinlogArchiver archiver = BinlogArchiver.builder()
+ *         .setHost("localhost").setUsername("root").setPassword("root")
+ *         .setDatabase("backup4j_test")
+ *         .setDirectory(Paths.get("binlog-archive"))
+ *         .setStartPosition(mysqlExportService.getBinlogPosition());
+ * archiver.start();
+ * ...
+ * archiver.stop();
+ * </pre>
+ */
+public class BinlogArchiver implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinlogArchiver.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-binlog";
+
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_SEGMENT_SECONDS = 300;
+
+    private String host = "localhost";
+    private int port = 3306;
+    private String username;
+    private String password;
+    private String database;
+    private String jdbcDriver;
+    private Path directory;
+    private BinlogPosition startPosition;
+    private String compression = Compression.GZIP;
+    private int compressionLevel = -1;
+    private long segmentBytes = DEFAULT_SEGMENT_BYTES;
+    private long segmentSeconds = DEFAULT_SEGMENT_SECONDS;
+    private long serverId = 65535;
+    private long connectTimeout = 10000;
+
+    private Connection metadataConnection;
+    private BinlogSegmentWriter segments;
+    private BinlogStreamer streamer;
+
+    private BinlogArchiver() {}
+
+    /**
+     * This function will create a new
+     * BinlogArchiver instance thereby facilitating
+     * a builder pattern
+     * @return BinlogArchiver
+     */
+    public static BinlogArchiver builder() {
+        return new BinlogArchiver();
+    }
+
+    /**
+     * This will connect to the server and start archiving on a background thread.
+     * Archiving resumes from the position saved in the directory by a previous run,
+     * if any, otherwise from the start position, otherwise from the current position of the server
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     * @throws IOException exception
+     */
+    public synchronized void start() throws SQLException, ClassNotFoundException, IOException {
+
+        if (username == null || username.isEmpty() || database == null || database.isEmpty() || directory == null) {
+            String message = "Required Parameters not set or empty \n" +
+                    "Ensure username, database and directory params are configured using their respective setters";
+            logger.error(LOG_PREFIX + ": " + message);
+            throw new MysqlBackup4JException(message);
+        }
+        if (streamer != null) {
+            throw new MysqlBackup4JException("The archiver is already running");
+        }
+
+        segments = new BinlogSegmentWriter(directory, Compression.normalize(compression), compressionLevel,
+                segmentBytes, segmentSeconds * 1000);
+        BinlogPosition position = segments.open();
+        if (position == null) {
+            position = startPosition;
+        }
+
+        metadataConnection = MysqlBaseService.connect(username, password, host, String.valueOf(port), database, jdbcDriver);
+        try (Statement statement = metadataConnection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT @@binlog_format")) {
+            if (rs.next() && !"ROW".equalsIgnoreCase(rs.getString(1))) {
+                logger.warn(LOG_PREFIX + ": binlog_format is " + rs.getString(1)
+                        + ", only the changes logged as rows and DDL are archived with all their values");
+            }
+        }
+        if (position == null) {
+            position = BinlogPosition.read(metadataConnection);
+            if (position == null) {
+                closeQuietly();
+                throw new MysqlBackup4JException("The binary log is not enabled on the server");
+            }
+        }
+
+        try {
+            streamer = new BinlogStreamer(host, port, username, password, serverId, database,
+                    metadataConnection, segments, position);
+        } catch (NoClassDefFoundError e) {
+            closeQuietly();
+            throw new MysqlBackup4JException("Binlog archiving requires com.zendesk:mysql-binlog-connector-java on the classpath", e);
+        }
+
+        logger.info(LOG_PREFIX + ": archiving the binary log of {} from {} to {}", database, position, directory);
+        try {
+            streamer.connect(connectTimeout);
+        } catch (TimeoutException e) {
+            streamer = null;
+            closeQuietly();
+            throw new MysqlBackup4JException("Unable to connect to the binary log within " + connectTimeout + " ms", e);
+        } catch (IOException e) {
+            streamer = null;
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * This will stop archiving and complete the current segment.
+     * A transaction that was being archived is archived again by the next run
+     * @throws IOException exception
+     * @exception MysqlBackup4JException if archiving had stopped on an error
+     */
+    public synchronized void stop() throws IOException {
+        if (streamer == null) {
+            return;
+        }
+        try {
+            streamer.disconnect();
+        } finally {
+            Exception failure = streamer.getFailure();
+            streamer = null;
+            closeQuietly();
+            if (failure != null) {
+                throw new MysqlBackup4JException("Binlog archiving failed: " + failure.getMessage(), failure);
+            }
+        }
+        logger.info(LOG_PREFIX + ": archiving stopped at {}", segments.getPosition());
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+    }
+
+    /**
+     * @return the position after the last archived transaction, or null if nothing was archived yet
+     */
+    public BinlogPosition getPosition() {
+        return segments == null ? startPosition : segments.getPosition();
+    }
+
+    private void closeQuietly() {
+        if (metadataConnection != null) {
+            try {
+                metadataConnection.close();
+            } catch (SQLException e) {
+                logger.debug(LOG_PREFIX + ": unable to close the connection", e);
+            }
+            metadataConnection = null;
+        }
+    }
+
+    public BinlogArchiver setHost(String host) {
+        this.host = host;
+        return this;
+    }
+
+    public BinlogArchiver setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public BinlogArchiver setUsername(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public BinlogArchiver setPassword(String password) {
+        this.password = password;
+        return this;
+    }
+
+    public BinlogArchiver setDatabase(String database) {
+        this.database = database;
+        return this;
+    }
+
+    public BinlogArchiver setJdbcDriver(String jdbcDriver) {
+        this.jdbcDriver = jdbcDriver;
+        return this;
+    }
+
+    /**
+     * This sets the directory the segments and
+     * the archiving position are written to
+     * @param directory the archive directory
+     * @return BinlogArchiver
+     */
+    public BinlogArchiver setDirectory(Path directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    /**
+     * This sets the position archiving starts from, usually the one
+     * recorded by the export the archive is replayed on
+     * @param startPosition the position, see MysqlExportService.getBinlogPosition()
+     * @return BinlogArchiver
+     */
+    public BinlogArchiver setStartPosition(BinlogPosition startPosition) {
+        this.startPosition = startPosition;
+        return this;
+    }
+
+    /**
+     * This sets the codec of the segments: none, zip, gzip, zstd or lz4. Defaults to gzip
+     * @param compression the codec
+     * @return BinlogArchiver
+     */
+    public BinlogArchiver setCompression(String compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public BinlogArchiver setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /**
+     * This sets the uncompressed size after which a segment is
+     * completed and a new one started. Defaults to 64 MB. 0 means no limit
+     * @param segmentBytes the size in bytes
+     * @return BinlogArchiver
+     */
+    public BinlogArchiver setSegmentBytes(long segmentBytes) {
+        this.segmentBytes = segmentBytes;
+        return this;
+    }
+
+    /**
+     * This sets the age after which a segment is completed and a new one started.
+     * Only complete segments are replayed, so this bounds how much of the
+     * most recent changes can be lost. Defaults to 300 seconds. 0 means no limit
+     * @param segmentSeconds the age in seconds
+     * @return BinlogArchiver
+     */
+    public BinlogArchiver setSegmentSeconds(long segmentSeconds) {
+        this.segmentSeconds = segmentSeconds;
+        return this;
+    }
+
+    /**
+     * This sets the server id the archiver registers with as a replica.
+     * It must be unique among the replicas of the server. Defaults to 65535
+     * @param serverId the server id
+     * @return BinlogArchiver
+     */
+    public BinlogArchiver setServerId(long serverId) {
+        this.serverId = serverId;
+        return this;
+    }
+
+    public BinlogArchiver setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+}
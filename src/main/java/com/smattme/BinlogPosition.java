@@ -0,0 +1,72 @@
+package com.smattme;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The coordinates of a point in the binary log of the server:
+ * the binlog file, the position in that file and, if the server
+ * has GTIDs enabled, the set of transactions executed up to that point
+ */
+public class BinlogPosition {
+
+    private final String file;
+    private final long position;
+    private final String gtidSet;
+
+    public BinlogPosition(String file, long position, String gtidSet) {
+        this.file = file;
+        this.position = position;
+        this.gtidSet = gtidSet == null || gtidSet.trim().isEmpty() ? null : gtidSet.trim();
+    }
+
+    /**
+     * This will read the current coordinates of the binary log.
+     * SHOW MASTER STATUS was renamed to SHOW BINARY LOG STATUS in MySQL 8.4,
+     * both are tried. It requires the REPLICATION CLIENT privilege
+     * @param connection the connection to query the server with
+     * @return the position or null if the binary log is disabled
+     * @throws SQLException exception
+     */
+    static BinlogPosition read(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs;
+            try {
+                rs = statement.executeQuery("SHOW MASTER STATUS");
+            } catch (SQLException e) {
+                rs = statement.executeQuery("SHOW BINARY LOG STATUS");
+            }
+            try {
+                if (!rs.next()) {
+                    return null;
+                }
+                String gtidSet = rs.getMetaData().getColumnCount() >= 5 ? rs.getString(5) : null;
+                return new BinlogPosition(rs.getString(1), rs.getLong(2), gtidSet);
+            } finally {
+                rs.close();
+            }
+        }
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the executed GTID set or null if the server does not use GTIDs
+     */
+    public String getGtidSet() {
+        return gtidSet;
+    }
+
+    @Override
+    public String toString() {
+        return file + ":" + position + (gtidSet == null ? "" : " " + gtidSet);
+    }
+}
@@ -0,0 +1,107 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * This replays the segments archived by the {@link BinlogArchiver} on a database,
+ * in the order they were written, and stops before the first transaction
+ * that happened at or after the stop time, or before the transaction with the stop GTID.
+ * Every transaction is executed as it was archived, with its own BEGIN and COMMIT,
+ * so a replay that fails leaves the database at the end of the last complete transaction
+ */
+class BinlogReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinlogReplayer.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-binlog";
+
+    private final Connection connection;
+    private final long stopMillis;
+    private final String stopGtid;
+
+    /**
+     * @param connection the connection to the database to replay on
+     * @param stopMillis the time to stop at in milliseconds since the epoch, Long.MAX_VALUE for none
+     * @param stopGtid the GTID of the first transaction not to replay, can be null
+     */
+    BinlogReplayer(Connection connection, long stopMillis, String stopGtid) {
+        this.connection = connection;
+        this.stopMillis = stopMillis;
+        this.stopGtid = stopGtid == null ? null : stopGtid.trim();
+    }
+
+    /**
+     * This will replay the segments of the supplied directory
+     * @param directory the directory of the archive
+     * @return the number of transactions replayed
+     * @throws IOException exception
+     * @throws SQLException exception
+     */
+    int replay(Path directory) throws IOException, SQLException {
+
+        int transactions = 0;
+        try (Statement statement = connection.createStatement()) {
+
+            //the values are archived as UTC literals and hex strings, and the rows were already checked by the source
+            statement.execute("SET time_zone = '+00:00'");
+            statement.execute("SET sql_mode = 'NO_AUTO_VALUE_ON_ZERO'");
+            statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+
+            segments:
+            for (Path segment : BinlogSegmentWriter.listSegments(directory)) {
+                logger.debug(LOG_PREFIX + ": replaying {}", segment.getFileName());
+                try (StatementReader reader = new MarkerStatementReader(new InputStreamReader(
+                        Compression.decompress(new BufferedInputStream(Files.newInputStream(segment))), StandardCharsets.UTF_8))) {
+                    String sql;
+                    while ((sql = reader.next()) != null) {
+                        if (sql.startsWith(BinlogSegmentWriter.TRANSACTION_MARKER)) {
+                            if (isStop(sql)) {
+                                break segments;
+                            }
+                            transactions++;
+                        }
+                        statement.execute(sql);
+                    }
+                }
+            }
+
+            statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+        }
+
+        logger.info(LOG_PREFIX + ": {} transactions replayed", transactions);
+        return transactions;
+    }
+
+    /**
+     * This parses the header of a transaction,
+     * i.e. its timestamp, GTID and position, and
+     * checks whether the replay stops before it
+     * @param sql the first statement of the transaction
+     * @return true to stop
+     */
+    private boolean isStop(String sql) {
+        int end = sql.indexOf('\n');
+        String[] header = sql.substring(BinlogSegmentWriter.TRANSACTION_MARKER.length(), end < 0 ? sql.length() : end)
+                .trim().split(" ");
+        long timestamp = Long.parseLong(header[0]);
+        if (timestamp >= stopMillis) {
+            logger.debug(LOG_PREFIX + ": stopping at {}, the transaction is at or after the stop time", header[2]);
+            return true;
+        }
+        if (stopGtid != null && stopGtid.equalsIgnoreCase(header[1])) {
+            logger.debug(LOG_PREFIX + ": stopping at {}, the transaction has the stop GTID", header[2]);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,295 @@
+package com.smattme;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.smattme.helpers.MysqlExportServiceHelper.appendEscaped;
+import static com.smattme.helpers.MysqlExportServiceHelper.appendHex;
+
+/**
+ * This turns the row images of the binlog row events of a table into
+ * INSERT, UPDATE and DELETE statements. It works on the values the way the
+ * binlog client decodes them with CHAR_AND_BINARY_AS_BYTE_ARRAY and
+ * DATE_AND_TIME_AS_LONG_MICRO: strings and blobs as bytes, which are written as hex
+ * so the charset of the column does not matter, and temporal values as microseconds
+ * since the epoch in UTC, which are written as UTC literals and must be replayed
+ * with the session time_zone set to +00:00.
+ * Updated and deleted rows are matched on the primary key if the row image has it,
+ * otherwise on all the columns of the image that can be compared exactly
+ */
+class BinlogRowFormatter {
+
+    //the MySQL column type codes of the binlog
+    static final int TYPE_TINY = 1;
+    static final int TYPE_SHORT = 2;
+    static final int TYPE_LONG = 3;
+    static final int TYPE_FLOAT = 4;
+    static final int TYPE_DOUBLE = 5;
+    static final int TYPE_TIMESTAMP = 7;
+    static final int TYPE_LONGLONG = 8;
+    static final int TYPE_INT24 = 9;
+    static final int TYPE_DATE = 10;
+    static final int TYPE_TIME = 11;
+    static final int TYPE_DATETIME = 12;
+    static final int TYPE_YEAR = 13;
+    static final int TYPE_NEWDATE = 14;
+    static final int TYPE_TIMESTAMP_V2 = 17;
+    static final int TYPE_DATETIME_V2 = 18;
+    static final int TYPE_TIME_V2 = 19;
+    static final int TYPE_JSON = 245;
+
+    private final String table;
+    private final String[] columns;
+    private final int[] types;
+    private final boolean[] unsigned;
+    private final boolean[] key;
+    private final boolean[] generated;
+
+    /**
+     * @param table the table the rows belong to
+     * @param columns the names of all the columns of the table, in order
+     * @param types the binlog type code of every column
+     * @param unsigned whether every column is unsigned
+     * @param key whether every column is part of the primary key
+     * @param generated whether every column is a generated column, which is never written
+     */
+    BinlogRowFormatter(String table, String[] columns, int[] types, boolean[] unsigned, boolean[] key, boolean[] generated) {
+        this.table = "`" + table.replace("`", "``") + "`";
+        this.columns = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            this.columns[i] = "`" + columns[i].replace("`", "``") + "`";
+        }
+        this.types = types;
+        this.unsigned = unsigned;
+        this.key = key;
+        this.generated = generated;
+    }
+
+    /**
+     * This will build the INSERT statement of the rows of a write rows event
+     * @param included the columns present in the row images
+     * @param rows the row images, holding the values of the included columns only
+     * @return String
+     */
+    String insert(BitSet included, List<? extends Object[]> rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        boolean first = true;
+        for (int column = included.nextSetBit(0); column >= 0; column = included.nextSetBit(column + 1)) {
+            if (generated[column]) continue;
+            if (!first) sql.append(", ");
+            sql.append(columns[column]);
+            first = false;
+        }
+        sql.append(") VALUES ");
+        for (int r = 0; r < rows.size(); r++) {
+            if (r > 0) sql.append(", ");
+            sql.append('(');
+            Object[] row = rows.get(r);
+            first = true;
+            int index = 0;
+            for (int column = included.nextSetBit(0); column >= 0; column = included.nextSetBit(column + 1), index++) {
+                if (generated[column]) continue;
+                if (!first) sql.append(", ");
+                appendValue(row[index], types[column], unsigned[column], sql);
+                first = false;
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+
+    /**
+     * This will build the UPDATE statement of a row of an update rows event
+     * @param includedBefore the columns present in the before image
+     * @param includedAfter the columns present in the after image
+     * @param before the before image
+     * @param after the after image
+     * @return String
+     */
+    String update(BitSet includedBefore, BitSet includedAfter, Object[] before, Object[] after) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        boolean first = true;
+        int index = 0;
+        for (int column = includedAfter.nextSetBit(0); column >= 0; column = includedAfter.nextSetBit(column + 1), index++) {
+            if (generated[column]) continue;
+            if (!first) sql.append(", ");
+            sql.append(columns[column]).append(" = ");
+            appendValue(after[index], types[column], unsigned[column], sql);
+            first = false;
+        }
+        appendWhere(includedBefore, before, sql);
+        return sql.toString();
+    }
+
+    /**
+     * This will build the DELETE statement of a row of a delete rows event
+     * @param included the columns present in the row image
+     * @param row the row image
+     * @return String
+     */
+    String delete(BitSet included, Object[] row) {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(table);
+        appendWhere(included, row, sql);
+        return sql.toString();
+    }
+
+    private void appendWhere(BitSet included, Object[] row, StringBuilder sql) {
+
+        boolean hasKey = false;
+        boolean keyIncluded = true;
+        for (int column = 0; column < columns.length; column++) {
+            if (key[column]) {
+                hasKey = true;
+                keyIncluded &= included.get(column);
+            }
+        }
+        boolean byKey = hasKey && keyIncluded;
+
+        sql.append(" WHERE ");
+        boolean first = true;
+        int index = 0;
+        for (int column = included.nextSetBit(0); column >= 0; column = included.nextSetBit(column + 1), index++) {
+            //floating point and JSON values do not compare equal to their literals
+            if (byKey ? !key[column] : !isComparable(types[column])) continue;
+            if (!first) sql.append(" AND ");
+            sql.append(columns[column]).append(" <=> ");
+            appendValue(row[index], types[column], unsigned[column], sql);
+            first = false;
+        }
+        if (first) sql.append("1 = 1");
+        sql.append(" LIMIT 1");
+    }
+
+    private static boolean isComparable(int type) {
+        return type != TYPE_FLOAT && type != TYPE_DOUBLE && type != TYPE_JSON;
+    }
+
+    /**
+     * This will append the supplied binlog value as an SQL literal
+     * @param value the value decoded by the binlog client, JSON already converted to its text
+     * @param type the binlog type code of the column
+     * @param unsigned whether the column is unsigned
+     * @param out the builder to append to
+     */
+    static void appendValue(Object value, int type, boolean unsigned, StringBuilder out) {
+
+        if (value == null) {
+            out.append("NULL");
+        }
+        else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            if (bytes.length == 0) {
+                out.append("''");
+            } else {
+                out.append("0x");
+                appendHex(bytes, out);
+            }
+        }
+        else if (value instanceof String) {
+            out.append('\'');
+            appendEscaped((String) value, out);
+            out.append('\'');
+        }
+        else if (value instanceof BitSet) {
+            long[] bits = ((BitSet) value).toLongArray();
+            out.append("b'").append(bits.length == 0 ? "0" : Long.toBinaryString(bits[0])).append('\'');
+        }
+        else if (value instanceof BigDecimal) {
+            out.append(((BigDecimal) value).toPlainString());
+        }
+        else if (value instanceof Long && isTemporal(type)) {
+            appendTemporal((Long) value, type, out);
+        }
+        else if (value instanceof Number && !(value instanceof Float) && !(value instanceof Double)) {
+            long number = ((Number) value).longValue();
+            if (type == TYPE_YEAR) {
+                //the binlog client adds 1900 to the stored year, and 0 is YEAR 0000
+                out.append(number == 1900 ? 0 : number);
+            } else if (!unsigned) {
+                out.append(number);
+            } else {
+                switch (type) {
+                    case TYPE_TINY: out.append(number & 0xffL); break;
+                    case TYPE_SHORT: out.append(number & 0xffffL); break;
+                    case TYPE_INT24: out.append(number & 0xffffffL); break;
+                    case TYPE_LONG: out.append(number & 0xffffffffL); break;
+                    default: out.append(Long.toUnsignedString(number));
+                }
+            }
+        }
+        else {
+            out.append(value);
+        }
+    }
+
+    private static boolean isTemporal(int type) {
+        switch (type) {
+            case TYPE_TIMESTAMP:
+            case TYPE_TIMESTAMP_V2:
+            case TYPE_DATE:
+            case TYPE_NEWDATE:
+            case TYPE_DATETIME:
+            case TYPE_DATETIME_V2:
+            case TYPE_TIME:
+            case TYPE_TIME_V2:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * This will append a temporal value given in microseconds since the epoch.
+     * Zero dates are decoded as Long.MIN_VALUE, and a TIMESTAMP of 0 is the zero timestamp
+     * @param micros the value
+     * @param type the binlog type code of the column
+     * @param out the builder to append to
+     */
+    private static void appendTemporal(long micros, int type, StringBuilder out) {
+
+        boolean date = type == TYPE_DATE || type == TYPE_NEWDATE;
+        boolean time = type == TYPE_TIME || type == TYPE_TIME_V2;
+        boolean timestamp = type == TYPE_TIMESTAMP || type == TYPE_TIMESTAMP_V2;
+        if (micros == Long.MIN_VALUE || (timestamp && micros == 0)) {
+            out.append(date ? "'0000-00-00'" : "'0000-00-00 00:00:00'");
+            return;
+        }
+
+        long seconds = Math.floorDiv(micros, 1_000_000L);
+        int fraction = (int) Math.floorMod(micros, 1_000_000L);
+        out.append('\'');
+        if (time) {
+            //TIME values go past 24 hours, they are written in hours
+            out.append(seconds / 3600);
+            append2(out.append(':'), (int) (seconds / 60 % 60));
+            append2(out.append(':'), (int) (seconds % 60));
+        } else {
+            LocalDateTime dateTime = LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+            int year = dateTime.getYear();
+            if (year < 1000) out.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+            out.append(year);
+            append2(out.append('-'), dateTime.getMonthValue());
+            append2(out.append('-'), dateTime.getDayOfMonth());
+            if (!date) {
+                append2(out.append(' '), dateTime.getHour());
+                append2(out.append(':'), dateTime.getMinute());
+                append2(out.append(':'), dateTime.getSecond());
+            }
+        }
+        if (!date && fraction > 0) {
+            String digits = Integer.toString(fraction);
+            out.append('.');
+            for (int i = digits.length(); i < 6; i++) out.append('0');
+            out.append(digits);
+        }
+        out.append('\'');
+    }
+
+    private static void append2(StringBuilder out, int value) {
+        if (value < 10) out.append('0');
+        out.append(value);
+    }
+}
@@ -0,0 +1,280 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * This writes the statements archived from the binary log to rotating, compressed
+ * segment files named binlog-00000001.sql.gz, binlog-00000002.sql.gz and so on.
+ * The statements are wrapped in the -- start and -- end markers of the dumps, and
+ * every transaction starts with a header holding its timestamp, GTID and binlog position,
+ * which is what a replay stops on. A segment is written as a .partial file and only
+ * renamed once it's complete, and segments only rotate between transactions.
+ * The position after the last complete segment is saved next to the segments,
+ * so archiving resumes from there after a restart
+ */
+class BinlogSegmentWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinlogSegmentWriter.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-binlog";
+
+    static final String TRANSACTION_MARKER = MysqlBaseService.SQL_START_PATTERN + " binlog transaction : ";
+    private static final String STATEMENT_MARKER = MysqlBaseService.SQL_START_PATTERN + " binlog statement";
+    private static final String END_MARKER = MysqlBaseService.SQL_END_PATTERN + " binlog";
+
+    static final String POSITION_FILE = "binlog.position";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("binlog-\\d{8}\\.sql(\\.(zip|gz|zst|lz4))?");
+
+    private final Path directory;
+    private final String codec;
+    private final int level;
+    private final long segmentBytes;
+    private final long segmentMillis;
+
+    private long sequence = 1;
+    private BinlogPosition position;
+
+    private Writer writer;
+    private Path segmentFile;
+    private long segmentStart;
+    private long written;
+    private boolean inTransaction;
+
+    /**
+     * @param directory the directory of the segments
+     * @param codec the normalized compression codec of the segments
+     * @param level the compression level, negative for the default of the codec
+     * @param segmentBytes the uncompressed size after which a segment is rotated, 0 for no limit
+     * @param segmentMillis the age after which a segment is rotated, 0 for no limit
+     */
+    BinlogSegmentWriter(Path directory, String codec, int level, long segmentBytes, long segmentMillis) {
+        this.directory = directory;
+        this.codec = codec;
+        this.level = level;
+        this.segmentBytes = segmentBytes;
+        this.segmentMillis = segmentMillis;
+    }
+
+    /**
+     * This will prepare the directory and load the position the previous
+     * archiving stopped at. Incomplete segments of the previous run are deleted,
+     * since their transactions are archived again from the saved position
+     * @return the saved position or null if there is none
+     * @throws IOException exception
+     */
+    BinlogPosition open() throws IOException {
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + PARTIAL_SUFFIX)) {
+            for (Path partial : files) {
+                logger.debug(LOG_PREFIX + ": deleting incomplete segment {}", partial);
+                Files.delete(partial);
+            }
+        }
+
+        Path positionFile = directory.resolve(POSITION_FILE);
+        if (!Files.exists(positionFile)) {
+            return null;
+        }
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(positionFile)) {
+            saved.load(in);
+        }
+        sequence = Long.parseLong(saved.getProperty("segment", "1"));
+        position = new BinlogPosition(saved.getProperty("file"), Long.parseLong(saved.getProperty("position", "4")),
+                saved.getProperty("gtid"));
+        return position;
+    }
+
+    /**
+     * This will start a transaction, opening a new segment if needed
+     * @param timestamp the time of the transaction in milliseconds since the epoch
+     * @param gtid the GTID of the transaction, can be null
+     * @param start the binlog position of the transaction
+     * @throws IOException exception
+     */
+    void begin(long timestamp, String gtid, BinlogPosition start) throws IOException {
+        writeHeader(timestamp, gtid, start, "BEGIN");
+        inTransaction = true;
+    }
+
+    /**
+     * This will write a statement of the current transaction
+     * @param sql the statement
+     * @throws IOException exception
+     */
+    void write(String sql) throws IOException {
+        writeStatement(STATEMENT_MARKER, sql);
+    }
+
+    /**
+     * This will write a statement that is a transaction of its own, e.g. DDL
+     * @param timestamp the time of the statement in milliseconds since the epoch
+     * @param gtid the GTID of the statement, can be null
+     * @param start the binlog position of the statement
+     * @param sql the statement
+     * @param next the position after the statement
+     * @throws IOException exception
+     */
+    void writeStatement(long timestamp, String gtid, BinlogPosition start, String sql, BinlogPosition next) throws IOException {
+        writeHeader(timestamp, gtid, start, sql);
+        commit(next);
+    }
+
+    /**
+     * This will end the current transaction, if any, record the position
+     * after it and rotate the segment if it's big or old enough
+     * @param next the position after the transaction
+     * @throws IOException exception
+     */
+    void commit(BinlogPosition next) throws IOException {
+        if (inTransaction) {
+            writeStatement(STATEMENT_MARKER, "COMMIT");
+            inTransaction = false;
+        }
+        position = next;
+        if (writer != null && segmentBytes > 0 && written >= segmentBytes) {
+            rotate();
+        } else {
+            idle();
+        }
+    }
+
+    /**
+     * This will rotate the current segment if it's old
+     * enough and no transaction is being written
+     * @throws IOException exception
+     */
+    void idle() throws IOException {
+        if (writer != null && !inTransaction && segmentMillis > 0 && System.currentTimeMillis() - segmentStart >= segmentMillis) {
+            rotate();
+        }
+    }
+
+    /**
+     * This will complete the current segment. A transaction that was
+     * not committed is rolled back, it's archived again by the next run
+     * @throws IOException exception
+     */
+    void close() throws IOException {
+        if (inTransaction) {
+            writeStatement(STATEMENT_MARKER, "ROLLBACK");
+            inTransaction = false;
+        }
+        rotate();
+    }
+
+    /**
+     * @return the position after the last archived transaction
+     */
+    BinlogPosition getPosition() {
+        return position;
+    }
+
+    private void writeHeader(long timestamp, String gtid, BinlogPosition start, String sql) throws IOException {
+        if (writer == null) {
+            openSegment();
+        }
+        writeStatement(TRANSACTION_MARKER + timestamp + " " + (gtid == null ? "-" : gtid) + " "
+                + start.getFile() + ":" + start.getPosition(), sql);
+    }
+
+    private void writeStatement(String marker, String sql) throws IOException {
+        if (writer == null) {
+            openSegment();
+        }
+        String text = "\n--\n" + marker + "\n--\n" + sql + ";\n--\n" + END_MARKER + "\n--\n";
+        writer.write(text);
+        written += text.length();
+    }
+
+    private void openSegment() throws IOException {
+        String name = String.format("binlog-%08d.sql", sequence) + Compression.getFileExtension(codec);
+        segmentFile = directory.resolve(name + PARTIAL_SUFFIX);
+        OutputStream out = Compression.compress(codec, new BufferedOutputStream(Files.newOutputStream(segmentFile)), level, name.replaceAll("\\.[^.]+$", ""));
+        writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        segmentStart = System.currentTimeMillis();
+        written = 0;
+    }
+
+    /**
+     * This completes the current segment, renames it to its final
+     * name and saves the position after it
+     */
+    private void rotate() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            String name = segmentFile.getFileName().toString();
+            move(segmentFile, segmentFile.resolveSibling(name.substring(0, name.length() - PARTIAL_SUFFIX.length())));
+            logger.debug(LOG_PREFIX + ": segment {} completed at {}", name, position);
+            sequence++;
+        }
+        savePosition();
+    }
+
+    private void savePosition() throws IOException {
+        if (position == null) {
+            return;
+        }
+        Properties saved = new Properties();
+        saved.setProperty("segment", String.valueOf(sequence));
+        saved.setProperty("file", position.getFile());
+        saved.setProperty("position", String.valueOf(position.getPosition()));
+        if (position.getGtidSet() != null) {
+            saved.setProperty("gtid", position.getGtidSet());
+        }
+        Path temp = directory.resolve(POSITION_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            saved.store(out, "mysql-backup4j binlog archive position");
+        }
+        move(temp, directory.resolve(POSITION_FILE));
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * This will return the complete segments of the
+     * supplied directory in the order they were written
+     * @param directory the directory of the segments
+     * @return the segment files
+     * @throws IOException exception
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (SEGMENT_NAME.matcher(file.getFileName().toString()).matches()) {
+                    segments.add(file);
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+}
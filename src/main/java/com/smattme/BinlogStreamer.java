@@ -0,0 +1,412 @@
+package com.smattme;
+
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.GtidEventData;
+import com.github.shyiko.mysql.binlog.event.QueryEventData;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.TransactionPayloadEventData;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonBinary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This reads the binary log of the server with mysql-binlog-connector-java,
+ * as a replica would, and writes the changes of one database to a {@link BinlogSegmentWriter}.
+ * Row events are turned into statements by a {@link BinlogRowFormatter}, and
+ * DDL is archived as it was executed. The names and keys of the columns are read from
+ * information_schema and refreshed after every DDL of the database.
+ * All the binlog classes are confined to this class, so the optional
+ * dependency is only needed by applications that archive the binary log
+ */
+class BinlogStreamer implements BinaryLogClient.EventListener, BinaryLogClient.LifecycleListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinlogStreamer.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-binlog";
+
+    private final BinaryLogClient client;
+    private final String database;
+    private final Connection metadataConnection;
+    private final BinlogSegmentWriter segments;
+
+    private final Map<Long, BinlogRowFormatter> formatters = new HashMap<>();
+    private final Map<Long, int[]> types = new HashMap<>();
+    private final Map<String, ColumnInfo[]> columns = new HashMap<>();
+
+    private String file;
+    private String gtid;
+    private boolean inTransaction;
+    private boolean transactionWritten;
+    private long transactionTimestamp;
+    private BinlogPosition transactionStart;
+    private volatile Exception failure;
+
+    BinlogStreamer(String host, int port, String username, String password, long serverId, String database,
+                   Connection metadataConnection, BinlogSegmentWriter segments, BinlogPosition start) {
+
+        this.database = database;
+        this.metadataConnection = metadataConnection;
+        this.segments = segments;
+
+        client = new BinaryLogClient(host, port, username, password);
+        client.setServerId(serverId);
+        client.setHeartbeatInterval(1000);
+        EventDeserializer deserializer = new EventDeserializer();
+        deserializer.setCompatibilityMode(EventDeserializer.CompatibilityMode.DATE_AND_TIME_AS_LONG_MICRO,
+                EventDeserializer.CompatibilityMode.CHAR_AND_BINARY_AS_BYTE_ARRAY,
+                EventDeserializer.CompatibilityMode.INVALID_DATE_AND_TIME_AS_MIN_VALUE);
+        client.setEventDeserializer(deserializer);
+
+        if (start != null) {
+            if (start.getFile() != null) {
+                client.setBinlogFilename(start.getFile());
+                client.setBinlogPosition(start.getPosition());
+                file = start.getFile();
+            }
+            if (start.getGtidSet() != null) {
+                client.setGtidSet(start.getGtidSet());
+                client.setUseBinlogFilenamePositionInGtidMode(start.getFile() != null);
+            }
+        }
+        client.registerEventListener(this);
+        client.registerLifecycleListener(this);
+    }
+
+    /**
+     * This will connect to the server and start streaming on a
+     * thread of the binlog client
+     * @param timeout the connect timeout in milliseconds
+     * @throws IOException exception
+     * @throws TimeoutException exception
+     */
+    void connect(long timeout) throws IOException, TimeoutException {
+        client.connect(timeout);
+    }
+
+    /**
+     * This will stop streaming and complete the current segment
+     * @throws IOException exception
+     */
+    void disconnect() throws IOException {
+        client.disconnect();
+        synchronized (this) {
+            segments.close();
+        }
+    }
+
+    /**
+     * @return the error that stopped the streaming, or null
+     */
+    Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public synchronized void onEvent(Event event) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            handle(event);
+        } catch (IOException | SQLException | RuntimeException e) {
+            failure = e;
+            logger.error(LOG_PREFIX + ": unable to archive the binlog event at " + file + ":"
+                    + ((EventHeaderV4) event.getHeader()).getPosition() + ", archiving stopped", e);
+            //the client can't be disconnected from its own thread
+            Thread stopper = new Thread(() -> {
+                try {
+                    client.disconnect();
+                } catch (IOException ex) {
+                    logger.debug(LOG_PREFIX + ": unable to disconnect", ex);
+                }
+            }, "mysql-backup4j-binlog-stop");
+            stopper.setDaemon(true);
+            stopper.start();
+        }
+    }
+
+    private void handle(Event event) throws IOException, SQLException {
+
+        EventHeaderV4 header = event.getHeader();
+        EventType type = header.getEventType();
+        switch (type) {
+            case ROTATE:
+                file = ((RotateEventData) event.getData()).getBinlogFilename();
+                break;
+            case HEARTBEAT:
+                segments.idle();
+                break;
+            case GTID:
+                gtid = ((GtidEventData) event.getData()).getMySqlGtid().toString();
+                break;
+            case QUERY:
+                handleQuery(header, event.getData());
+                break;
+            case TABLE_MAP:
+                handleTableMap(event.getData());
+                break;
+            case WRITE_ROWS:
+            case EXT_WRITE_ROWS: {
+                WriteRowsEventData data = event.getData();
+                BinlogRowFormatter formatter = formatters.get(data.getTableId());
+                if (formatter != null) {
+                    write(header, formatter.insert(data.getIncludedColumns(), convert(data.getTableId(), data.getIncludedColumns(), data.getRows())));
+                }
+                break;
+            }
+            case UPDATE_ROWS:
+            case EXT_UPDATE_ROWS: {
+                UpdateRowsEventData data = event.getData();
+                BinlogRowFormatter formatter = formatters.get(data.getTableId());
+                if (formatter != null) {
+                    for (Map.Entry<Serializable[], Serializable[]> row : data.getRows()) {
+                        write(header, formatter.update(data.getIncludedColumnsBeforeUpdate(), data.getIncludedColumns(),
+                                convert(data.getTableId(), data.getIncludedColumnsBeforeUpdate(), row.getKey()),
+                                convert(data.getTableId(), data.getIncludedColumns(), row.getValue())));
+                    }
+                }
+                break;
+            }
+            case DELETE_ROWS:
+            case EXT_DELETE_ROWS: {
+                DeleteRowsEventData data = event.getData();
+                BinlogRowFormatter formatter = formatters.get(data.getTableId());
+                if (formatter != null) {
+                    for (Serializable[] row : data.getRows()) {
+                        write(header, formatter.delete(data.getIncludedColumns(), convert(data.getTableId(), data.getIncludedColumns(), row)));
+                    }
+                }
+                break;
+            }
+            case XID:
+                commit(header);
+                break;
+            case TRANSACTION_PAYLOAD:
+                //binlog_transaction_compression wraps the events of a transaction
+                for (Event inner : ((TransactionPayloadEventData) event.getData()).getUncompressedEvents()) {
+                    handle(inner);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * This will archive a DDL or statement based DML statement of the database.
+     * The statement belongs to the database if it was the default schema of the session
+     * that executed it, which is what the binlog records. The schema a statement
+     * qualifies its tables with is not parsed, so e.g. ALTER TABLE db.t executed
+     * while another schema was the default one is not archived, and
+     * a statement on another schema qualified from within the database is
+     * @param header the header of the event
+     * @param data the statement
+     * @throws IOException exception
+     * @throws SQLException exception
+     */
+    private void handleQuery(EventHeaderV4 header, QueryEventData data) throws IOException, SQLException {
+
+        String sql = data.getSql().trim();
+        String keyword = sql.toUpperCase(Locale.ROOT);
+        if ("BEGIN".equals(keyword)) {
+            inTransaction = true;
+            transactionWritten = false;
+            transactionTimestamp = header.getTimestamp();
+            transactionStart = new BinlogPosition(file, header.getPosition(), null);
+            return;
+        }
+        if ("COMMIT".equals(keyword)) {
+            commit(header);
+            return;
+        }
+
+        boolean ours = database.equals(data.getDatabase());
+        if (inTransaction) {
+            //statement based DML, archived as it was executed
+            if (ours) write(header, sql);
+            return;
+        }
+
+        if (ours) {
+            columns.clear();
+            formatters.clear();
+            types.clear();
+            segments.writeStatement(header.getTimestamp(), gtid, new BinlogPosition(file, header.getPosition(), null),
+                    sql, position(header));
+        } else {
+            segments.commit(position(header));
+        }
+        gtid = null;
+    }
+
+    private void handleTableMap(TableMapEventData data) throws SQLException, IOException {
+
+        if (!database.equals(data.getDatabase())) {
+            formatters.remove(data.getTableId());
+            types.remove(data.getTableId());
+            return;
+        }
+
+        ColumnInfo[] tableColumns = getColumns(data.getTable());
+        byte[] columnTypes = data.getColumnTypes();
+        String[] names = new String[columnTypes.length];
+        List<String> metadataNames = data.getEventMetadata() != null ? data.getEventMetadata().getColumnNames() : null;
+        if (metadataNames != null && metadataNames.size() == columnTypes.length) {
+            //binlog_row_metadata=FULL names the columns of the event itself
+            names = metadataNames.toArray(names);
+        } else if (tableColumns.length == columnTypes.length) {
+            for (int i = 0; i < names.length; i++) {
+                names[i] = tableColumns[i].name;
+            }
+        } else {
+            throw new IOException("The binlog event of " + data.getTable() + " has " + columnTypes.length
+                    + " columns but the table now has " + tableColumns.length
+                    + ", set binlog_row_metadata=FULL on the server to archive events older than the last schema change");
+        }
+
+        int[] tableTypes = new int[names.length];
+        boolean[] unsigned = new boolean[names.length];
+        boolean[] key = new boolean[names.length];
+        boolean[] generated = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            tableTypes[i] = columnTypes[i] & 0xff;
+            for (ColumnInfo column : tableColumns) {
+                if (column.name.equalsIgnoreCase(names[i])) {
+                    unsigned[i] = column.unsigned;
+                    key[i] = column.key;
+                    generated[i] = column.generated;
+                    break;
+                }
+            }
+        }
+        types.put(data.getTableId(), tableTypes);
+        formatters.put(data.getTableId(), new BinlogRowFormatter(data.getTable(), names, tableTypes, unsigned, key, generated));
+    }
+
+    /**
+     * This copies the row images, converting the binary JSON values to their text
+     */
+    private List<Serializable[]> convert(long tableId, BitSet included, List<Serializable[]> rows) throws IOException {
+        List<Serializable[]> converted = new ArrayList<>(rows.size());
+        for (Serializable[] row : rows) {
+            converted.add(convert(tableId, included, row));
+        }
+        return converted;
+    }
+
+    private Serializable[] convert(long tableId, BitSet included, Serializable[] row) throws IOException {
+        Serializable[] converted = row.clone();
+        int[] tableTypes = types.get(tableId);
+        int index = 0;
+        for (int column = included.nextSetBit(0); column >= 0; column = included.nextSetBit(column + 1), index++) {
+            if (tableTypes[column] == BinlogRowFormatter.TYPE_JSON && converted[index] instanceof byte[]) {
+                byte[] json = (byte[]) converted[index];
+                converted[index] = json.length == 0 ? "null" : JsonBinary.parseAsString(json);
+            }
+        }
+        return converted;
+    }
+
+    private void write(EventHeaderV4 header, String sql) throws IOException {
+        if (!transactionWritten) {
+            //transactions that do not touch the database are not archived
+            segments.begin(inTransaction ? transactionTimestamp : header.getTimestamp(), gtid,
+                    inTransaction ? transactionStart : new BinlogPosition(file, header.getPosition(), null));
+            transactionWritten = true;
+        }
+        segments.write(sql);
+    }
+
+    private void commit(EventHeaderV4 header) throws IOException {
+        //the position is recorded even if nothing was written, so a restart skips the transaction
+        segments.commit(position(header));
+        inTransaction = false;
+        transactionWritten = false;
+        gtid = null;
+    }
+
+    private BinlogPosition position(EventHeaderV4 header) {
+        return new BinlogPosition(file, header.getNextPosition(), client.getGtidSet());
+    }
+
+    private ColumnInfo[] getColumns(String table) throws SQLException {
+        ColumnInfo[] tableColumns = columns.get(table);
+        if (tableColumns != null) {
+            return tableColumns;
+        }
+        List<ColumnInfo> list = new ArrayList<>();
+        try (PreparedStatement ps = metadataConnection.prepareStatement("SELECT COLUMN_NAME, COLUMN_TYPE, COLUMN_KEY, EXTRA " +
+                "FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION")) {
+            ps.setString(1, database);
+            ps.setString(2, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String extra = rs.getString(4) == null ? "" : rs.getString(4).toUpperCase(Locale.ROOT);
+                    list.add(new ColumnInfo(rs.getString(1), rs.getString(2).toLowerCase(Locale.ROOT).contains("unsigned"),
+                            "PRI".equals(rs.getString(3)), extra.contains("GENERATED")));
+                }
+            }
+        }
+        tableColumns = list.toArray(new ColumnInfo[0]);
+        columns.put(table, tableColumns);
+        return tableColumns;
+    }
+
+    @Override
+    public void onConnect(BinaryLogClient client) {
+        logger.debug(LOG_PREFIX + ": connected at {}:{}", client.getBinlogFilename(), client.getBinlogPosition());
+    }
+
+    @Override
+    public void onCommunicationFailure(BinaryLogClient client, Exception ex) {
+        failure = ex;
+        logger.error(LOG_PREFIX + ": binlog stream failed", ex);
+    }
+
+    @Override
+    public void onEventDeserializationFailure(BinaryLogClient client, Exception ex) {
+        failure = ex;
+        logger.error(LOG_PREFIX + ": unable to read a binlog event", ex);
+    }
+
+    @Override
+    public void onDisconnect(BinaryLogClient client) {
+        logger.debug(LOG_PREFIX + ": disconnected at {}:{}", client.getBinlogFilename(), client.getBinlogPosition());
+    }
+
+    private static class ColumnInfo {
+
+        private final String name;
+        private final boolean unsigned;
+        private final boolean key;
+        private final boolean generated;
+
+        ColumnInfo(String name, boolean unsigned, boolean key, boolean generated) {
+            this.name = name;
+            this.unsigned = unsigned;
+            this.key = key;
+            this.generated = generated;
+        }
+    }
+}
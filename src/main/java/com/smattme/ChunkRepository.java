@@ -0,0 +1,361 @@
+package com.smattme;
+
+import com.smattme.exceptions.MysqlBackup4JException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A local repository of deduplicated backups. The dumps are split into
+ * content-defined chunks by a {@link ChunkingOutputStream}, and every chunk is stored
+ * once under the SHA-256 of its content in chunks/ab/abcdef..., compressed with the
+ * codec of the repository. Every backup is a small manifest in manifests/ listing its
+ * chunks in order, so a chunk that did not change since a previous backup is neither
+ * written nor stored again.
+ * Chunks are only removed by collectGarbage(), once no manifest refers to them.
+ * Usage:
+ * <pre>
+ * ChunkRepository repository = new ChunkRepository(Paths.get("/var/backups/chunks"));
+ * //delete the manifests of the backups that are no longer needed, then
+ * repository.collectGarbage(TimeUnit.HOURS.toMillis(1));
+ * </pre>
+ */
+public class ChunkRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkRepository.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-chunks";
+
+    static final String MANIFEST_EXTENSION = ".manifest";
+    private static final String MANIFEST_HEADER = "# mysql-backup4j chunk manifest";
+    private static final String CHUNKS = "chunks";
+    private static final String MANIFESTS = "manifests";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    /**
+     * @param directory the root directory of the repository, created if it does not exist
+     */
+    public ChunkRepository(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * This will return the manifests of the repository, one per backup, sorted by name
+     * @return the manifest files
+     * @throws IOException exception
+     */
+    public List<Path> getManifests() throws IOException {
+        List<Path> manifests = new ArrayList<>();
+        Path manifestDirectory = directory.resolve(MANIFESTS);
+        if (!Files.isDirectory(manifestDirectory)) {
+            return manifests;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(manifestDirectory, "*" + MANIFEST_EXTENSION)) {
+            for (Path file : files) {
+                manifests.add(file);
+            }
+        }
+        Collections.sort(manifests);
+        return manifests;
+    }
+
+    /**
+     * This will delete the chunks that are not referenced by any manifest.
+     * Chunks written or reused less than minAgeMillis ago are kept, since they
+     * may belong to a backup whose manifest is still being written
+     * @param minAgeMillis the age below which unreferenced chunks are kept
+     * @return the number of chunks deleted
+     * @throws IOException exception
+     */
+    public int collectGarbage(long minAgeMillis) throws IOException {
+
+        Set<String> referenced = new HashSet<>();
+        for (Path manifest : getManifests()) {
+            for (ChunkReference chunk : readManifest(manifest)) {
+                referenced.add(chunk.hash);
+            }
+        }
+
+        Path chunkDirectory = directory.resolve(CHUNKS);
+        if (!Files.isDirectory(chunkDirectory)) {
+            return 0;
+        }
+
+        long cutoff = System.currentTimeMillis() - minAgeMillis;
+        int deleted = 0;
+        long freed = 0;
+        try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(chunkDirectory)) {
+            for (Path prefix : prefixes) {
+                if (!Files.isDirectory(prefix)) continue;
+                try (DirectoryStream<Path> chunks = Files.newDirectoryStream(prefix)) {
+                    for (Path chunk : chunks) {
+                        String name = chunk.getFileName().toString();
+                        String hash = name.endsWith(TEMP_SUFFIX) ? null : name;
+                        if ((hash != null && referenced.contains(hash)) || Files.getLastModifiedTime(chunk).toMillis() > cutoff) {
+                            continue;
+                        }
+                        long size = Files.size(chunk);
+                        if (Files.deleteIfExists(chunk)) {
+                            deleted++;
+                            freed += size;
+                        }
+                    }
+                }
+            }
+        }
+
+        logger.info(LOG_PREFIX + ": {} unreferenced chunks deleted, {} bytes freed", deleted, freed);
+        return deleted;
+    }
+
+    /**
+     * This will open a new backup of the supplied name. The chunks are
+     * stored as they are cut, and the manifest is only written when the
+     * returned stream is finished
+     * @param name the name of the manifest, without its extension
+     * @param codec the normalized codec the new chunks are compressed with
+     * @param level the compression level, negative for the default of the codec
+     * @param averageChunkSize the average chunk size, a power of two
+     * @return ChunkingOutputStream
+     * @throws IOException exception
+     */
+    ChunkingOutputStream create(String name, String codec, int level, int averageChunkSize) throws IOException {
+        Files.createDirectories(directory.resolve(MANIFESTS));
+        Files.createDirectories(directory.resolve(CHUNKS));
+        return new ChunkingOutputStream(this, directory.resolve(MANIFESTS).resolve(name + MANIFEST_EXTENSION),
+                codec, level, averageChunkSize);
+    }
+
+    /**
+     * This will store a chunk unless the repository already has it,
+     * in which case only its modification time is updated so the
+     * garbage collector knows it's in use again
+     * @param hash the SHA-256 of the content, in hex
+     * @param content the buffer holding the chunk
+     * @param length the length of the chunk
+     * @param codec the normalized codec the chunk is compressed with
+     * @param level the compression level
+     * @return true if the chunk was written, false if it was already stored
+     * @throws IOException exception
+     */
+    boolean store(String hash, byte[] content, int length, String codec, int level) throws IOException {
+
+        Path chunk = getChunkPath(hash);
+        if (Files.exists(chunk)) {
+            Files.setLastModifiedTime(chunk, FileTime.fromMillis(System.currentTimeMillis()));
+            return false;
+        }
+
+        Files.createDirectories(chunk.getParent());
+        Path temp = Files.createTempFile(chunk.getParent(), hash, TEMP_SUFFIX);
+        try {
+            try (OutputStream out = Compression.compress(codec, Files.newOutputStream(temp), level, hash)) {
+                out.write(content, 0, length);
+            }
+            move(temp, chunk);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return true;
+    }
+
+    /**
+     * This will write a manifest listing the supplied chunks
+     * @param manifest the manifest file
+     * @param chunks the chunks of the backup in order
+     * @throws IOException exception
+     */
+    static void writeManifest(Path manifest, List<ChunkReference> chunks) throws IOException {
+        Path temp = manifest.resolveSibling(manifest.getFileName() + TEMP_SUFFIX);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(MANIFEST_HEADER);
+            writer.newLine();
+            for (ChunkReference chunk : chunks) {
+                writer.write(chunk.hash + " " + chunk.length);
+                writer.newLine();
+            }
+        }
+        move(temp, manifest);
+    }
+
+    /**
+     * This will read the chunks listed by a manifest
+     * @param manifest the manifest file
+     * @return the chunks in order
+     * @throws IOException exception
+     */
+    static List<ChunkReference> readManifest(Path manifest) throws IOException {
+        List<ChunkReference> chunks = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split(" ");
+                if (fields.length != 2 || !fields[0].matches("[0-9a-f]{64}")) {
+                    throw new IOException("Invalid line in the manifest " + manifest + ": " + line);
+                }
+                chunks.add(new ChunkReference(fields[0], Integer.parseInt(fields[1])));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * This will open a stream of the backup of the supplied manifest. The chunks
+     * are read one after the other and their content is checked against their hash.
+     * The manifest is expected in the manifests directory of its repository
+     * @param manifest the manifest file
+     * @return InputStream
+     * @throws IOException exception
+     */
+    static InputStream open(Path manifest) throws IOException {
+        Path absolute = manifest.toAbsolutePath();
+        Path manifestDirectory = absolute.getParent();
+        if (manifestDirectory == null || manifestDirectory.getParent() == null || !MANIFESTS.equals(manifestDirectory.getFileName().toString())) {
+            throw new MysqlBackup4JException("The manifest " + manifest + " is not in the " + MANIFESTS + " directory of a chunk repository");
+        }
+        ChunkRepository repository = new ChunkRepository(manifestDirectory.getParent());
+        return new ManifestInputStream(repository, readManifest(absolute));
+    }
+
+    private Path getChunkPath(String hash) {
+        return directory.resolve(CHUNKS).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A chunk of a backup: the hash of its content and its length
+     */
+    static class ChunkReference {
+
+        final String hash;
+        final int length;
+
+        ChunkReference(String hash, int length) {
+            this.hash = hash;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads the chunks of a manifest as a single stream,
+     * verifying the length and hash of each one at its end
+     */
+    private static class ManifestInputStream extends InputStream {
+
+        private final ChunkRepository repository;
+        private final List<ChunkReference> chunks;
+        private final MessageDigest digest = newDigest();
+        private int index = -1;
+        private InputStream current;
+        private long read;
+
+        ManifestInputStream(ChunkRepository repository, List<ChunkReference> chunks) {
+            this.repository = repository;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (current == null && !nextChunk()) {
+                    return -1;
+                }
+                int n = current.read(b, off, len);
+                if (n > 0) {
+                    digest.update(b, off, n);
+                    read += n;
+                    return n;
+                }
+                finishChunk();
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (++index >= chunks.size()) {
+                return false;
+            }
+            Path chunk = repository.getChunkPath(chunks.get(index).hash);
+            try {
+                current = Compression.decompress(Files.newInputStream(chunk));
+            } catch (NoSuchFileException e) {
+                throw new IOException("The chunk " + chunks.get(index).hash + " is missing from the repository", e);
+            }
+            digest.reset();
+            read = 0;
+            return true;
+        }
+
+        private void finishChunk() throws IOException {
+            current.close();
+            current = null;
+            ChunkReference chunk = chunks.get(index);
+            if (read != chunk.length || !toHex(digest.digest()).equals(chunk.hash)) {
+                throw new IOException("The chunk " + chunk.hash + " is corrupted");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
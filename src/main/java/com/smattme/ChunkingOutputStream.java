@@ -0,0 +1,146 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This splits the bytes written to it into content-defined chunks and stores them
+ * in a {@link ChunkRepository}. A boundary is cut where a gear rolling hash of the last
+ * bytes matches a mask, as in FastCDC, so the boundaries depend on the content and not
+ * on the offsets: a change in one table only changes the chunks around it, and the chunks
+ * of the tables after it are the same as in the previous backup.
+ * Chunks are at least a quarter and at most four times the average size, and the mask is
+ * stricter below the average size and looser above it, which keeps the sizes close to the average.
+ * The manifest of the backup is only written by finish(), so a
+ * backup that fails half way leaves no manifest behind
+ */
+class ChunkingOutputStream extends OutputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkingOutputStream.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-chunks";
+
+    static final int DEFAULT_AVERAGE_CHUNK_SIZE = 1024 * 1024;
+
+    //the gear table must never change, or no chunk of a new backup would match the previous ones
+    private static final long[] GEAR = new long[256];
+    static {
+        Random random = new Random(0x6d7973716c4cL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final ChunkRepository repository;
+    private final Path manifest;
+    private final String codec;
+    private final int level;
+    private final int minSize;
+    private final int averageSize;
+    private final long strictMask;
+    private final long looseMask;
+    private final byte[] buffer;
+    private final MessageDigest digest = ChunkRepository.newDigest();
+    private final List<ChunkRepository.ChunkReference> chunks = new ArrayList<>();
+
+    private int length;
+    private long hash;
+    private long written;
+    private long stored;
+    private boolean finished;
+
+    /**
+     * @param repository the repository the chunks are stored in
+     * @param manifest the manifest file of the backup
+     * @param codec the normalized codec the chunks are compressed with
+     * @param level the compression level, negative for the default of the codec
+     * @param averageSize the average chunk size, rounded down to a power of two
+     */
+    ChunkingOutputStream(ChunkRepository repository, Path manifest, String codec, int level, int averageSize) {
+        this.repository = repository;
+        this.manifest = manifest;
+        this.codec = codec;
+        this.level = level;
+        this.averageSize = Integer.highestOneBit(Math.max(averageSize, 64));
+        this.minSize = this.averageSize / 4;
+        int bits = Integer.numberOfTrailingZeros(this.averageSize);
+        this.strictMask = mask(bits + 2);
+        this.looseMask = mask(bits - 2);
+        this.buffer = new byte[this.averageSize * 4];
+    }
+
+    /**
+     * This spreads the bits of the mask over the upper bits of the hash,
+     * which depend on more of the preceding bytes than the lower ones
+     */
+    private static long mask(int bits) {
+        long mask = 0;
+        for (int i = 0; i < bits; i++) {
+            mask |= 1L << (63 - i * 2);
+        }
+        return mask;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            buffer[length++] = b[i];
+            hash = (hash << 1) + GEAR[b[i] & 0xff];
+            if (length < minSize) {
+                continue;
+            }
+            if ((hash & (length < averageSize ? strictMask : looseMask)) == 0 || length == buffer.length) {
+                cut();
+            }
+        }
+        written += len;
+    }
+
+    private void cut() throws IOException {
+        if (length == 0) {
+            return;
+        }
+        digest.update(buffer, 0, length);
+        String chunkHash = ChunkRepository.toHex(digest.digest());
+        if (repository.store(chunkHash, buffer, length, codec, level)) {
+            stored += length;
+        }
+        chunks.add(new ChunkRepository.ChunkReference(chunkHash, length));
+        length = 0;
+        hash = 0;
+    }
+
+    /**
+     * @return the manifest of the backup
+     */
+    Path getManifest() {
+        return manifest;
+    }
+
+    /**
+     * This will store the last chunk and write the manifest of the backup
+     * @throws IOException exception
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        cut();
+        ChunkRepository.writeManifest(manifest, chunks);
+        logger.debug(LOG_PREFIX + ": {} bytes in {} chunks, {} bytes of new chunks stored", written, chunks.size(), stored);
+    }
+}
@@ -0,0 +1,22 @@
+package com.smattme;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes the value of a column of the current row
+ * as an SQL literal. An encoder is resolved once per column
+ * of a table by {@link ColumnEncoders#forColumns(java.sql.ResultSetMetaData)}
+ */
+interface ColumnEncoder {
+
+    /**
+     * This will append the value of the column
+     * in the current row of the result set
+     * @param rs the result set
+     * @param columnIndex the column
+     * @param out the builder to append the literal to
+     * @throws SQLException exception
+     */
+    void encode(ResultSet rs, int columnIndex, StringBuilder out) throws SQLException;
+}
@@ -0,0 +1,217 @@
+package com.smattme;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static com.smattme.helpers.MysqlExportServiceHelper.appendEscaped;
+import static com.smattme.helpers.MysqlExportServiceHelper.appendHex;
+
+/**
+ * The encoders of the values written in INSERT statements, one per
+ * kind of column. They read the value with the typed getter of the column,
+ * use wasNull() for the null check and append straight to the row being built,
+ * so no intermediate objects are created for integers.
+ * Values are written losslessly: integers through long, BIGINT UNSIGNED, DECIMAL
+ * and FLOAT through the text the server sent, and temporal values with their fractional seconds
+ */
+class ColumnEncoders {
+
+    /**
+     * The kinds of values, which decide the getter a value is read
+     * with and how it's written. The pipelined export copies the values
+     * of a row by kind and writes them later with the same routines
+     */
+    enum Kind {
+        INTEGER,
+        //BIGINT UNSIGNED, DECIMAL and FLOAT are written as the server sent them, which is exact
+        NUMERIC,
+        //Double.toString() is the shortest text that reads back as the same double
+        DOUBLE,
+        BIT,
+        BINARY,
+        //temporal values never contain characters that need escaping,
+        //and the text of the driver keeps the fractional seconds of the column
+        TEMPORAL,
+        STRING
+    }
+
+    static final ColumnEncoder INTEGER = new KindEncoder(Kind.INTEGER);
+    static final ColumnEncoder NUMERIC = new KindEncoder(Kind.NUMERIC);
+    static final ColumnEncoder DOUBLE = new KindEncoder(Kind.DOUBLE);
+    static final ColumnEncoder BIT = new KindEncoder(Kind.BIT);
+    static final ColumnEncoder BINARY = new KindEncoder(Kind.BINARY);
+    static final ColumnEncoder TEMPORAL = new KindEncoder(Kind.TEMPORAL);
+    static final ColumnEncoder STRING = new KindEncoder(Kind.STRING);
+
+    private ColumnEncoders() {}
+
+    /**
+     * This will return the kind of values the supplied encoder writes
+     * @param encoder one of the encoders of this class
+     * @return Kind
+     */
+    static Kind kind(ColumnEncoder encoder) {
+        if (!(encoder instanceof KindEncoder)) {
+            throw new IllegalArgumentException("Unknown column encoder " + encoder);
+        }
+        return ((KindEncoder) encoder).kind;
+    }
+
+    /**
+     * This will append a value of an INTEGER or a BIT column
+     * @param kind the kind of the column
+     * @param value the value
+     * @param out the builder to append the literal to
+     */
+    static void appendLong(Kind kind, long value, StringBuilder out) {
+        if (kind == Kind.BIT) out.append("b'").append(Long.toBinaryString(value)).append('\'');
+        else out.append(value);
+    }
+
+    /**
+     * This will append a value of a DOUBLE column
+     * @param value the value
+     * @param out the builder to append the literal to
+     */
+    static void appendDouble(double value, StringBuilder out) {
+        out.append(value);
+    }
+
+    /**
+     * This will append a value of a BINARY column as a hex literal,
+     * or as '' if it's empty, as 0x alone is not valid SQL
+     * @param value the bytes, not null
+     * @param out the builder to append the literal to
+     */
+    static void appendBytes(byte[] value, StringBuilder out) {
+        if (value.length == 0) {
+            out.append("''");
+            return;
+        }
+        out.append("0x");
+        appendHex(value, out);
+    }
+
+    /**
+     * This will append a value of a NUMERIC, TEMPORAL or STRING column
+     * @param kind the kind of the column
+     * @param value the text of the value, not null
+     * @param out the builder to append the literal to
+     */
+    static void appendText(Kind kind, String value, StringBuilder out) {
+        switch (kind) {
+            case NUMERIC:
+                out.append(value);
+                break;
+            case TEMPORAL:
+                out.append('\'').append(value).append('\'');
+                break;
+            default:
+                out.append('\'');
+                appendEscaped(value, out);
+                out.append('\'');
+        }
+    }
+
+    /**
+     * This will resolve the encoder of every column of the result set
+     * @param metaData the metadata of the result set
+     * @return the encoders, index 0 is that of column 1
+     * @throws SQLException exception
+     */
+    static ColumnEncoder[] forColumns(ResultSetMetaData metaData) throws SQLException {
+        ColumnEncoder[] encoders = new ColumnEncoder[metaData.getColumnCount()];
+        for (int i = 0; i < encoders.length; i++) {
+            encoders[i] = forColumn(metaData, i + 1);
+        }
+        return encoders;
+    }
+
+    /**
+     * This will resolve the encoder of a column.
+     * Connector/J reports TINYINT(1) as BIT too, so only BIT
+     * columns wider than 1 are written as bit literals
+     * @param metaData the metadata of the result set
+     * @param columnIndex the column
+     * @return ColumnEncoder
+     * @throws SQLException exception
+     */
+    private static ColumnEncoder forColumn(ResultSetMetaData metaData, int columnIndex) throws SQLException {
+        switch (metaData.getColumnType(columnIndex)) {
+            case Types.BIT:
+                return metaData.getPrecision(columnIndex) > 1 ? BIT : INTEGER;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return INTEGER;
+            case Types.BIGINT:
+                return metaData.isSigned(columnIndex) ? INTEGER : NUMERIC;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.REAL:
+            case Types.FLOAT:
+                return NUMERIC;
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.BINARY:
+            case Types.BLOB:
+            case Types.LONGVARBINARY:
+            case Types.VARBINARY:
+                return BINARY;
+            case Types.DATE:
+                //YEAR is reported as DATE
+                return "YEAR".equalsIgnoreCase(metaData.getColumnTypeName(columnIndex)) ? INTEGER : TEMPORAL;
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return TEMPORAL;
+            default:
+                return STRING;
+        }
+    }
+
+    /**
+     * Reads the value of a column with the getter of its kind
+     * and writes it with the routine of its kind
+     */
+    private static final class KindEncoder implements ColumnEncoder {
+
+        private final Kind kind;
+
+        KindEncoder(Kind kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        public void encode(ResultSet rs, int columnIndex, StringBuilder out) throws SQLException {
+            switch (kind) {
+                case INTEGER:
+                case BIT:
+                    long longValue = rs.getLong(columnIndex);
+                    if (rs.wasNull()) out.append("null");
+                    else appendLong(kind, longValue, out);
+                    break;
+                case DOUBLE:
+                    double doubleValue = rs.getDouble(columnIndex);
+                    if (rs.wasNull()) out.append("null");
+                    else appendDouble(doubleValue, out);
+                    break;
+                case BINARY:
+                    byte[] bytes = rs.getBytes(columnIndex);
+                    if (bytes == null) out.append("null");
+                    else appendBytes(bytes, out);
+                    break;
+                default:
+                    String text = rs.getString(columnIndex);
+                    if (text == null) out.append("null");
+                    else appendText(kind, text, out);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return kind.name();
+        }
+    }
+}
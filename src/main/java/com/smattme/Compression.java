@@ -0,0 +1,256 @@
+package com.smattme;
+
+import com.smattme.exceptions.MysqlBackup4JException;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * This wraps the output of an export in a compressing stream and detects
+ * and decompresses compressed sources of an import from their magic number.
+ * zip and gzip use java.util.zip. zstd and lz4 need the optional
+ * com.github.luben:zstd-jni and org.lz4:lz4-java dependencies on the classpath.
+ * gzip and zstd can compress with several threads, the output is still read by
+ * the standard decompressors; zip and lz4 are always compressed by a single thread
+ */
+class Compression {
+
+    static final String NONE = "none";
+    static final String ZIP = "zip";
+    static final String GZIP = "gzip";
+    static final String ZSTD = "zstd";
+    static final String LZ4 = "lz4";
+
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Compression() {}
+
+    /**
+     * This will validate the supplied codec name
+     * @param codec the name of the codec, case insensitive
+     * @return the name in lowercase
+     * @exception MysqlBackup4JException if the codec is not supported
+     */
+    static String normalize(String codec) {
+        String name = codec.trim().toLowerCase(Locale.ROOT);
+        switch (name) {
+            case NONE:
+            case ZIP:
+            case GZIP:
+            case ZSTD:
+            case LZ4:
+                return name;
+            default:
+                throw new MysqlBackup4JException("Unsupported compression: " + codec + ". Supported codecs are none, zip, gzip, zstd and lz4");
+        }
+    }
+
+    /**
+     * This will return the extension of the files compressed with the codec
+     * @param codec the normalized codec name
+     * @return the extension including the dot, empty for none
+     */
+    static String getFileExtension(String codec) {
+        switch (codec) {
+            case ZIP: return ".zip";
+            case GZIP: return ".gz";
+            case ZSTD: return ".zst";
+            case LZ4: return ".lz4";
+            default: return "";
+        }
+    }
+
+    /**
+     * This will wrap the supplied stream in a compressing stream.
+     * Closing the returned stream finishes the compressed data and closes the supplied stream
+     * @param codec the normalized codec name
+     * @param out the stream the compressed data is written to
+     * @param level the compression level, a negative value for the default of the codec
+     * @param entryName the name of the file inside the archive, for zip
+     * @return OutputStream
+     * @throws IOException exception
+     */
+    static OutputStream compress(String codec, OutputStream out, int level, String entryName) throws IOException {
+        return compress(codec, out, level, entryName, 1, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * This will wrap the supplied stream in a compressing stream that
+     * compresses with the supplied number of threads.
+     * gzip is then written as a sequence of gzip members of one block each,
+     * zstd as a frame compressed by zstd's own workers in jobs of one block each
+     * @param codec the normalized codec name
+     * @param out the stream the compressed data is written to
+     * @param level the compression level, a negative value for the default of the codec
+     * @param entryName the name of the file inside the archive, for zip
+     * @param threads the number of compressing threads, 1 to compress on the calling thread
+     * @param blockSize the size of the blocks compressed independently, in bytes
+     * @return OutputStream
+     * @throws IOException exception
+     */
+    static OutputStream compress(String codec, OutputStream out, int level, String entryName,
+                                 int threads, int blockSize) throws IOException {
+        switch (codec) {
+            case ZIP: {
+                ZipOutputStream zipOutputStream = new ZipOutputStream(out);
+                if (level >= 0) zipOutputStream.setLevel(level);
+                zipOutputStream.putNextEntry(new ZipEntry(entryName));
+                return zipOutputStream;
+            }
+            case GZIP:
+                if (threads > 1) {
+                    return new ParallelGzipOutputStream(out, level, threads, blockSize);
+                }
+                return new GZIPOutputStream(out, BUFFER_SIZE) {
+                    {
+                        if (level >= 0) def.setLevel(level);
+                    }
+                };
+            case ZSTD:
+                try {
+                    return Zstd.compress(out, level, threads, blockSize);
+                } catch (NoClassDefFoundError e) {
+                    throw missingDependency(ZSTD, "com.github.luben:zstd-jni", e);
+                }
+            case LZ4:
+                try {
+                    return Lz4.compress(out, level);
+                } catch (NoClassDefFoundError e) {
+                    throw missingDependency(LZ4, "org.lz4:lz4-java", e);
+                }
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * This will detect the compression of the supplied stream from its
+     * first bytes and return a stream of the decompressed data.
+     * Streams that are not compressed are returned as they are.
+     * A zip archive is read from its first file, and every member of a gzip
+     * stream is read, also when it comes from a pipe or a socket
+     * @param in the stream to read
+     * @return InputStream
+     * @throws IOException exception
+     */
+    static InputStream decompress(InputStream in) throws IOException {
+
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, BUFFER_SIZE);
+        byte[] magic = new byte[4];
+        buffered.mark(magic.length);
+        int read = 0;
+        while (read < magic.length) {
+            int n = buffered.read(magic, read, magic.length - read);
+            if (n < 0) break;
+            read += n;
+        }
+        buffered.reset();
+
+        if (read >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return new GZIPInputStream(new MemberInputStream(buffered), BUFFER_SIZE);
+        }
+        if (read == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            ZipInputStream zipInputStream = new ZipInputStream(buffered);
+            ZipEntry entry = zipInputStream.getNextEntry();
+            while (entry != null && entry.isDirectory()) {
+                entry = zipInputStream.getNextEntry();
+            }
+            return zipInputStream;
+        }
+        if (read == 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5 && (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+            try {
+                return Zstd.decompress(buffered);
+            } catch (NoClassDefFoundError e) {
+                throw missingDependency(ZSTD, "com.github.luben:zstd-jni", e);
+            }
+        }
+        if (read == 4 && (magic[0] & 0xff) == 0x04 && (magic[1] & 0xff) == 0x22 && (magic[2] & 0xff) == 0x4d && (magic[3] & 0xff) == 0x18) {
+            try {
+                return Lz4.decompress(buffered);
+            } catch (NoClassDefFoundError e) {
+                throw missingDependency(LZ4, "org.lz4:lz4-java", e);
+            }
+        }
+        return buffered;
+    }
+
+    private static MysqlBackup4JException missingDependency(String codec, String dependency, Throwable cause) {
+        return new MysqlBackup4JException(codec + " compression requires " + dependency + " on the classpath", cause);
+    }
+
+    /**
+     * The source of a GZIPInputStream. GZIPInputStream only looks for a member
+     * after the one it finished when available() is not 0, so concatenated members,
+     * e.g. those of the parallel gzip compression, end early when the next one
+     * has not arrived yet. Here available() waits for the next byte instead,
+     * and only reports 0 at the end of the stream
+     */
+    private static class MemberInputStream extends FilterInputStream {
+
+        /**
+         * @param in the stream of the members, which must support mark
+         */
+        MemberInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int available() throws IOException {
+            int available = super.available();
+            if (available > 0) {
+                return available;
+            }
+            in.mark(1);
+            int next = in.read();
+            in.reset();
+            return next < 0 ? 0 : 1;
+        }
+    }
+
+    //the optional codecs are kept in their own classes, so their
+    //dependencies are only loaded when the codec is used
+
+    private static class Zstd {
+
+        static OutputStream compress(OutputStream out, int level, int threads, int blockSize) throws IOException {
+            com.github.luben.zstd.ZstdOutputStream zstdOutputStream = level >= 0
+                    ? new com.github.luben.zstd.ZstdOutputStream(out, level)
+                    : new com.github.luben.zstd.ZstdOutputStream(out);
+            if (threads > 1) {
+                zstdOutputStream.setWorkers(threads);
+                zstdOutputStream.setJobSize(blockSize);
+            }
+            return zstdOutputStream;
+        }
+
+        static InputStream decompress(InputStream in) throws IOException {
+            return new com.github.luben.zstd.ZstdInputStream(in);
+        }
+    }
+
+    private static class Lz4 {
+
+        static OutputStream compress(OutputStream out, int level) throws IOException {
+            net.jpountz.lz4.LZ4Factory factory = net.jpountz.lz4.LZ4Factory.fastestInstance();
+            return new net.jpountz.lz4.LZ4FrameOutputStream(out, net.jpountz.lz4.LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB, -1L,
+                    level > 0 ? factory.highCompressor(level) : factory.fastCompressor(),
+                    net.jpountz.xxhash.XXHashFactory.fastestInstance().hash32(),
+                    net.jpountz.lz4.LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
+        }
+
+        static InputStream decompress(InputStream in) throws IOException {
+            return new net.jpountz.lz4.LZ4FrameInputStream(in);
+        }
+    }
+}
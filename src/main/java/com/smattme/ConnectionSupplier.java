@@ -0,0 +1,12 @@
+package com.smattme;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Opens a new connection to the database being
+ * exported or imported, for the parallel workers
+ */
+interface ConnectionSupplier {
+    Connection get() throws SQLException, ClassNotFoundException;
+}
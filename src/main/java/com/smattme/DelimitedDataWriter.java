@@ -0,0 +1,221 @@
+package com.smattme;
+
+import com.smattme.exceptions.MysqlBackup4JException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static com.smattme.helpers.MysqlExportServiceHelper.appendHex;
+
+/**
+ * This writes the rows of a table as a tab separated or a comma separated
+ * data file, in the default format of LOAD DATA INFILE: special characters are escaped
+ * with a backslash and NULL is written as \N. Binary values are written in hex and
+ * BIT values as numbers, and are converted back by the SET clause of the LOAD DATA statement
+ * returned by getLoadDataStatement(). Data files are always encoded in UTF-8
+ */
+class DelimitedDataWriter {
+
+    static final String TSV = "tsv";
+    static final String CSV = "csv";
+
+    private static final int TEXT = 0;
+    private static final int NUMBER = 1;
+    private static final int BINARY = 2;
+    private static final int SIGNED_BIT = 3;
+    private static final int UNSIGNED_BIT = 4;
+    private static final int YEAR = 5;
+
+    private final boolean csv;
+
+    DelimitedDataWriter(String format) {
+        if (TSV.equalsIgnoreCase(format)) {
+            csv = false;
+        } else if (CSV.equalsIgnoreCase(format)) {
+            csv = true;
+        } else {
+            throw new MysqlBackup4JException("Unsupported data format: " + format + ". Supported formats are sql, tsv and csv");
+        }
+    }
+
+    /**
+     * This will return the extension of the data files
+     * @return tsv or csv
+     */
+    String getFileExtension() {
+        return csv ? CSV : TSV;
+    }
+
+    /**
+     * This will write the rows of the result set
+     * to the supplied writer, one line per row
+     * @param rs the result set, positioned on its first row
+     * @param writer the data file
+     * @return the number of rows written
+     * @throws SQLException exception
+     * @throws IOException exception
+     */
+    long writeRows(ResultSet rs, Writer writer) throws SQLException, IOException {
+
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        int[] kinds = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            kinds[i] = getKind(metaData, i + 1);
+        }
+
+        char separator = csv ? ',' : '\t';
+        StringBuilder line = new StringBuilder();
+        long rows = 0;
+        do {
+            line.setLength(0);
+            for (int i = 0; i < columnCount; i++) {
+                int columnIndex = i + 1;
+                if (i > 0) line.append(separator);
+
+                switch (kinds[i]) {
+                    case BINARY: {
+                        byte[] value = rs.getBytes(columnIndex);
+                        if (value == null) line.append("\\N");
+                        else appendHex(value, line);
+                        break;
+                    }
+                    case SIGNED_BIT:
+                    case UNSIGNED_BIT:
+                    case YEAR: {
+                        long value = rs.getLong(columnIndex);
+                        if (rs.wasNull()) line.append("\\N");
+                        else if (kinds[i] != UNSIGNED_BIT) line.append(value);
+                        else line.append(Long.toUnsignedString(value));
+                        break;
+                    }
+                    default: {
+                        String value = rs.getString(columnIndex);
+                        if (value == null) {
+                            line.append("\\N");
+                        } else if (csv && kinds[i] == TEXT) {
+                            line.append('"');
+                            escape(value, true, line);
+                            line.append('"');
+                        } else {
+                            escape(value, csv, line);
+                        }
+                        break;
+                    }
+                }
+            }
+            line.append('\n');
+            writer.append(line);
+            rows++;
+        } while (rs.next());
+
+        return rows;
+    }
+
+    /**
+     * This will build the LOAD DATA LOCAL INFILE statement
+     * that loads the data file of the supplied table
+     * @param table the table
+     * @param fileName the name of the data file, relative to the SQL file
+     * @param metaData the metadata of the rows in the data file
+     * @param replace true to replace the existing rows with the same key
+     * @return String
+     * @throws SQLException exception
+     */
+    String getLoadDataStatement(String table, String fileName, ResultSetMetaData metaData, boolean replace) throws SQLException {
+
+        StringBuilder columns = new StringBuilder();
+        StringBuilder conversions = new StringBuilder();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (i > 1) columns.append(", ");
+            String column = "`" + metaData.getColumnName(i).replace("`", "``") + "`";
+            int kind = getKind(metaData, i);
+            if (kind == TEXT || kind == NUMBER || kind == YEAR) {
+                columns.append(column);
+                continue;
+            }
+
+            //values that can't be loaded as they are go through a user variable
+            String variable = "@c" + i;
+            columns.append(variable);
+            conversions.append(conversions.length() == 0 ? " SET " : ", ").append(column).append(" = ");
+            if (kind == BINARY) conversions.append("UNHEX(").append(variable).append(")");
+            else if (kind == SIGNED_BIT) conversions.append("CAST(").append(variable).append(" AS SIGNED)");
+            else conversions.append("CAST(").append(variable).append(" AS UNSIGNED)");
+        }
+
+        return "LOAD DATA LOCAL INFILE '" + fileName.replace("\\", "\\\\").replace("'", "\\'") + "'"
+                + (replace ? " REPLACE" : "")
+                + " INTO TABLE `" + table.replace("`", "``") + "` CHARACTER SET utf8mb4"
+                + (csv ? " FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"' ESCAPED BY '\\\\'"
+                       : " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\'")
+                + " LINES TERMINATED BY '\\n'"
+                + " (" + columns + ")" + conversions;
+    }
+
+    /**
+     * This will append the value to the supplied builder with the
+     * characters that LOAD DATA treats specially escaped with a backslash
+     * @param value the value
+     * @param csv true to also escape the double quote enclosing CSV values
+     * @param out the builder to append to
+     */
+    static void escape(CharSequence value, boolean csv, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\0': out.append("\\0"); break;
+                case '"':
+                    if (csv) out.append("\\\"");
+                    else out.append(c);
+                    break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    /**
+     * This will decide how the values of a column are written.
+     * Connector/J reports TINYINT(1) as BIT too, so a single bit column is
+     * written as a signed number, which is correct for both. Wider BIT columns
+     * are written as unsigned numbers
+     * @param metaData the metadata
+     * @param columnIndex the column
+     * @return the kind of the column
+     * @throws SQLException exception
+     */
+    private static int getKind(ResultSetMetaData metaData, int columnIndex) throws SQLException {
+        switch (metaData.getColumnType(columnIndex)) {
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return BINARY;
+            case Types.BIT:
+                return metaData.getPrecision(columnIndex) > 1 ? UNSIGNED_BIT : SIGNED_BIT;
+            case Types.DATE:
+                //YEAR is reported as DATE
+                return "YEAR".equalsIgnoreCase(metaData.getColumnTypeName(columnIndex)) ? YEAR : TEXT;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return NUMBER;
+            default:
+                return TEXT;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.smattme;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * This splits any MySQL script into statements the way the mysql
+ * command line client does: a statement ends at the current delimiter,
+ * unless the delimiter is inside a quoted string, a backtick identifier or a comment.
+ * It understands backslash escapes, doubled quotes, -- and # line comments,
+ * block comments, executable comments such as /*! ... *&#47; and /*+ ... *&#47; (which are kept),
+ * and the DELIMITER command. Plain comments are dropped from the statements.
+ * The script is read through a char buffer in chunks and no regular expressions are used,
+ * so it can be used to import mysqldump output, hand written scripts and the exports of this library alike.
+ */
+class DelimiterStatementReader implements StatementReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final String DELIMITER_COMMAND = "DELIMITER";
+
+    private static final int NORMAL = 0;
+    private static final int SINGLE_QUOTE = 1;
+    private static final int DOUBLE_QUOTE = 2;
+    private static final int BACKTICK = 3;
+    private static final int LINE_COMMENT = 4;
+    private static final int BLOCK_COMMENT = 5;
+
+    //characters that can change the state of the tokenizer in the NORMAL state
+    private static final boolean[] SPECIAL = new boolean[128];
+    static {
+        for (char c : "'\"`#-/*dD".toCharArray()) {
+            SPECIAL[c] = true;
+        }
+    }
+
+    private final Reader reader;
+    private char[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    private char[] delimiter = {';'};
+    private int state = NORMAL;
+    private boolean inExecutableComment;
+    private boolean atStatementStart = true;
+    private final StringBuilder statement = new StringBuilder();
+
+    DelimiterStatementReader(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    DelimiterStatementReader(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(bufferSize, DELIMITER_COMMAND.length() + 2)];
+    }
+
+    @Override
+    public String next() throws IOException {
+
+        while (true) {
+
+            if (position == limit && !readMore()) {
+                //the last statement does not need a delimiter
+                state = NORMAL;
+                inExecutableComment = false;
+                return finishStatement();
+            }
+
+            char c = buffer[position];
+            switch (state) {
+
+                case NORMAL:
+                    if (c == delimiter[0] && !inExecutableComment && matches(delimiter)) {
+                        position += delimiter.length;
+                        String result = finishStatement();
+                        if (result != null) {
+                            return result;
+                        }
+                        continue;
+                    }
+                    if (c < 128 && SPECIAL[c]) {
+                        normalSpecial(c);
+                    } else {
+                        //copy a run of ordinary characters at once
+                        int start = position;
+                        if (!Character.isWhitespace(c)) atStatementStart = false;
+                        position++;
+                        while (position < limit) {
+                            char n = buffer[position];
+                            if ((n < 128 && SPECIAL[n]) || n == delimiter[0]) break;
+                            if (atStatementStart && !Character.isWhitespace(n)) atStatementStart = false;
+                            position++;
+                        }
+                        statement.append(buffer, start, position - start);
+                    }
+                    break;
+
+                case SINGLE_QUOTE:
+                case DOUBLE_QUOTE:
+                case BACKTICK:
+                    quoted(state == SINGLE_QUOTE ? '\'' : state == DOUBLE_QUOTE ? '"' : '`');
+                    break;
+
+                case LINE_COMMENT:
+                    position++;
+                    if (c == '\n') {
+                        state = NORMAL;
+                        statement.append('\n');
+                    }
+                    break;
+
+                case BLOCK_COMMENT:
+                    if (c == '*' && peek(1) == '/') {
+                        position += 2;
+                        state = NORMAL;
+                        statement.append(' ');
+                    } else {
+                        position++;
+                    }
+                    break;
+
+                default:
+                    throw new IllegalStateException("Unknown tokenizer state " + state);
+            }
+        }
+    }
+
+    /**
+     * This handles a character of the NORMAL state
+     * that may start a quote, a comment or a command
+     * @param c the character at the current position
+     * @throws IOException exception
+     */
+    private void normalSpecial(char c) throws IOException {
+        switch (c) {
+            case '\'':
+                state = SINGLE_QUOTE;
+                break;
+            case '"':
+                state = DOUBLE_QUOTE;
+                break;
+            case '`':
+                state = BACKTICK;
+                break;
+            case '#':
+                state = LINE_COMMENT;
+                position++;
+                return;
+            case '-':
+                //-- is only a comment when followed by whitespace or the end of the script
+                if (peek(1) == '-') {
+                    int third = peek(2);
+                    if (third == -1 || Character.isWhitespace(third)) {
+                        state = LINE_COMMENT;
+                        position += 2;
+                        return;
+                    }
+                }
+                break;
+            case '/':
+                if (peek(1) == '*') {
+                    int third = peek(2);
+                    if (third == '!' || third == '+') {
+                        inExecutableComment = true;
+                        atStatementStart = false;
+                        statement.append("/*");
+                        position += 2;
+                    } else {
+                        state = BLOCK_COMMENT;
+                        position += 2;
+                    }
+                    return;
+                }
+                break;
+            case '*':
+                if (inExecutableComment && peek(1) == '/') {
+                    inExecutableComment = false;
+                    statement.append("*/");
+                    position += 2;
+                    return;
+                }
+                break;
+            case 'd':
+            case 'D':
+                if (atStatementStart && readDelimiterCommand()) {
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        atStatementStart = false;
+        statement.append(c);
+        position++;
+    }
+
+    /**
+     * This copies the content of a quoted string or identifier
+     * up to and including its closing quote. A backslash escapes
+     * the next character in strings but not in identifiers
+     * @param quote the quote character
+     * @throws IOException exception
+     */
+    private void quoted(char quote) throws IOException {
+        int start = position;
+        while (position < limit) {
+            char c = buffer[position];
+            if (c == '\\' && quote != '`') {
+                if (position + 1 < limit) {
+                    position += 2;
+                    continue;
+                }
+                //the escaped character is in the next chunk
+                statement.append(buffer, start, position - start);
+                if (peek(1) == -1) {
+                    statement.append(c);
+                    position++;
+                    return;
+                }
+                statement.append(c).append(buffer[position + 1]);
+                position += 2;
+                return;
+            }
+            position++;
+            if (c == quote) {
+                state = NORMAL;
+                break;
+            }
+        }
+        statement.append(buffer, start, position - start);
+    }
+
+    /**
+     * This reads a DELIMITER command at the start of a statement.
+     * The new delimiter is the first word after the command
+     * @return true if a DELIMITER command was read
+     * @throws IOException exception
+     */
+    private boolean readDelimiterCommand() throws IOException {
+        int length = DELIMITER_COMMAND.length();
+        for (int i = 0; i < length; i++) {
+            int c = peek(i);
+            if (c == -1 || Character.toUpperCase((char) c) != DELIMITER_COMMAND.charAt(i)) {
+                return false;
+            }
+        }
+        int next = peek(length);
+        if (next == -1 || !Character.isWhitespace(next) || next == '\n') {
+            return false;
+        }
+        position += length;
+
+        //the rest of the line holds the new delimiter
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            if (position == limit && !readMore()) break;
+            char c = buffer[position++];
+            if (c == '\n') break;
+            line.append(c);
+        }
+        String value = line.toString().trim();
+        int end = 0;
+        while (end < value.length() && !Character.isWhitespace(value.charAt(end))) end++;
+        if (end > 0) {
+            delimiter = value.substring(0, end).toCharArray();
+        }
+        statement.setLength(0);
+        return true;
+    }
+
+    private boolean matches(char[] pattern) throws IOException {
+        for (int i = 1; i < pattern.length; i++) {
+            if (peek(i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This returns the character at the given offset from the
+     * current position, reading more of the script if needed
+     * @param offset the offset
+     * @return the character or -1 at the end of the script
+     * @throws IOException exception
+     */
+    private int peek(int offset) throws IOException {
+        while (position + offset >= limit) {
+            if (!readMore()) {
+                return -1;
+            }
+        }
+        return buffer[position + offset];
+    }
+
+    /**
+     * This reads the next chunk of the script, keeping
+     * the characters that have not been consumed yet
+     * @return false at the end of the script
+     * @throws IOException exception
+     */
+    private boolean readMore() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            char[] bigger = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, bigger, 0, limit);
+            buffer = bigger;
+        }
+        int read;
+        do {
+            read = reader.read(buffer, limit, buffer.length - limit);
+        } while (read == 0);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private String finishStatement() {
+        atStatementStart = true;
+        int start = 0;
+        int end = statement.length();
+        while (start < end && Character.isWhitespace(statement.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(statement.charAt(end - 1))) end--;
+        String result = start == end ? null : statement.substring(start, end);
+        statement.setLength(0);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -166,7 +166,7 @@ class EmailService {
 
 //          body part for attachments
             MimeBodyPart attachmentBodyPart = new MimeBodyPart();
-            logger.debug(LOG_PREFIX + ": " + this.attachments.length + " attachments found");
+            logger.debug(LOG_PREFIX + ": {} attachments found", this.attachments.length);
             for (File file: this.attachments) {
                 attachmentBodyPart.attachFile(file);
             }
@@ -187,7 +187,7 @@ class EmailService {
             return true;
 
         } catch (Exception e) {
-            logger.debug(LOG_PREFIX + ": MESSAGE NOT SENT. " + e.getLocalizedMessage());
+            logger.debug(LOG_PREFIX + ": MESSAGE NOT SENT. {}", e.getLocalizedMessage());
             e.printStackTrace();
             return false;
         }
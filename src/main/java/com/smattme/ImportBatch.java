@@ -0,0 +1,167 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This executes the statements of an import in bounded JDBC batches.
+ * A batch is sent to the server once it holds maxStatements statements
+ * or maxChars characters of SQL. When a commit interval is set, autocommit
+ * is turned off and the transaction is committed every commitInterval statements.
+ * A failed batch is reported with the position and the text of the statement that failed.
+ */
+class ImportBatch implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportBatch.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-import";
+    private static final int MAX_REPORTED_SQL_LENGTH = 200;
+
+    private final Connection connection;
+    private final Statement statement;
+    private final int maxStatements;
+    private final long maxChars;
+    private final int commitInterval;
+    private final boolean autoCommit;
+
+    private final List<String> batch = new ArrayList<>();
+    private long batchChars;
+    private long executed;
+    private long updated;
+    private long uncommitted;
+
+    ImportBatch(Connection connection, Statement statement, int maxStatements, long maxChars, int commitInterval) throws SQLException {
+        this.connection = connection;
+        this.statement = statement;
+        this.maxStatements = maxStatements;
+        this.maxChars = maxChars;
+        this.commitInterval = commitInterval;
+        this.autoCommit = connection.getAutoCommit();
+        if (commitInterval > 0) {
+            connection.setAutoCommit(false);
+        }
+    }
+
+    /**
+     * This adds a statement to the batch and
+     * sends the batch if one of the thresholds is reached
+     * @param sql the statement
+     * @throws SQLException exception
+     */
+    void add(String sql) throws SQLException {
+        statement.addBatch(sql);
+        batch.add(sql);
+        batchChars += sql.length();
+        if ((maxStatements > 0 && batch.size() >= maxStatements)
+                || (maxChars > 0 && batchChars >= maxChars)
+                || (commitInterval > 0 && uncommitted + batch.size() >= commitInterval)) {
+            flush();
+        }
+    }
+
+    /**
+     * This sends the pending statements to the server and
+     * commits if the commit interval has been reached
+     * @throws SQLException exception
+     */
+    void flush() throws SQLException {
+        if (!batch.isEmpty()) {
+            try {
+                for (long count : statement.executeLargeBatch()) {
+                    if (count > 0) updated += count;
+                }
+            } catch (BatchUpdateException e) {
+                throw describe(e);
+            } finally {
+                statement.clearBatch();
+            }
+            executed += batch.size();
+            uncommitted += batch.size();
+            batch.clear();
+            batchChars = 0;
+            logger.debug(LOG_PREFIX + ": {} statements executed", executed);
+        }
+        if (commitInterval > 0 && uncommitted >= commitInterval) {
+            commit();
+        }
+    }
+
+    /**
+     * This sends the pending statements and commits them
+     * @throws SQLException exception
+     */
+    void finish() throws SQLException {
+        flush();
+        commit();
+    }
+
+    long getExecuted() {
+        return executed;
+    }
+
+    /**
+     * @return the rows changed by the statements executed so far, as reported by the server
+     */
+    long getUpdated() {
+        return updated;
+    }
+
+    private void commit() throws SQLException {
+        if (commitInterval > 0 && uncommitted > 0) {
+            connection.commit();
+            uncommitted = 0;
+        }
+    }
+
+    /**
+     * This will find the first statement of the batch
+     * that failed and return an exception that names it
+     * @param e the exception of the batch
+     * @return SQLException
+     */
+    private SQLException describe(BatchUpdateException e) {
+        long[] counts = e.getLargeUpdateCounts();
+        int failed = counts == null ? 0 : counts.length;
+        if (counts != null) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == Statement.EXECUTE_FAILED) {
+                    failed = i;
+                    break;
+                }
+            }
+        }
+        failed = Math.min(failed, batch.size() - 1);
+
+        String sql = batch.get(failed);
+        if (sql.length() > MAX_REPORTED_SQL_LENGTH) {
+            sql = sql.substring(0, MAX_REPORTED_SQL_LENGTH) + "...";
+        }
+        String message = LOG_PREFIX + ": statement " + (executed + failed + 1) + " of the import failed: "
+                + e.getMessage() + "\n" + sql;
+        return new SQLException(message, e.getSQLState(), e.getErrorCode(), e);
+    }
+
+    /**
+     * This restores the autocommit mode of the connection.
+     * Statements that were not committed are rolled back
+     */
+    @Override
+    public void close() {
+        try {
+            if (commitInterval > 0) {
+                if (uncommitted > 0 || !batch.isEmpty()) {
+                    connection.rollback();
+                }
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to restore autocommit", e);
+        }
+    }
+}
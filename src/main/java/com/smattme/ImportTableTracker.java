@@ -0,0 +1,89 @@
+package com.smattme;
+
+import java.sql.SQLException;
+
+/**
+ * This attributes the time and the rows of the statements of a single connection
+ * import to the tables they restore. The statements of a table are contiguous in a dump,
+ * so the batch is sent whenever the statements move on to another table and the
+ * time spent adding to and sending the batch in between is that of the table.
+ * The statements that are not data, e.g. the table definitions, are timed as DDL.
+ * It's only used with a listener, as sending the batch at the end of every table
+ * makes the batches of a dump with many small tables smaller
+ */
+class ImportTableTracker {
+
+    private final BackupMetrics metrics;
+    private final ImportBatch batch;
+    private TableMetrics table;
+    private long updated;
+    private long ddlNanos;
+
+    ImportTableTracker(BackupMetrics metrics, ImportBatch batch) {
+        this.metrics = metrics;
+        this.batch = batch;
+    }
+
+    /**
+     * This is called before a statement is executed or added to the batch.
+     * If the statement is not of the same table as the previous one, the batch
+     * is sent and the previous table is finished
+     * @param dataTable the table the statement restores the data of, null if it's not a data statement
+     * @return the time the statement starts at
+     * @throws SQLException exception
+     */
+    long before(String dataTable) throws SQLException {
+        long start = System.nanoTime();
+        if (table == null ? dataTable == null : table.getTable().equals(dataTable)) {
+            return start;
+        }
+        batch.flush();
+        start = record(start, 0, 0);
+        if (table != null) {
+            table.end();
+        }
+        table = dataTable == null ? null : metrics.table(dataTable, -1, 1);
+        if (table != null) {
+            table.begin();
+        }
+        return start;
+    }
+
+    /**
+     * This is called after a statement is executed or added to the batch
+     * @param start the time returned by before()
+     * @param sql the statement
+     * @param rows the rows changed by the statement if it was executed on its own
+     */
+    void after(long start, String sql, long rows) {
+        record(start, sql.length(), rows);
+    }
+
+    /**
+     * This sends the pending statements and finishes the last table
+     * @throws SQLException exception
+     */
+    void finish() throws SQLException {
+        long start = System.nanoTime();
+        batch.finish();
+        record(start, 0, 0);
+        if (table != null) {
+            table.end();
+            table = null;
+        }
+        metrics.phaseCompleted(BackupListener.Phase.DDL, ddlNanos);
+    }
+
+    private long record(long start, long chars, long rows) {
+        long now = System.nanoTime();
+        long batchRows = batch.getUpdated() - updated;
+        updated += batchRows;
+        if (table != null) {
+            table.lap(BackupListener.Phase.EXECUTE, start);
+            table.add(batchRows + rows, chars, now);
+        } else {
+            ddlNanos += now - start;
+        }
+        return now;
+    }
+}
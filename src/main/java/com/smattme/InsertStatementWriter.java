@@ -0,0 +1,128 @@
+package com.smattme;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This writes encoded rows as INSERT INTO ... VALUES (...),(...); statements.
+ * A new statement is started whenever the current one reaches the maximum
+ * number of rows or adding the next row will take it over the maximum number
+ * of bytes, so a restore does not run into max_allowed_packet.
+ * The bytes are counted in the charset the SQL is written in.
+ * Each statement is wrapped in its own start and end markers
+ */
+class InsertStatementWriter {
+
+    private final Writer writer;
+    private final String statementStart;
+    private final String statementEnd;
+    private final Charset charset;
+    private final boolean utf8;
+    private final boolean singleByte;
+    private final long emptyStatementBytes;
+    private final long maxRows;
+    private final long maxBytes;
+    private long rowsInStatement;
+    private long bytesInStatement;
+
+    /**
+     * @param writer the output
+     * @param table the table the rows belong to
+     * @param insertPrefix the INSERT INTO `table`(`col1`, ...) VALUES part of the statements
+     * @param maxRows the maximum number of rows of a statement, 0 means unlimited
+     * @param maxBytes the maximum size of a statement in bytes, 0 means unlimited
+     * @param charset the charset the output is encoded in, which the bytes are counted in
+     */
+    InsertStatementWriter(Writer writer, String table, String insertPrefix, long maxRows, long maxBytes, Charset charset) {
+        this.writer = writer;
+        this.statementStart = "\n--\n" + MysqlBaseService.SQL_START_PATTERN + " table insert : " + table + "\n--\n" + insertPrefix;
+        this.statementEnd = ";\n--\n" + MysqlBaseService.SQL_END_PATTERN + " table insert : " + table + "\n--\n";
+        this.charset = charset;
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        this.singleByte = !utf8 && charset.newEncoder().maxBytesPerChar() == 1;
+        //the prefix plus the terminating semicolon
+        this.emptyStatementBytes = byteLength(insertPrefix.toCharArray(), 0, insertPrefix.length()) + 1;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * This will write a row, e.g. (1, 'a'), to the current statement
+     * or to a new one if it does not fit in the current one
+     * @param row the characters of the row
+     * @param offset the offset of the row in the characters
+     * @param length the length of the row
+     * @throws IOException if writing to the output fails
+     */
+    void writeRow(char[] row, int offset, int length) throws IOException {
+
+        long rowBytes = maxBytes > 0 ? byteLength(row, offset, length) : length;
+        if (rowsInStatement > 0 && ((maxRows > 0 && rowsInStatement >= maxRows)
+                || (maxBytes > 0 && bytesInStatement + rowBytes + 2 > maxBytes))) {
+            writer.write(statementEnd);
+            rowsInStatement = 0;
+        }
+
+        if (rowsInStatement == 0) {
+            writer.write(statementStart);
+            bytesInStatement = emptyStatementBytes;
+        } else {
+            writer.write(",\n");
+            bytesInStatement += 2;
+        }
+
+        writer.write(row, offset, length);
+        rowsInStatement++;
+        bytesInStatement += rowBytes;
+    }
+
+    /**
+     * This will terminate the current statement, if any
+     * @throws IOException if writing to the output fails
+     */
+    void finish() throws IOException {
+        if (rowsInStatement > 0) {
+            writer.write(statementEnd);
+            rowsInStatement = 0;
+        }
+    }
+
+    /**
+     * This will return the number of bytes the supplied characters are encoded
+     * in. UTF-8 is counted without encoding, as are the single byte charsets
+     * @param chars the characters
+     * @param offset the offset of the first character
+     * @param length the number of characters
+     * @return the number of bytes
+     */
+    private long byteLength(char[] chars, int offset, int length) {
+        if (singleByte) {
+            return length;
+        }
+        if (!utf8) {
+            return charset.encode(CharBuffer.wrap(chars, offset, length)).remaining();
+        }
+
+        long bytes = length;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                //a supplementary character is 2 chars and 4 bytes
+                bytes += 2;
+                i++;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,113 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This splits a table into ranges of its primary key, or of a
+ * unique not null index, so the ranges can be read concurrently.
+ * Only single column integer keys are split. Tables without such a key
+ * and tables that fit in a single chunk are returned as a single range.
+ */
+class KeyRangeSplitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyRangeSplitter.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-export";
+
+    private KeyRangeSplitter() {}
+
+    /**
+     * This will return the WHERE predicates for the ranges of the
+     * supplied key column, based on the supplied size estimates.
+     * The first and last ranges are open ended, so rows outside the
+     * MIN and MAX seen while splitting are still exported.
+     * An empty list means the table should be read as a single range
+     * @param connection the connection to query the key bounds with
+     * @param table the table to split
+     * @param keyColumn the single column integer key
+     * @param estimatedRows the estimated number of rows in the table
+     * @param averageRowLength the estimated size of a row in bytes
+     * @param chunkRows the number of rows per range, 0 to use chunkBytes
+     * @param chunkBytes the size of data per range, 0 to use chunkRows
+     * @return the WHERE predicates, one per range
+     * @throws SQLException exception
+     */
+    static List<String> split(Connection connection, String table, String keyColumn, long estimatedRows, long averageRowLength,
+                              long chunkRows, long chunkBytes) throws SQLException {
+
+        long rowsPerChunk = chunkRows;
+        if(rowsPerChunk <= 0 && chunkBytes > 0) {
+            rowsPerChunk = Math.max(1, chunkBytes / Math.max(1, averageRowLength));
+        }
+        if(rowsPerChunk <= 0 || estimatedRows <= rowsPerChunk) {
+            return Collections.emptyList();
+        }
+
+        long min;
+        long max;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MIN(`" + keyColumn + "`), MAX(`" + keyColumn + "`) FROM `" + table + "`")) {
+            if(!rs.next() || rs.getString(1) == null) {
+                return Collections.emptyList();
+            }
+            try {
+                min = Long.parseLong(rs.getString(1));
+                max = Long.parseLong(rs.getString(2));
+            } catch (NumberFormatException e) {
+                //BIGINT UNSIGNED values above Long.MAX_VALUE
+                logger.debug(LOG_PREFIX + ": key range of {} does not fit in a long, exporting it as a single range", table);
+                return Collections.emptyList();
+            }
+        }
+
+        long chunks = (estimatedRows + rowsPerChunk - 1) / rowsPerChunk;
+        return ranges("`" + keyColumn + "`", min, max, chunks);
+    }
+
+    /**
+     * This will split [min, max] into at most the given
+     * number of contiguous ranges of equal width
+     * @param key the quoted key column
+     * @param min the smallest key value
+     * @param max the largest key value
+     * @param chunks the number of ranges wanted
+     * @return the WHERE predicates, one per range
+     */
+    static List<String> ranges(String key, long min, long max, long chunks) {
+
+        //the width is computed in double to avoid overflowing on the full BIGINT range
+        double span = (double) max - (double) min + 1;
+        long width = (long) Math.ceil(span / chunks);
+        if(chunks <= 1 || width <= 0 || span <= 1) {
+            return Collections.emptyList();
+        }
+
+        List<String> predicates = new ArrayList<>();
+        long lower = min;
+        String previous = null;
+        while (true) {
+            long upper = lower + width;
+            if(upper <= lower || upper > max) {
+                break;
+            }
+            String bound = key + " < " + upper;
+            predicates.add(previous == null ? bound : previous + " AND " + bound);
+            previous = key + " >= " + upper;
+            lower = upper;
+        }
+
+        if(previous == null) {
+            return Collections.emptyList();
+        }
+        predicates.add(previous);
+        return predicates;
+    }
+}
@@ -0,0 +1,170 @@
+package com.smattme;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * This reads the statements of a script generated by the export service:
+ * every executable statement sits between a line that starts with
+ * {@link MysqlBaseService#SQL_START_PATTERN} and one that starts with
+ * {@link MysqlBaseService#SQL_END_PATTERN}. Everything outside the markers is ignored.
+ * The script is read in chunks and the markers are matched as the characters
+ * stream by, so memory use is bounded by the size of the largest statement
+ * and every character is only looked at once.
+ * Compound statements, like the routines with a BEGIN ... END body, are written
+ * between DELIMITER commands, which are removed from the statement
+ */
+class MarkerStatementReader implements StatementReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final String DELIMITER = "DELIMITER ";
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+
+    private final PatternMatcher startMatcher = new PatternMatcher(MysqlBaseService.SQL_START_PATTERN);
+    private final PatternMatcher endMatcher = new PatternMatcher(MysqlBaseService.SQL_END_PATTERN);
+    private final StringBuilder statement = new StringBuilder();
+
+    MarkerStatementReader(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    MarkerStatementReader(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    @Override
+    public String next() throws IOException {
+
+        //look for the start of the next statement
+        startMatcher.reset();
+        boolean started = false;
+        while (!started) {
+            if (position == limit && !fill()) {
+                return null;
+            }
+            while (position < limit) {
+                if (startMatcher.matches(buffer[position++])) {
+                    started = true;
+                    break;
+                }
+            }
+        }
+
+        //the statement includes its start marker, up to but excluding the end marker
+        statement.setLength(0);
+        statement.append(MysqlBaseService.SQL_START_PATTERN);
+        endMatcher.reset();
+        while (true) {
+            if (position == limit && !fill()) {
+                //a statement without an end marker is not executed
+                return null;
+            }
+            int from = position;
+            while (position < limit) {
+                if (endMatcher.matches(buffer[position++])) {
+                    statement.append(buffer, from, position - from);
+                    statement.setLength(statement.length() - MysqlBaseService.SQL_END_PATTERN.length());
+                    return unwrapDelimiter(statement.toString().trim());
+                }
+            }
+            statement.append(buffer, from, position - from);
+        }
+    }
+
+    /**
+     * This will remove the DELIMITER commands that wrap a compound statement
+     * in the dump, and the delimiter that ends it, from a statement
+     * read between the markers, so it can be executed as is.
+     * Only the lines up to the first statement line are looked at,
+     * so statements without DELIMITER commands are returned as they are
+     * @param sql the statement, with its start marker
+     * @return the executable statement
+     */
+    private static String unwrapDelimiter(String sql) {
+
+        //skip the marker and the comment lines before the statement
+        int lineStart = 0;
+        while (lineStart < sql.length() && (sql.startsWith("--", lineStart) || sql.charAt(lineStart) == '\n')) {
+            int lineEnd = sql.indexOf('\n', lineStart);
+            lineStart = lineEnd < 0 ? sql.length() : lineEnd + 1;
+        }
+        if (!sql.startsWith(DELIMITER, lineStart)) {
+            return sql;
+        }
+
+        int bodyStart = sql.indexOf('\n', lineStart);
+        int bodyEnd = sql.lastIndexOf("\n" + DELIMITER);
+        if (bodyStart < 0 || bodyEnd <= bodyStart) {
+            return sql;
+        }
+        String delimiter = sql.substring(lineStart + DELIMITER.length(), bodyStart).trim();
+        String body = sql.substring(bodyStart + 1, bodyEnd).trim();
+        if (!delimiter.isEmpty() && body.endsWith(delimiter)) {
+            body = body.substring(0, body.length() - delimiter.length());
+        }
+        return sql.substring(0, lineStart) + body;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Matches a fixed pattern against a stream of characters
+     * one character at a time, using the Knuth-Morris-Pratt failure function
+     */
+    private static class PatternMatcher {
+
+        private final char[] pattern;
+        private final int[] failure;
+        private int matched;
+
+        PatternMatcher(String pattern) {
+            this.pattern = pattern.toCharArray();
+            this.failure = new int[this.pattern.length];
+            for (int i = 1, k = 0; i < this.pattern.length; i++) {
+                while (k > 0 && this.pattern[i] != this.pattern[k]) {
+                    k = failure[k - 1];
+                }
+                if (this.pattern[i] == this.pattern[k]) {
+                    k++;
+                }
+                failure[i] = k;
+            }
+        }
+
+        boolean matches(char c) {
+            while (matched > 0 && pattern[matched] != c) {
+                matched = failure[matched - 1];
+            }
+            if (pattern[matched] == c) {
+                matched++;
+            }
+            if (matched == pattern.length) {
+                matched = 0;
+                return true;
+            }
+            return false;
+        }
+
+        void reset() {
+            matched = 0;
+        }
+    }
+}
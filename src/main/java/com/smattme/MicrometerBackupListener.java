@@ -0,0 +1,123 @@
+package com.smattme;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link BackupListener} that records the backups in a Micrometer {@link MeterRegistry}.
+ * It needs io.micrometer:micrometer-core on the classpath, which is an optional dependency.
+ * All the meters are tagged with the operation, export or import, and the tags supplied
+ * to the constructor, e.g. the host or the database:
+ * <ul>
+ *     <li>mysql.backup4j.duration: a timer of the whole operation, tagged with its outcome</li>
+ *     <li>mysql.backup4j.phase: a timer of the time spent in each phase, tagged with the phase</li>
+ *     <li>mysql.backup4j.rows and mysql.backup4j.bytes: counters of the rows and bytes of the tables</li>
+ *     <li>mysql.backup4j.eta: a gauge of the estimated seconds left of the running operation, -1 if unknown</li>
+ *     <li>mysql.backup4j.last.success: a gauge of the time the operation last succeeded, in seconds since the epoch</li>
+ * </ul>
+ * The tables are not used as tags, to keep the number of time series
+ * independent of that of the tables
+ */
+public class MicrometerBackupListener implements BackupListener {
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final Map<Operation, AtomicLong> etaSeconds = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> lastSuccess = new EnumMap<>(Operation.class);
+
+    public MicrometerBackupListener(MeterRegistry registry) {
+        this(registry, Tags.empty());
+    }
+
+    public MicrometerBackupListener(MeterRegistry registry, Iterable<Tag> tags) {
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+        for (Operation operation : Operation.values()) {
+            AtomicLong eta = new AtomicLong(-1);
+            Gauge.builder("mysql.backup4j.eta", eta, AtomicLong::get)
+                    .description("The estimated time left of the running backup")
+                    .baseUnit("seconds")
+                    .tags(tags(operation))
+                    .register(registry);
+            etaSeconds.put(operation, eta);
+
+            AtomicLong success = new AtomicLong();
+            Gauge.builder("mysql.backup4j.last.success", success, AtomicLong::get)
+                    .description("The time the backup last succeeded, since the epoch")
+                    .baseUnit("seconds")
+                    .tags(tags(operation))
+                    .register(registry);
+            lastSuccess.put(operation, success);
+        }
+    }
+
+    @Override
+    public void tableFinished(TableMetrics metrics) {
+        Operation operation = metrics.getOperation();
+        for (Phase phase : Phase.values()) {
+            long nanos = metrics.getNanos(phase);
+            if (nanos > 0) {
+                phaseTimer(operation, phase).record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        Counter.builder("mysql.backup4j.rows")
+                .description("The rows of the tables backed up or restored")
+                .tags(tags(operation))
+                .register(registry)
+                .increment(metrics.getRows());
+        Counter.builder("mysql.backup4j.bytes")
+                .description("The bytes of SQL of the tables backed up or restored")
+                .baseUnit("bytes")
+                .tags(tags(operation))
+                .register(registry)
+                .increment(metrics.getBytes());
+    }
+
+    @Override
+    public void phaseCompleted(Operation operation, Phase phase, long nanos) {
+        phaseTimer(operation, phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void progress(BackupProgress progress) {
+        long eta = progress.getEtaNanos();
+        etaSeconds.get(progress.getOperation()).set(eta < 0 ? -1 : TimeUnit.NANOSECONDS.toSeconds(eta));
+    }
+
+    @Override
+    public void finished(BackupProgress progress, Throwable error) {
+        Operation operation = progress.getOperation();
+        Timer.builder("mysql.backup4j.duration")
+                .description("The time taken by the backup")
+                .tags(tags(operation))
+                .tag("outcome", error == null ? "success" : "failure")
+                .register(registry)
+                .record(progress.getElapsedNanos(), TimeUnit.NANOSECONDS);
+        etaSeconds.get(operation).set(error == null ? 0 : -1);
+        if (error == null) {
+            lastSuccess.get(operation).set(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        }
+    }
+
+    private Timer phaseTimer(Operation operation, Phase phase) {
+        return Timer.builder("mysql.backup4j.phase")
+                .description("The time spent in a phase of the backup")
+                .tags(tags(operation))
+                .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                .register(registry);
+    }
+
+    private Tags tags(Operation operation) {
+        return tags.and("operation", operation.name().toLowerCase(Locale.ROOT));
+    }
+}
@@ -5,9 +5,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by seun_ on 01-Mar-18.
@@ -20,6 +21,9 @@ public class MysqlBaseService {
     static final String SQL_START_PATTERN = "-- start";
     static final String SQL_END_PATTERN = "-- end";
 
+    //the driver classes that have been loaded, so Class.forName() is only called once per driver
+    private static final Set<String> loadedDrivers = ConcurrentHashMap.newKeySet();
+
     /**
      * This is a utility function for connecting to a
      * database instance that's running on localhost at port 3306.
@@ -37,20 +41,74 @@ public class MysqlBaseService {
     static Connection connect(String username, String password, String database, String driverName) throws ClassNotFoundException, SQLException {
         String url = "jdbc:mysql://localhost:3306/" + database + "?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC&useSSL=false";
         String driver = (Objects.isNull(driverName) || driverName.isEmpty()) ? "com.mysql.cj.jdbc.Driver" : driverName;
-        return doConnect(driver, url, username, password);
+        return doConnect(driver, url, username, password, new Properties());
     }
 
     public static Connection connect(String username, String password, String host, String port, String database, String driverName) throws ClassNotFoundException, SQLException {
+        return connect(username, password, host, port, database, driverName, new Properties());
+    }
+
+    /**
+     * This is a utility function for connecting to a database instance
+     * with extra driver connection properties, e.g. useCursorFetch or useCompression.
+     * They are applied on top of the defaults of {@link #getDefaultConnectionProperties()},
+     * so they can override them
+     * @param username database username
+     * @param password database password
+     * @param host database host
+     * @param port database port
+     * @param database database name
+     * @param driverName the user supplied mysql connector driver class name. Can be empty
+     * @param connectionProperties extra properties passed to the driver
+     * @return Connection
+     * @throws ClassNotFoundException exception
+     * @throws SQLException exception
+     */
+    static Connection connect(String username, String password, String host, String port, String database, String driverName,
+                              Properties connectionProperties) throws ClassNotFoundException, SQLException {
 
         String url = String.format("jdbc:mysql://%s:%s/%s", host, port, database);
-        url = url + "?useUnicode=true&useJDBCCompliantTimezoneShift=true"
-                + "&useLegacyDatetimeCode=false&serverTimezone=UTC&useSSL=false";
 
         String driver = (Objects.isNull(driverName) || driverName.isEmpty())
                         ? "com.mysql.cj.jdbc.Driver"
                         : driverName;
 
-        return doConnect(driver, url, username, password);
+        Properties properties = getDefaultConnectionProperties();
+        properties.putAll(connectionProperties);
+        return doConnect(driver, url, username, password, properties);
+    }
+
+    /**
+     * This will return the driver properties of the connections
+     * opened from a host and a port. They used to be part of the URL,
+     * where they could not be overridden
+     * @return Properties
+     */
+    static Properties getDefaultConnectionProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("useUnicode", "true");
+        properties.setProperty("useJDBCCompliantTimezoneShift", "true");
+        properties.setProperty("useLegacyDatetimeCode", "false");
+        properties.setProperty("serverTimezone", "UTC");
+        properties.setProperty("useSSL", "false");
+        return properties;
+    }
+
+    /**
+     * This will return the driver properties set with the supplied prefix,
+     * e.g. JDBC_PROPERTIES.useCompression, without the prefix
+     * @param properties the properties
+     * @param prefix the prefix, without the dot
+     * @return Properties
+     */
+    static Properties getPrefixedProperties(Properties properties, String prefix) {
+        Properties prefixed = new Properties();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(prefix + ".") && name.length() > prefix.length() + 1) {
+                prefixed.setProperty(name.substring(prefix.length() + 1), properties.getProperty(name).trim());
+            }
+        }
+        return prefixed;
     }
 
 
@@ -67,25 +125,53 @@ public class MysqlBaseService {
      * @throws SQLException exception
      */
     static Connection connectWithURL(String username, String password, String jdbcURL, String driverName) throws ClassNotFoundException, SQLException {
+        return connectWithURL(username, password, jdbcURL, driverName, new Properties());
+    }
+
+    /**
+     * This is the same as {@link #connectWithURL(String, String, String, String)}
+     * with extra driver connection properties. Properties set in the
+     * JDBC URL take precedence over these
+     * @param username database username
+     * @param password database password
+     * @param jdbcURL the user supplied JDBC URL
+     * @param driverName the user supplied mysql connector driver class name
+     * @param connectionProperties extra properties passed to the driver
+     * @return Connection
+     * @throws ClassNotFoundException exception
+     * @throws SQLException exception
+     */
+    static Connection connectWithURL(String username, String password, String jdbcURL, String driverName,
+                                     Properties connectionProperties) throws ClassNotFoundException, SQLException {
         String driver = (Objects.isNull(driverName) || driverName.isEmpty()) ? "com.mysql.cj.jdbc.Driver" : driverName;
-        return doConnect(driver, jdbcURL, username, password);
+        return doConnect(driver, jdbcURL, username, password, connectionProperties);
     }
 
     /**
      * This will attempt to connect to a database using
-     * the provided parameters.
+     * the provided parameters. The driver class is
+     * only loaded on the first connection with it.
      * On success it'll return the java.sql.Connection object
      * @param driver the class name for the mysql driver to use
      * @param url the url of the database
      * @param username database username
      * @param password database password
+     * @param connectionProperties extra properties passed to the driver
      * @return Connection
      * @throws SQLException exception
      * @throws ClassNotFoundException exception
      */
-    private static Connection doConnect(String driver, String url, String username, String password) throws SQLException, ClassNotFoundException {
-        Class.forName(driver);
-        Connection connection = DriverManager.getConnection(url, username, password);
+    private static Connection doConnect(String driver, String url, String username, String password,
+                                        Properties connectionProperties) throws SQLException, ClassNotFoundException {
+        if(!loadedDrivers.contains(driver)) {
+            Class.forName(driver);
+            loadedDrivers.add(driver);
+        }
+        Properties info = new Properties();
+        info.putAll(connectionProperties);
+        if(username != null) info.setProperty("user", username);
+        if(password != null) info.setProperty("password", password);
+        Connection connection = DriverManager.getConnection(url, info);
         logger.debug("DB Connected Successfully");
         return  connection;
     }
@@ -99,23 +185,8 @@ public class MysqlBaseService {
      * @throws SQLException exception
      */
     static TablesResponse getAllTablesAndViews(String database, Statement stmt) throws SQLException {
-
-        List<String> tables = new ArrayList<>();
-        List<String> views = new ArrayList<>();
-
-        ResultSet rs;
-        rs = stmt.executeQuery("SHOW TABLE STATUS FROM `" + database + "`;");
-        while ( rs.next() ) {
-            String comment = rs.getString("Comment");
-            if("VIEW".equals(comment)) {
-                views.add(rs.getString("Name"));
-            }
-            else {
-                tables.add(rs.getString("Name"));
-            }
-        }
-
-        return new TablesResponse(tables, views);
+        SchemaMetadata metadata = SchemaMetadata.load(stmt.getConnection(), database);
+        return new TablesResponse(metadata.getTables(), metadata.getViews());
     }
 
     /**
@@ -5,18 +5,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.zip.ZipUtil;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.sql.*;
+import javax.sql.DataSource;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Objects;
 import java.util.Properties;
 
-import static com.smattme.helpers.MysqlExportServiceHelper.bytesToHex;
-
 /**
  * Created by seun_ on 24-Feb-18.
  *
@@ -33,6 +36,16 @@ public class MysqlExportService {
     private String zipFileName = "";
     private Properties properties;
     private File generatedZipFile;
+    private WatermarkStore watermarks;
+    private BinlogPosition binlogPosition;
+    private File generatedManifest;
+    private TableFilter filter;
+    //the filter of the export that is running, resolved on every export
+    private TableFilter activeFilter;
+    private SchemaMetadata metadata;
+    private BackupListener listener;
+    private DataSource dataSource;
+    private BackupMetrics metrics = new BackupMetrics(null, BackupListener.Operation.EXPORT);
 
     public static final String EMAIL_HOST = "EMAIL_HOST";
     public static final String EMAIL_PORT = "EMAIL_PORT";
@@ -75,6 +88,49 @@ public class MysqlExportService {
     public static final String JDBC_CONNECTION_STRING = "JDBC_CONNECTION_STRING";
     public static final String JDBC_DRIVER_NAME = "JDBC_DRIVER_NAME";
     public static final String SQL_FILE_NAME = "SQL_FILE_NAME";
+    public static final String PRESERVE_GENERATED_SQL = "PRESERVE_GENERATED_SQL";
+    public static final String WRITE_BUFFER_SIZE = "WRITE_BUFFER_SIZE";
+    public static final String SQL_FILE_ENCODING = "SQL_FILE_ENCODING";
+    public static final String STREAM_RESULTS = "STREAM_RESULTS";
+    public static final String FETCH_SIZE = "FETCH_SIZE";
+    public static final String INSERT_BATCH_ROWS = "INSERT_BATCH_ROWS";
+    public static final String INSERT_BATCH_BYTES = "INSERT_BATCH_BYTES";
+    public static final String PARALLEL_THREADS = "PARALLEL_THREADS";
+    public static final String CHUNK_ROWS = "CHUNK_ROWS";
+    public static final String CHUNK_BYTES = "CHUNK_BYTES";
+    public static final String DATA_FORMAT = "DATA_FORMAT";
+    public static final String COMPRESSION = "COMPRESSION";
+    public static final String COMPRESSION_LEVEL = "COMPRESSION_LEVEL";
+    public static final String COMPRESSION_THREADS = "COMPRESSION_THREADS";
+    public static final String COMPRESSION_BLOCK_SIZE = "COMPRESSION_BLOCK_SIZE";
+    public static final String INCREMENTAL_STATE_FILE = "INCREMENTAL_STATE_FILE";
+    public static final String INCREMENTAL_COLUMN = "INCREMENTAL_COLUMN";
+    public static final String RECORD_BINLOG_POSITION = "RECORD_BINLOG_POSITION";
+    public static final String CHUNK_REPOSITORY = "CHUNK_REPOSITORY";
+    public static final String CHUNK_REPOSITORY_CHUNK_SIZE = "CHUNK_REPOSITORY_CHUNK_SIZE";
+    public static final String INCLUDE_TABLES = "INCLUDE_TABLES";
+    public static final String EXCLUDE_TABLES = "EXCLUDE_TABLES";
+    /**
+     * The columns to export of a table, set as TABLE_COLUMNS.&lt;table&gt;
+     */
+    public static final String TABLE_COLUMNS = "TABLE_COLUMNS";
+    /**
+     * The WHERE predicate of the rows to export of a table, set as TABLE_WHERE.&lt;table&gt;
+     */
+    public static final String TABLE_WHERE = "TABLE_WHERE";
+    public static final String EXPORT_ROUTINES = "EXPORT_ROUTINES";
+    public static final String EXPORT_TRIGGERS = "EXPORT_TRIGGERS";
+    public static final String EXPORT_EVENTS = "EXPORT_EVENTS";
+    /**
+     * A driver connection property, set as JDBC_PROPERTIES.&lt;name&gt;,
+     * e.g. JDBC_PROPERTIES.useCompression, JDBC_PROPERTIES.tcpRcvBuf or JDBC_PROPERTIES.netTimeoutForStreamingResults
+     */
+    public static final String JDBC_PROPERTIES = "JDBC_PROPERTIES";
+    public static final String PIPELINED_EXPORT = "PIPELINED_EXPORT";
+    public static final String PIPELINE_ENCODER_THREADS = "PIPELINE_ENCODER_THREADS";
+
+    private static final int DEFAULT_WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final String DATA_FOLDER = "data";
 
 
     public MysqlExportService(Properties properties) {
@@ -90,8 +146,8 @@ public class MysqlExportService {
      */
     private boolean isValidateProperties() {
         return properties != null &&
-                properties.containsKey(DB_USERNAME) &&
-                (properties.containsKey(DB_NAME) || properties.containsKey(JDBC_CONNECTION_STRING));
+                (dataSource != null || (properties.containsKey(DB_USERNAME) &&
+                (properties.containsKey(DB_NAME) || properties.containsKey(JDBC_CONNECTION_STRING))));
     }
 
     /**
@@ -128,10 +184,11 @@ public class MysqlExportService {
      * for creating the table supplied in the
      * method signature
      * @param table the table concerned
+     * @param stmt the statement to query the table definition with
      * @return String
      * @throws SQLException exception
      */
-    private String getTableInsertStatement(String table) throws SQLException {
+    private String getTableInsertStatement(String table, Statement stmt) throws SQLException {
 
         StringBuilder sql = new StringBuilder();
         ResultSet rs;
@@ -163,166 +220,384 @@ public class MysqlExportService {
     }
 
     /**
-     * this will generate the SQL statement to re-create
-     * the supplied view
-     * @param view the name of the View
-     * @return an SQL to create the view
-     * @throws SQLException on error
+     * This function will write the insert statements needed
+     * to recreate the table under processing straight to the
+     * supplied writer, one row at a time, so the size of the
+     * table does not determine the memory used.
+     * @param table the table to get inserts statement for
+     * @param where an optional WHERE predicate of the rows to write, can be null
+     * @param connection the connection to read the rows with
+     * @param writer the output the generated SQL insert is written to
+     * @param tableMetrics the metrics of the table
+     * @throws SQLException exception
+     * @throws IOException if writing to the output fails
      */
-    private String getCreateViewStatement(String view) throws SQLException {
+    private void writeDataInsertStatement(String table, String where, Connection connection, Writer writer,
+                                          TableMetrics tableMetrics) throws SQLException, IOException {
 
-        StringBuilder sql = new StringBuilder();
-        ResultSet rs;
+        try (Statement dataStmt = createDataStatement(connection);
+             ResultSet rs = executeDataQuery(dataStmt, getSelectStatement(table, where), tableMetrics)) {
+            writeDataInsertStatement(table, rs, writer, tableMetrics);
+        }
+    }
 
-        if(view != null && !view.isEmpty()) {
-            rs = stmt.executeQuery("SHOW CREATE VIEW " + "`" + view + "`;");
-            while ( rs.next() ) {
-                String viewName = rs.getString(1);
-                String viewQuery = rs.getString(2);
-                sql.append("\n\n--");
-                sql.append("\n").append(MysqlBaseService.SQL_START_PATTERN).append("  view dump : ").append(view);
-                sql.append("\n--\n\n");
+    /**
+     * This will write the insert statements for the rows of
+     * the table that match the supplied key range predicate.
+     * Nothing is written if the range is empty
+     * @param table the table to get inserts statement for
+     * @param range the WHERE predicate of the key range
+     * @param connection the connection to read the rows with
+     * @param writer the output the generated SQL insert is written to
+     * @param tableMetrics the metrics of the table
+     * @throws SQLException exception
+     * @throws IOException if writing to the output fails
+     */
+    private void writeRangeInsertStatements(String table, String range, Connection connection, Writer writer,
+                                            TableMetrics tableMetrics) throws SQLException, IOException {
 
-                String finalQuery = "CREATE OR REPLACE VIEW `" + viewName + "` " + (viewQuery.substring(viewQuery.indexOf("AS")).trim());
-                sql.append(finalQuery).append(";\n\n");
+        try (Statement dataStmt = createDataStatement(connection);
+             ResultSet rs = executeDataQuery(dataStmt, getSelectStatement(table, range), tableMetrics)) {
+            if(rs.next()) {
+                writeInsertStatements(table, rs, writer, tableMetrics);
             }
-
-            sql.append("\n\n--");
-            sql.append("\n").append(MysqlBaseService.SQL_END_PATTERN).append("  view dump : ").append(view);
-            sql.append("\n--\n\n");
         }
-
-        return sql.toString();
     }
 
-
     /**
-     * This function will generate the insert statements needed
-     * to recreate the table under processing.
-     * @param table the table to get inserts statement for
-     * @return String generated SQL insert
+     * This will execute the query of the rows of a table and
+     * fetch the first rows, which is timed as DATA_READ
+     * @param dataStmt the statement to execute the query with
+     * @param sql the query
+     * @param tableMetrics the metrics of the table
+     * @return ResultSet
      * @throws SQLException exception
      */
-    private String getDataInsertStatement(String table) throws SQLException {
-
-        StringBuilder sql = new StringBuilder();
+    private ResultSet executeDataQuery(Statement dataStmt, String sql, TableMetrics tableMetrics) throws SQLException {
+        long start = tableMetrics.time();
+        ResultSet rs = dataStmt.executeQuery(sql);
+        tableMetrics.lap(BackupListener.Phase.DATA_READ, start);
+        return rs;
+    }
 
-        ResultSet rs = stmt.executeQuery("SELECT * FROM " + "`" + table + "`;");
+    /**
+     * This will build the query that reads the rows of a table.
+     * The columns and predicate of the table filter are applied here,
+     * so the rows and columns it leaves out are never read
+     * @param table the table to read
+     * @param where an optional WHERE predicate, can be null
+     * @return String
+     */
+    private String getSelectStatement(String table, String where) {
+        where = activeFilter.getWhere(table, where);
+        return "SELECT " + activeFilter.getSelectList(table) + " FROM " + "`" + table + "`" + (where == null ? "" : " WHERE " + where) + ";";
+    }
 
-        //move to the last row to get max rows returned
-        rs.last();
-        int rowCount = rs.getRow();
+    /**
+     * This will write the insert statements for the rows of the
+     * supplied result set. The result set is only read forward,
+     * an empty table is detected by the first call to next()
+     * and the last row when next() returns false,
+     * so it works with streaming and cursor based result sets
+     * @param table the table the rows belong to
+     * @param rs the result set of the table's rows
+     * @param writer the output the generated SQL insert is written to
+     * @param tableMetrics the metrics of the table
+     * @throws SQLException exception
+     * @throws IOException if writing to the output fails
+     */
+    private void writeDataInsertStatement(String table, ResultSet rs, Writer writer, TableMetrics tableMetrics) throws SQLException, IOException {
 
-        //there are no records just return empty string
-        if(rowCount <= 0) {
-            return sql.toString();
+        //there are no records just return
+        if(!rs.next()) {
+            return;
         }
 
-        sql.append("\n--").append("\n-- Inserts of ").append(table).append("\n--\n\n");
+        writer.write("\n--\n-- Inserts of " + table + "\n--\n\n");
 
         //temporarily disable foreign key constraint
-        sql.append("\n/*!40000 ALTER TABLE `").append(table).append("` DISABLE KEYS */;\n");
+        writer.write("\n/*!40000 ALTER TABLE `" + table + "` DISABLE KEYS */;\n");
 
-        sql.append("\n--\n")
-                .append(MysqlBaseService.SQL_START_PATTERN).append(" table insert : ").append(table)
-                .append("\n--\n");
+        writeInsertStatements(table, rs, writer, tableMetrics);
 
-        sql.append("INSERT INTO `").append(table).append("`(");
+        //enable FK constraint
+        writer.write("\n/*!40000 ALTER TABLE `" + table + "` ENABLE KEYS */;\n");
+    }
+
+    /**
+     * This will write the rows of the result set as
+     * INSERT INTO ... VALUES (...),(...); statements.
+     * A new statement is started whenever the current one reaches
+     * INSERT_BATCH_ROWS rows or adding the next row will take it over
+     * INSERT_BATCH_BYTES bytes in the SQL_FILE_ENCODING, so a restore does not run into max_allowed_packet.
+     * Each statement is wrapped in its own start and end markers.
+     * With PIPELINED_EXPORT the rows are read, encoded and written by
+     * a {@link PipelinedInsertWriter} instead, each stage on its own thread.
+     * With a listener, the fetching, encoding and writing of every row is timed
+     * @param table the table the rows belong to
+     * @param rs the result set, positioned on its first row
+     * @param writer the output the generated SQL insert is written to
+     * @param tableMetrics the metrics of the table
+     * @throws SQLException exception
+     * @throws IOException if writing to the output fails
+     */
+    private void writeInsertStatements(String table, ResultSet rs, Writer writer, TableMetrics tableMetrics) throws SQLException, IOException {
 
         ResultSetMetaData metaData = rs.getMetaData();
         int columnCount = metaData.getColumnCount();
 
+        //the encoder of every column is resolved once for the table
+        ColumnEncoder[] encoders = ColumnEncoders.forColumns(metaData);
+
         //generate the column names that are present
         //in the returned result set
         //at this point the insert is INSERT INTO (`col1`, `col2`, ...)
+        //an incremental export replaces the rows that changed since the previous one
+        StringBuilder insertPrefix = new StringBuilder(watermarks != null ? "REPLACE INTO `" : "INSERT INTO `").append(table).append("`(");
         for(int i = 0; i < columnCount; i++) {
-            sql.append("`")
-                    .append(metaData.getColumnName( i + 1))
-                    .append("`, ");
+            if(i > 0) insertPrefix.append(", ");
+            insertPrefix.append("`").append(metaData.getColumnName(i + 1)).append("`");
+        }
+        insertPrefix.append(") VALUES \n");
+        InsertStatementWriter statements = new InsertStatementWriter(writer, table, insertPrefix.toString(),
+                getInsertBatchRows(), getInsertBatchBytes(), getSqlFileCharset());
+
+        if(isPipelinedExport()) {
+            new PipelinedInsertWriter(rs, encoders, getPipelineEncoderThreads(), tableMetrics).writeTo(statements);
+            statements.finish();
+            return;
         }
 
-        //remove the last whitespace and comma
-        sql.deleteCharAt(sql.length() - 1).deleteCharAt(sql.length() - 1).append(") VALUES \n");
+        //each row is built in this buffer first so its size is known
+        //before deciding whether it still fits in the current statement
+        StringBuilder row = new StringBuilder();
+        char[] rowChars = new char[256];
 
-        //now we're going to build the values for data insertion
-        rs.beforeFirst();
-        while(rs.next()) {
-            sql.append("(");
+        long mark = tableMetrics.time();
+        do {
+
+            //the time since the previous row was written is that of fetching this one
+            mark = tableMetrics.lap(BackupListener.Phase.DATA_READ, mark);
+
+            row.setLength(0);
+            row.append("(");
             for(int i = 0; i < columnCount; i++) {
+                if(i > 0) row.append(", ");
+                encoders[i].encode(rs, i + 1, row);
+            }
+            row.append(")");
+            mark = tableMetrics.lap(BackupListener.Phase.ENCODE, mark);
 
-                int columnType = metaData.getColumnType(i + 1);
-                int columnIndex = i + 1;
+            //this starts a new statement if the row does not fit in the current one
+            if(rowChars.length < row.length()) {
+                rowChars = new char[Math.max(row.length(), rowChars.length * 2)];
+            }
+            row.getChars(0, row.length(), rowChars, 0);
+            statements.writeRow(rowChars, 0, row.length());
 
-                //this is the part where the values are processed based on their type
-                if(Objects.isNull(rs.getObject(columnIndex))) {
-                    sql.append(rs.getObject(columnIndex)).append(", ");
-                }
-                else if( columnType == Types.INTEGER || columnType == Types.TINYINT || columnType == Types.BIT
-                        || columnType == Types.SMALLINT || columnType == Types.BIGINT) {
-                    sql.append(rs.getInt(columnIndex)).append(", ");
-                }
-                else if(columnType == Types.REAL || columnType == Types.FLOAT || columnType == Types.DOUBLE || columnType == Types.DECIMAL
-                || columnType == Types.NUMERIC) {
-                    sql.append(rs.getDouble(columnIndex)).append(", ");
-                }
+            mark = tableMetrics.lap(BackupListener.Phase.WRITE, mark);
+            tableMetrics.add(1, row.length(), mark);
 
-                else if(columnType == Types.BINARY || columnType == Types.BLOB || columnType == Types.LONGVARBINARY || columnType == Types.VARBINARY) {
-                    sql.append("0x").append(bytesToHex(rs.getBytes(columnIndex))).append(", ");
-                }
-                else {
+        } while(rs.next());
 
-                    String val = rs.getString(columnIndex);
-                   //escape the single quotes that might be in the value
-                    val = val.replace("'", "\\'");
+        //now that we are done processing the entire result set
+        //let's add the terminator
+        statements.finish();
+    }
 
-                    sql.append("'").append(val).append("', ");
-                }
+    /**
+     * This will write the table creation statement and
+     * the data insert statements of the supplied table.
+     * An SQLException is logged and the table is skipped
+     * so that one broken table does not fail the whole export
+     * @param table the table to dump
+     * @param connection the connection to read the table with
+     * @param writer the output
+     * @throws IOException if writing to the output fails
+     */
+    private void writeTable(String table, Connection connection, Writer writer) throws IOException {
+        TableMetrics tableMetrics = getTableMetrics(table, 1);
+        tableMetrics.begin();
+        try (Statement tableStmt = connection.createStatement()) {
+            long start = tableMetrics.time();
+            String createTable = getTableInsertStatement(table, tableStmt);
+            tableMetrics.lap(BackupListener.Phase.DDL, start);
+            writer.write(createTable);
+
+            //only the rows changed since the previous incremental export are written
+            WatermarkStore.Watermark watermark = watermarks != null
+                    ? watermarks.next(connection, database, table, getIncrementalColumn()) : null;
+            String where = watermark != null ? watermark.getPredicate() : null;
+
+            if(getDataFormat() != null) {
+                writeDataFile(table, where, connection, writer, tableMetrics);
+            }
+            else {
+                writeDataInsertStatement(table, where, connection, writer, tableMetrics);
             }
 
-            //now that we're done with a row
-            //let's remove the last whitespace and comma
-            sql.deleteCharAt(sql.length() - 1).deleteCharAt(sql.length() - 1);
-
-            //if this is the last row, just append a closing
-            //parenthesis otherwise append a closing parenthesis and a comma
-            //for the next set of values
-            if(rs.isLast()) {
-                sql.append(")");
-            } else {
-                sql.append("),\n");
+            if(watermark != null) {
+                watermarks.advance(watermark);
             }
+        } catch (SQLException e) {
+            logger.error("Exception occurred while processing table: " + table, e);
+        } finally {
+            tableMetrics.end();
         }
+    }
 
-        //now that we are done processing the entire row
-        //let's add the terminator
-        sql.append(";");
+    /**
+     * This will return the metrics of the supplied table
+     * @param table the table
+     * @param segments the number of segments the table is exported in
+     * @return TableMetrics
+     */
+    private TableMetrics getTableMetrics(String table, int segments) {
+        SchemaMetadata.TableInfo tableInfo = metadata.getTable(table);
+        return metrics.table(table, tableInfo != null ? tableInfo.estimatedRows : -1, segments);
+    }
+
+    /**
+     * This will write the rows of the supplied table to a data file
+     * in the DATA_FORMAT, in the data folder next to the SQL file, and
+     * the LOAD DATA LOCAL INFILE statement that loads it to the writer.
+     * Nothing is written for an empty table
+     * @param table the table to dump
+     * @param where an optional WHERE predicate of the rows to write, can be null
+     * @param connection the connection to read the rows with
+     * @param writer the output the generated SQL is written to
+     * @param tableMetrics the metrics of the table
+     * @throws SQLException exception
+     * @throws IOException if writing to the output fails
+     */
+    private void writeDataFile(String table, String where, Connection connection, Writer writer,
+                               TableMetrics tableMetrics) throws SQLException, IOException {
 
-        sql.append("\n--\n")
-                .append(MysqlBaseService.SQL_END_PATTERN).append(" table insert : ").append(table)
-                .append("\n--\n");
+        DelimitedDataWriter dataWriter = new DelimitedDataWriter(getDataFormat());
+        try (Statement dataStmt = createDataStatement(connection);
+             ResultSet rs = executeDataQuery(dataStmt, getSelectStatement(table, where), tableMetrics)) {
 
-        //enable FK constraint
-        sql.append("\n/*!40000 ALTER TABLE `").append(table).append("` ENABLE KEYS */;\n");
+            //there are no records just return
+            if(!rs.next()) {
+                return;
+            }
 
-        return sql.toString();
+            String fileName = table.replaceAll("[^A-Za-z0-9_$-]", "_") + "." + dataWriter.getFileExtension();
+            File dataFile = new File(dirName + "/sql/" + DATA_FOLDER, fileName);
+            long rows;
+            long start = tableMetrics.time();
+            try (Writer dataFileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dataFile),
+                    StandardCharsets.UTF_8), getWriteBufferSize())) {
+                rows = dataWriter.writeRows(rs, dataFileWriter);
+            }
+            //the rows are read, encoded and written in a single pass, which is timed as a whole
+            long now = tableMetrics.lap(BackupListener.Phase.WRITE, start);
+            tableMetrics.add(rows, dataFile.length(), now);
+            logger.debug(LOG_PREFIX + ": {} rows of {} written to {}", rows, table, dataFile);
+
+            writer.write("\n--\n-- Inserts of " + table + "\n--\n\n");
+            writer.write("\n/*!40000 ALTER TABLE `" + table + "` DISABLE KEYS */;\n");
+            writer.write("\n--\n" + MysqlBaseService.SQL_START_PATTERN + " table data : " + table + "\n--\n");
+            writer.write(dataWriter.getLoadDataStatement(table, DATA_FOLDER + "/" + fileName, rs.getMetaData(), watermarks != null));
+            writer.write(";\n--\n" + MysqlBaseService.SQL_END_PATTERN + " table data : " + table + "\n--\n");
+            writer.write("\n/*!40000 ALTER TABLE `" + table + "` ENABLE KEYS */;\n");
+        }
     }
 
+    /**
+     * This will return the segments the supplied table should be
+     * exported in by the parallel export. A table is split into key ranges
+     * if CHUNK_ROWS or CHUNK_BYTES is set and it has a usable key, otherwise
+     * it's exported as a single segment.
+     * The size of a segment is estimated from the data length of the table,
+     * so the parallel export can start the largest segments first.
+     * The table definition and the DISABLE KEYS header go with the first range
+     * and the ENABLE KEYS footer with the last, so the merged output is a valid dump
+     * @param table the table to export
+     * @param connection the connection to query the key ranges with
+     * @return the segments of the table
+     */
+    private List<ParallelTableExporter.Segment> getTableSegments(String table, Connection connection) {
+
+        List<ParallelTableExporter.Segment> segments = new ArrayList<>();
+        long chunkRows = Long.parseLong(properties.getProperty(CHUNK_ROWS, "0"));
+        long chunkBytes = Long.parseLong(properties.getProperty(CHUNK_BYTES, "0"));
+
+        //a data file is written per table, so tables are not split when DATA_FORMAT is set,
+        //and an incremental export reads the changed rows of a table in a single query
+        List<String> ranges = Collections.emptyList();
+        SchemaMetadata.TableInfo tableInfo = metadata.getTable(table);
+        if((chunkRows > 0 || chunkBytes > 0) && getDataFormat() == null && watermarks == null && tableInfo != null) {
+            try {
+                String keyColumn = metadata.getKeyColumn(table);
+                if(keyColumn != null) {
+                    ranges = KeyRangeSplitter.split(connection, table, keyColumn, tableInfo.estimatedRows,
+                            tableInfo.averageRowLength, chunkRows, chunkBytes);
+                } else {
+                    logger.debug(LOG_PREFIX + ": no single column integer key found for {}, exporting it as a single range", table);
+                }
+            } catch (SQLException e) {
+                logger.warn(LOG_PREFIX + ": Unable to split table " + table + " into key ranges, exporting it as a single segment", e);
+            }
+        }
+
+        long tableBytes = tableInfo != null ? tableInfo.dataLength : 0;
+        if(ranges.isEmpty()) {
+            segments.add(new ParallelTableExporter.Segment(table, tableBytes, (c, w) -> writeTable(table, c, w)));
+            return segments;
+        }
+
+        logger.debug(LOG_PREFIX + ": exporting table {} in {} key ranges", table, ranges.size());
+        TableMetrics tableMetrics = getTableMetrics(table, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            String range = ranges.get(i);
+            boolean first = i == 0;
+            boolean last = i == ranges.size() - 1;
+            segments.add(new ParallelTableExporter.Segment(table + " (" + range + ")", tableBytes / ranges.size(), (c, w) -> {
+                tableMetrics.begin();
+                try (Statement tableStmt = c.createStatement()) {
+                    if(first) {
+                        long start = tableMetrics.time();
+                        String createTable = getTableInsertStatement(table, tableStmt);
+                        tableMetrics.lap(BackupListener.Phase.DDL, start);
+                        w.write(createTable);
+                        w.write("\n--\n-- Inserts of " + table + "\n--\n\n");
+                        w.write("\n/*!40000 ALTER TABLE `" + table + "` DISABLE KEYS */;\n");
+                    }
+                    writeRangeInsertStatements(table, range, c, w, tableMetrics);
+                } catch (SQLException e) {
+                    logger.error("Exception occurred while processing table: " + table + " range: " + range, e);
+                } finally {
+                    tableMetrics.end();
+                }
+                if(last) {
+                    w.write("\n/*!40000 ALTER TABLE `" + table + "` ENABLE KEYS */;\n");
+                }
+            }));
+        }
+        return segments;
+    }
 
     /**
      * This is the entry function that'll
-     * coordinate getTableInsertStatement() and getDataInsertStatement()
-     * for every table in the database to generate a whole
-     * script of SQL
-     * @return String
+     * coordinate getTableInsertStatement() and writeDataInsertStatement()
+     * for every table in the database to write a whole
+     * script of SQL to the supplied writer
+     * @param writer the output the script is written to
      * @throws SQLException exception
+     * @throws IOException if writing to the output fails
+     * @throws ClassNotFoundException exception
      */
-    private String exportToSql() throws SQLException {
+    private void exportToSql(Writer writer) throws SQLException, IOException, ClassNotFoundException {
 
         StringBuilder sql = new StringBuilder();
         sql.append("--");
         sql.append("\n-- Generated by mysql-backup4j");
         sql.append("\n-- https://github.com/SeunMatt/mysql-backup4j");
         sql.append("\n-- Date: ").append(new SimpleDateFormat("d-M-Y H:m:s").format(new Date()));
+        if(watermarks != null) {
+            sql.append("\n-- Incremental: rows changed since the previous export, apply on top of the full dump");
+        }
         sql.append("\n--");
 
         //these declarations are extracted from HeidiSQL
@@ -331,98 +606,540 @@ public class MysqlExportService {
                 .append("\n/*!50503 SET NAMES utf8mb4 */;")
                 .append("\n/*!40014 SET @OLD_FOREIGN_KEY_CHECKS=@@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS=0 */;")
                 .append("\n/*!40101 SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='NO_AUTO_VALUE_ON_ZERO' */;");
+        writer.write(sql.toString());
+
+        binlogPosition = null;
+        //the filter set in code, or the one of the current properties
+        activeFilter = filter != null ? filter : TableFilter.fromProperties(properties);
+        int parallelThreads = getParallelThreads();
+        boolean snapshot = isRecordBinlogPosition() && parallelThreads <= 1;
+        if(snapshot) {
+            binlogPosition = startSnapshot(stmt);
+        }
 
 
-        //get the tables that are in the database
-//        List<String> tables = MysqlBaseService.getAllTables(database, stmt);
-        TablesResponse allTablesAndViews = MysqlBaseService.getAllTablesAndViews(database, stmt);
+        //get the tables that are in the database, with their estimated sizes
+        long metadataStart = metrics.time();
+        metadata = SchemaMetadata.load(stmt.getConnection(), database);
+
+        List<String> tables = new ArrayList<>();
+        long estimatedRows = 0;
+        for (String s: metadata.getTables()) {
+            if(activeFilter.isIncluded(s.trim())) {
+                tables.add(s.trim());
+                estimatedRows += Math.max(0, metadata.getTable(s.trim()).estimatedRows);
+            }
+        }
+        metrics.setEstimatedRows(estimatedRows);
 
-        List<String> tables = allTablesAndViews.getTables();
         //for every table, get the table creation and data
         // insert statement
-        for (String s: tables) {
-            try {
-                sql.append(getTableInsertStatement(s.trim()));
-                sql.append(getDataInsertStatement(s.trim()));
-            } catch (SQLException e) {
-                logger.error("Exception occurred while processing table: " + s, e);
+        if(parallelThreads > 1) {
+            List<ParallelTableExporter.Segment> segments = new ArrayList<>();
+            for (String s: tables) {
+                segments.addAll(getTableSegments(s, stmt.getConnection()));
+            }
+            metrics.phase(BackupListener.Phase.METADATA, metadataStart);
+            String compression = getCompression();
+            String tempDir = properties.getProperty(TEMP_DIR);
+            ParallelTableExporter exporter = new ParallelTableExporter(stmt.getConnection(), this::connect, parallelThreads,
+                    tempDir == null ? null : Paths.get(tempDir),
+                    compression != null && !Compression.NONE.equals(compression));
+            exporter.export(segments, writer);
+            if(isRecordBinlogPosition()) {
+                binlogPosition = exporter.getSnapshotPosition();
+            }
+        }
+        else {
+            metrics.phase(BackupListener.Phase.METADATA, metadataStart);
+            for (String s: tables) {
+                writeTable(s, stmt.getConnection(), writer);
             }
         }
 
 
-        //process views if there's any
-        List<String> views = allTablesAndViews.getViews();
-        for (String v: views) {
-            try {
-                sql.append(getCreateViewStatement(v.trim()));
-            } catch (SQLException e) {
-                logger.error("Exception occurred while processing view: " + v, e);
+        //the routines go before the views that may call them, the triggers and events
+        //last, so the import can apply them after the data
+        long schemaObjectsStart = metrics.time();
+        SchemaObjectWriter schemaObjects = new SchemaObjectWriter(stmt.getConnection(), database);
+        if(isExportEnabled(EXPORT_ROUTINES)) {
+            schemaObjects.writeRoutines(writer);
+        }
+
+        //process views if there's any, in dependency order
+        List<String> views = new ArrayList<>();
+        for (String v: metadata.getViews()) {
+            if(activeFilter.isIncluded(v.trim())) {
+                views.add(v.trim());
+            }
+        }
+        if(!views.isEmpty()) {
+            schemaObjects.writeViews(writer, views);
+        }
+
+        if(isExportEnabled(EXPORT_TRIGGERS)) {
+            schemaObjects.writeTriggers(writer, tables);
+        }
+        if(isExportEnabled(EXPORT_EVENTS)) {
+            schemaObjects.writeEvents(writer);
+        }
+        metrics.phase(BackupListener.Phase.DDL, schemaObjectsStart);
+
+        if(snapshot) {
+            stmt.execute("COMMIT");
+        }
+
+        if(binlogPosition != null) {
+            writer.write("\n\n-- Binlog position: " + binlogPosition.getFile() + ":" + binlogPosition.getPosition());
+            if(binlogPosition.getGtidSet() != null) {
+                writer.write("\n-- GTID set: " + binlogPosition.getGtidSet().replaceAll("\\s+", ""));
             }
+            writer.write("\n");
         }
 
-        sql.append("\n/*!40101 SET SQL_MODE=IFNULL(@OLD_SQL_MODE, '') */;")
-                .append("\n/*!40014 SET FOREIGN_KEY_CHECKS=IF(@OLD_FOREIGN_KEY_CHECKS IS NULL, 1, @OLD_FOREIGN_KEY_CHECKS) */;")
-                .append("\n/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;");
+        writer.write("\n/*!40101 SET SQL_MODE=IFNULL(@OLD_SQL_MODE, '') */;" +
+                "\n/*!40014 SET FOREIGN_KEY_CHECKS=IF(@OLD_FOREIGN_KEY_CHECKS IS NULL, 1, @OLD_FOREIGN_KEY_CHECKS) */;" +
+                "\n/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;");
+    }
 
-        this.generatedSql = sql.toString();
-        return sql.toString();
+    /**
+     * This will start a consistent snapshot transaction on the main
+     * connection and read the binlog position it corresponds to. FLUSH TABLES
+     * WITH READ LOCK is held while doing so, so no transaction commits in between.
+     * If the lock cannot be taken, e.g. because the user lacks the RELOAD privilege,
+     * the tables are still exported from the snapshot but no position is recorded
+     * @param statement a statement of the main connection
+     * @return the position or null
+     * @throws SQLException exception
+     */
+    private BinlogPosition startSnapshot(Statement statement) throws SQLException {
+
+        boolean locked = false;
+        try {
+            statement.execute("FLUSH TABLES WITH READ LOCK");
+            locked = true;
+        } catch (SQLException e) {
+            logger.warn(LOG_PREFIX + ": Unable to take FLUSH TABLES WITH READ LOCK, the binlog position will not be recorded: {}", e.getMessage());
+        }
+
+        BinlogPosition position = null;
+        try {
+            //set through the driver, so a pool resets it when the connection is returned
+            statement.getConnection().setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            statement.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+            if(locked) {
+                position = BinlogPosition.read(statement.getConnection());
+                logger.debug(LOG_PREFIX + ": snapshot binlog position: {}", position);
+            }
+        } finally {
+            if(locked) {
+                statement.execute("UNLOCK TABLES");
+            }
+        }
+        return position;
     }
 
     /**
-     * This is the entry point for exporting
-     * the database. It performs validation and
-     * the initial object initializations,
-     * database connection and setup
-     * before ca
+     * This will create the statement used for reading
+     * the rows of a table. By default it's a scrollable statement
+     * which Connector/J fully loads into memory. If STREAM_RESULTS is set
+     * a forward only, read only statement is used instead: rows are streamed
+     * one at a time, or fetched FETCH_SIZE rows at a time through a server side
+     * cursor when FETCH_SIZE is a positive number
+     * @param connection the connection to create the statement on
+     * @return Statement
+     * @throws SQLException exception
+     */
+    private Statement createDataStatement(Connection connection) throws SQLException {
+
+        if(!isStreamResults()) {
+            return connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        }
+
+        Statement dataStmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        int fetchSize = getFetchSize();
+        dataStmt.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+        return dataStmt;
+    }
+
+    private boolean isStreamResults() {
+        return Boolean.parseBoolean(properties.getProperty(STREAM_RESULTS, Boolean.FALSE.toString()));
+    }
+
+    private int getFetchSize() {
+        return Integer.parseInt(properties.getProperty(FETCH_SIZE, "0"));
+    }
+
+    /**
+     * This will return the maximum number of rows in a
+     * single INSERT statement. 0 means unlimited
+     * @return INSERT_BATCH_ROWS or 0
+     */
+    private long getInsertBatchRows() {
+        return Long.parseLong(properties.getProperty(INSERT_BATCH_ROWS, "0"));
+    }
+
+    /**
+     * This will return the maximum size, in bytes of the
+     * SQL_FILE_ENCODING, of a single INSERT statement. 0 means unlimited
+     * @return INSERT_BATCH_BYTES or 0
+     */
+    private long getInsertBatchBytes() {
+        return Long.parseLong(properties.getProperty(INSERT_BATCH_BYTES, "0"));
+    }
+
+    private boolean isPipelinedExport() {
+        return Boolean.parseBoolean(properties.getProperty(PIPELINED_EXPORT, Boolean.FALSE.toString()));
+    }
+
+    /**
+     * This will return the number of threads that encode
+     * the rows of a table when PIPELINED_EXPORT is set
+     * @return PIPELINE_ENCODER_THREADS or 1
+     */
+    private int getPipelineEncoderThreads() {
+        return Math.max(1, Integer.parseInt(properties.getProperty(PIPELINE_ENCODER_THREADS, "1")));
+    }
+
+    /**
+     * This will return the number of tables to
+     * export at the same time, each on its own connection
+     * @return PARALLEL_THREADS or 1
+     */
+    private int getParallelThreads() {
+        return Integer.parseInt(properties.getProperty(PARALLEL_THREADS, "1"));
+    }
+
+    /**
+     * This will check whether a kind of schema object,
+     * i.e. EXPORT_ROUTINES, EXPORT_TRIGGERS or EXPORT_EVENTS, is exported
+     * @param key the property of the kind of object
+     * @return the property or true
+     */
+    private boolean isExportEnabled(String key) {
+        return Boolean.parseBoolean(properties.getProperty(key, Boolean.TRUE.toString()));
+    }
+
+    private boolean isRecordBinlogPosition() {
+        return Boolean.parseBoolean(properties.getProperty(RECORD_BINLOG_POSITION, Boolean.FALSE.toString()));
+    }
+
+    /**
+     * This will return the name of the column that tracks
+     * the time the rows of a table were last changed
+     * @return INCREMENTAL_COLUMN or updated_at
+     */
+    private String getIncrementalColumn() {
+        return properties.getProperty(INCREMENTAL_COLUMN, "updated_at").trim();
+    }
+
+    /**
+     * This will load the watermarks of the previous export
+     * if INCREMENTAL_STATE_FILE is set
+     * @throws IOException exception
+     */
+    private void loadWatermarks() throws IOException {
+        String stateFile = properties.getProperty(INCREMENTAL_STATE_FILE);
+        watermarks = stateFile == null || stateFile.trim().isEmpty() ? null : new WatermarkStore(new File(stateFile.trim()));
+    }
+
+    /**
+     * This will save the watermarks of an incremental export.
+     * It's only called once the export is completely written,
+     * so a failed export is repeated in full by the next one
      * @throws IOException exception
+     */
+    private void saveWatermarks() throws IOException {
+        if(watermarks != null) {
+            watermarks.save();
+        }
+    }
+
+    /**
+     * This will return the format the table data is exported in
+     * when it's not exported as INSERT statements
+     * @return tsv, csv or null for INSERT statements
+     */
+    private String getDataFormat() {
+        String dataFormat = properties.getProperty(DATA_FORMAT, "sql").trim();
+        return dataFormat.isEmpty() || "sql".equalsIgnoreCase(dataFormat) ? null : dataFormat;
+    }
+
+    /**
+     * This will return the codec the export
+     * is compressed with as it's written
+     * @return zip, gzip, zstd, lz4, none or null to zip the sql folder after writing it
+     */
+    private String getCompression() {
+        String compression = properties.getProperty(COMPRESSION);
+        return compression == null || compression.trim().isEmpty() ? null : Compression.normalize(compression);
+    }
+
+    /**
+     * This will return the compression level
+     * @return COMPRESSION_LEVEL or -1 for the default of the codec
+     */
+    private int getCompressionLevel() {
+        return Integer.parseInt(properties.getProperty(COMPRESSION_LEVEL, "-1"));
+    }
+
+    /**
+     * This will return the number of threads
+     * gzip and zstd compress the export with
+     * @return COMPRESSION_THREADS or 1
+     */
+    private int getCompressionThreads() {
+        return Math.max(1, Integer.parseInt(properties.getProperty(COMPRESSION_THREADS, "1")));
+    }
+
+    /**
+     * This will return the size of the blocks that
+     * are compressed independently by the compression threads
+     * @return COMPRESSION_BLOCK_SIZE or 1MB
+     */
+    private int getCompressionBlockSize() {
+        String blockSize = properties.getProperty(COMPRESSION_BLOCK_SIZE);
+        return blockSize == null ? Compression.DEFAULT_BLOCK_SIZE : Math.max(1, Integer.parseInt(blockSize));
+    }
+
+    /**
+     * This will return the extra driver properties
+     * required by the configured export options,
+     * and those set as JDBC_PROPERTIES.&lt;name&gt; which take precedence
+     * @return Properties
+     */
+    private Properties getConnectionProperties() {
+        Properties connectionProperties = new Properties();
+        if(isStreamResults() && getFetchSize() > 0) {
+            //a positive fetch size is only honoured by Connector/J with a server side cursor
+            connectionProperties.setProperty("useCursorFetch", "true");
+        }
+        connectionProperties.putAll(MysqlBaseService.getPrefixedProperties(properties, JDBC_PROPERTIES));
+        return connectionProperties;
+    }
+
+    /**
+     * This will set the name of the database to export
+     * from the properties. It prioritizes DB_NAME over the one
+     * extracted from the JDBC_CONNECTION_STRING. With a DataSource and
+     * neither of them, it's the default database of its connections
+     * @throws SQLException exception
+     */
+    private void resolveDatabase() throws SQLException {
+        database = properties.getProperty(DB_NAME);
+        String jdbcURL = properties.getProperty(JDBC_CONNECTION_STRING, "");
+
+        //this prioritizes the value set using the setDatabase() over the one extracted from the connection string
+        //it will only use the one from the connection string if no value is set using the setDatabase()
+        if((database == null || database.isEmpty()) && jdbcURL != null && !jdbcURL.isEmpty()) {
+            database = MysqlBaseService.extractDatabaseNameFromJDBCUrl(jdbcURL);
+        }
+
+        if((database == null || database.isEmpty()) && dataSource != null) {
+            try (Connection connection = dataSource.getConnection()) {
+                database = connection.getCatalog();
+            }
+            if(database == null || database.isEmpty()) {
+                throw new MysqlBackup4JException("Invalid config properties: the connections of the DataSource have no default database, set DB_NAME");
+            }
+        }
+    }
+
+    /**
+     * This will get a connection from the DataSource if one is set
+     * or open a connection to the database configured in the properties
+     * @return Connection
      * @throws SQLException exception
      * @throws ClassNotFoundException exception
      */
-    public void export() throws IOException, SQLException, ClassNotFoundException {
+    private Connection connect() throws SQLException, ClassNotFoundException {
 
-        //check if properties is set or not
-        if(!isValidateProperties()) {
-            String message = "Invalid config properties: The config properties is missing important parameters: DB_NAME, DB_USERNAME and DB_PASSWORD";
-            logger.error(message);
-            throw new MysqlBackup4JException(message);
+        if(dataSource != null) {
+            return dataSource.getConnection();
         }
 
-        //connect to the database
-        database = properties.getProperty(DB_NAME);
         String jdbcURL = properties.getProperty(JDBC_CONNECTION_STRING, "");
         String driverName = properties.getProperty(JDBC_DRIVER_NAME, "");
 
-        Connection connection;
-
         if(jdbcURL == null || jdbcURL.isEmpty()) {
-            connection = MysqlBaseService.connect(
+            return MysqlBaseService.connect(
                     properties.getProperty(DB_USERNAME),
                     properties.getProperty(DB_PASSWORD),
                     properties.getProperty(DB_HOST, "localhost"),
                     properties.getProperty(DB_PORT, "3306"),
                     database,
-                    driverName);
+                    driverName,
+                    getConnectionProperties());
+        }
+
+        return MysqlBaseService.connectWithURL(properties.getProperty(DB_USERNAME), properties.getProperty(DB_PASSWORD),
+                jdbcURL, driverName, getConnectionProperties());
+    }
+
+    /**
+     * This will connect to the database and write the
+     * generated SQL script to the supplied output stream.
+     * The output is buffered with WRITE_BUFFER_SIZE and encoded
+     * with SQL_FILE_ENCODING. The stream is flushed but not closed.
+     * @param outputStream the stream to write the SQL script to
+     * @throws IOException exception
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private void writeSql(OutputStream outputStream) throws IOException, SQLException, ClassNotFoundException {
+
+        Connection connection = connect();
+        stmt = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, getSqlFileCharset()), getWriteBufferSize());
+        StringWriter generatedSqlWriter = null;
+        if(Boolean.parseBoolean(properties.getProperty(PRESERVE_GENERATED_SQL, Boolean.FALSE.toString()))) {
+            generatedSqlWriter = new StringWriter();
+            writer = new CopyingWriter(writer, generatedSqlWriter);
+        }
+
+        try {
+            //generate the final SQL
+            exportToSql(writer);
+            writer.flush();
+        } finally {
+            //a pooled connection is not really closed, so end
+            //the snapshot transaction a failed export left open
+            if(dataSource != null && !connection.isClosed()) {
+                try {
+                    stmt.execute("ROLLBACK");
+                } catch (SQLException e) {
+                    logger.debug(LOG_PREFIX + ": unable to roll back the connection: {}", e.getMessage());
+                }
+            }
+
+            //close the statement
+            stmt.close();
+
+            //close the connection
+            connection.close();
+        }
+
+        this.generatedSql = generatedSqlWriter != null ? generatedSqlWriter.toString() : "";
+    }
+
+    /**
+     * This will export the database straight to the supplied
+     * output stream without creating temp files, zipping or sending
+     * emails. The caller owns the stream and is responsible for closing it
+     * @param outputStream the stream to write the SQL script to
+     * @throws IOException exception
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    public void exportTo(OutputStream outputStream) throws IOException, SQLException, ClassNotFoundException {
+        metrics = new BackupMetrics(listener, BackupListener.Operation.EXPORT);
+        try {
+            writeExport(outputStream);
+        } catch (IOException | SQLException | ClassNotFoundException | RuntimeException e) {
+            metrics.finished(e);
+            throw e;
+        }
+        metrics.finished(null);
+    }
+
+    /**
+     * This does the work of exportTo()
+     * @param outputStream the stream to write the SQL script to
+     * @throws IOException exception
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private void writeExport(OutputStream outputStream) throws IOException, SQLException, ClassNotFoundException {
+
+        //check if properties is set or not
+        if(!isValidateProperties()) {
+            String message = "Invalid config properties: The config properties is missing important parameters: DB_NAME, DB_USERNAME and DB_PASSWORD";
+            logger.error(message);
+            throw new MysqlBackup4JException(message);
+        }
+
+        if(getDataFormat() != null) {
+            throw new MysqlBackup4JException(DATA_FORMAT + " " + getDataFormat() + " writes data files next to the SQL file, use export() instead");
+        }
+
+        resolveDatabase();
+        metrics.started(database);
+        loadWatermarks();
+
+        String compression = getCompression();
+        if(compression == null) {
+            writeSql(outputStream);
         }
         else {
-            //this prioritizes the value set using the setDatabase() over the one extracted from the connection string
-            //it will only use the one from the connection string if no value is set using the setDatabase()
-            if(database == null || database.isEmpty()) {
-                database = MysqlBaseService.extractDatabaseNameFromJDBCUrl(jdbcURL);
+            //closing the compressing stream finishes it, but the caller's stream stays open
+            try (OutputStream compressedStream = compress(compression, new NonClosingOutputStream(outputStream), getSqlFilename())) {
+                writeSql(compressedStream);
             }
-            connection = MysqlBaseService.connectWithURL(properties.getProperty(DB_USERNAME), properties.getProperty(DB_PASSWORD),
-                    jdbcURL, driverName);
         }
 
-        stmt = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        saveWatermarks();
+    }
 
-        //generate the final SQL
-        String sql = exportToSql();
+    /**
+     * This will export the database straight to the supplied
+     * channel. The caller owns the channel and is responsible for closing it
+     * @param channel the channel to write the SQL script to
+     * @throws IOException exception
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     * @see #exportTo(OutputStream)
+     */
+    public void exportTo(WritableByteChannel channel) throws IOException, SQLException, ClassNotFoundException {
+        exportTo(Channels.newOutputStream(channel));
+    }
 
-        //close the statement
-        stmt.close();
+    /**
+     * This is the entry point for exporting
+     * the database. It performs validation and
+     * the initial object initializations,
+     * database connection and setup
+     * before ca
+     * @throws IOException exception
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    public void export() throws IOException, SQLException, ClassNotFoundException {
+        metrics = new BackupMetrics(listener, BackupListener.Operation.EXPORT);
+        try {
+            writeExport();
+        } catch (IOException | SQLException | ClassNotFoundException | RuntimeException e) {
+            metrics.finished(e);
+            throw e;
+        }
+        metrics.finished(null);
+    }
 
-        //close the connection
-        connection.close();
+    /**
+     * This does the work of export()
+     * @throws IOException exception
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private void writeExport() throws IOException, SQLException, ClassNotFoundException {
+
+        //check if properties is set or not
+        if(!isValidateProperties()) {
+            String message = "Invalid config properties: The config properties is missing important parameters: DB_NAME, DB_USERNAME and DB_PASSWORD";
+            logger.error(message);
+            throw new MysqlBackup4JException(message);
+        }
+
+        resolveDatabase();
+        metrics.started(database);
+        loadWatermarks();
+
+        String chunkRepository = properties.getProperty(CHUNK_REPOSITORY);
+        if(chunkRepository != null && !chunkRepository.trim().isEmpty()) {
+            exportToChunkRepository(new File(chunkRepository.trim()));
+            saveWatermarks();
+            return;
+        }
 
         //create a temp dir to store the exported file for processing
         dirName = properties.getProperty(MysqlExportService.TEMP_DIR, dirName);
@@ -434,27 +1151,146 @@ public class MysqlExportService {
             }
         }
 
+        String compression = getCompression();
+        if(compression != null && getDataFormat() != null) {
+            logger.warn(LOG_PREFIX + ": " + COMPRESSION + " is not applied to the data files of " + DATA_FORMAT
+                    + ", the sql folder will be zipped instead");
+            compression = null;
+        }
+
+        if(compression != null) {
+            //the dump is compressed as it's written, so the uncompressed SQL never touches the disk
+            sqlFileName = getSqlFilename();
+            zipFileName = dirName + "/" + (Compression.ZIP.equals(compression)
+                    ? sqlFileName.replace(".sql", ".zip")
+                    : sqlFileName + Compression.getFileExtension(compression));
+            try (OutputStream outputStream = compress(compression,
+                    new BufferedOutputStream(new FileOutputStream(zipFileName), getWriteBufferSize()), sqlFileName)) {
+                writeSql(outputStream);
+            }
+            generatedZipFile = new File(zipFileName);
+        }
+        else {
+            writeSqlFolderAndZip();
+        }
+
+        saveWatermarks();
+
+        //mail the zipped file if mail settings are available
+        sendMail();
+
+        //clear the generated temp files
+        clearTempFiles();
+
+    }
+
+    /**
+     * This writes the dump to a chunk repository. The dump is split into
+     * content-defined chunks and only the chunks the repository does not have yet
+     * are written, compressed with COMPRESSION or gzip. The backup is a manifest
+     * named after the SQL file, which is written once the whole dump is stored
+     * @param repositoryDirectory the directory of the repository
+     * @throws IOException exception
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private void exportToChunkRepository(File repositoryDirectory) throws IOException, SQLException, ClassNotFoundException {
+
+        if(getDataFormat() != null) {
+            throw new MysqlBackup4JException(DATA_FORMAT + " " + getDataFormat() + " is not supported with " + CHUNK_REPOSITORY);
+        }
+
+        String compression = getCompression();
+        sqlFileName = getSqlFilename();
+        ChunkRepository repository = new ChunkRepository(repositoryDirectory.toPath());
+        try (ChunkingOutputStream outputStream = repository.create(sqlFileName.replaceAll("\\.sql$", ""),
+                compression != null ? compression : Compression.GZIP, getCompressionLevel(), getChunkRepositoryChunkSize())) {
+            writeSql(outputStream);
+            outputStream.finish();
+            generatedManifest = outputStream.getManifest().toFile();
+        }
+        logger.debug(LOG_PREFIX + ": backup stored in the chunk repository as {}", generatedManifest);
+    }
+
+    /**
+     * This will return the average size of the chunks of the chunk repository
+     * @return CHUNK_REPOSITORY_CHUNK_SIZE or 1MB
+     */
+    private int getChunkRepositoryChunkSize() {
+        return Integer.parseInt(properties.getProperty(CHUNK_REPOSITORY_CHUNK_SIZE,
+                String.valueOf(ChunkingOutputStream.DEFAULT_AVERAGE_CHUNK_SIZE)));
+    }
+
+    /**
+     * This writes the SQL file to the sql folder of the temp dir
+     * and zips the folder, with the data files if any
+     * @throws IOException exception
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private void writeSqlFolderAndZip() throws IOException, SQLException, ClassNotFoundException {
+
         //write the sql file out
         File sqlFolder = new File(dirName + "/sql");
         if(!sqlFolder.exists()) {
             boolean res = sqlFolder.mkdir();
             if(!res) {
-                throw new IOException(LOG_PREFIX + ": Unable to create temp dir: " + file.getAbsolutePath());
+                throw new IOException(LOG_PREFIX + ": Unable to create temp dir: " + sqlFolder.getAbsolutePath());
+            }
+        }
+
+        //the data files of the tables go in a folder next to the sql file
+        if(getDataFormat() != null) {
+            //fail early on an unsupported format
+            new DelimitedDataWriter(getDataFormat());
+            File dataFolder = new File(sqlFolder, DATA_FOLDER);
+            if(!dataFolder.exists() && !dataFolder.mkdir()) {
+                throw new IOException(LOG_PREFIX + ": Unable to create temp dir: " + dataFolder.getAbsolutePath());
             }
         }
 
         sqlFileName = getSqlFilename();
-        FileOutputStream outputStream = new FileOutputStream( sqlFolder + "/" + sqlFileName);
-        outputStream.write(sql.getBytes());
-        outputStream.close();
+        try (OutputStream outputStream = new FileOutputStream( sqlFolder + "/" + sqlFileName)) {
+            writeSql(outputStream);
+        }
 
         //zip the file
+        long start = metrics.time();
         zipFileName = dirName + "/" + sqlFileName.replace(".sql", ".zip");
         generatedZipFile = new File(zipFileName);
         ZipUtil.pack(sqlFolder, generatedZipFile);
+        metrics.phase(BackupListener.Phase.COMPRESS, start);
+    }
 
-        //mail the zipped file if mail settings are available
+    /**
+     * This will wrap the supplied stream in a stream that compresses
+     * what is written to it with the supplied codec, COMPRESSION_LEVEL,
+     * COMPRESSION_THREADS and COMPRESSION_BLOCK_SIZE.
+     * With a listener, the time spent compressing is reported as the COMPRESS
+     * phase when the stream is closed
+     * @param compression the codec
+     * @param out the stream the compressed bytes are written to
+     * @param entryName the name of the SQL file, for zip
+     * @return OutputStream
+     * @throws IOException exception
+     */
+    private OutputStream compress(String compression, OutputStream out, String entryName) throws IOException {
+        if(!metrics.isEnabled()) {
+            return Compression.compress(compression, out, getCompressionLevel(), entryName,
+                    getCompressionThreads(), getCompressionBlockSize());
+        }
+        TimedOutputStream compressedStream = new TimedOutputStream(out, null);
+        return new TimedOutputStream(Compression.compress(compression, compressedStream, getCompressionLevel(), entryName,
+                getCompressionThreads(), getCompressionBlockSize()), compressedStream);
+    }
+
+    /**
+     * This will mail the generated file
+     * if mail settings are available
+     */
+    private void sendMail() {
         if(isEmailPropertiesSet()) {
+            long start = metrics.time();
             boolean emailSendingRes = EmailService.builder()
                     .setHost(properties.getProperty(EMAIL_HOST))
                     .setPort(Integer.parseInt(properties.getProperty(EMAIL_PORT)))
@@ -469,6 +1305,7 @@ public class MysqlExportService {
                     .setMessage(properties.getProperty(EMAIL_MESSAGE, "Please find attached database backup of " + database))
                     .setAttachments(new File[]{new File(zipFileName)})
                     .sendMail();
+            metrics.phase(BackupListener.Phase.UPLOAD, start);
 
             if (emailSendingRes) {
                 logger.debug(LOG_PREFIX + ": Zip File Sent as Attachment to Email Address Successfully");
@@ -476,10 +1313,6 @@ public class MysqlExportService {
                 logger.error(LOG_PREFIX + ": Unable to send zipped file as attachment to email. See log debug for more info");
             }
         }
-
-        //clear the generated temp files
-        clearTempFiles();
-
     }
 
     /**
@@ -497,17 +1330,29 @@ public class MysqlExportService {
             File sqlFile = new File(dirName + "/sql/" + sqlFileName);
             if (sqlFile.exists()) {
                 boolean res = sqlFile.delete();
-                logger.debug(LOG_PREFIX + ": " + sqlFile.getAbsolutePath() + " deleted successfully? " + (res ? " TRUE " : " FALSE "));
+                logger.debug(LOG_PREFIX + ": {} deleted successfully? {}", sqlFile.getAbsolutePath(), res ? " TRUE " : " FALSE ");
             } else {
-                logger.debug(LOG_PREFIX + ": " + sqlFile.getAbsolutePath() + " DOES NOT EXIST while clearing Temp Files");
+                logger.debug(LOG_PREFIX + ": {} DOES NOT EXIST while clearing Temp Files", sqlFile.getAbsolutePath());
+            }
+
+            //delete the data files
+            File dataFolder = new File(dirName + "/sql/" + DATA_FOLDER);
+            File[] dataFiles = dataFolder.listFiles();
+            if (dataFiles != null) {
+                for (File dataFile : dataFiles) {
+                    boolean res = dataFile.delete();
+                    logger.debug(LOG_PREFIX + ": {} deleted successfully? {}", dataFile.getAbsolutePath(), res ? " TRUE " : " FALSE ");
+                }
+                boolean res = dataFolder.delete();
+                logger.debug(LOG_PREFIX + ": {} deleted successfully? {}", dataFolder.getAbsolutePath(), res ? " TRUE " : " FALSE ");
             }
 
             File sqlFolder = new File(dirName + "/sql");
             if (sqlFolder.exists()) {
                 boolean res = sqlFolder.delete();
-                logger.debug(LOG_PREFIX + ": " + sqlFolder.getAbsolutePath() + " deleted successfully? " + (res ? " TRUE " : " FALSE "));
+                logger.debug(LOG_PREFIX + ": {} deleted successfully? {}", sqlFolder.getAbsolutePath(), res ? " TRUE " : " FALSE ");
             } else {
-                logger.debug(LOG_PREFIX + ": " + sqlFolder.getAbsolutePath() + " DOES NOT EXIST while clearing Temp Files");
+                logger.debug(LOG_PREFIX + ": {} DOES NOT EXIST while clearing Temp Files", sqlFolder.getAbsolutePath());
             }
 
         }
@@ -521,18 +1366,18 @@ public class MysqlExportService {
             File zipFile = new File(zipFileName);
             if (zipFile.exists()) {
                 boolean res = zipFile.delete();
-                logger.debug(LOG_PREFIX + ": " + zipFile.getAbsolutePath() + " deleted successfully? " + (res ? " TRUE " : " FALSE "));
+                logger.debug(LOG_PREFIX + ": {} deleted successfully? {}", zipFile.getAbsolutePath(), res ? " TRUE " : " FALSE ");
             } else {
-                logger.debug(LOG_PREFIX + ": " + zipFile.getAbsolutePath() + " DOES NOT EXIST while clearing Temp Files");
+                logger.debug(LOG_PREFIX + ": {} DOES NOT EXIST while clearing Temp Files", zipFile.getAbsolutePath());
             }
 
             //delete the temp folder
             File folder = new File(dirName);
             if (folder.exists()) {
                 boolean res = folder.delete();
-                logger.debug(LOG_PREFIX + ": " + folder.getAbsolutePath() + " deleted successfully? " + (res ? " TRUE " : " FALSE "));
+                logger.debug(LOG_PREFIX + ": {} deleted successfully? {}", folder.getAbsolutePath(), res ? " TRUE " : " FALSE ");
             } else {
-                logger.debug(LOG_PREFIX + ": " + folder.getAbsolutePath() + " DOES NOT EXIST while clearing Temp Files");
+                logger.debug(LOG_PREFIX + ": {} DOES NOT EXIST while clearing Temp Files", folder.getAbsolutePath());
             }
         }
 
@@ -554,13 +1399,93 @@ public class MysqlExportService {
     }
 
     /**
-     * this is a getter for the raw sql generated in the backup process
+     * This will return the size of the buffer used
+     * for writing the generated SQL
+     * @return WRITE_BUFFER_SIZE or the default of 64KB
+     */
+    private int getWriteBufferSize() {
+        return Integer.parseInt(properties.getProperty(WRITE_BUFFER_SIZE, String.valueOf(DEFAULT_WRITE_BUFFER_SIZE)));
+    }
+
+    /**
+     * This will return the charset used
+     * for encoding the generated SQL
+     * @return SQL_FILE_ENCODING or UTF-8
+     */
+    private Charset getSqlFileCharset() {
+        return Charset.forName(properties.getProperty(SQL_FILE_ENCODING, StandardCharsets.UTF_8.name()));
+    }
+
+    /**
+     * this is a getter for the raw sql generated in the backup process.
+     * The SQL is only kept in memory if the PRESERVE_GENERATED_SQL
+     * property is set to true, otherwise this returns an empty string
      * @return generatedSql
      */
     public String getGeneratedSql() {
         return generatedSql;
     }
 
+    /**
+     * This sets the tables, columns and rows to export. It takes the
+     * place of the INCLUDE_TABLES, EXCLUDE_TABLES, TABLE_COLUMNS and
+     * TABLE_WHERE properties. Without it, the filter is read
+     * from the properties on every export
+     * @param tableFilter the filter
+     * @return MysqlExportService
+     */
+    public MysqlExportService setTableFilter(TableFilter tableFilter) {
+        this.filter = tableFilter;
+        return this;
+    }
+
+    /**
+     * This sets the listener the progress and the per table
+     * phase timings of the export are reported to
+     * @param listener the listener, or null to measure nothing
+     * @return MysqlExportService
+     * @see MicrometerBackupListener
+     */
+    public MysqlExportService setListener(BackupListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * This sets the DataSource the connections of the export are
+     * obtained from, e.g. a connection pool, instead of opening them
+     * from DB_USERNAME, DB_PASSWORD and DB_NAME or JDBC_CONNECTION_STRING.
+     * The parallel export uses PARALLEL_THREADS + 1 connections at once.
+     * The JDBC_PROPERTIES and useCursorFetch are not applied to the
+     * connections of a DataSource, they are set on the pool instead
+     * @param dataSource the DataSource, or null to use the properties
+     * @return MysqlExportService
+     */
+    public MysqlExportService setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    /**
+     * This is a getter for the binlog position the export is consistent with,
+     * recorded when RECORD_BINLOG_POSITION is true. It's where a {@link BinlogArchiver}
+     * starts archiving the changes that are replayed on top of the export
+     * @return the position or null if it was not recorded
+     */
+    public BinlogPosition getBinlogPosition() {
+        return binlogPosition;
+    }
+
+    /**
+     * This is a getter for the manifest of the backup
+     * stored in the CHUNK_REPOSITORY, to restore it with
+     * MysqlImportService.setChunkManifest()
+     * @return the manifest file or null
+     */
+    public File getGeneratedManifest() {
+        return generatedManifest;
+    }
+
     /**
      * this is a getter for the generatedZipFile generatedZipFile File object
      * The reference can be used for further processing in
@@ -573,4 +1498,118 @@ public class MysqlExportService {
         }
         return null;
     }
+
+    /**
+     * An output stream that flushes but does not close the
+     * stream it wraps, so a compressing stream can be finished
+     * without closing the caller's stream
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * An output stream that measures the time spent writing to the
+     * stream it wraps. Wrapped around a compressing stream, with the stream
+     * the compressed bytes are written to measured too, the difference
+     * is the time spent compressing, which is reported when it's closed
+     */
+    private class TimedOutputStream extends FilterOutputStream {
+
+        private final TimedOutputStream compressedStream;
+        private long nanos;
+
+        TimedOutputStream(OutputStream out, TimedOutputStream compressedStream) {
+            super(out);
+            this.compressedStream = compressedStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            try {
+                //closing a compressing stream writes what it still holds
+                out.close();
+            } finally {
+                nanos += System.nanoTime() - start;
+                if(compressedStream != null) {
+                    metrics.phaseCompleted(BackupListener.Phase.COMPRESS, nanos - compressedStream.nanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * A writer that copies everything written to it into a
+     * second writer. It's used to keep the generated SQL in memory
+     * when PRESERVE_GENERATED_SQL is requested
+     */
+    private static class CopyingWriter extends Writer {
+
+        private final Writer out;
+        private final Writer copy;
+
+        CopyingWriter(Writer out, Writer copy) {
+            this.out = out;
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            copy.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            copy.write(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            copy.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            copy.close();
+        }
+    }
 }
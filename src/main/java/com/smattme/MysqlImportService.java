@@ -1,15 +1,35 @@
 package com.smattme;
 
 import com.smattme.exceptions.MysqlBackup4JException;
+import com.smattme.helpers.MysqlImportServiceHelper;
+import com.mysql.cj.jdbc.JdbcStatement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
 
 /**
  * Created by seun_ on 01-Mar-18.
@@ -23,17 +43,45 @@ public class MysqlImportService {
     private String port = "3306";
     private String password;
     private String sqlString;
+    private Path sqlPath;
+    private Path chunkManifest;
+    private InputStream sqlInputStream;
+    private Charset charset;
     private String jdbcConnString;
     private String jdbcDriver;
     private boolean deleteExisting;
     private boolean dropExisting;
     private List<String> tables;
+    private int parallelThreads;
+    private boolean delimiterParsing;
+    private int maxBatchStatements;
+    private long maxBatchBytes;
+    private int commitInterval;
+    private boolean rewriteBatchedStatements;
+    private Path loadDataDirectory;
+    private Path binlogDirectory;
+    private Date stopDateTime;
+    private String stopGtid;
+    private Map<String, SQLException> tableErrors;
+    private BackupListener listener;
+    private DataSource dataSource;
+    private Properties jdbcProperties = new Properties();
+    private BackupMetrics metrics = new BackupMetrics(null, BackupListener.Operation.IMPORT);
     private Logger logger = LoggerFactory.getLogger(MysqlImportService.class);
 
+    private static final int DEFAULT_MAX_BATCH_STATEMENTS = 1000;
+    private static final long DEFAULT_MAX_BATCH_BYTES = 16 * 1024 * 1024;
+
     private MysqlImportService() {
         this.deleteExisting = false;
         this.dropExisting = false;
         this.tables = new ArrayList<>();
+        this.parallelThreads = 1;
+        this.tableErrors = new LinkedHashMap<>();
+        this.charset = StandardCharsets.UTF_8;
+        this.maxBatchStatements = DEFAULT_MAX_BATCH_STATEMENTS;
+        this.maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+        this.rewriteBatchedStatements = true;
     }
 
     /**
@@ -43,32 +91,56 @@ public class MysqlImportService {
      * @throws ClassNotFoundException exception
      */
     public boolean importDatabase() throws SQLException, ClassNotFoundException {
+        metrics = new BackupMetrics(listener, BackupListener.Operation.IMPORT);
+        boolean imported;
+        try {
+            imported = importSql();
+        } catch (SQLException | ClassNotFoundException | RuntimeException e) {
+            metrics.finished(e);
+            throw e;
+        }
+        metrics.finished(null);
+        return imported;
+    }
+
+    /**
+     * This does the work of importDatabase()
+     * @return bool
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private boolean importSql() throws SQLException, ClassNotFoundException {
 
         if(!this.assertValidParams()) {
             String message = "Required Parameters not set or empty \n" +
-                    "Ensure database, username, password, sqlString params are configured \n" +
+                    "Ensure database, username, password, sqlString, sqlSource or chunkManifest params are configured \n" +
                     "using their respective setters";
             logger.error(message);
             throw new MysqlBackup4JException(message);
         }
 
 
-        //connect to the database
-        Connection connection;
-        if(jdbcConnString == null || jdbcConnString.isEmpty()) {
-            connection = MysqlBaseService.connect(username, password, host, port, database, jdbcDriver);
+        //this prioritizes the value set using the setDatabase() over the one extracted from the connection string
+        //it will only use the one from the connection string if no value is set using the setDatabase()
+        if((database == null || database.isEmpty()) && jdbcConnString != null && !jdbcConnString.isEmpty()) {
+            database = MysqlBaseService.extractDatabaseNameFromJDBCUrl(jdbcConnString);
+            logger.debug("database name extracted from connection string: {}", database);
         }
-        else {
 
-            //this prioritizes the value set using the setDatabase() over the one extracted from the connection string
-            //it will only use the one from the connection string if no value is set using the setDatabase()
+        //connect to the database
+        Connection connection = connect();
+
+        //a pooled connection is handed to its next user on close, so the
+        //session variables changed by the import are restored beforehand
+        SessionState session = null;
+        if(dataSource != null) {
+            session = SessionState.save(connection);
             if(database == null || database.isEmpty()) {
-                database = MysqlBaseService.extractDatabaseNameFromJDBCUrl(jdbcConnString);
-                logger.debug("database name extracted from connection string: " + database);
+                database = connection.getCatalog();
+                logger.debug("database name read from the DataSource connection: {}", database);
             }
-
-            connection = MysqlBaseService.connectWithURL(username, password, jdbcConnString, jdbcDriver);
         }
+        metrics.started(database);
 
         Statement stmt = connection.createStatement();
 
@@ -77,7 +149,7 @@ public class MysqlImportService {
             //get all the tables, so as to eliminate delete errors due to non-existent tables
              TablesResponse allTablesAndViews = MysqlBaseService.getAllTablesAndViews(database, stmt);
              tables = allTablesAndViews.getTables();
-             logger.debug("tables found for deleting/dropping: \n" + tables.toString());
+             logger.debug("tables found for deleting/dropping: \n{}", tables);
 
 
              //execute delete query for tables
@@ -88,13 +160,13 @@ public class MysqlImportService {
                 //dropExisting will take care of both
                 if(deleteExisting && !dropExisting) {
                     String delQ = "DELETE FROM " + "`" + table + "`;";
-                    logger.debug("adding " + delQ + " to batch");
+                    logger.debug("adding {} to batch", delQ);
                     stmt.addBatch(delQ);
                 }
 
                 if(dropExisting) {
                     String dropQ = "DROP TABLE IF EXISTS " + "`" + table + "`";
-                    logger.debug("adding " + dropQ + " to batch");
+                    logger.debug("adding {} to batch", dropQ);
                     stmt.addBatch(dropQ);
                 }
 
@@ -106,48 +178,445 @@ public class MysqlImportService {
             for (String view: views) {
                 if(dropExisting) {
                     String dropQ = "DROP VIEW IF EXISTS " + "`" + view + "`";
-                    logger.debug("adding " + dropQ + " to batch");
+                    logger.debug("adding {} to batch", dropQ);
                     stmt.addBatch(dropQ);
                 }
             }
 
         }
 
+        if(parallelThreads > 1) {
+            try {
+                importInParallel(connection, stmt);
+            } finally {
+                close(connection, stmt, session);
+            }
+            return true;
+        }
+
+        //delete/drop the existing tables
+        stmt.executeLargeBatch();
+        stmt.clearBatch();
+
         //disable foreign key check
-        stmt.addBatch("SET FOREIGN_KEY_CHECKS = 0");
+        stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+
+
+        //now process the sql supplied, in batches of bounded size
+        try (StatementReader reader = openStatementReader();
+             ImportBatch batch = new ImportBatch(connection, stmt, maxBatchStatements, maxBatchBytes, commitInterval)) {
+            ImportTableTracker tracker = metrics.isEnabled() ? new ImportTableTracker(metrics, batch) : null;
+            String executable;
+            while ((executable = reader.next()) != null) {
+                long start = tracker != null ? tracker.before(getDataTable(executable)) : 0;
+                long rows = 0;
+                if(MysqlImportServiceHelper.getLoadDataFile(executable) != null) {
+                    //LOAD DATA streams a file, so it's executed on its own
+                    batch.flush();
+                    rows = execute(stmt, executable);
+                }
+                else {
+                    logger.debug("adding extracted executable SQL chunk to batch : \n{}", executable);
+                    batch.add(executable);
+                }
+                if(tracker != null) {
+                    tracker.after(start, executable, rows);
+                }
+            }
+            if(tracker != null) {
+                tracker.finish();
+            } else {
+                batch.finish();
+            }
+            logger.debug("{} queries were executed in batches for the provided SQL", batch.getExecuted());
+
+            //enable foreign key check
+            stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
+        } catch (IOException e) {
+            throw new MysqlBackup4JException("Unable to read the SQL source: " + e.getMessage(), e);
+        } finally {
+            close(connection, stmt, session);
+        }
 
+        return true;
+    }
 
-        //now process the sql string supplied
-        while (sqlString.contains(MysqlBaseService.SQL_START_PATTERN)) {
+    /**
+     * This will close the main connection of the import, after
+     * restoring its session variables if it's from a DataSource
+     * @param connection the connection
+     * @param stmt the statement of the connection
+     * @param session the saved session variables or null
+     * @throws SQLException exception
+     */
+    private void close(Connection connection, Statement stmt, SessionState session) throws SQLException {
+        stmt.close();
+        if(session != null) {
+            session.restore();
+        }
+        connection.close();
+    }
 
-            //get the chunk of the first statement to execute
-            int startIndex = sqlString.indexOf(MysqlBaseService.SQL_START_PATTERN);
-            int endIndex = sqlString.indexOf(MysqlBaseService.SQL_END_PATTERN);
+    /**
+     * This will replay the binlog segments archived by a {@link BinlogArchiver}
+     * on the configured database, which must already hold the export the archiving
+     * started from. It stops before the first transaction at or after the stop date time
+     * or with the stop GTID, if set, so the database is restored to that point in time
+     * @return the number of transactions replayed
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    public int replayBinlog() throws SQLException, ClassNotFoundException {
 
-            String executable = sqlString.substring(startIndex, endIndex).trim();
-            logger.debug("adding extracted executable SQL chunk to batch : \n" + executable);
-            stmt.addBatch(executable);
+        if(binlogDirectory == null || (dataSource == null && (username == null || username.isEmpty() ||
+                ((database == null || database.isEmpty()) && (jdbcConnString == null || jdbcConnString.isEmpty()))))) {
+            String message = "Required Parameters not set or empty \n" +
+                    "Ensure database, username and binlogDirectory params are configured \n" +
+                    "using their respective setters";
+            logger.error(message);
+            throw new MysqlBackup4JException(message);
+        }
 
-            //remove the chunk from the whole to reduce it
-            sqlString = sqlString.substring(endIndex + 1);
+        long stopMillis = stopDateTime == null ? Long.MAX_VALUE : stopDateTime.getTime();
+        try (Connection connection = connect()) {
+            return new BinlogReplayer(connection, stopMillis, stopGtid).replay(binlogDirectory);
+        } catch (IOException e) {
+            throw new MysqlBackup4JException("Unable to read the binlog archive: " + e.getMessage(), e);
+        }
+    }
 
-            //repeat
+    /**
+     * This will restore the SQL with a pool of connections.
+     * All the statements that are not data inserts, e.g. table
+     * definitions, are executed first on the main connection in the order they appear.
+     * Then the insert statements are executed by parallelThreads workers.
+     * An InputStream or channel source can only be read once, so with those
+     * the definitions are executed as they are read, and the inserts of a table
+     * are queued after its definition has been applied.
+     * The triggers and events are created last, once all the data is loaded,
+     * so the inserts of the workers do not fire the triggers.
+     * A failed table does not stop the others, the errors are available
+     * from getTableErrors() and reported with a MysqlBackup4JException
+     * @param connection the main connection
+     * @param stmt the batch with the delete/drop statements, if any
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private void importInParallel(Connection connection, Statement stmt) throws SQLException, ClassNotFoundException {
+
+        stmt.executeLargeBatch();
+        stmt.clearBatch();
+        stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+
+        boolean rewindable = sqlInputStream == null;
+        List<String> postData = new ArrayList<>();
+        //the SET statements before the data, e.g. SET NAMES, which the workers need too
+        List<String> sessionStatements = new ArrayList<>();
+        //the SET statements since the last other statement, e.g. the sql_mode of a trigger,
+        //which are replayed before the trigger or event they precede
+        List<String> pendingSessionStatements = new ArrayList<>();
+        long ddlNanos = 0;
+
+        //apply the DDL first
+        if(rewindable) {
+            try (StatementReader reader = openStatementReader()) {
+                boolean dataRead = false;
+                String executable;
+                while ((executable = reader.next()) != null) {
+                    if(SchemaObjectWriter.isPostDataStatement(executable)) {
+                        postData.addAll(pendingSessionStatements);
+                        pendingSessionStatements.clear();
+                        postData.add(executable);
+                    } else if(getDataTable(executable) != null) {
+                        dataRead = true;
+                        pendingSessionStatements.clear();
+                    } else {
+                        if(!MysqlImportServiceHelper.isSessionStatement(executable)) {
+                            pendingSessionStatements.clear();
+                        } else {
+                            pendingSessionStatements.add(executable);
+                            if(!dataRead) {
+                                sessionStatements.add(executable);
+                            }
+                        }
+                        long start = metrics.time();
+                        stmt.execute(executable);
+                        ddlNanos += metrics.time() - start;
+                    }
+                }
+            } catch (IOException e) {
+                throw new MysqlBackup4JException("Unable to read the SQL source: " + e.getMessage(), e);
+            }
         }
 
+        //then restore the data of the tables on the workers
+        Map<String, TableMetrics> tableMetrics = new ConcurrentHashMap<>();
+        ParallelImporter.StatementExecutor statementExecutor = (statement, table, sql) -> execute(statement, sql);
+        if(metrics.isEnabled()) {
+            statementExecutor = (statement, table, sql) -> {
+                TableMetrics metricsOfTable = tableMetrics.get(table);
+                long start = metricsOfTable.time();
+                long rows = execute(statement, sql);
+                metricsOfTable.add(rows, sql.length(), metricsOfTable.lap(BackupListener.Phase.EXECUTE, start));
+            };
+        }
+        ParallelImporter importer = new ParallelImporter(this::connect, statementExecutor, parallelThreads);
+        try (StatementReader reader = openStatementReader()) {
+            //the workers are started at the first data statement, once the session statements are known
+            boolean started = false;
+            String executable;
+            while ((executable = reader.next()) != null) {
+                String table = getDataTable(executable);
+                if(table != null) {
+                    if(!started) {
+                        importer.start(sessionStatements);
+                        started = true;
+                    }
+                    if(metrics.isEnabled()) {
+                        tableMetrics.computeIfAbsent(table, this::startTable);
+                    }
+                    importer.submit(table, executable);
+                    pendingSessionStatements.clear();
+                } else if(!rewindable) {
+                    if(SchemaObjectWriter.isPostDataStatement(executable)) {
+                        postData.addAll(pendingSessionStatements);
+                        pendingSessionStatements.clear();
+                        postData.add(executable);
+                    } else {
+                        if(!MysqlImportServiceHelper.isSessionStatement(executable)) {
+                            pendingSessionStatements.clear();
+                        } else {
+                            pendingSessionStatements.add(executable);
+                            if(!started) {
+                                sessionStatements.add(executable);
+                            }
+                        }
+                        long start = metrics.time();
+                        stmt.execute(executable);
+                        ddlNanos += metrics.time() - start;
+                    }
+                }
+            }
+            tableErrors = importer.finish();
+            tableMetrics.values().forEach(TableMetrics::end);
+        } catch (IOException e) {
+            throw new MysqlBackup4JException("Unable to read the SQL source: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MysqlBackup4JException("Interrupted while importing data");
+        } finally {
+            importer.close();
+        }
 
-        //add enable foreign key check
-        stmt.addBatch("SET FOREIGN_KEY_CHECKS = 1");
+        //the triggers and events, once all the data is loaded
+        long start = metrics.time();
+        for (String executable : postData) {
+            stmt.execute(executable);
+        }
+        metrics.phaseCompleted(BackupListener.Phase.DDL, ddlNanos + metrics.time() - start);
 
-        //now execute the batch
-        long[] result = stmt.executeLargeBatch();
+        stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
 
-        if(logger.isDebugEnabled())
-            logger.debug( result.length + " queries were executed in batches for provided SQL String with the following result : \n" + Arrays.toString(result));
+        if(!tableErrors.isEmpty()) {
+            StringBuilder message = new StringBuilder("Unable to import the data of ")
+                    .append(tableErrors.size()).append(" table(s):");
+            tableErrors.forEach((table, e) -> message.append("\n").append(table).append(": ").append(e.getMessage()));
+            logger.error(message.toString());
+            throw new MysqlBackup4JException(message.toString());
+        }
+    }
 
-        stmt.close();
-        connection.close();
+    /**
+     * This will return the metrics of a table whose data
+     * the parallel import starts to restore
+     * @param table the table
+     * @return TableMetrics
+     */
+    private TableMetrics startTable(String table) {
+        TableMetrics metricsOfTable = metrics.table(table, -1, 1);
+        metricsOfTable.begin();
+        return metricsOfTable;
+    }
 
-        return true;
+    /**
+     * This will return the table the supplied statement
+     * restores the data of, if it's an INSERT or a LOAD DATA statement
+     * @param sql the statement
+     * @return the table name or null
+     */
+    private String getDataTable(String sql) {
+        String table = MysqlImportServiceHelper.getInsertTable(sql);
+        return table != null ? table : MysqlImportServiceHelper.getLoadDataTable(sql);
+    }
+
+    /**
+     * This will execute a single statement. The file of a
+     * LOAD DATA LOCAL INFILE statement is looked up in the load data directory
+     * and streamed to the server with Connector/J's setLocalInfileInputStream(),
+     * so the driver never opens a file named by the server
+     * @param statement the statement to execute it with
+     * @param sql the SQL
+     * @return the rows changed by the statement
+     * @throws SQLException exception
+     */
+    private long execute(Statement statement, String sql) throws SQLException {
+
+        String fileName = MysqlImportServiceHelper.getLoadDataFile(sql);
+        if(fileName == null) {
+            statement.execute(sql);
+            return Math.max(0, statement.getLargeUpdateCount());
+        }
+
+        if(loadDataDirectory == null) {
+            throw new MysqlBackup4JException("The SQL loads the data file " + fileName + ", set the directory of the data files with setLoadDataDirectory()");
+        }
+        Path baseDirectory = loadDataDirectory.toAbsolutePath().normalize();
+        Path dataFile = baseDirectory.resolve(fileName).normalize();
+        if(!dataFile.startsWith(baseDirectory)) {
+            throw new MysqlBackup4JException("The data file " + fileName + " is outside of the load data directory");
+        }
+
+        JdbcStatement jdbcStatement = statement.unwrap(JdbcStatement.class);
+        try (InputStream inputStream = Compression.decompress(new BufferedInputStream(Files.newInputStream(dataFile)))) {
+            jdbcStatement.setLocalInfileInputStream(inputStream);
+            statement.execute(sql);
+            return Math.max(0, statement.getLargeUpdateCount());
+        } catch (IOException e) {
+            throw new MysqlBackup4JException("Unable to read the data file " + dataFile + ": " + e.getMessage(), e);
+        } finally {
+            jdbcStatement.setLocalInfileInputStream(null);
+        }
+    }
+
+    /**
+     * This will open a reader of the statements of the
+     * configured SQL source. Compressed files and streams
+     * are detected from their first bytes and decompressed as they are read
+     * @return StatementReader
+     * @throws IOException exception
+     */
+    private StatementReader openStatementReader() throws IOException {
+        Reader reader;
+        if(sqlPath != null) {
+            if(metrics.isEnabled()) {
+                metrics.setEstimatedBytes(Files.size(sqlPath));
+            }
+            reader = new InputStreamReader(Compression.decompress(count(Files.newInputStream(sqlPath))), charset);
+        }
+        else if(chunkManifest != null) {
+            reader = new InputStreamReader(count(ChunkRepository.open(chunkManifest)), charset);
+        }
+        else if(sqlInputStream != null) {
+            reader = new InputStreamReader(Compression.decompress(count(sqlInputStream)), charset);
+        }
+        else {
+            reader = new StringReader(sqlString);
+        }
+        if(delimiterParsing) {
+            return new DelimiterStatementReader(reader);
+        }
+        return new MarkerStatementReader(reader);
+    }
+
+    /**
+     * This will make the progress of the import report the bytes
+     * read from the supplied stream of the SQL source, if there's a listener
+     * @param inputStream the stream of the source
+     * @return InputStream
+     */
+    private InputStream count(InputStream inputStream) {
+        if(!metrics.isEnabled()) {
+            return inputStream;
+        }
+        CountingInputStream countingStream = new CountingInputStream(inputStream);
+        metrics.setSourceBytes(countingStream::getCount);
+        return countingStream;
+    }
+
+    /**
+     * This will get a connection from the DataSource if one is set
+     * or open a connection to the configured database
+     * @return Connection
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private Connection connect() throws SQLException, ClassNotFoundException {
+        if(dataSource != null) {
+            return dataSource.getConnection();
+        }
+        if(jdbcConnString == null || jdbcConnString.isEmpty()) {
+            return MysqlBaseService.connect(username, password, host, port, database, jdbcDriver, getConnectionProperties());
+        }
+        return MysqlBaseService.connectWithURL(username, password, jdbcConnString, jdbcDriver, getConnectionProperties());
+    }
+
+    /**
+     * This will return the driver properties of the import connections.
+     * rewriteBatchedStatements lets the driver send a batch of statements in
+     * a single round trip. Server side prepared statements are turned off because
+     * every statement of the import is executed once as plain text.
+     * allowLoadLocalInfile is needed for the driver to send the data files streamed by execute(),
+     * which only streams files of the load data directory.
+     * The properties set with setJdbcProperties() take precedence
+     * @return Properties
+     */
+    private Properties getConnectionProperties() {
+        Properties connectionProperties = new Properties();
+        connectionProperties.setProperty("rewriteBatchedStatements", String.valueOf(rewriteBatchedStatements));
+        connectionProperties.setProperty("useServerPrepStmts", Boolean.FALSE.toString());
+        if(loadDataDirectory != null) {
+            connectionProperties.setProperty("allowLoadLocalInfile", Boolean.TRUE.toString());
+        }
+        connectionProperties.putAll(jdbcProperties);
+        return connectionProperties;
+    }
+
+    /**
+     * This sets the listener the progress and the per table
+     * timings of the import are reported to
+     * @param listener the listener, or null to measure nothing
+     * @return MysqlImportService
+     * @see MicrometerBackupListener
+     */
+    public MysqlImportService setListener(BackupListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * This sets the DataSource the connections of the import are
+     * obtained from, e.g. a connection pool, instead of opening them from
+     * the username, password and database or the JDBC connection string.
+     * Without a database, the default database of its connections is restored.
+     * The parallel import uses parallelThreads + 1 connections at once, and the
+     * driver properties it needs, e.g. rewriteBatchedStatements, are set on the pool
+     * @param dataSource the DataSource, or null to use the connection params
+     * @return MysqlImportService
+     */
+    public MysqlImportService setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    /**
+     * This sets extra driver properties of the connections the import
+     * opens, e.g. useCompression, tcpRcvBuf or netTimeoutForStreamingResults.
+     * They are not applied to the connections of a DataSource
+     * @param jdbcProperties the driver properties
+     * @return MysqlImportService
+     */
+    public MysqlImportService setJdbcProperties(Properties jdbcProperties) {
+        this.jdbcProperties = jdbcProperties;
+        return this;
+    }
+
+    /**
+     * This will return the first error of every table whose
+     * data could not be imported by the parallel import
+     * @return a map of table name to error, empty if all succeeded
+     */
+    public Map<String, SQLException> getTableErrors() {
+        return tableErrors;
     }
 
     /**
@@ -158,9 +627,9 @@ public class MysqlImportService {
      * @return true if the required params are present and valid, false otherwise
      */
     private boolean assertValidParams() {
-        return username != null && !this.username.isEmpty() &&
-                sqlString != null && !this.sqlString.isEmpty() &&
-        ( (database != null && !this.database.isEmpty()) || (jdbcConnString != null && !jdbcConnString.isEmpty()) );
+        return ((sqlString != null && !this.sqlString.isEmpty()) || sqlPath != null || sqlInputStream != null || chunkManifest != null) &&
+        (dataSource != null || (username != null && !this.username.isEmpty() &&
+        ( (database != null && !this.database.isEmpty()) || (jdbcConnString != null && !jdbcConnString.isEmpty()) )));
     }
 
     /**
@@ -193,6 +662,70 @@ public class MysqlImportService {
         return this;
     }
 
+    /**
+     * This sets a file to read the SQL to import from.
+     * The file is read in chunks and its statements are executed as they
+     * are read, so it does not have to fit in memory.
+     * Files compressed with zip, gzip, zstd or lz4 are decompressed on the fly
+     * @param sqlPath path of the SQL file
+     * @return MysqlImportService
+     */
+    public MysqlImportService setSqlSource(Path sqlPath) {
+        this.sqlPath = sqlPath;
+        this.sqlInputStream = null;
+        this.chunkManifest = null;
+        return this;
+    }
+
+    /**
+     * This sets a stream to read the SQL to import from.
+     * The stream is closed at the end of the import
+     * @param sqlInputStream the SQL stream
+     * @return MysqlImportService
+     * @see #setSqlSource(Path)
+     */
+    public MysqlImportService setSqlSource(InputStream sqlInputStream) {
+        this.sqlInputStream = sqlInputStream;
+        this.sqlPath = null;
+        this.chunkManifest = null;
+        return this;
+    }
+
+    /**
+     * This sets a channel to read the SQL to import from.
+     * The channel is closed at the end of the import
+     * @param sqlChannel the SQL channel
+     * @return MysqlImportService
+     * @see #setSqlSource(Path)
+     */
+    public MysqlImportService setSqlSource(ReadableByteChannel sqlChannel) {
+        return setSqlSource(Channels.newInputStream(sqlChannel));
+    }
+
+    /**
+     * This sets the backup to restore to a manifest of a chunk repository,
+     * see the CHUNK_REPOSITORY property of the export. The chunks are read from
+     * the repository the manifest is in and checked against their hash as they are read
+     * @param chunkManifest the manifest file, in the manifests directory of the repository
+     * @return MysqlImportService
+     */
+    public MysqlImportService setChunkManifest(Path chunkManifest) {
+        this.chunkManifest = chunkManifest;
+        this.sqlPath = null;
+        this.sqlInputStream = null;
+        return this;
+    }
+
+    /**
+     * This sets the charset of the SQL source. Defaults to UTF-8
+     * @param charset the charset of the SQL file or stream
+     * @return MysqlImportService
+     */
+    public MysqlImportService setCharset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
     public MysqlImportService setDeleteExisting(boolean deleteExisting) {
         this.deleteExisting = deleteExisting;
         return this;
@@ -222,4 +755,169 @@ public class MysqlImportService {
         this.port = port;
         return this;
     }
+
+    /**
+     * This sets the number of connections the data of the tables
+     * is restored with. Table definitions are always applied first on a single
+     * connection. The default of 1 imports everything in a single batch
+     * @param parallelThreads number of worker connections
+     * @return MysqlImportService
+     */
+    public MysqlImportService setParallelThreads(int parallelThreads) {
+        this.parallelThreads = parallelThreads;
+        return this;
+    }
+
+    /**
+     * This makes the import split the SQL into statements on the
+     * delimiter, the way the mysql command line client does, instead of
+     * reading the statements between the -- start and -- end markers of this library.
+     * It understands quotes, comments, executable comments and DELIMITER changes,
+     * so it can restore mysqldump output and hand written scripts too.
+     * The exports of this library are read alike, as their routines, triggers and events
+     * are written between DELIMITER commands, and the triggers and events are
+     * still recognised by the parallel import and created after the data
+     * @param delimiterParsing true to split on the delimiter
+     * @return MysqlImportService
+     */
+    public MysqlImportService setDelimiterParsing(boolean delimiterParsing) {
+        this.delimiterParsing = delimiterParsing;
+        return this;
+    }
+
+    /**
+     * This sets the number of statements sent to the server
+     * in a single batch. Defaults to 1000. 0 means no limit
+     * @param maxBatchStatements number of statements per batch
+     * @return MysqlImportService
+     */
+    public MysqlImportService setMaxBatchStatements(int maxBatchStatements) {
+        this.maxBatchStatements = maxBatchStatements;
+        return this;
+    }
+
+    /**
+     * This sets the size of SQL, counted in characters, after which
+     * a batch is sent to the server. Defaults to 16 MB. 0 means no limit
+     * @param maxBatchBytes size of a batch
+     * @return MysqlImportService
+     */
+    public MysqlImportService setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    /**
+     * This makes the import run in explicit transactions that are
+     * committed every commitInterval statements. Statements that were not
+     * committed when the import fails are rolled back.
+     * Defaults to 0, where every statement is committed on its own (autocommit)
+     * @param commitInterval number of statements per transaction
+     * @return MysqlImportService
+     */
+    public MysqlImportService setCommitInterval(int commitInterval) {
+        this.commitInterval = commitInterval;
+        return this;
+    }
+
+    /**
+     * This sets the directory the data files of LOAD DATA LOCAL INFILE
+     * statements are read from, i.e. the directory of the SQL file
+     * exported with the DATA_FORMAT property. Setting it turns on the
+     * allowLoadLocalInfile property of the driver, which Connector/J needs to send the
+     * stream of a data file, and the server needs local_infile enabled.
+     * A data file outside of this directory is rejected before it's opened
+     * @param loadDataDirectory the directory the data file names are relative to
+     * @return MysqlImportService
+     */
+    public MysqlImportService setLoadDataDirectory(Path loadDataDirectory) {
+        this.loadDataDirectory = loadDataDirectory;
+        return this;
+    }
+
+    /**
+     * This sets the rewriteBatchedStatements property of the driver, which
+     * sends a batch in a single round trip. Defaults to true.
+     * A value set in the JDBC connection string takes precedence
+     * @param rewriteBatchedStatements false to send the statements of a batch one by one
+     * @return MysqlImportService
+     */
+    public MysqlImportService setRewriteBatchedStatements(boolean rewriteBatchedStatements) {
+        this.rewriteBatchedStatements = rewriteBatchedStatements;
+        return this;
+    }
+
+    /**
+     * This sets the directory of the binlog archive replayed by replayBinlog()
+     * @param binlogDirectory the directory the BinlogArchiver wrote to
+     * @return MysqlImportService
+     */
+    public MysqlImportService setBinlogDirectory(Path binlogDirectory) {
+        this.binlogDirectory = binlogDirectory;
+        return this;
+    }
+
+    /**
+     * This makes replayBinlog() stop before the first
+     * transaction committed at or after the supplied time
+     * @param stopDateTime the point in time to restore to
+     * @return MysqlImportService
+     */
+    public MysqlImportService setStopDateTime(Date stopDateTime) {
+        this.stopDateTime = stopDateTime;
+        return this;
+    }
+
+    /**
+     * This makes replayBinlog() stop before the transaction with the
+     * supplied GTID, e.g. the one that dropped a table by mistake
+     * @param stopGtid the GTID of the first transaction not to replay
+     * @return MysqlImportService
+     */
+    public MysqlImportService setStopGtid(String stopGtid) {
+        this.stopGtid = stopGtid;
+        return this;
+    }
+
+    /**
+     * An input stream that counts the bytes read from the stream it wraps
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
 }
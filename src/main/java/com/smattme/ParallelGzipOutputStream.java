@@ -0,0 +1,149 @@
+package com.smattme;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This compresses its input with several threads, the way pigz does.
+ * The input is cut into blocks, each block is compressed by a worker into
+ * a complete gzip member, and the members are written in order.
+ * Concatenated members are a valid gzip file that gunzip, GZIPInputStream
+ * and every other standard decompressor read as a single stream.
+ * At most twice as many blocks as there are workers are held in memory:
+ * writing blocks while that many are pending waits for the oldest one
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final int level;
+    private final int blockSize;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+    private int count;
+    private boolean written;
+    private boolean closed;
+
+    ParallelGzipOutputStream(OutputStream out, int level, int threads, int blockSize) {
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxPending = threads * 2;
+        this.block = new byte[blockSize];
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mysql-backup4j-gzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[count++] = (byte) b;
+        if (count == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * This compresses the buffered input as a
+     * member of its own and writes all the pending members
+     */
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            //an empty input is still a valid gzip file
+            if (!written) {
+                out.write(compress(new byte[0], 0, level));
+            }
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        byte[] data = block;
+        int length = count;
+        pending.add(executor.submit(() -> compress(data, length, level)));
+        block = new byte[blockSize];
+        count = 0;
+        written = true;
+        while (pending.size() >= maxPending) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to compress a block: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * This compresses a block into a complete gzip member
+     * @param data the block
+     * @param length the length of the data in the block
+     * @param level the compression level, negative for the default
+     * @return the gzip member
+     * @throws IOException exception
+     */
+    static byte[] compress(byte[] data, int length, int level) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member) {
+            {
+                if (level >= 0) def.setLevel(level);
+            }
+        }) {
+            gzip.write(data, 0, length);
+        }
+        return member.toByteArray();
+    }
+}
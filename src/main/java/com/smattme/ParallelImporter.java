@@ -0,0 +1,230 @@
+package com.smattme;
+
+import com.smattme.exceptions.MysqlBackup4JException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * This restores table data on a pool of connections.
+ * Data statements are submitted to a bounded queue that is drained
+ * by the worker threads, each with its own connection. The workers get the session
+ * statements of the dump, e.g. SET NAMES utf8mb4, and run with NO_AUTO_VALUE_ON_ZERO, so
+ * an AUTO_INCREMENT column keeps its 0 values, and with FOREIGN_KEY_CHECKS and UNIQUE_CHECKS
+ * disabled until the connection is closed, so a pooled connection is returned
+ * with the session it was taken with. The first error of a table is recorded and
+ * the rest of that table's statements are skipped, while the other tables carry on.
+ */
+class ParallelImporter {
+
+    /**
+     * Executes a data statement on a worker connection
+     */
+    interface StatementExecutor {
+        void execute(Statement statement, String table, String sql) throws SQLException;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelImporter.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-import";
+    private static final int MAX_DEADLOCK_RETRIES = 3;
+    private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
+    private static final Task POISON = new Task(null, null);
+
+    private final ConnectionSupplier connectionSupplier;
+    private final StatementExecutor statementExecutor;
+    private final int threads;
+    private final BlockingQueue<Task> queue;
+    private final Map<String, SQLException> tableErrors = new ConcurrentHashMap<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<SessionState> sessions = new ArrayList<>();
+    private final List<Future<?>> workers = new ArrayList<>();
+    private ExecutorService executor;
+
+    ParallelImporter(ConnectionSupplier connectionSupplier, StatementExecutor statementExecutor, int threads) {
+        this.connectionSupplier = connectionSupplier;
+        this.statementExecutor = statementExecutor;
+        this.threads = threads;
+        this.queue = new ArrayBlockingQueue<>(threads * 4);
+    }
+
+    /**
+     * This opens the worker connections and starts the workers
+     * @param sessionStatements the SET statements of the dump read before its data, to run on every worker
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    void start(List<String> sessionStatements) throws SQLException, ClassNotFoundException {
+
+        for (int i = 0; i < threads; i++) {
+            Connection connection = connectionSupplier.get();
+            connections.add(connection);
+            sessions.add(SessionState.save(connection));
+            //avoid gap locks between workers inserting into the same table
+            connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : sessionStatements) {
+                    statement.execute(sql);
+                }
+                statement.execute("SET SESSION FOREIGN_KEY_CHECKS = 0");
+                statement.execute("SET SESSION UNIQUE_CHECKS = 0");
+                //the dump header that sets it is outside the statement markers
+                statement.execute("SET SESSION sql_mode = CONCAT_WS(',', NULLIF(@@SESSION.sql_mode, ''), 'NO_AUTO_VALUE_ON_ZERO')");
+            }
+        }
+
+        executor = Executors.newFixedThreadPool(threads);
+        for (Connection connection : connections) {
+            workers.add(executor.submit(() -> {
+                work(connection);
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * This queues a data statement of the supplied table.
+     * It blocks while the queue is full, so the statements
+     * held in memory stay bounded
+     * @param table the table the statement writes to
+     * @param sql the statement
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    void submit(String table, String sql) throws InterruptedException {
+        if (tableErrors.containsKey(table)) {
+            return;
+        }
+        put(new Task(table, sql));
+    }
+
+    /**
+     * This waits for the queued statements to be executed,
+     * stops the workers and closes their connections
+     * @return the first error of every table that failed, in no particular order
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Map<String, SQLException> finish() throws InterruptedException {
+        try {
+            for (int i = 0; i < workers.size(); i++) {
+                put(POISON);
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    logger.error(LOG_PREFIX + ": import worker failed", e.getCause());
+                }
+            }
+        } finally {
+            close();
+        }
+        return new LinkedHashMap<>(tableErrors);
+    }
+
+    /**
+     * This stops the workers without waiting for the queued statements
+     * and closes their connections, once the workers have returned,
+     * as a connection must not be restored and closed while a worker
+     * is still executing a statement on it. The connections of workers
+     * that do not stop in time are aborted instead
+     */
+    void close() {
+        boolean terminated = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                terminated = executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                terminated = false;
+            }
+        }
+
+        if (terminated) {
+            sessions.forEach(SessionState::restore);
+        } else {
+            logger.warn(LOG_PREFIX + ": import workers are still running, aborting their connections");
+        }
+        sessions.clear();
+        for (Connection connection : connections) {
+            try {
+                if (terminated) {
+                    connection.close();
+                } else {
+                    connection.abort(Runnable::run);
+                }
+            } catch (SQLException e) {
+                logger.debug(LOG_PREFIX + ": unable to close worker connection", e);
+            }
+        }
+        connections.clear();
+    }
+
+    /**
+     * This waits for space in the queue, unless all the
+     * workers have stopped and nothing will ever drain it
+     * @param task the task to queue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void put(Task task) throws InterruptedException {
+        while (!queue.offer(task, 1, TimeUnit.SECONDS)) {
+            if (workers.stream().allMatch(Future::isDone)) {
+                if (task == POISON) return;
+                throw new MysqlBackup4JException(LOG_PREFIX + ": all import workers have stopped");
+            }
+        }
+    }
+
+    private void work(Connection connection) throws InterruptedException, SQLException {
+        try (Statement statement = connection.createStatement()) {
+            while (true) {
+                Task task = queue.take();
+                if (task == POISON) {
+                    return;
+                }
+                if (tableErrors.containsKey(task.table)) {
+                    continue;
+                }
+                execute(statement, task);
+            }
+        }
+    }
+
+    private void execute(Statement statement, Task task) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                statementExecutor.execute(statement, task.table, task.sql);
+                return;
+            } catch (SQLException e) {
+                //40001 is a deadlock or lock wait timeout, the statement can be retried
+                if ("40001".equals(e.getSQLState()) && attempt < MAX_DEADLOCK_RETRIES) {
+                    logger.debug(LOG_PREFIX + ": retrying statement of table {} after: {}", task.table, e.getMessage());
+                    continue;
+                }
+                if (tableErrors.putIfAbsent(task.table, e) == null) {
+                    logger.error(LOG_PREFIX + ": error importing data of table " + task.table, e);
+                }
+                return;
+            }
+        }
+    }
+
+    private static class Task {
+
+        private final String table;
+        private final String sql;
+
+        Task(String table, String sql) {
+            this.table = table;
+            this.sql = sql;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
+
+/**
+ * This dumps several segments of the database at once, each on its own connection.
+ * A segment is a whole table, or a key range of a large table.
+ * All the worker connections read from the same consistent snapshot:
+ * they all start their transaction WITH CONSISTENT SNAPSHOT while the
+ * main connection holds FLUSH TABLES WITH READ LOCK.
+ * Every segment is written to its own temp file and the files are
+ * merged into the output in the order of the supplied segment list,
+ * so the output is the same as that of a sequential export.
+ * The segments are started largest first, by their estimated size,
+ * so a large table does not start last and keep a single worker busy
+ * long after the others are done.
+ * A finished segment waits on disk until the merge reaches it, so the
+ * temp files can add up to the whole dump. They are gzipped at the fastest
+ * level when the export is compressed, so the uncompressed dump never touches the disk
+ */
+class ParallelTableExporter {
+
+    /**
+     * Writes a segment of the dump to the supplied writer
+     */
+    interface SegmentWriter {
+        void write(Connection connection, Writer writer) throws SQLException, IOException;
+    }
+
+    /**
+     * A named unit of work of the export, with its estimated size in bytes
+     */
+    static class Segment {
+
+        private final String name;
+        private final long estimatedBytes;
+        private final SegmentWriter writer;
+
+        Segment(String name, long estimatedBytes, SegmentWriter writer) {
+            this.name = name;
+            this.estimatedBytes = estimatedBytes;
+            this.writer = writer;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelTableExporter.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-export";
+
+    private final Connection mainConnection;
+    private final ConnectionSupplier connectionSupplier;
+    private final int threads;
+    private final Path segmentDirectory;
+    private final boolean compressSegments;
+    private BinlogPosition snapshotPosition;
+
+    /**
+     * @param mainConnection the connection the snapshot is coordinated on
+     * @param connectionSupplier the supplier of the worker connections
+     * @param threads the number of workers
+     * @param segmentDirectory the directory of the segment files, null for the system temp dir
+     * @param compressSegments true to gzip the segment files
+     */
+    ParallelTableExporter(Connection mainConnection, ConnectionSupplier connectionSupplier, int threads,
+                          Path segmentDirectory, boolean compressSegments) {
+        this.mainConnection = mainConnection;
+        this.connectionSupplier = connectionSupplier;
+        this.threads = threads;
+        this.segmentDirectory = segmentDirectory;
+        this.compressSegments = compressSegments;
+    }
+
+    /**
+     * This will dump the supplied segments with the configured number of
+     * worker threads and write their output to the writer in list order
+     * @param segmentList the segments to dump
+     * @param writer the output
+     * @throws SQLException exception
+     * @throws IOException exception
+     * @throws ClassNotFoundException exception
+     */
+    void export(List<Segment> segmentList, Writer writer) throws SQLException, IOException, ClassNotFoundException {
+
+        int workerCount = Math.max(1, Math.min(threads, segmentList.size()));
+        List<Connection> opened = new ArrayList<>();
+        BlockingQueue<Connection> connections = new ArrayBlockingQueue<>(workerCount);
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        Queue<Path> segments = new ConcurrentLinkedQueue<>();
+
+        if (segmentDirectory != null) {
+            Files.createDirectories(segmentDirectory);
+        }
+
+        try {
+            openSnapshotConnections(workerCount, opened, connections);
+
+            Map<Segment, Future<Path>> futures = new IdentityHashMap<>();
+            for (Segment segment : getSchedule(segmentList)) {
+                futures.put(segment, executor.submit(() -> writeSegment(segment, connections, segments)));
+            }
+
+            //merge the segments in the order of the list, so the output is deterministic
+            char[] buffer = new char[8192];
+            for (int i = 0; i < segmentList.size(); i++) {
+                Path segment = await(futures.get(segmentList.get(i)), segmentList.get(i).name);
+                try (Reader reader = new InputStreamReader(Compression.decompress(Files.newInputStream(segment)), StandardCharsets.UTF_8)) {
+                    int read;
+                    while ((read = reader.read(buffer)) != -1) {
+                        writer.write(buffer, 0, read);
+                    }
+                }
+                Files.deleteIfExists(segment);
+            }
+
+        } finally {
+            //after a failure, the connections still held by the workers are aborted,
+            //which stops the tables they are reading
+            executor.shutdownNow();
+            for (Connection connection : opened) {
+                if (connections.remove(connection)) {
+                    closeQuietly(connection);
+                } else {
+                    abortQuietly(connection);
+                }
+            }
+            awaitTermination(executor);
+            deleteSegments(segments);
+        }
+    }
+
+    /**
+     * This will return the order the supplied segments are started in:
+     * largest first, and in list order for segments of the same size
+     * @param segmentList the segments to dump
+     * @return the segments in the order to start them
+     */
+    static List<Segment> getSchedule(List<Segment> segmentList) {
+        List<Segment> schedule = new ArrayList<>(segmentList);
+        schedule.sort(Comparator.comparingLong((Segment segment) -> segment.estimatedBytes).reversed());
+        return schedule;
+    }
+
+    /**
+     * This will return the binlog position and executed GTID set
+     * at the time the snapshot was taken, if it could be read while
+     * FLUSH TABLES WITH READ LOCK was held
+     * @return BinlogPosition or null
+     */
+    BinlogPosition getSnapshotPosition() {
+        return snapshotPosition;
+    }
+
+    /**
+     * This opens the worker connections and starts a consistent snapshot
+     * transaction on each of them, while FLUSH TABLES WITH READ LOCK is held on the main connection.
+     * If the lock cannot be taken, e.g. because the user lacks the RELOAD privilege,
+     * a warning is logged and each worker gets its own snapshot
+     * @param workerCount the number of connections to open
+     * @param opened the list to add every connection opened to, so they are all closed
+     * @param connections the pool to add the connections to
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private void openSnapshotConnections(int workerCount, List<Connection> opened, BlockingQueue<Connection> connections)
+            throws SQLException, ClassNotFoundException {
+
+        boolean locked = false;
+        try (Statement statement = mainConnection.createStatement()) {
+
+            try {
+                statement.execute("FLUSH TABLES WITH READ LOCK");
+                locked = true;
+            } catch (SQLException e) {
+                logger.warn(LOG_PREFIX + ": Unable to take FLUSH TABLES WITH READ LOCK, the tables will not share a single snapshot: {}", e.getMessage());
+            }
+
+            if (locked) {
+                try {
+                    snapshotPosition = BinlogPosition.read(mainConnection);
+                    logger.debug(LOG_PREFIX + ": snapshot binlog position: {}", snapshotPosition);
+                } catch (SQLException e) {
+                    logger.debug(LOG_PREFIX + ": the binlog position is not available: {}", e.getMessage());
+                }
+            }
+
+            try {
+                for (int i = 0; i < workerCount; i++) {
+                    Connection connection = connectionSupplier.get();
+                    opened.add(connection);
+                    connections.add(connection);
+                    connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                    try (Statement workerStatement = connection.createStatement()) {
+                        workerStatement.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+                    }
+                }
+            } finally {
+                if (locked) {
+                    statement.execute("UNLOCK TABLES");
+                }
+            }
+        }
+    }
+
+    /**
+     * This dumps a single segment into a new temp file
+     * using one of the snapshot connections
+     * @param segment the segment to dump
+     * @param connections the pool of snapshot connections
+     * @param segments the segment files created so far
+     * @return Path of the segment file
+     * @throws Exception exception
+     */
+    private Path writeSegment(Segment segment, BlockingQueue<Connection> connections, Queue<Path> segments) throws Exception {
+
+        Path segmentFile = segmentDirectory == null
+                ? Files.createTempFile("mysql-backup4j-", ".sql")
+                : Files.createTempFile(segmentDirectory, "mysql-backup4j-", ".sql");
+        segments.add(segmentFile);
+        Connection connection = connections.take();
+        OutputStream segmentStream = new BufferedOutputStream(Files.newOutputStream(segmentFile));
+        if (compressSegments) {
+            segmentStream = Compression.compress(Compression.GZIP, segmentStream, Deflater.BEST_SPEED, null);
+        }
+        try (Writer segmentWriter = new BufferedWriter(new OutputStreamWriter(segmentStream, StandardCharsets.UTF_8))) {
+            segment.writer.write(connection, segmentWriter);
+        } finally {
+            connections.add(connection);
+        }
+        return segmentFile;
+    }
+
+    /**
+     * This waits for a segment and unwraps
+     * the exception thrown while writing it, if any
+     * @param future the pending segment
+     * @param name the name of the segment
+     * @return Path of the segment file
+     * @throws SQLException exception
+     * @throws IOException exception
+     */
+    private Path await(Future<Path> future, String name) throws SQLException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(LOG_PREFIX + ": interrupted while exporting " + name);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(LOG_PREFIX + ": unable to export " + name, cause);
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn(LOG_PREFIX + ": export workers did not terminate in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deleteSegments(Queue<Path> segments) {
+        for (Path segment : segments) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                logger.debug(LOG_PREFIX + ": unable to delete temp segment " + segment, e);
+            }
+        }
+    }
+
+    private void abortQuietly(Connection connection) {
+        try {
+            connection.abort(Runnable::run);
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to abort worker connection", e);
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        //the snapshot transaction is rolled back before closing, as
+        //closing a pooled connection only returns it to the pool
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ROLLBACK");
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to roll back worker connection", e);
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to close worker connection", e);
+        }
+    }
+}
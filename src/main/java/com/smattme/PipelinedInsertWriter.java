@@ -0,0 +1,399 @@
+package com.smattme;
+
+import com.smattme.exceptions.MysqlBackup4JException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This writes the rows of a result set as INSERT statements in three stages
+ * that run at the same time: a reader thread copies the values of the rows into
+ * batches of reusable row holders, encoder threads turn the batches into SQL, and
+ * the exporting thread writes the SQL in order to the output, which may compress it.
+ * So a table is dumped at the speed of its slowest stage instead of the sum of them.
+ * The batches circulate through bounded queues: the reader waits for a free batch
+ * when the encoders or the writer fall behind, so at most 2 * (encoders + 1) batches of
+ * BATCH_ROWS rows, or of about BATCH_CHARS characters of values, are held in memory.
+ * The rows of a table that fit in a single batch are written without starting any thread.
+ * The values are copied by their {@link ColumnEncoders.Kind} and written with the
+ * formatting routines of {@link ColumnEncoders}, so they are written exactly as the encoders write them
+ */
+class PipelinedInsertWriter {
+
+    static final int BATCH_ROWS = 256;
+    static final long BATCH_CHARS = 1024 * 1024;
+
+    private static final RowBatch END = new RowBatch(0);
+
+    private final ResultSet rs;
+    private final ColumnEncoders.Kind[] kinds;
+    private final int encoderThreads;
+    private final TableMetrics tableMetrics;
+    private final BlockingQueue<RowBatch> free;
+    private final List<BlockingQueue<RowBatch>> toEncode;
+    private final List<BlockingQueue<RowBatch>> encoded;
+    private final CountDownLatch done;
+    private volatile Throwable failure;
+    private volatile boolean stopped;
+
+    /**
+     * @param rs the result set, positioned on its first row
+     * @param encoders the encoders of the columns
+     * @param encoderThreads the number of encoder threads
+     * @param tableMetrics the metrics of the table
+     */
+    PipelinedInsertWriter(ResultSet rs, ColumnEncoder[] encoders, int encoderThreads, TableMetrics tableMetrics) {
+        this.rs = rs;
+        this.kinds = kinds(encoders);
+        this.encoderThreads = Math.max(1, encoderThreads);
+        this.tableMetrics = tableMetrics;
+
+        int batches = 2 * (this.encoderThreads + 1);
+        this.free = new ArrayBlockingQueue<>(batches);
+        this.toEncode = new ArrayList<>(this.encoderThreads);
+        this.encoded = new ArrayList<>(this.encoderThreads);
+        for (int i = 0; i < this.encoderThreads; i++) {
+            //the end marker is queued on top of the batches
+            toEncode.add(new ArrayBlockingQueue<>(batches + 1));
+            encoded.add(new ArrayBlockingQueue<>(batches + 1));
+        }
+        this.done = new CountDownLatch(this.encoderThreads + 1);
+    }
+
+    /**
+     * This will write all the rows of the result set, from the current one
+     * @param statements the writer of the INSERT statements
+     * @throws SQLException if reading the rows fails
+     * @throws IOException if writing to the output fails
+     */
+    void writeTo(InsertStatementWriter statements) throws SQLException, IOException {
+
+        RowBatch first = new RowBatch(kinds.length);
+        long mark = tableMetrics.time();
+        boolean more = first.copy(rs, kinds);
+        mark = tableMetrics.lap(BackupListener.Phase.DATA_READ, mark);
+
+        //a small table is not worth the threads
+        if (!more) {
+            first.encode(kinds);
+            tableMetrics.lap(BackupListener.Phase.ENCODE, mark);
+            write(first, statements);
+            return;
+        }
+
+        for (int i = 1; i < 2 * (encoderThreads + 1); i++) {
+            free.add(new RowBatch(kinds.length));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(encoderThreads + 1, runnable -> {
+            Thread thread = new Thread(runnable, "mysql-backup4j-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            executor.execute(() -> runStage(() -> read(first)));
+            for (int i = 0; i < encoderThreads; i++) {
+                int encoder = i;
+                executor.execute(() -> runStage(() -> encode(encoder)));
+            }
+
+            for (long sequence = 0; ; sequence++) {
+                RowBatch batch = take(encoded.get((int) (sequence % encoderThreads)));
+                if (batch == END) {
+                    break;
+                }
+                write(batch, statements);
+                put(free, batch);
+            }
+        } catch (StoppedException e) {
+            throw failure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the rows");
+        } finally {
+            //the result set is closed by the caller, so the reader must be done with it first
+            stopped = true;
+            executor.shutdownNow();
+            awaitStages();
+        }
+    }
+
+    /**
+     * This is the reader stage, it copies the rows into free batches
+     * and queues them to the encoders in turn
+     * @param first the first batch, already copied
+     * @throws SQLException exception
+     * @throws InterruptedException exception
+     */
+    private void read(RowBatch first) throws SQLException, InterruptedException {
+        RowBatch batch = first;
+        long sequence = 0;
+        boolean more = true;
+        while (true) {
+            put(toEncode.get((int) (sequence++ % encoderThreads)), batch);
+            if (!more) {
+                break;
+            }
+            batch = take(free);
+            long mark = tableMetrics.time();
+            more = batch.copy(rs, kinds);
+            tableMetrics.lap(BackupListener.Phase.DATA_READ, mark);
+        }
+        //every encoder is told to stop, the writer stops at the first end it reads
+        for (BlockingQueue<RowBatch> queue : toEncode) {
+            put(queue, END);
+        }
+    }
+
+    /**
+     * This is an encoder stage, it encodes every batch of its queue
+     * @param encoder the index of the encoder
+     * @throws InterruptedException exception
+     */
+    private void encode(int encoder) throws InterruptedException {
+        while (true) {
+            RowBatch batch = take(toEncode.get(encoder));
+            if (batch != END) {
+                long mark = tableMetrics.time();
+                batch.encode(kinds);
+                tableMetrics.lap(BackupListener.Phase.ENCODE, mark);
+            }
+            put(encoded.get(encoder), batch);
+            if (batch == END) {
+                return;
+            }
+        }
+    }
+
+    private void write(RowBatch batch, InsertStatementWriter statements) throws IOException {
+        long mark = tableMetrics.time();
+        int start = 0;
+        for (int i = 0; i < batch.rows; i++) {
+            statements.writeRow(batch.chars, start, batch.rowEnds[i] - start);
+            start = batch.rowEnds[i];
+        }
+        tableMetrics.add(batch.rows, start, tableMetrics.lap(BackupListener.Phase.WRITE, mark));
+    }
+
+    private void runStage(Stage stage) {
+        try {
+            stage.run();
+        } catch (StoppedException e) {
+            //another stage failed or the writer is done
+        } catch (Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+            stopped = true;
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private void awaitStages() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private RuntimeException failure() throws SQLException {
+        Throwable e = failure;
+        if (e instanceof SQLException) {
+            throw (SQLException) e;
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new MysqlBackup4JException("The pipelined export failed: " + e, e);
+    }
+
+    /**
+     * These wait for the queue, as long as no stage has failed
+     */
+    private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+        T item;
+        while ((item = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+            checkStopped();
+        }
+        return item;
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T item) throws InterruptedException {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            checkStopped();
+        }
+    }
+
+    private void checkStopped() {
+        if (stopped) {
+            throw new StoppedException();
+        }
+    }
+
+    /**
+     * This will return the kinds of values the encoders of the columns write
+     * @param encoders the encoders of the columns
+     * @return the kinds
+     */
+    private static ColumnEncoders.Kind[] kinds(ColumnEncoder[] encoders) {
+        ColumnEncoders.Kind[] kinds = new ColumnEncoders.Kind[encoders.length];
+        for (int i = 0; i < encoders.length; i++) {
+            kinds[i] = ColumnEncoders.kind(encoders[i]);
+        }
+        return kinds;
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private static class StoppedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        StoppedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The values of up to BATCH_ROWS rows, copied from the result set
+     * into arrays that are reused by the next batch, and the SQL they are encoded to.
+     * Integers and doubles are copied into primitive arrays, so they are not boxed
+     */
+    private static class RowBatch {
+
+        private final int columns;
+        private final long[] longs;
+        private final double[] doubles;
+        private final Object[] values;
+        private final boolean[] nulls;
+        private final int[] rowEnds = new int[BATCH_ROWS];
+        private final StringBuilder text = new StringBuilder();
+        private char[] chars = new char[0];
+        private int rows;
+
+        RowBatch(int columns) {
+            this.columns = columns;
+            this.longs = new long[BATCH_ROWS * columns];
+            this.doubles = new double[BATCH_ROWS * columns];
+            this.values = new Object[BATCH_ROWS * columns];
+            this.nulls = new boolean[BATCH_ROWS * columns];
+        }
+
+        /**
+         * This will copy the current row of the result set and the following ones
+         * until the batch is full
+         * @param rs the result set, positioned on a row
+         * @param kinds the kinds of the columns
+         * @return true if the result set is positioned on a row that was not copied
+         * @throws SQLException exception
+         */
+        boolean copy(ResultSet rs, ColumnEncoders.Kind[] kinds) throws SQLException {
+            rows = 0;
+            long copiedChars = 0;
+            boolean more;
+            do {
+                int index = rows * columns;
+                for (int i = 0; i < columns; i++, index++) {
+                    int columnIndex = i + 1;
+                    values[index] = null;
+                    switch (kinds[i]) {
+                        case INTEGER:
+                        case BIT:
+                            longs[index] = rs.getLong(columnIndex);
+                            nulls[index] = rs.wasNull();
+                            copiedChars += 20;
+                            break;
+                        case DOUBLE:
+                            doubles[index] = rs.getDouble(columnIndex);
+                            nulls[index] = rs.wasNull();
+                            copiedChars += 24;
+                            break;
+                        case BINARY:
+                            byte[] bytes = rs.getBytes(columnIndex);
+                            values[index] = bytes;
+                            nulls[index] = bytes == null;
+                            copiedChars += bytes == null ? 4 : 2L * bytes.length;
+                            break;
+                        default:
+                            String value = rs.getString(columnIndex);
+                            values[index] = value;
+                            nulls[index] = value == null;
+                            copiedChars += value == null ? 4 : value.length();
+                    }
+                }
+                rows++;
+                more = rs.next();
+            } while (more && rows < BATCH_ROWS && copiedChars < BATCH_CHARS);
+            return more;
+        }
+
+        /**
+         * This will encode the copied rows one after the other, e.g. (1, 'a')(2, 'b'),
+         * recording where every row ends
+         * @param kinds the kinds of the columns
+         */
+        void encode(ColumnEncoders.Kind[] kinds) {
+            StringBuilder out = text;
+            out.setLength(0);
+            int index = 0;
+            for (int row = 0; row < rows; row++) {
+                out.append('(');
+                for (int i = 0; i < columns; i++, index++) {
+                    if (i > 0) out.append(", ");
+                    if (nulls[index]) {
+                        out.append("null");
+                        continue;
+                    }
+                    ColumnEncoders.Kind kind = kinds[i];
+                    switch (kind) {
+                        case INTEGER:
+                        case BIT:
+                            ColumnEncoders.appendLong(kind, longs[index], out);
+                            break;
+                        case DOUBLE:
+                            ColumnEncoders.appendDouble(doubles[index], out);
+                            break;
+                        case BINARY:
+                            ColumnEncoders.appendBytes((byte[]) values[index], out);
+                            break;
+                        default:
+                            ColumnEncoders.appendText(kind, (String) values[index], out);
+                    }
+                    //the values are not needed anymore once encoded
+                    values[index] = null;
+                }
+                out.append(')');
+                rowEnds[row] = out.length();
+            }
+
+            if (chars.length < out.length()) {
+                chars = new char[Math.max(out.length(), chars.length * 2)];
+            }
+            out.getChars(0, out.length(), chars, 0);
+        }
+    }
+}
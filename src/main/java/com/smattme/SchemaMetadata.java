@@ -0,0 +1,171 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tables and views of a database with their estimated sizes, read from
+ * information_schema with a single query and kept for the duration of an export.
+ * Unlike SHOW TABLE STATUS, information_schema.TABLES serves the sizes from the
+ * cached statistics of MySQL 8, so it does not open every table to recalculate them,
+ * which is slow on schemas with thousands of tables.
+ * The single column integer keys the large tables are split on are
+ * read on first use, with one query for all the tables
+ */
+class SchemaMetadata {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMetadata.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-export";
+
+    private static final List<String> INTEGER_TYPES = Arrays.asList("tinyint", "smallint", "mediumint", "int", "integer", "bigint");
+
+    private final Connection connection;
+    private final String database;
+    private final Map<String, TableInfo> tables = new LinkedHashMap<>();
+    private Map<String, String> keyColumns;
+
+    private SchemaMetadata(Connection connection, String database) {
+        this.connection = connection;
+        this.database = database;
+    }
+
+    /**
+     * This will read the tables and views of the supplied database
+     * @param connection the connection to query information_schema with
+     * @param database the database
+     * @return SchemaMetadata
+     * @throws SQLException exception
+     */
+    static SchemaMetadata load(Connection connection, String database) throws SQLException {
+
+        SchemaMetadata metadata = new SchemaMetadata(connection, database);
+        try (PreparedStatement ps = connection.prepareStatement("SELECT TABLE_NAME, TABLE_TYPE, TABLE_ROWS, AVG_ROW_LENGTH, " +
+                "DATA_LENGTH FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME")) {
+            ps.setString(1, database);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    TableInfo table = new TableInfo(rs.getString(1), "VIEW".equals(rs.getString(2)),
+                            rs.getLong(3), rs.getLong(4), rs.getLong(5));
+                    metadata.tables.put(table.name, table);
+                }
+            }
+        }
+        logger.debug(LOG_PREFIX + ": {} tables and views found in {}", metadata.tables.size(), database);
+        return metadata;
+    }
+
+    /**
+     * @return the names of the base tables, sorted by name
+     */
+    List<String> getTables() {
+        List<String> names = new ArrayList<>();
+        for (TableInfo table : tables.values()) {
+            if (!table.view) names.add(table.name);
+        }
+        return names;
+    }
+
+    /**
+     * @return the names of the views, sorted by name
+     */
+    List<String> getViews() {
+        List<String> names = new ArrayList<>();
+        for (TableInfo table : tables.values()) {
+            if (table.view) names.add(table.name);
+        }
+        return names;
+    }
+
+    /**
+     * @param table the table
+     * @return the metadata of the table, or null if it's not in the database
+     */
+    TableInfo getTable(String table) {
+        return tables.get(table);
+    }
+
+    /**
+     * This will return the column the supplied table can be split into
+     * key ranges on: that of the primary key, or else that of a unique index
+     * over a single not null column, if the column is an integer.
+     * The keys of all the tables are read on the first call
+     * @param table the table
+     * @return the column name or null
+     * @throws SQLException exception
+     */
+    String getKeyColumn(String table) throws SQLException {
+        if (keyColumns == null) {
+            keyColumns = readKeyColumns();
+        }
+        return keyColumns.get(table);
+    }
+
+    private Map<String, String> readKeyColumns() throws SQLException {
+
+        String sql = "SELECT s.TABLE_NAME, s.INDEX_NAME, s.COLUMN_NAME, c.DATA_TYPE, c.IS_NULLABLE " +
+                "FROM information_schema.STATISTICS s JOIN information_schema.COLUMNS c " +
+                "ON c.TABLE_SCHEMA = s.TABLE_SCHEMA AND c.TABLE_NAME = s.TABLE_NAME AND c.COLUMN_NAME = s.COLUMN_NAME " +
+                "WHERE s.TABLE_SCHEMA = ? AND s.NON_UNIQUE = 0 " +
+                "ORDER BY s.TABLE_NAME, s.INDEX_NAME = 'PRIMARY' DESC, s.INDEX_NAME, s.SEQ_IN_INDEX";
+
+        Map<String, String> keys = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, database);
+            try (ResultSet rs = ps.executeQuery()) {
+
+                String table = null;
+                String index = null;
+                String column = null;
+                boolean usable = false;
+                while (rs.next()) {
+                    String rowTable = rs.getString(1);
+                    String rowIndex = rs.getString(2);
+                    if (!rowTable.equals(table) || !rowIndex.equals(index)) {
+                        if (usable && !keys.containsKey(table)) keys.put(table, column);
+                        table = rowTable;
+                        index = rowIndex;
+                        column = rs.getString(3);
+                        usable = INTEGER_TYPES.contains(rs.getString(4).toLowerCase())
+                                && "NO".equalsIgnoreCase(rs.getString(5));
+                    } else {
+                        //composite keys are not split
+                        usable = false;
+                    }
+                }
+                if (usable && !keys.containsKey(table)) keys.put(table, column);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * The name, kind and estimated size of a table or view
+     */
+    static class TableInfo {
+
+        final String name;
+        final boolean view;
+        final long estimatedRows;
+        final long averageRowLength;
+        final long dataLength;
+
+        TableInfo(String name, boolean view, long estimatedRows, long averageRowLength, long dataLength) {
+            this.name = name;
+            this.view = view;
+            this.estimatedRows = estimatedRows;
+            this.averageRowLength = averageRowLength;
+            this.dataLength = dataLength;
+        }
+    }
+}
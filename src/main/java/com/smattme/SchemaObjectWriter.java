@@ -0,0 +1,318 @@
+package com.smattme;
+
+import com.smattme.helpers.MysqlImportServiceHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.smattme.helpers.MysqlExportServiceHelper.appendEscaped;
+
+/**
+ * This writes the definitions of the views, stored routines, triggers and events
+ * of a database. Each kind of object is read with a single information_schema query
+ * instead of a SHOW CREATE statement per object, and the CREATE statements are rebuilt
+ * from the columns, without a DEFINER clause so they can be restored by any user
+ * with the privileges to create them.
+ * Views are written after the routines they may call and in dependency order, so a
+ * view is always created after the views it selects from. Triggers and events are written
+ * last, and the import applies them after all the data is loaded, so loading the rows
+ * neither fires the triggers nor runs the events.
+ * Routines, triggers and events are created with the sql_mode they were defined with,
+ * and events in their time zone, by SET statements that precede them.
+ * The CREATE statements of routines, triggers and events, whose bodies may hold
+ * statements of their own, are wrapped in DELIMITER commands like mysqldump does,
+ * so the dump can be read on the delimiters and by the mysql client too
+ */
+class SchemaObjectWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaObjectWriter.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-export";
+
+    private static final String ROUTINE = "routine";
+    private static final String VIEW = "view";
+    private static final String TRIGGER = "trigger";
+    private static final String EVENT = "event";
+    private static final String COMPOUND_DELIMITER = ";;";
+    private static final String DELIMITER_COMMAND = "DELIMITER ";
+
+    private final Connection connection;
+    private final String database;
+
+    SchemaObjectWriter(Connection connection, String database) {
+        this.connection = connection;
+        this.database = database;
+    }
+
+    /**
+     * This will tell whether the supplied statement of a dump creates
+     * or drops a trigger or an event, and should therefore be applied
+     * after all the data is loaded. The statement is recognised by its keywords,
+     * so it doesn't matter whether it was read with its start marker or not.
+     * The SET statements that precede it are not recognised on their own,
+     * the import replays them before it
+     * @param sql the statement
+     * @return true for trigger and event statements
+     */
+    static boolean isPostDataStatement(String sql) {
+        return MysqlImportServiceHelper.isTriggerOrEventStatement(sql);
+    }
+
+    /**
+     * This will write the stored procedures and functions of the database.
+     * Routines whose body the user is not allowed to see are skipped with a warning
+     * @param writer the output
+     * @throws SQLException exception
+     * @throws IOException exception
+     */
+    void writeRoutines(Writer writer) throws SQLException, IOException {
+
+        //the parameters of all the routines, in order
+        Map<String, StringBuilder> parameters = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT SPECIFIC_NAME, ROUTINE_TYPE, PARAMETER_MODE, " +
+                "PARAMETER_NAME, DTD_IDENTIFIER FROM information_schema.PARAMETERS " +
+                "WHERE SPECIFIC_SCHEMA = ? AND ORDINAL_POSITION > 0 ORDER BY SPECIFIC_NAME, ROUTINE_TYPE, ORDINAL_POSITION")) {
+            ps.setString(1, database);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    StringBuilder list = parameters.computeIfAbsent(rs.getString(2) + " " + rs.getString(1), k -> new StringBuilder());
+                    if (list.length() > 0) list.append(", ");
+                    if (rs.getString(3) != null) list.append(rs.getString(3)).append(' ');
+                    list.append(quote(rs.getString(4))).append(' ').append(rs.getString(5));
+                }
+            }
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement("SELECT ROUTINE_NAME, ROUTINE_TYPE, DTD_IDENTIFIER, " +
+                "ROUTINE_DEFINITION, IS_DETERMINISTIC, SQL_DATA_ACCESS, SECURITY_TYPE, ROUTINE_COMMENT, SQL_MODE " +
+                "FROM information_schema.ROUTINES WHERE ROUTINE_SCHEMA = ? ORDER BY ROUTINE_TYPE, ROUTINE_NAME")) {
+            ps.setString(1, database);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    String type = rs.getString(2);
+                    String body = rs.getString(4);
+                    if (body == null) {
+                        logger.warn(LOG_PREFIX + ": the definition of {} {} is not visible to the user, it's not exported", type, name);
+                        continue;
+                    }
+
+                    StringBuilder sql = new StringBuilder("CREATE ").append(type).append(' ').append(quote(name)).append('(');
+                    StringBuilder parameterList = parameters.get(type + " " + name);
+                    if (parameterList != null) sql.append(parameterList);
+                    sql.append(')');
+                    if ("FUNCTION".equals(type)) {
+                        sql.append(" RETURNS ").append(rs.getString(3));
+                    }
+                    sql.append("\n    ").append("YES".equals(rs.getString(5)) ? "DETERMINISTIC" : "NOT DETERMINISTIC");
+                    sql.append("\n    ").append(rs.getString(6));
+                    sql.append("\n    SQL SECURITY ").append(rs.getString(7));
+                    appendComment(rs.getString(8), sql);
+                    sql.append('\n').append(body);
+
+                    String label = type.toLowerCase() + " " + name;
+                    writeStatement(writer, ROUTINE, label, "SET SESSION sql_mode = " + literal(rs.getString(9)));
+                    writeStatement(writer, ROUTINE, label, "DROP " + type + " IF EXISTS " + quote(name));
+                    writeCompoundStatement(writer, ROUTINE, label, sql.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * This will write the supplied views in dependency order. A view is
+     * written after the views its definition refers to, otherwise views
+     * keep the order of the supplied list
+     * @param writer the output
+     * @param views the views to write
+     * @throws SQLException exception
+     * @throws IOException exception
+     */
+    void writeViews(Writer writer, List<String> views) throws SQLException, IOException {
+
+        Map<String, String> definitions = new LinkedHashMap<>();
+        Map<String, String> options = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT TABLE_NAME, VIEW_DEFINITION, CHECK_OPTION, SECURITY_TYPE " +
+                "FROM information_schema.VIEWS WHERE TABLE_SCHEMA = ?")) {
+            ps.setString(1, database);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getString(2) == null) {
+                        continue;
+                    }
+                    definitions.put(rs.getString(1), rs.getString(2));
+                    String checkOption = rs.getString(3);
+                    options.put(rs.getString(1), rs.getString(4) + "|" + (checkOption == null ? "NONE" : checkOption));
+                }
+            }
+        }
+
+        //information_schema qualifies every table with the database, which would tie the view to it
+        String qualifier = quote(database) + ".";
+        for (String view : sortViews(views, definitions, qualifier)) {
+            String definition = definitions.get(view);
+            if (definition == null) {
+                logger.warn(LOG_PREFIX + ": the definition of view {} is not visible to the user, it's not exported", view);
+                continue;
+            }
+            String[] option = options.get(view).split("\\|");
+            StringBuilder sql = new StringBuilder("CREATE OR REPLACE SQL SECURITY ").append(option[0])
+                    .append(" VIEW ").append(quote(view)).append(" AS ").append(definition.replace(qualifier, ""));
+            if (!"NONE".equals(option[1])) {
+                sql.append(" WITH ").append(option[1]).append(" CHECK OPTION");
+            }
+            writeStatement(writer, VIEW, view, sql.toString());
+        }
+    }
+
+    /**
+     * This will order the views so that every view comes after the views
+     * its definition refers to, and otherwise in the order they were supplied
+     * @param views the views
+     * @param definitions the definition of every view
+     * @param qualifier the database qualifier the definitions refer to the views with
+     * @return the views in dependency order
+     */
+    static List<String> sortViews(List<String> views, Map<String, String> definitions, String qualifier) {
+        Set<String> sorted = new LinkedHashSet<>();
+        for (String view : views) {
+            addView(view, views, definitions, qualifier, sorted, new HashSet<>());
+        }
+        return new ArrayList<>(sorted);
+    }
+
+    private static void addView(String view, Collection<String> views, Map<String, String> definitions, String qualifier,
+                                Set<String> sorted, Set<String> visiting) {
+        if (sorted.contains(view) || !visiting.add(view)) {
+            return;
+        }
+        String definition = definitions.get(view);
+        if (definition != null) {
+            for (String other : views) {
+                if (!other.equals(view) && definition.contains(qualifier + quote(other))) {
+                    addView(other, views, definitions, qualifier, sorted, visiting);
+                }
+            }
+        }
+        sorted.add(view);
+    }
+
+    /**
+     * This will write the triggers of the supplied tables. The triggers
+     * of a table, timing and event are written in their action order,
+     * so they fire in the same order once restored
+     * @param writer the output
+     * @param tables the tables whose triggers are written
+     * @throws SQLException exception
+     * @throws IOException exception
+     */
+    void writeTriggers(Writer writer, Collection<String> tables) throws SQLException, IOException {
+
+        Set<String> exported = new HashSet<>(tables);
+        try (PreparedStatement ps = connection.prepareStatement("SELECT TRIGGER_NAME, EVENT_OBJECT_TABLE, ACTION_TIMING, " +
+                "EVENT_MANIPULATION, ACTION_STATEMENT, SQL_MODE FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = ? " +
+                "ORDER BY EVENT_OBJECT_TABLE, ACTION_TIMING, EVENT_MANIPULATION, ACTION_ORDER")) {
+            ps.setString(1, database);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    if (!exported.contains(rs.getString(2))) {
+                        continue;
+                    }
+                    String sql = "CREATE TRIGGER " + quote(name) + " " + rs.getString(3) + " " + rs.getString(4) +
+                            " ON " + quote(rs.getString(2)) + " FOR EACH ROW\n" + rs.getString(5);
+                    writeStatement(writer, TRIGGER, name, "SET SESSION sql_mode = " + literal(rs.getString(6)));
+                    writeStatement(writer, TRIGGER, name, "DROP TRIGGER IF EXISTS " + quote(name));
+                    writeCompoundStatement(writer, TRIGGER, name, sql);
+                }
+            }
+        }
+    }
+
+    /**
+     * This will write the events of the database. Their schedule
+     * is given in the time zone of the event, which is set before each one
+     * @param writer the output
+     * @throws SQLException exception
+     * @throws IOException exception
+     */
+    void writeEvents(Writer writer) throws SQLException, IOException {
+
+        try (PreparedStatement ps = connection.prepareStatement("SELECT EVENT_NAME, EVENT_DEFINITION, EVENT_TYPE, " +
+                "EXECUTE_AT, INTERVAL_VALUE, INTERVAL_FIELD, STARTS, ENDS, ON_COMPLETION, STATUS, EVENT_COMMENT, " +
+                "SQL_MODE, TIME_ZONE FROM information_schema.EVENTS WHERE EVENT_SCHEMA = ? ORDER BY EVENT_NAME")) {
+            ps.setString(1, database);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    StringBuilder sql = new StringBuilder("CREATE EVENT ").append(quote(name)).append("\n    ON SCHEDULE ");
+                    if ("ONE TIME".equals(rs.getString(3))) {
+                        sql.append("AT ").append(literal(rs.getString(4)));
+                    } else {
+                        sql.append("EVERY ").append(literal(rs.getString(5))).append(' ').append(rs.getString(6));
+                        if (rs.getString(7) != null) sql.append(" STARTS ").append(literal(rs.getString(7)));
+                        if (rs.getString(8) != null) sql.append(" ENDS ").append(literal(rs.getString(8)));
+                    }
+                    sql.append("\n    ON COMPLETION ").append(rs.getString(9));
+                    String status = rs.getString(10);
+                    sql.append("\n    ").append("ENABLED".equals(status) ? "ENABLE" : "DISABLED".equals(status) ? "DISABLE" : "DISABLE ON SLAVE");
+                    appendComment(rs.getString(11), sql);
+                    sql.append("\n    DO ").append(rs.getString(2));
+
+                    writeStatement(writer, EVENT, name, "SET SESSION sql_mode = " + literal(rs.getString(12)));
+                    writeStatement(writer, EVENT, name, "SET SESSION time_zone = " + literal(rs.getString(13)));
+                    writeStatement(writer, EVENT, name, "DROP EVENT IF EXISTS " + quote(name));
+                    writeCompoundStatement(writer, EVENT, name, sql.toString());
+                }
+            }
+        } catch (SQLException e) {
+            //the events are only visible with the EVENT privilege
+            logger.warn(LOG_PREFIX + ": unable to read the events of {}, they are not exported: {}", database, e.getMessage());
+        }
+    }
+
+    private static void appendComment(String comment, StringBuilder sql) {
+        if (comment != null && !comment.isEmpty()) {
+            sql.append("\n    COMMENT ").append(literal(comment));
+        }
+    }
+
+    private static void writeStatement(Writer writer, String kind, String name, String sql) throws IOException {
+        writeBlock(writer, kind, name, sql + ";\n");
+    }
+
+    private static void writeCompoundStatement(Writer writer, String kind, String name, String sql) throws IOException {
+        writeBlock(writer, kind, name, DELIMITER_COMMAND + COMPOUND_DELIMITER + "\n" + sql + COMPOUND_DELIMITER + "\n"
+                + DELIMITER_COMMAND + ";\n");
+    }
+
+    private static void writeBlock(Writer writer, String kind, String name, String block) throws IOException {
+        writer.write("\n\n--\n" + MysqlBaseService.SQL_START_PATTERN + "  " + kind + " dump : " + name + "\n--\n\n");
+        writer.write(block);
+        writer.write("\n--\n" + MysqlBaseService.SQL_END_PATTERN + "  " + kind + " dump : " + name + "\n--\n\n");
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("'");
+        appendEscaped(value == null ? "" : value, literal);
+        return literal.append('\'').toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The session variables an import changes, saved when it gets a connection
+ * and restored before the connection is closed. A connection of a pool is not
+ * really closed but handed to its next user, which must not inherit the
+ * disabled foreign key checks of the import, or the sql_mode, time zone and
+ * character set the statements of a dump set, e.g. those of its routines
+ */
+class SessionState {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionState.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-import";
+
+    private static final String[] VARIABLES = {"sql_mode", "time_zone", "foreign_key_checks", "unique_checks",
+            "character_set_client", "character_set_results", "collation_connection"};
+
+    //the boolean variables, which MySQL only accepts as unquoted numbers or ON and OFF
+    private static final boolean[] NUMERIC = {false, false, true, true, false, false, false};
+
+    private final Connection connection;
+    private final Object[] values;
+
+    private SessionState(Connection connection, Object[] values) {
+        this.connection = connection;
+        this.values = values;
+    }
+
+    /**
+     * This will read the session variables of the supplied connection
+     * @param connection the connection
+     * @return SessionState
+     * @throws SQLException exception
+     */
+    static SessionState save(Connection connection) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < VARIABLES.length; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("@@SESSION.").append(VARIABLES[i]);
+        }
+
+        Object[] values = new Object[VARIABLES.length];
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql.toString())) {
+            rs.next();
+            for (int i = 0; i < VARIABLES.length; i++) {
+                values[i] = NUMERIC[i] ? (Object) rs.getLong(i + 1) : rs.getString(i + 1);
+            }
+        }
+        return new SessionState(connection, values);
+    }
+
+    /**
+     * This will set the session variables back to the values read by save().
+     * A failure is logged, it does not fail the import that has already been done
+     */
+    void restore() {
+        StringBuilder sql = new StringBuilder("SET ");
+        for (int i = 0; i < VARIABLES.length; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("SESSION ").append(VARIABLES[i]).append(" = ?");
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < VARIABLES.length; i++) {
+                //a quoted '1' is rejected for a boolean variable
+                if (NUMERIC[i]) statement.setLong(i + 1, (Long) values[i]);
+                else statement.setString(i + 1, (String) values[i]);
+            }
+            statement.execute();
+        } catch (SQLException e) {
+            logger.warn(LOG_PREFIX + ": unable to restore the session variables of the connection: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.smattme;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the executable statements of an SQL script one at a time,
+ * so a script can be imported without holding all of it in memory
+ */
+interface StatementReader extends Closeable {
+
+    /**
+     * This will return the next statement of the script
+     * @return the statement or null at the end of the script
+     * @throws IOException exception
+     */
+    String next() throws IOException;
+}
@@ -0,0 +1,234 @@
+package com.smattme;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * This selects what the export reads: the tables and views to include or exclude,
+ * and for a table, the columns to export and a WHERE predicate of the rows to export.
+ * The columns and predicate are pushed into the SELECT of the table,
+ * so the rows and columns left out are never read from the server.
+ * Table patterns are globs, where * matches any characters and ? a single one,
+ * or regular expressions when prefixed with regex:
+ * Usage:
+ * <pre>
+ * TableFilter filter = TableFilter.builder()
+ *         .excludeTables("audit_*", "regex:tmp_\\d+")
+ *         .setColumns("users", "id", "email")
+ *         .setWhere("logs", "created_at &gt; NOW() - INTERVAL 30 DAY");
+ * new MysqlExportService(properties).setTableFilter(filter).export();
+ * </pre>
+ * The same is configured with the INCLUDE_TABLES, EXCLUDE_TABLES,
+ * TABLE_COLUMNS.&lt;table&gt; and TABLE_WHERE.&lt;table&gt; properties of the export
+ */
+public class TableFilter {
+
+    private static final String REGEX_PREFIX = "regex:";
+
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+    private final Map<String, List<String>> columns = new HashMap<>();
+    private final Map<String, String> predicates = new HashMap<>();
+
+    private TableFilter() {}
+
+    /**
+     * This function will create a new
+     * TableFilter instance thereby facilitating
+     * a builder pattern
+     * @return TableFilter
+     */
+    public static TableFilter builder() {
+        return new TableFilter();
+    }
+
+    /**
+     * This will build the filter configured in the supplied export properties.
+     * INCLUDE_TABLES and EXCLUDE_TABLES are comma separated lists of patterns,
+     * TABLE_COLUMNS.&lt;table&gt; a comma separated list of columns and
+     * TABLE_WHERE.&lt;table&gt; a predicate
+     * @param properties the export properties
+     * @return TableFilter
+     */
+    static TableFilter fromProperties(Properties properties) {
+        TableFilter filter = new TableFilter();
+        filter.includeTables(split(properties.getProperty(MysqlExportService.INCLUDE_TABLES)));
+        filter.excludeTables(split(properties.getProperty(MysqlExportService.EXCLUDE_TABLES)));
+        String columnsPrefix = MysqlExportService.TABLE_COLUMNS + ".";
+        String wherePrefix = MysqlExportService.TABLE_WHERE + ".";
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(columnsPrefix)) {
+                filter.setColumns(key.substring(columnsPrefix.length()), split(properties.getProperty(key)));
+            } else if (key.startsWith(wherePrefix)) {
+                filter.setWhere(key.substring(wherePrefix.length()), properties.getProperty(key));
+            }
+        }
+        return filter;
+    }
+
+    private static String[] split(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return new String[0];
+        }
+        List<String> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                values.add(part.trim());
+            }
+        }
+        return values.toArray(new String[0]);
+    }
+
+    /**
+     * This limits the export to the tables and views matching
+     * any of the supplied patterns. Everything is included by default
+     * @param patterns globs, or regular expressions prefixed with regex:
+     * @return TableFilter
+     */
+    public TableFilter includeTables(String... patterns) {
+        for (String pattern : patterns) {
+            includes.add(toPattern(pattern));
+        }
+        return this;
+    }
+
+    /**
+     * This leaves the tables and views matching any of the supplied
+     * patterns out of the export. Exclusions take precedence over inclusions
+     * @param patterns globs, or regular expressions prefixed with regex:
+     * @return TableFilter
+     */
+    public TableFilter excludeTables(String... patterns) {
+        for (String pattern : patterns) {
+            excludes.add(toPattern(pattern));
+        }
+        return this;
+    }
+
+    /**
+     * This limits the data exported for a table to the supplied columns.
+     * The columns left out are restored with their default values,
+     * so they must be nullable or have a default
+     * @param table the table
+     * @param columnNames the columns to export
+     * @return TableFilter
+     */
+    public TableFilter setColumns(String table, String... columnNames) {
+        if (columnNames.length == 0) {
+            columns.remove(table);
+        } else {
+            List<String> names = new ArrayList<>();
+            for (String column : columnNames) {
+                names.add(column.trim());
+            }
+            columns.put(table, Collections.unmodifiableList(names));
+        }
+        return this;
+    }
+
+    /**
+     * This limits the rows exported for a table to the ones matching the
+     * supplied predicate, which is added to the WHERE clause as it is.
+     * The table definition is always exported, a predicate of FALSE exports it without rows
+     * @param table the table
+     * @param predicate an SQL predicate, e.g. created_at &gt; NOW() - INTERVAL 30 DAY
+     * @return TableFilter
+     */
+    public TableFilter setWhere(String table, String predicate) {
+        if (predicate == null || predicate.trim().isEmpty()) {
+            predicates.remove(table);
+        } else {
+            predicates.put(table, predicate.trim());
+        }
+        return this;
+    }
+
+    /**
+     * @param table the table or view
+     * @return true if the table or view is exported
+     */
+    boolean isIncluded(String table) {
+        for (Pattern exclude : excludes) {
+            if (exclude.matcher(table).matches()) {
+                return false;
+            }
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (Pattern include : includes) {
+            if (include.matcher(table).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This will return the select list of the supplied table
+     * @param table the table
+     * @return the quoted column names or *
+     */
+    String getSelectList(String table) {
+        List<String> names = columns.get(table);
+        if (names == null) {
+            return "*";
+        }
+        StringBuilder selectList = new StringBuilder();
+        for (String name : names) {
+            if (selectList.length() > 0) selectList.append(", ");
+            selectList.append('`').append(name.replace("`", "``")).append('`');
+        }
+        return selectList.toString();
+    }
+
+    /**
+     * This will combine the predicate of the supplied table with
+     * another predicate of the export, e.g. an incremental watermark
+     * @param table the table
+     * @param where the other predicate, can be null
+     * @return the combined predicate or null if there is none
+     */
+    String getWhere(String table, String where) {
+        String predicate = predicates.get(table);
+        if (predicate == null) {
+            return where;
+        }
+        return where == null ? predicate : "(" + predicate + ") AND (" + where + ")";
+    }
+
+    /**
+     * This will turn a glob, or a regular expression
+     * prefixed with regex:, into a pattern
+     * @param pattern the pattern
+     * @return Pattern
+     */
+    static Pattern toPattern(String pattern) {
+        String trimmed = pattern.trim();
+        if (trimmed.startsWith(REGEX_PREFIX)) {
+            return Pattern.compile(trimmed.substring(REGEX_PREFIX.length()));
+        }
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : trimmed.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,140 @@
+package com.smattme;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The rows, bytes and phase timings of a single table of an export or an import.
+ * The key ranges of a table split by the parallel export are recorded in the same
+ * metrics from several threads, and the table is finished when its last range is
+ */
+public class TableMetrics {
+
+    private final BackupMetrics run;
+    private final BackupListener.Operation operation;
+    private final String table;
+    private final long estimatedRows;
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder[] nanos = new LongAdder[BackupListener.Phase.values().length];
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger remainingSegments;
+    private volatile long startNanos;
+    private volatile long elapsedNanos;
+
+    TableMetrics(BackupMetrics run, BackupListener.Operation operation, String table, long estimatedRows, int segments) {
+        this.run = run;
+        this.operation = operation;
+        this.table = table;
+        this.estimatedRows = estimatedRows;
+        this.remainingSegments = new AtomicInteger(segments);
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = new LongAdder();
+        }
+    }
+
+    public BackupListener.Operation getOperation() {
+        return operation;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the estimated number of rows of the table or -1 if unknown
+     */
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    /**
+     * @return the rows exported, or inserted by the import
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * @return the characters of SQL of the rows, or the size of the
+     * data file when the export writes the data in DATA_FORMAT
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @param phase the phase
+     * @return the time spent in the phase for this table, in nanoseconds
+     */
+    public long getNanos(BackupListener.Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * @return the time from the start of the table to its end, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * This is called before a segment of the table is processed,
+     * the table is reported as started on the first call
+     */
+    void begin() {
+        if (run != null && started.compareAndSet(false, true)) {
+            startNanos = System.nanoTime();
+            run.tableStarted(this);
+        }
+    }
+
+    /**
+     * This is called after a segment of the table is processed,
+     * the table is reported as finished once all its segments are
+     */
+    void end() {
+        if (run != null && remainingSegments.decrementAndGet() == 0) {
+            elapsedNanos = System.nanoTime() - startNanos;
+            run.tableFinished(this);
+        }
+    }
+
+    /**
+     * @return the current time, or 0 when no listener is set
+     */
+    long time() {
+        return run == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * This will add the time since the supplied one to a phase
+     * @param phase the phase
+     * @param since the value of time() the phase started at
+     * @return the current time, for the next phase to start at
+     */
+    long lap(BackupListener.Phase phase, long since) {
+        if (run == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        nanos[phase.ordinal()].add(now - since);
+        return now;
+    }
+
+    /**
+     * This will count rows and bytes of the table
+     * @param rowCount the number of rows
+     * @param byteCount the number of bytes
+     * @param now the current time, to decide whether to report progress
+     */
+    void add(long rowCount, long byteCount, long now) {
+        if (run == null) {
+            return;
+        }
+        rows.add(rowCount);
+        bytes.add(byteCount);
+        run.add(rowCount, byteCount, now);
+    }
+}
@@ -0,0 +1,190 @@
+package com.smattme;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static com.smattme.helpers.MysqlExportServiceHelper.appendEscaped;
+
+/**
+ * This keeps the watermark of every table for the incremental export
+ * in a small properties file: the column the changes are tracked with and the
+ * largest value of that column seen by the previous export.
+ * A table is tracked with the configured timestamp column, e.g. updated_at,
+ * if it has one, otherwise with its auto increment column. Tables with neither
+ * are exported in full every time.
+ * Watermarks are only advanced for the tables that were exported successfully
+ * and only written to the file by save(), after the whole export is complete
+ */
+class WatermarkStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatermarkStore.class);
+    private static final String LOG_PREFIX = "mysql-backup4j-export";
+
+    private static final String COLUMN_SUFFIX = ".column";
+    private static final String VALUE_SUFFIX = ".value";
+
+    private final File file;
+    private final Properties state = new Properties();
+
+    /**
+     * This will load the watermarks of the previous
+     * export from the supplied file, if it exists
+     * @param file the state file
+     * @throws IOException exception
+     */
+    WatermarkStore(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                state.load(in);
+            }
+        }
+    }
+
+    /**
+     * This will resolve the watermark of the supplied table for this export.
+     * The upper bound is read before the rows, so rows changed while the
+     * table is being exported are picked up again by the next export
+     * @param connection the connection to query the table with
+     * @param database the database of the table
+     * @param table the table
+     * @param timestampColumn the name of the column tracking the time rows were changed, can be null
+     * @return the watermark or null if the table has no column to track its changes with
+     * @throws SQLException exception
+     */
+    Watermark next(Connection connection, String database, String table, String timestampColumn) throws SQLException {
+
+        String column = null;
+        boolean timestamp = false;
+        try (PreparedStatement ps = connection.prepareStatement("SELECT COLUMN_NAME, EXTRA FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION")) {
+            ps.setString(1, database);
+            ps.setString(2, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    if (timestampColumn != null && name.equalsIgnoreCase(timestampColumn)) {
+                        column = name;
+                        timestamp = true;
+                        break;
+                    }
+                    String extra = rs.getString(2);
+                    if (column == null && extra != null && extra.toLowerCase().contains("auto_increment")) {
+                        column = name;
+                    }
+                }
+            }
+        }
+
+        if (column == null) {
+            logger.debug(LOG_PREFIX + ": {} has no column to track its changes with, exporting all its rows", table);
+            return null;
+        }
+
+        String to;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MAX(`" + column.replace("`", "``") + "`) FROM `" + table + "`")) {
+            to = rs.next() ? rs.getString(1) : null;
+        }
+
+        //a watermark of another column is of no use, the table is exported in full again
+        String from = column.equals(state.getProperty(table + COLUMN_SUFFIX)) ? state.getProperty(table + VALUE_SUFFIX) : null;
+        return new Watermark(table, column, timestamp, from, to);
+    }
+
+    /**
+     * This will record the upper bound of the supplied
+     * watermark as the starting point of the next export
+     * @param watermark the watermark of a table that was exported successfully
+     */
+    synchronized void advance(Watermark watermark) {
+        String value = watermark.to != null ? watermark.to : watermark.from;
+        if (value == null) {
+            return;
+        }
+        state.setProperty(watermark.table + COLUMN_SUFFIX, watermark.column);
+        state.setProperty(watermark.table + VALUE_SUFFIX, value);
+    }
+
+    /**
+     * This will write the watermarks to the state file. The file is
+     * replaced atomically where the file system allows it, so a crash
+     * never leaves a partially written state behind
+     * @throws IOException exception
+     */
+    synchronized void save() throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            state.store(out, "mysql-backup4j incremental export watermarks");
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The range of a tracking column the rows
+     * of a table are exported in by one export
+     */
+    static class Watermark {
+
+        private final String table;
+        private final String column;
+        private final boolean timestamp;
+        private final String from;
+        private final String to;
+
+        Watermark(String table, String column, boolean timestamp, String from, String to) {
+            this.table = table;
+            this.column = column;
+            this.timestamp = timestamp;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * This will build the WHERE predicate selecting the rows changed
+         * since the previous export. Rows changed at the very time of the previous
+         * watermark are exported again, since more of them may have been written
+         * after it was taken, which is harmless as the rows are written with REPLACE
+         * @return the predicate or null to export all the rows of the first export
+         */
+        String getPredicate() {
+            if (from == null) {
+                return null;
+            }
+            String quotedColumn = "`" + column.replace("`", "``") + "`";
+            StringBuilder predicate = new StringBuilder(quotedColumn).append(timestamp ? " >= " : " > ");
+            appendLiteral(from, predicate);
+            if (to != null) {
+                predicate.append(" AND ").append(quotedColumn).append(" <= ");
+                appendLiteral(to, predicate);
+            }
+            return predicate.toString();
+        }
+
+        private static void appendLiteral(String value, StringBuilder out) {
+            out.append('\'');
+            appendEscaped(value, out);
+            out.append('\'');
+        }
+    }
+}
@@ -5,4 +5,8 @@ public class MysqlBackup4JException extends RuntimeException {
     public MysqlBackup4JException(String message) {
         super(message);
     }
+
+    public MysqlBackup4JException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
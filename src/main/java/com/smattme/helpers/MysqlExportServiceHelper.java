@@ -2,13 +2,55 @@ package com.smattme.helpers;
 
 public class MysqlExportServiceHelper {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    //the escape sequence of every character that must be escaped in a quoted SQL string, or null
+    private static final String[] SQL_ESCAPES = new String[128];
+    static {
+        SQL_ESCAPES['\0'] = "\\0";
+        SQL_ESCAPES['\n'] = "\\n";
+        SQL_ESCAPES['\r'] = "\\r";
+        SQL_ESCAPES['\\'] = "\\\\";
+        SQL_ESCAPES['\''] = "\\'";
+        SQL_ESCAPES['"'] = "\\\"";
+        SQL_ESCAPES['\032'] = "\\Z";
+    }
+
     public static String bytesToHex(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder();
+        StringBuilder hexString = new StringBuilder(bytes.length * 2);
+        appendHex(bytes, hexString);
+        return hexString.toString();
+    }
+
+    /**
+     * This will append the lowercase hex digits
+     * of the supplied bytes to the builder
+     * @param bytes the bytes
+     * @param out the builder to append to
+     */
+    public static void appendHex(byte[] bytes, StringBuilder out) {
         for (byte b : bytes) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
+            out.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
         }
-        return hexString.toString();
+    }
+
+    /**
+     * This will append the supplied value to the builder
+     * with the characters that are special in a quoted SQL
+     * string escaped the way mysql_real_escape_string() does
+     * @param value the value
+     * @param out the builder to append to
+     */
+    public static void appendEscaped(String value, StringBuilder out) {
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 128 && SQL_ESCAPES[c] != null) {
+                out.append(value, start, i).append(SQL_ESCAPES[c]);
+                start = i + 1;
+            }
+        }
+        out.append(value, start, length);
     }
 }
@@ -0,0 +1,293 @@
+package com.smattme.helpers;
+
+public class MysqlImportServiceHelper {
+
+    private static final String[] INSERT_MODIFIERS = {"LOW_PRIORITY", "DELAYED", "HIGH_PRIORITY", "IGNORE"};
+    private static final String[] LOAD_DATA_MODIFIERS = {"LOW_PRIORITY", "CONCURRENT"};
+    private static final String[] LOAD_DATA_DUPLICATE_HANDLING = {"REPLACE", "IGNORE"};
+
+    /**
+     * This will return the name of the table the supplied
+     * statement inserts into, or null if it's not an INSERT statement.
+     * Leading whitespace and comment lines, like the start marker
+     * of the statement, are skipped
+     * @param sql the statement
+     * @return the table name or null
+     */
+    public static String getInsertTable(String sql) {
+
+        int i = skipWhitespaceAndComments(sql, 0);
+        int keywordEnd = matchKeyword(sql, i, "INSERT");
+        if (keywordEnd < 0) {
+            keywordEnd = matchKeyword(sql, i, "REPLACE");
+        }
+        if (keywordEnd < 0) {
+            return null;
+        }
+
+        i = skipWhitespaceAndComments(sql, keywordEnd);
+        for (String modifier : INSERT_MODIFIERS) {
+            int modifierEnd = matchKeyword(sql, i, modifier);
+            if (modifierEnd >= 0) {
+                i = skipWhitespaceAndComments(sql, modifierEnd);
+            }
+        }
+
+        int intoEnd = matchKeyword(sql, i, "INTO");
+        if (intoEnd >= 0) {
+            i = skipWhitespaceAndComments(sql, intoEnd);
+        }
+
+        return readIdentifier(sql, i);
+    }
+
+    /**
+     * This will return the file name of the supplied
+     * LOAD DATA LOCAL INFILE statement, or null if
+     * it's not such a statement
+     * @param sql the statement
+     * @return the file name or null
+     */
+    public static String getLoadDataFile(String sql) {
+        String[] loadData = parseLoadData(sql);
+        return loadData == null ? null : loadData[0];
+    }
+
+    /**
+     * This will return the name of the table the supplied
+     * LOAD DATA LOCAL INFILE statement loads into, or null if
+     * it's not such a statement
+     * @param sql the statement
+     * @return the table name or null
+     */
+    public static String getLoadDataTable(String sql) {
+        String[] loadData = parseLoadData(sql);
+        return loadData == null ? null : loadData[1];
+    }
+
+    /**
+     * This will check if the supplied statement sets session state,
+     * e.g. SET NAMES utf8mb4 or SET SQL_MODE='NO_AUTO_VALUE_ON_ZERO',
+     * including those in a versioned comment like the header of a dump.
+     * SET PASSWORD and the SET ROLE statements are not session state
+     * @param sql the statement
+     * @return true if it's a SET statement of session state
+     */
+    public static boolean isSessionStatement(String sql) {
+
+        int i = skipExecutableComments(sql, 0);
+        int keywordEnd = matchKeyword(sql, i, "SET");
+        if (keywordEnd < 0) {
+            return false;
+        }
+        i = skipWhitespaceAndComments(sql, keywordEnd);
+        return matchKeyword(sql, i, "PASSWORD") < 0 && matchKeyword(sql, i, "ROLE") < 0
+                && matchKeyword(sql, i, "DEFAULT") < 0;
+    }
+
+    /**
+     * This will tell whether the supplied statement creates, alters or drops
+     * a trigger or an event, whether it's written by the export service or by
+     * mysqldump, that puts the keywords and the DEFINER clause in executable comments
+     * @param sql the statement
+     * @return true for trigger and event statements
+     */
+    public static boolean isTriggerOrEventStatement(String sql) {
+
+        int i = skipExecutableComments(sql, 0);
+        int end = matchKeyword(sql, i, "CREATE");
+        if (end < 0) end = matchKeyword(sql, i, "ALTER");
+        if (end < 0) end = matchKeyword(sql, i, "DROP");
+        if (end < 0) {
+            return false;
+        }
+        i = skipExecutableComments(sql, end);
+
+        //CREATE and ALTER may be followed by a DEFINER clause
+        end = matchKeyword(sql, i, "DEFINER");
+        if (end >= 0) {
+            i = skipExecutableComments(sql, skipDefiner(sql, end));
+        }
+        return matchKeyword(sql, i, "TRIGGER") >= 0 || matchKeyword(sql, i, "EVENT") >= 0;
+    }
+
+    /**
+     * This parses LOAD DATA [LOW_PRIORITY | CONCURRENT] LOCAL INFILE 'file'
+     * [REPLACE | IGNORE] INTO TABLE table
+     * @param sql the statement
+     * @return the file name and the table name or null
+     */
+    private static String[] parseLoadData(String sql) {
+
+        int i = skipWhitespaceAndComments(sql, 0);
+        int end = matchKeyword(sql, i, "LOAD");
+        if (end < 0) return null;
+        i = skipWhitespaceAndComments(sql, end);
+        end = matchKeyword(sql, i, "DATA");
+        if (end < 0) return null;
+        i = skipWhitespaceAndComments(sql, end);
+
+        for (String modifier : LOAD_DATA_MODIFIERS) {
+            int modifierEnd = matchKeyword(sql, i, modifier);
+            if (modifierEnd >= 0) {
+                i = skipWhitespaceAndComments(sql, modifierEnd);
+            }
+        }
+
+        end = matchKeyword(sql, i, "LOCAL");
+        if (end < 0) return null;
+        i = skipWhitespaceAndComments(sql, end);
+        end = matchKeyword(sql, i, "INFILE");
+        if (end < 0) return null;
+        i = skipWhitespaceAndComments(sql, end);
+
+        if (i >= sql.length() || (sql.charAt(i) != '\'' && sql.charAt(i) != '"')) return null;
+        char quote = sql.charAt(i);
+        StringBuilder file = new StringBuilder();
+        int j = i + 1;
+        for (; j < sql.length(); j++) {
+            char c = sql.charAt(j);
+            if (c == '\\' && j + 1 < sql.length()) {
+                file.append(sql.charAt(++j));
+            } else if (c == quote) {
+                //a doubled quote is an escaped quote
+                if (j + 1 < sql.length() && sql.charAt(j + 1) == quote) {
+                    file.append(quote);
+                    j++;
+                    continue;
+                }
+                break;
+            } else {
+                file.append(c);
+            }
+        }
+        if (j >= sql.length()) return null;
+        i = skipWhitespaceAndComments(sql, j + 1);
+
+        for (String modifier : LOAD_DATA_DUPLICATE_HANDLING) {
+            int modifierEnd = matchKeyword(sql, i, modifier);
+            if (modifierEnd >= 0) {
+                i = skipWhitespaceAndComments(sql, modifierEnd);
+            }
+        }
+
+        end = matchKeyword(sql, i, "INTO");
+        if (end < 0) return null;
+        i = skipWhitespaceAndComments(sql, end);
+        end = matchKeyword(sql, i, "TABLE");
+        if (end < 0) return null;
+        i = skipWhitespaceAndComments(sql, end);
+
+        String table = readIdentifier(sql, i);
+        return table == null ? null : new String[]{file.toString(), table};
+    }
+
+    /**
+     * This reads a backtick quoted or a bare identifier
+     * @param sql the statement
+     * @param i the position of the identifier
+     * @return the identifier or null
+     */
+    private static String readIdentifier(String sql, int i) {
+
+        if (i < sql.length() && sql.charAt(i) == '`') {
+            StringBuilder identifier = new StringBuilder();
+            for (int j = i + 1; j < sql.length(); j++) {
+                char c = sql.charAt(j);
+                if (c == '`') {
+                    //a doubled backtick is an escaped backtick
+                    if (j + 1 < sql.length() && sql.charAt(j + 1) == '`') {
+                        identifier.append('`');
+                        j++;
+                        continue;
+                    }
+                    return identifier.toString();
+                }
+                identifier.append(c);
+            }
+            return null;
+        }
+
+        int start = i;
+        while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '$')) {
+            i++;
+        }
+        return i > start ? sql.substring(start, i) : null;
+    }
+
+    private static int skipWhitespaceAndComments(String sql, int i) {
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#' || (c == '-' && sql.startsWith("--", i))) {
+                int newLine = sql.indexOf('\n', i);
+                i = newLine < 0 ? sql.length() : newLine + 1;
+            } else if (c == '/' && sql.startsWith("/*", i) && !sql.startsWith("/*!", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? sql.length() : end + 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * This skips whitespace, comments and the delimiters of executable comments,
+     * so the keywords inside the executable comments are read like plain ones
+     * @param sql the statement
+     * @param i the position to start from
+     * @return the position of the next keyword
+     */
+    private static int skipExecutableComments(String sql, int i) {
+        while (true) {
+            i = skipWhitespaceAndComments(sql, i);
+            if (sql.startsWith("/*!", i)) {
+                i += 3;
+                while (i < sql.length() && Character.isDigit(sql.charAt(i))) {
+                    i++;
+                }
+            } else if (sql.startsWith("*/", i)) {
+                i += 2;
+            } else {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * This skips the = user part of a DEFINER clause, where the user
+     * is e.g. `root`@`%`, 'root'@'localhost' or CURRENT_USER
+     * @param sql the statement
+     * @param i the position after the DEFINER keyword
+     * @return the position after the user
+     */
+    private static int skipDefiner(String sql, int i) {
+        i = skipWhitespaceAndComments(sql, i);
+        if (i < sql.length() && sql.charAt(i) == '=') {
+            i = skipWhitespaceAndComments(sql, i + 1);
+        }
+        while (i < sql.length() && !Character.isWhitespace(sql.charAt(i)) && !sql.startsWith("*/", i)) {
+            char c = sql.charAt(i);
+            if (c == '`' || c == '\'' || c == '"') {
+                int close = sql.indexOf(c, i + 1);
+                i = close < 0 ? sql.length() : close + 1;
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static int matchKeyword(String sql, int i, String keyword) {
+        int end = i + keyword.length();
+        if (!sql.regionMatches(true, i, keyword, 0, keyword.length())) {
+            return -1;
+        }
+        if (end < sql.length() && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_')) {
+            return -1;
+        }
+        return end;
+    }
+}
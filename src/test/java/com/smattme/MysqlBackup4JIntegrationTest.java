@@ -1,5 +1,6 @@
 package com.smattme;
 
+import com.smattme.exceptions.MysqlBackup4JException;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -10,19 +11,38 @@ import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.MySQLContainer;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -77,6 +97,7 @@ class MysqlBackup4JIntegrationTest {
 
         properties.setProperty(MysqlExportService.PRESERVE_GENERATED_ZIP, "true");
         properties.setProperty(MysqlExportService.PRESERVE_GENERATED_SQL_FILE, "true");
+        properties.setProperty(MysqlExportService.PRESERVE_GENERATED_SQL, "true");
 
         properties.setProperty(MysqlExportService.JDBC_DRIVER_NAME, DRIVER_CLASS_NAME);
         properties.setProperty(MysqlExportService.ADD_IF_NOT_EXISTS, "true");
@@ -118,6 +139,139 @@ class MysqlBackup4JIntegrationTest {
     }
 
 
+    @Test
+    void givenOutputStreamAndChannel_whenExportTo_thenSameBytesAsFileExportAndGeneratedSqlOnlyWhenPreserved() throws Exception {
+
+        Path tempDir = Files.createTempDirectory("mysql-backup4j-stream");
+        try {
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+            properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+            properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+            properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+            properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+            properties.setProperty(MysqlExportService.TEMP_DIR, tempDir.toString());
+            properties.setProperty(MysqlExportService.SQL_FILE_NAME, "streamed");
+            properties.setProperty(MysqlExportService.PRESERVE_GENERATED_SQL_FILE, "true");
+
+            MysqlExportService fileExport = new MysqlExportService(properties);
+            fileExport.export();
+            String fileSql = withoutDate(Files.readAllBytes(tempDir.resolve("sql").resolve("streamed.sql")));
+            //the SQL is only kept in memory when asked for
+            Assertions.assertEquals("", fileExport.getGeneratedSql());
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            MysqlExportService streamExport = new MysqlExportService(properties);
+            streamExport.exportTo(outputStream);
+            Assertions.assertEquals(fileSql, withoutDate(outputStream.toByteArray()));
+            Assertions.assertEquals("", streamExport.getGeneratedSql());
+
+            Path channelFile = tempDir.resolve("channel.sql");
+            properties.setProperty(MysqlExportService.PRESERVE_GENERATED_SQL, "true");
+            MysqlExportService channelExport = new MysqlExportService(properties);
+            try (FileChannel channel = FileChannel.open(channelFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                channelExport.exportTo(channel);
+                //the caller's channel is left open
+                assertTrue(channel.isOpen());
+            }
+            byte[] channelBytes = Files.readAllBytes(channelFile);
+            Assertions.assertEquals(fileSql, withoutDate(channelBytes));
+            Assertions.assertEquals(new String(channelBytes, StandardCharsets.UTF_8), channelExport.getGeneratedSql());
+        } finally {
+            try (Stream<Path> files = Files.walk(tempDir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    void givenStreamResultsAndFetchSize_whenExportDatabaseAndImportDatabase_thenEveryRowAndEmptyTableRestored() throws Exception {
+
+        String streamedDb = "mysqlbackup4j_streamed";
+        String restoredDb = "mysqlbackup4j_streamed_restored";
+        String select = "SELECT (SELECT COUNT(*) FROM empty_rows), (SELECT GROUP_CONCAT(id ORDER BY id) FROM one_row), " +
+                "(SELECT GROUP_CONCAT(CONCAT_WS(':', id, name) ORDER BY id) FROM some_rows)";
+        Connection source = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                TEST_DB, DRIVER_CLASS_NAME);
+        try (Statement statement = source.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + streamedDb);
+            statement.execute("DROP DATABASE IF EXISTS " + restoredDb);
+            statement.execute("CREATE DATABASE " + streamedDb);
+            statement.execute("CREATE DATABASE " + restoredDb);
+            statement.execute("USE " + streamedDb);
+            statement.execute("CREATE TABLE empty_rows (id INT PRIMARY KEY)");
+            statement.execute("CREATE TABLE one_row (id INT PRIMARY KEY)");
+            statement.execute("CREATE TABLE some_rows (id INT PRIMARY KEY, name VARCHAR(20))");
+            statement.execute("INSERT INTO one_row VALUES (1)");
+            statement.execute("INSERT INTO some_rows VALUES (1, 'a'), (2, 'b'), (3, 'c'), (4, 'd'), (5, 'e'), (6, 'f'), (7, null)");
+        } finally {
+            source.close();
+        }
+
+        try {
+            //streamed one row at a time, and fetched through a cursor in batches that do not divide the rows
+            for (String fetchSize : Arrays.asList("0", "2")) {
+                Properties properties = new Properties();
+                properties.setProperty(MysqlExportService.DB_NAME, streamedDb);
+                properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+                properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+                properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+                properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+                properties.setProperty(MysqlExportService.STREAM_RESULTS, "true");
+                properties.setProperty(MysqlExportService.FETCH_SIZE, fetchSize);
+                properties.setProperty(MysqlExportService.INSERT_BATCH_ROWS, "3");
+
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                new MysqlExportService(properties).exportTo(outputStream);
+                String sql = outputStream.toString("UTF-8");
+                Assertions.assertFalse(sql.contains("table insert : empty_rows"), fetchSize);
+                //the last row of every statement ends it, without a trailing separator
+                Assertions.assertFalse(sql.contains(",;"), fetchSize);
+                Assertions.assertTrue(sql.contains("(7, null);"), fetchSize);
+
+                assertTrue(MysqlImportService.builder()
+                        .setDatabase(restoredDb)
+                        .setSqlSource(new ByteArrayInputStream(outputStream.toByteArray()))
+                        .setUsername(DB_USERNAME)
+                        .setPassword(DB_PASSWORD)
+                        .setHost(MYSQL_DB_HOST)
+                        .setPort(MYSQL_DB_PORT)
+                        .setDropExisting(true)
+                        .importDatabase());
+
+                Connection restored = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                        restoredDb, DRIVER_CLASS_NAME);
+                try (Statement statement = restored.createStatement();
+                     ResultSet rs = statement.executeQuery(select)) {
+                    assertTrue(rs.next());
+                    Assertions.assertEquals(0, rs.getLong(1), fetchSize);
+                    Assertions.assertEquals("1", rs.getString(2), fetchSize);
+                    Assertions.assertEquals("1:a,2:b,3:c,4:d,5:e,6:f,7", rs.getString(3), fetchSize);
+                } finally {
+                    restored.close();
+                }
+            }
+        } finally {
+            Connection connection = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                    TEST_DB, DRIVER_CLASS_NAME);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP DATABASE IF EXISTS " + streamedDb);
+                statement.execute("DROP DATABASE IF EXISTS " + restoredDb);
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * The SQL of an export, without the date in its header
+     * @param sql the bytes of the SQL
+     * @return the SQL
+     */
+    private static String withoutDate(byte[] sql) {
+        return new String(sql, StandardCharsets.UTF_8).replaceFirst("-- Date: [^\n]*", "-- Date:");
+    }
+
     @Test
     void givenDBCredentialsAndEmailConfig_whenExportDatabase_thenBackUpAndMailDbSuccessfully() throws Exception {
 
@@ -235,6 +389,861 @@ class MysqlBackup4JIntegrationTest {
     }
 
 
+    @Test
+    void givenParallelThreads_whenExportDatabaseAndImportDatabase_thenBackUpAndRestoreTestDbSuccessfully() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+        properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+        properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+        properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+
+        properties.setProperty(MysqlExportService.STREAM_RESULTS, "true");
+        properties.setProperty(MysqlExportService.INSERT_BATCH_ROWS, "10");
+        properties.setProperty(MysqlExportService.PARALLEL_THREADS, "4");
+        properties.setProperty(MysqlExportService.COMPRESSION, "zstd");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new MysqlExportService(properties).exportTo(outputStream);
+
+        Assertions.assertTrue(outputStream.size() > 0);
+
+        boolean res = MysqlImportService.builder()
+                .setDatabase(RESTORED_DB)
+                .setSqlSource(new ByteArrayInputStream(outputStream.toByteArray()))
+                .setUsername(DB_USERNAME)
+                .setPassword(DB_PASSWORD)
+                .setHost(MYSQL_DB_HOST)
+                .setPort(MYSQL_DB_PORT)
+                .setDeleteExisting(true)
+                .setDropExisting(true)
+                .setParallelThreads(4)
+                .importDatabase();
+
+        assertTrue(res);
+
+        assertDatabaseBackedUp();
+    }
+
+
+    @Test
+    void givenPipelinedExport_whenExportDatabaseAndImportDatabase_thenBackUpAndRestoreTestDbSuccessfully() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+        properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+        properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+        properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+
+        properties.setProperty(MysqlExportService.STREAM_RESULTS, "true");
+        properties.setProperty(MysqlExportService.INSERT_BATCH_ROWS, "10");
+        properties.setProperty(MysqlExportService.PIPELINED_EXPORT, "true");
+        properties.setProperty(MysqlExportService.PIPELINE_ENCODER_THREADS, "2");
+        properties.setProperty(MysqlExportService.COMPRESSION, "gzip");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new MysqlExportService(properties).exportTo(outputStream);
+
+        Assertions.assertTrue(outputStream.size() > 0);
+
+        boolean res = MysqlImportService.builder()
+                .setDatabase(RESTORED_DB)
+                .setSqlSource(new ByteArrayInputStream(outputStream.toByteArray()))
+                .setUsername(DB_USERNAME)
+                .setPassword(DB_PASSWORD)
+                .setHost(MYSQL_DB_HOST)
+                .setPort(MYSQL_DB_PORT)
+                .setDeleteExisting(true)
+                .setDropExisting(true)
+                .importDatabase();
+
+        assertTrue(res);
+
+        assertDatabaseBackedUp();
+    }
+
+
+    @Test
+    void givenTsvDataFormat_whenExportDatabaseAndImportDatabase_thenBackUpAndRestoreTestDbSuccessfully() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+        properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+        properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+        properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+
+        properties.setProperty(MysqlExportService.DATA_FORMAT, "tsv");
+        properties.setProperty(MysqlExportService.PRESERVE_GENERATED_SQL_FILE, "true");
+        properties.setProperty(MysqlExportService.SQL_FILE_NAME, "tsv_output");
+        properties.setProperty(MysqlExportService.TEMP_DIR, new File("external-tsv").getPath());
+
+        new MysqlExportService(properties).export();
+
+        File sqlFile = new File("external-tsv/sql/tsv_output.sql");
+        assertTrue(new File("external-tsv/sql/data/users.tsv").exists());
+
+        //LOAD DATA LOCAL INFILE is disabled on the server by default
+        Connection connection = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                RESTORED_DB, DRIVER_CLASS_NAME);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET GLOBAL local_infile = 1");
+        }
+        connection.close();
+
+        boolean res = MysqlImportService.builder()
+                .setDatabase(RESTORED_DB)
+                .setSqlSource(sqlFile.toPath())
+                .setLoadDataDirectory(sqlFile.getParentFile().toPath())
+                .setUsername(DB_USERNAME)
+                .setPassword(DB_PASSWORD)
+                .setHost(MYSQL_DB_HOST)
+                .setPort(MYSQL_DB_PORT)
+                .setDeleteExisting(true)
+                .setDropExisting(true)
+                .importDatabase();
+
+        assertTrue(res);
+
+        assertDatabaseBackedUp();
+    }
+
+
+    @Test
+    void givenLoadDataDirectoryOutsideTheWorkingDirectory_whenImportDatabase_thenDataFilesStreamedFromIt() throws Exception {
+
+        Path tempDir = Files.createTempDirectory("mysql-backup4j-tsv");
+        try {
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+            properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+            properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+            properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+            properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+            properties.setProperty(MysqlExportService.DATA_FORMAT, "tsv");
+            properties.setProperty(MysqlExportService.PRESERVE_GENERATED_SQL_FILE, "true");
+            properties.setProperty(MysqlExportService.SQL_FILE_NAME, "tsv_elsewhere");
+            properties.setProperty(MysqlExportService.TEMP_DIR, tempDir.toString());
+            new MysqlExportService(properties).export();
+
+            Path sqlDirectory = tempDir.resolve("sql");
+            //the data file names of the dump are relative, and do not exist relative to the working directory
+            assertTrue(Files.exists(sqlDirectory.resolve("data").resolve("users.tsv")));
+            Assertions.assertFalse(new File("data/users.tsv").exists());
+
+            Connection connection = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                    RESTORED_DB, DRIVER_CLASS_NAME);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET GLOBAL local_infile = 1");
+            } finally {
+                connection.close();
+            }
+
+            assertTrue(MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setSqlSource(Files.newInputStream(sqlDirectory.resolve("tsv_elsewhere.sql")))
+                    .setLoadDataDirectory(sqlDirectory)
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(MYSQL_DB_PORT)
+                    .setDeleteExisting(true)
+                    .setDropExisting(true)
+                    .importDatabase());
+            assertDatabaseBackedUp();
+
+            //a data file outside of the directory is rejected before it's opened
+            Files.write(tempDir.resolve("outside.tsv"), "1\n".getBytes(StandardCharsets.UTF_8));
+            MysqlBackup4JException exception = Assertions.assertThrows(MysqlBackup4JException.class, () -> MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setSqlString("\n--\n-- start load data : users\n--\nLOAD DATA LOCAL INFILE '../outside.tsv' INTO TABLE `users`;\n--\n-- end load data : users\n--\n")
+                    .setLoadDataDirectory(sqlDirectory)
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(MYSQL_DB_PORT)
+                    .importDatabase());
+            assertTrue(exception.getMessage().contains("outside of the load data directory"), exception.getMessage());
+        } finally {
+            try (Stream<Path> files = Files.walk(tempDir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    void givenExtremeNumericAndTemporalValues_whenExportDatabaseAndImportDatabase_thenValuesRoundTripExactly() throws Exception {
+
+        String select = "SELECT CONCAT_WS('|', id, big_unsigned, amount, ratio, created, duration, BIN(flags), y, " +
+                "ISNULL(empty_bytes), LENGTH(empty_bytes)) FROM lossless_values";
+        //the table is dropped again, so the tests sharing the test database do not export it
+        try {
+            Connection source = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                    TEST_DB, DRIVER_CLASS_NAME);
+            String expected;
+            try (Statement statement = source.createStatement()) {
+                statement.execute("CREATE TABLE lossless_values (id BIGINT PRIMARY KEY, big_unsigned BIGINT UNSIGNED, " +
+                        "amount DECIMAL(30,10), ratio FLOAT, created DATETIME(6), duration TIME(3), flags BIT(10), y YEAR, empty_bytes VARBINARY(8))");
+                statement.execute("INSERT INTO lossless_values VALUES (9223372036854775807, 18446744073709551615, " +
+                        "12345678901234567890.0123456789, 1.1, '2024-02-29 23:59:59.123456', '25:30:15.250', b'1010101010', 2024, X'')");
+                try (ResultSet rs = statement.executeQuery(select)) {
+                    rs.next();
+                    expected = rs.getString(1);
+                }
+            } finally {
+                source.close();
+            }
+
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+            properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+            properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+            properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+            properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            new MysqlExportService(properties).exportTo(outputStream);
+
+            boolean res = MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setSqlSource(new ByteArrayInputStream(outputStream.toByteArray()))
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(MYSQL_DB_PORT)
+                    .setDropExisting(true)
+                    .importDatabase();
+            assertTrue(res);
+
+            Connection restored = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                    RESTORED_DB, DRIVER_CLASS_NAME);
+            try (Statement statement = restored.createStatement();
+                 ResultSet rs = statement.executeQuery(select)) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(expected, rs.getString(1));
+            } finally {
+                restored.close();
+            }
+        } finally {
+            Connection connection = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                    TEST_DB, DRIVER_CLASS_NAME);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + TEST_DB + ".lossless_values");
+                statement.execute("DROP TABLE IF EXISTS " + RESTORED_DB + ".lossless_values");
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    @Test
+    void givenStateFile_whenExportedIncrementally_thenDeltaHasChangedRowsAndRestoresOnTopOfBase() throws Exception {
+
+        String select = "SELECT GROUP_CONCAT(CONCAT_WS(':', id, name) ORDER BY id) FROM incremental_rows";
+        Connection source = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                TEST_DB, DRIVER_CLASS_NAME);
+        File stateFile = new File("external-incremental.properties");
+        Files.deleteIfExists(stateFile.toPath());
+        try (Statement statement = source.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS incremental_rows (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(50), " +
+                    "updated_at TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6))");
+            statement.execute("DELETE FROM incremental_rows");
+            statement.execute("INSERT INTO incremental_rows (name) VALUES ('first'), ('unchanged')");
+
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+            properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+            properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+            properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+            properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+            properties.setProperty(MysqlExportService.INCREMENTAL_STATE_FILE, stateFile.getPath());
+
+            //the first export has no watermarks and is the full base
+            ByteArrayOutputStream base = new ByteArrayOutputStream();
+            new MysqlExportService(properties).exportTo(base);
+            assertTrue(stateFile.exists());
+            assertTrue(MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setSqlSource(new ByteArrayInputStream(base.toByteArray()))
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(MYSQL_DB_PORT)
+                    .setDropExisting(true)
+                    .importDatabase());
+
+            statement.execute("UPDATE incremental_rows SET name = 'changed' WHERE name = 'first'");
+            statement.execute("INSERT INTO incremental_rows (name) VALUES ('added')");
+
+            ByteArrayOutputStream delta = new ByteArrayOutputStream();
+            new MysqlExportService(properties).exportTo(delta);
+            String deltaSql = delta.toString("UTF-8");
+            assertTrue(deltaSql.contains("'changed'"));
+            assertTrue(deltaSql.contains("'added'"));
+            Assertions.assertFalse(deltaSql.contains("'unchanged'"));
+
+            assertTrue(MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setSqlSource(new ByteArrayInputStream(delta.toByteArray()))
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(MYSQL_DB_PORT)
+                    .importDatabase());
+
+            String expected;
+            try (ResultSet rs = statement.executeQuery(select)) {
+                rs.next();
+                expected = rs.getString(1);
+            }
+
+            Connection restored = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                    RESTORED_DB, DRIVER_CLASS_NAME);
+            try (Statement restoredStatement = restored.createStatement();
+                 ResultSet rs = restoredStatement.executeQuery(select)) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(expected, rs.getString(1));
+            } finally {
+                restored.close();
+            }
+        } finally {
+            source.close();
+            Files.deleteIfExists(stateFile.toPath());
+        }
+    }
+
+    @Test
+    void givenBinlogArchive_whenReplayedOnTheExport_thenRestoredToThePointInTime() throws Exception {
+
+        String select = "SELECT GROUP_CONCAT(CONCAT_WS(':', id, name, amount, created, payload) ORDER BY id) FROM binlog_rows";
+        Connection source = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                TEST_DB, DRIVER_CLASS_NAME);
+        Path directory = Files.createTempDirectory("binlog-archive");
+        try (Statement statement = source.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS binlog_rows");
+            statement.execute("CREATE TABLE binlog_rows (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(50), " +
+                    "amount DECIMAL(20,4), created DATETIME(6), payload JSON)");
+            statement.execute("INSERT INTO binlog_rows (name, amount, created, payload) VALUES " +
+                    "('base', 1.5, '2024-01-01 10:00:00.123456', '{\"a\": 1}')");
+
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+            properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+            properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+            properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+            properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+            properties.setProperty(MysqlExportService.RECORD_BINLOG_POSITION, "true");
+
+            MysqlExportService exportService = new MysqlExportService(properties);
+            ByteArrayOutputStream base = new ByteArrayOutputStream();
+            exportService.exportTo(base);
+            assertNotNull(exportService.getBinlogPosition());
+            assertTrue(base.toString("UTF-8").contains("-- Binlog position: " + exportService.getBinlogPosition().getFile()));
+
+            BinlogArchiver archiver = BinlogArchiver.builder()
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(Integer.parseInt(MYSQL_DB_PORT))
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setDatabase(TEST_DB)
+                    .setDirectory(directory)
+                    .setStartPosition(exportService.getBinlogPosition());
+            archiver.start();
+
+            statement.execute("INSERT INTO binlog_rows (name, amount, created, payload) VALUES " +
+                    "('it''s added', -2.25, '1999-12-31 23:59:59', '[1, \"two\"]')");
+            statement.execute("UPDATE binlog_rows SET name = 'changed', amount = amount * 2 WHERE name = 'base'");
+            //the rows are mapped to the columns the table has when they are archived, unless binlog_row_metadata=FULL
+            Thread.sleep(1000);
+            statement.execute("ALTER TABLE binlog_rows ADD COLUMN note VARCHAR(10)");
+
+            String expected;
+            try (ResultSet rs = statement.executeQuery(select)) {
+                rs.next();
+                expected = rs.getString(1);
+            }
+
+            //binlog timestamps have a resolution of a second
+            Thread.sleep(1500);
+            Date stopDateTime = new Date();
+            Thread.sleep(1500);
+            statement.execute("DELETE FROM binlog_rows");
+            Thread.sleep(2000);
+            archiver.stop();
+            assertTrue(BinlogSegmentWriter.listSegments(directory).size() > 0);
+
+            assertTrue(MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setSqlSource(new ByteArrayInputStream(base.toByteArray()))
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(MYSQL_DB_PORT)
+                    .setDropExisting(true)
+                    .importDatabase());
+
+            int replayed = MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(MYSQL_DB_PORT)
+                    .setBinlogDirectory(directory)
+                    .setStopDateTime(stopDateTime)
+                    .replayBinlog();
+            Assertions.assertEquals(3, replayed);
+
+            Connection restored = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                    RESTORED_DB, DRIVER_CLASS_NAME);
+            try (Statement restoredStatement = restored.createStatement();
+                 ResultSet rs = restoredStatement.executeQuery(select)) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(expected, rs.getString(1));
+            } finally {
+                restored.close();
+            }
+        } finally {
+            source.close();
+            for (Path file : Files.list(directory).toArray(Path[]::new)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void givenChunkRepository_whenExportedTwice_thenBackupsShareChunksAndRestore() throws Exception {
+
+        Path directory = Files.createTempDirectory("chunk-repository");
+        try {
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+            properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+            properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+            properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+            properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+            properties.setProperty(MysqlExportService.CHUNK_REPOSITORY, directory.toString());
+            properties.setProperty(MysqlExportService.CHUNK_REPOSITORY_CHUNK_SIZE, "4096");
+
+            properties.setProperty(MysqlExportService.SQL_FILE_NAME, "first");
+            MysqlExportService first = new MysqlExportService(properties);
+            first.export();
+            properties.setProperty(MysqlExportService.SQL_FILE_NAME, "second");
+            MysqlExportService second = new MysqlExportService(properties);
+            second.export();
+
+            ChunkRepository repository = new ChunkRepository(directory);
+            Assertions.assertEquals(2, repository.getManifests().size());
+            Files.delete(first.getGeneratedManifest().toPath());
+            repository.collectGarbage(0);
+
+            assertTrue(MysqlImportService.builder()
+                    .setDatabase(RESTORED_DB)
+                    .setChunkManifest(second.getGeneratedManifest().toPath())
+                    .setUsername(DB_USERNAME)
+                    .setPassword(DB_PASSWORD)
+                    .setHost(MYSQL_DB_HOST)
+                    .setPort(MYSQL_DB_PORT)
+                    .setDropExisting(true)
+                    .importDatabase());
+            assertDatabaseBackedUp();
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    void givenTableFilter_whenExportDatabaseAndImportDatabase_thenOnlySelectedTablesColumnsAndRowsRestored() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.DB_NAME, TEST_DB);
+        properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+        properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+        properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+        properties.setProperty(MysqlExportService.EXCLUDE_TABLES, "sms_*");
+        properties.setProperty(MysqlExportService.TABLE_WHERE + ".migrations", "batch = 1");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new MysqlExportService(properties)
+                .setTableFilter(TableFilter.fromProperties(properties)
+                        .setColumns("users", "id", "first_name", "last_name", "email", "password", "sms_units"))
+                .exportTo(outputStream);
+        String sql = outputStream.toString("UTF-8");
+        Assertions.assertFalse(sql.contains("table dump : sms_"));
+        assertTrue(sql.contains("INSERT INTO `users`(`id`, `first_name`, `last_name`, `email`, `password`, `sms_units`)"));
+
+        assertTrue(MysqlImportService.builder()
+                .setDatabase(RESTORED_DB)
+                .setSqlSource(new ByteArrayInputStream(outputStream.toByteArray()))
+                .setUsername(DB_USERNAME)
+                .setPassword(DB_PASSWORD)
+                .setHost(MYSQL_DB_HOST)
+                .setPort(MYSQL_DB_PORT)
+                .setDropExisting(true)
+                .importDatabase());
+
+        String select = "SELECT COUNT(*) FROM migrations WHERE batch = 1";
+        long expected;
+        Connection source = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                TEST_DB, DRIVER_CLASS_NAME);
+        try (Statement statement = source.createStatement();
+             ResultSet rs = statement.executeQuery(select)) {
+            rs.next();
+            expected = rs.getLong(1);
+        } finally {
+            source.close();
+        }
+
+        Connection restored = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                RESTORED_DB, DRIVER_CLASS_NAME);
+        try (Statement statement = restored.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*), SUM(batch <> 1) FROM migrations")) {
+            assertTrue(rs.next());
+            Assertions.assertEquals(expected, rs.getLong(1));
+            Assertions.assertEquals(0, rs.getLong(2));
+        } finally {
+            restored.close();
+        }
+        assertDatabaseBackedUp();
+    }
+
+    @Test
+    void givenRoutinesTriggersEventsAndDependentViews_whenExportDatabaseAndImportDatabase_thenObjectsRestoredAfterData() throws Exception {
+
+        String objectsDb = "mysqlbackup4j_objects";
+        String restoredDb = "mysqlbackup4j_objects_restored";
+        Connection source = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                TEST_DB, DRIVER_CLASS_NAME);
+        try (Statement statement = source.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + objectsDb);
+            statement.execute("DROP DATABASE IF EXISTS " + restoredDb);
+            statement.execute("CREATE DATABASE " + objectsDb);
+            statement.execute("CREATE DATABASE " + restoredDb);
+            statement.execute("USE " + objectsDb);
+            statement.execute("CREATE TABLE orders (id INT PRIMARY KEY, amount DECIMAL(10,2), paid TINYINT)");
+            statement.execute("CREATE TABLE order_audit (order_id INT, amount DECIMAL(10,2))");
+            statement.execute("INSERT INTO orders VALUES (1, 10.50, 1), (2, 20.00, 0), (3, 5.25, 1)");
+            statement.execute("CREATE FUNCTION with_tax(amount DECIMAL(10,2)) RETURNS DECIMAL(10,2) DETERMINISTIC " +
+                    "COMMENT 'adds the tax' RETURN amount * 1.2");
+            statement.execute("CREATE PROCEDURE paid_total(IN minimum DECIMAL(10,2), OUT total DECIMAL(10,2)) " +
+                    "BEGIN SELECT SUM(amount) INTO total FROM orders WHERE paid = 1 AND amount >= minimum; END");
+            statement.execute("CREATE TRIGGER orders_audit AFTER INSERT ON orders FOR EACH ROW " +
+                    "INSERT INTO order_audit VALUES (NEW.id, NEW.amount)");
+            statement.execute("CREATE EVENT purge_audit ON SCHEDULE EVERY 1 DAY DISABLE DO DELETE FROM order_audit");
+            //named so the dependent views sort before the views they select from
+            statement.execute("CREATE VIEW b_paid AS SELECT id, amount FROM orders WHERE paid = 1");
+            statement.execute("CREATE VIEW a_paid_taxed AS SELECT id, with_tax(amount) AS taxed FROM b_paid");
+        } finally {
+            source.close();
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.DB_NAME, objectsDb);
+        properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+        properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+        properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new MysqlExportService(properties).exportTo(outputStream);
+        String sql = outputStream.toString("UTF-8");
+        Assertions.assertFalse(sql.contains("DEFINER"));
+        assertTrue(sql.indexOf("view dump : b_paid") < sql.indexOf("view dump : a_paid_taxed"));
+        assertTrue(sql.indexOf("table insert : orders") < sql.indexOf("trigger dump : orders_audit"));
+
+        assertTrue(MysqlImportService.builder()
+                .setDatabase(restoredDb)
+                .setSqlSource(new ByteArrayInputStream(outputStream.toByteArray()))
+                .setUsername(DB_USERNAME)
+                .setPassword(DB_PASSWORD)
+                .setHost(MYSQL_DB_HOST)
+                .setPort(MYSQL_DB_PORT)
+                .setParallelThreads(2)
+                .importDatabase());
+
+        Connection restored = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                restoredDb, DRIVER_CLASS_NAME);
+        try (Statement statement = restored.createStatement()) {
+            //the trigger was created after the data, so the restored rows were not audited
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM order_audit")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(0, rs.getLong(1));
+            }
+            statement.execute("INSERT INTO orders VALUES (4, 1.00, 1)");
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM order_audit")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(1, rs.getLong(1));
+            }
+            try (ResultSet rs = statement.executeQuery("SELECT SUM(taxed) FROM a_paid_taxed")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(0, new BigDecimal("20.10").compareTo(rs.getBigDecimal(1)));
+            }
+            statement.execute("CALL paid_total(5, @total)");
+            try (ResultSet rs = statement.executeQuery("SELECT @total")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(0, new BigDecimal("15.75").compareTo(rs.getBigDecimal(1)));
+            }
+            try (ResultSet rs = statement.executeQuery("SELECT STATUS, INTERVAL_FIELD FROM information_schema.EVENTS " +
+                    "WHERE EVENT_SCHEMA = '" + restoredDb + "' AND EVENT_NAME = 'purge_audit'")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals("DISABLED", rs.getString(1));
+                Assertions.assertEquals("DAY", rs.getString(2));
+            }
+        } finally {
+            restored.close();
+        }
+    }
+
+    @Test
+    void givenRoutinesAndTriggersWithCompoundBodies_whenImportDatabaseWithDelimiterParsing_thenObjectsRestoredAfterData() throws Exception {
+
+        String compoundDb = "mysqlbackup4j_compound";
+        String restoredDb = "mysqlbackup4j_compound_restored";
+        Connection source = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                TEST_DB, DRIVER_CLASS_NAME);
+        try (Statement statement = source.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + compoundDb);
+            statement.execute("DROP DATABASE IF EXISTS " + restoredDb);
+            statement.execute("CREATE DATABASE " + compoundDb);
+            statement.execute("CREATE DATABASE " + restoredDb);
+            statement.execute("USE " + compoundDb);
+            statement.execute("CREATE TABLE orders (id INT PRIMARY KEY, amount DECIMAL(10,2), paid TINYINT)");
+            statement.execute("CREATE TABLE order_audit (order_id INT, amount DECIMAL(10,2))");
+            statement.execute("INSERT INTO orders VALUES (1, 10.50, 1), (2, 20.00, 0), (3, 5.25, 1)");
+            statement.execute("CREATE PROCEDURE paid_total(IN minimum DECIMAL(10,2), OUT total DECIMAL(10,2)) " +
+                    "BEGIN DECLARE paid_sum DECIMAL(10,2); " +
+                    "SELECT SUM(amount) INTO paid_sum FROM orders WHERE paid = 1 AND amount >= minimum; " +
+                    "SET total = IFNULL(paid_sum, 0); END");
+            statement.execute("CREATE TRIGGER orders_audit AFTER INSERT ON orders FOR EACH ROW " +
+                    "BEGIN INSERT INTO order_audit VALUES (NEW.id, NEW.amount); " +
+                    "INSERT INTO order_audit VALUES (NEW.id, -NEW.amount); END");
+            statement.execute("CREATE EVENT purge_audit ON SCHEDULE EVERY 1 DAY DISABLE " +
+                    "DO BEGIN DELETE FROM order_audit WHERE amount < 0; DELETE FROM order_audit; END");
+        } finally {
+            source.close();
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.DB_NAME, compoundDb);
+        properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+        properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+        properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new MysqlExportService(properties).exportTo(outputStream);
+        String sql = outputStream.toString("UTF-8");
+        assertTrue(sql.contains("DELIMITER ;;"));
+
+        //a rewindable source, so the statements are read twice by the parallel import
+        assertTrue(MysqlImportService.builder()
+                .setDatabase(restoredDb)
+                .setSqlString(sql)
+                .setUsername(DB_USERNAME)
+                .setPassword(DB_PASSWORD)
+                .setHost(MYSQL_DB_HOST)
+                .setPort(MYSQL_DB_PORT)
+                .setDelimiterParsing(true)
+                .setParallelThreads(2)
+                .importDatabase());
+
+        Connection restored = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                restoredDb, DRIVER_CLASS_NAME);
+        try (Statement statement = restored.createStatement()) {
+            //the trigger was created after the data, so the restored rows were not audited
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM order_audit")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(0, rs.getLong(1));
+            }
+            statement.execute("INSERT INTO orders VALUES (4, 1.00, 1)");
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM order_audit")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(2, rs.getLong(1));
+            }
+            statement.execute("CALL paid_total(5, @total)");
+            try (ResultSet rs = statement.executeQuery("SELECT @total")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(0, new BigDecimal("15.75").compareTo(rs.getBigDecimal(1)));
+            }
+            try (ResultSet rs = statement.executeQuery("SELECT STATUS FROM information_schema.EVENTS " +
+                    "WHERE EVENT_SCHEMA = '" + restoredDb + "' AND EVENT_NAME = 'purge_audit'")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals("DISABLED", rs.getString(1));
+            }
+        } finally {
+            restored.close();
+        }
+    }
+
+    @Test
+    void givenOneFailingTable_whenImportDatabaseInParallel_thenOtherTablesLoadedAndOnlyFailingTableReported() throws Exception {
+
+        String failingDb = "mysqlbackup4j_failing";
+        String restoredDb = "mysqlbackup4j_failing_restored";
+        Connection source = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                TEST_DB, DRIVER_CLASS_NAME);
+        try (Statement statement = source.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + failingDb);
+            statement.execute("DROP DATABASE IF EXISTS " + restoredDb);
+            statement.execute("CREATE DATABASE " + failingDb);
+            statement.execute("CREATE DATABASE " + restoredDb);
+            statement.execute("USE " + failingDb);
+            statement.execute("CREATE TABLE counters (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(20))");
+            statement.execute("CREATE TABLE broken (id INT PRIMARY KEY)");
+            statement.execute("CREATE TABLE notes (id INT PRIMARY KEY, body VARCHAR(20))");
+            statement.execute("SET SESSION sql_mode = CONCAT_WS(',', @@SESSION.sql_mode, 'NO_AUTO_VALUE_ON_ZERO')");
+            statement.execute("INSERT INTO counters VALUES (0, 'zero'), (1, 'one'), (2, 'two')");
+            statement.execute("INSERT INTO broken VALUES (1), (2)");
+            statement.execute("INSERT INTO notes VALUES (1, 'a'), (2, 'b'), (3, 'c')");
+            //the restored table has a column the rows of the dump do not set, so its inserts fail
+            statement.execute("CREATE TABLE " + restoredDb + ".broken (id INT PRIMARY KEY, required INT NOT NULL)");
+        } finally {
+            source.close();
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.DB_NAME, failingDb);
+        properties.setProperty(MysqlExportService.DB_USERNAME, DB_USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, DB_PASSWORD);
+        properties.setProperty(MysqlExportService.DB_HOST, MYSQL_DB_HOST);
+        properties.setProperty(MysqlExportService.DB_PORT, MYSQL_DB_PORT);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new MysqlExportService(properties).exportTo(outputStream);
+
+        MysqlImportService importService = MysqlImportService.builder()
+                .setDatabase(restoredDb)
+                .setSqlSource(new ByteArrayInputStream(outputStream.toByteArray()))
+                .setUsername(DB_USERNAME)
+                .setPassword(DB_PASSWORD)
+                .setHost(MYSQL_DB_HOST)
+                .setPort(MYSQL_DB_PORT)
+                .setParallelThreads(3);
+        MysqlBackup4JException exception = Assertions.assertThrows(MysqlBackup4JException.class, importService::importDatabase);
+        assertTrue(exception.getMessage().contains("broken"));
+        Assertions.assertEquals(1, importService.getTableErrors().size());
+        assertTrue(importService.getTableErrors().containsKey("broken"));
+
+        Connection restored = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
+                restoredDb, DRIVER_CLASS_NAME);
+        try (Statement statement = restored.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM notes")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(3, rs.getLong(1));
+            }
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM broken")) {
+                assertTrue(rs.next());
+                Assertions.assertEquals(0, rs.getLong(1));
+            }
+            //the workers run with NO_AUTO_VALUE_ON_ZERO, so the 0 id is kept
+            try (ResultSet rs = statement.executeQuery("SELECT id FROM counters ORDER BY id")) {
+                List<Integer> ids = new ArrayList<>();
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+                Assertions.assertEquals(Arrays.asList(0, 1, 2), ids);
+            }
+            statement.execute("DROP DATABASE " + failingDb);
+            statement.execute("DROP DATABASE " + restoredDb);
+        } finally {
+            restored.close();
+        }
+    }
+
+
+    @Test
+    void givenDataSource_whenExportDatabaseAndImportDatabaseInParallel_thenPooledConnectionsKeepTheirSession() throws Exception {
+
+        List<Connection> sourceConnections = new ArrayList<>();
+        List<Connection> restoredConnections = new ArrayList<>();
+        try {
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.PARALLEL_THREADS, "2");
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            new MysqlExportService(properties)
+                    .setDataSource(pooledDataSource(TEST_DB, sourceConnections))
+                    .exportTo(outputStream);
+
+            //the database is that of the connections of the pool
+            assertTrue(MysqlImportService.builder()
+                    .setDataSource(pooledDataSource(RESTORED_DB, restoredConnections))
+                    .setSqlSource(new ByteArrayInputStream(outputStream.toByteArray()))
+                    .setDropExisting(true)
+                    .setParallelThreads(2)
+                    .importDatabase());
+            assertDatabaseBackedUp();
+
+            //the main connection and the workers went back to the pool with the session they were taken with
+            Assertions.assertEquals(3, restoredConnections.size());
+            for (Connection connection : restoredConnections) {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT @@foreign_key_checks, @@unique_checks, @@sql_mode, @@time_zone")) {
+                    assertTrue(rs.next());
+                    Assertions.assertEquals(1, rs.getLong(1));
+                    Assertions.assertEquals(1, rs.getLong(2));
+                    Assertions.assertEquals("STRICT_TRANS_TABLES", rs.getString(3));
+                    Assertions.assertEquals("+02:00", rs.getString(4));
+                }
+            }
+        } finally {
+            for (Connection connection : sourceConnections) connection.close();
+            for (Connection connection : restoredConnections) connection.close();
+        }
+    }
+
+    /**
+     * A minimal connection pool: a closed connection goes back to the pool instead of being closed.
+     * Every connection it opens starts with its own sql_mode and time_zone, so a test can tell
+     * whether the session of a returned connection was restored
+     * @param database the default database of the connections
+     * @param opened the list every connection the pool opens is added to
+     * @return DataSource
+     */
+    private static DataSource pooledDataSource(String database, List<Connection> opened) {
+        Deque<Connection> idle = new ArrayDeque<>();
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("getConnection")) {
+                if (method.getName().equals("getLogWriter")) return new PrintWriter(System.out);
+                throw new UnsupportedOperationException(method.getName());
+            }
+            Connection connection;
+            synchronized (idle) {
+                connection = idle.poll();
+            }
+            if (connection == null) {
+                connection = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT, database, DRIVER_CLASS_NAME);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET SESSION sql_mode = 'STRICT_TRANS_TABLES', time_zone = '+02:00'");
+                }
+                synchronized (opened) {
+                    opened.add(connection);
+                }
+            }
+            Connection physical = connection;
+            return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (p, m, a) -> {
+                if (m.getName().equals("close")) {
+                    synchronized (idle) {
+                        if (!idle.contains(physical)) idle.add(physical);
+                    }
+                    return null;
+                }
+                try {
+                    return m.invoke(physical, a);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        });
+    }
+
+
     private void assertDatabaseBackedUp() throws Exception {
         Connection connection = MysqlBaseService.connect(DB_USERNAME, DB_PASSWORD, MYSQL_DB_HOST, MYSQL_DB_PORT,
                 RESTORED_DB, DRIVER_CLASS_NAME);
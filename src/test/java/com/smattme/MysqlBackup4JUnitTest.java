@@ -1,8 +1,44 @@
 package com.smattme;
 
+import com.smattme.helpers.MysqlExportServiceHelper;
+import com.smattme.helpers.MysqlImportServiceHelper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Stream;
+
 public class MysqlBackup4JUnitTest {
 
 
@@ -20,4 +56,796 @@ public class MysqlBackup4JUnitTest {
         databaseName = MysqlBaseService.extractDatabaseNameFromJDBCUrl(jdbcURL);
         Assertions.assertEquals("backup4j_test", databaseName);
     }
+
+    @Test
+    void givenKeyBounds_whenSplitIntoRanges_thenRangesCoverTheWholeKeySpace() {
+        List<String> ranges = KeyRangeSplitter.ranges("`id`", 1, 100, 4);
+        Assertions.assertEquals(Arrays.asList(
+                "`id` < 26",
+                "`id` >= 26 AND `id` < 51",
+                "`id` >= 51 AND `id` < 76",
+                "`id` >= 76"), ranges);
+
+        Assertions.assertTrue(KeyRangeSplitter.ranges("`id`", 1, 100, 1).isEmpty());
+        Assertions.assertTrue(KeyRangeSplitter.ranges("`id`", 5, 5, 10).isEmpty());
+        Assertions.assertTrue(KeyRangeSplitter.ranges("`id`", Long.MIN_VALUE, Long.MAX_VALUE, 2).size() >= 2);
+    }
+
+    @Test
+    void givenStatement_whenGetInsertTable_thenReturnTableNameOfInserts() {
+        Assertions.assertEquals("users", MysqlImportServiceHelper.getInsertTable(
+                "-- start table insert : users\n--\nINSERT INTO `users`(`id`) VALUES \n(1);"));
+        Assertions.assertEquals("my`table", MysqlImportServiceHelper.getInsertTable("INSERT IGNORE INTO `my``table` VALUES (1)"));
+        Assertions.assertEquals("logs", MysqlImportServiceHelper.getInsertTable("replace into logs values (1)"));
+        Assertions.assertNull(MysqlImportServiceHelper.getInsertTable("-- start  table dump : users\n--\n\nCREATE TABLE `users` (`id` int)"));
+        Assertions.assertNull(MysqlImportServiceHelper.getInsertTable("INSERTED"));
+    }
+
+    @Test
+    void givenSessionStatements_whenChecked_thenOnlySetStatementsOfSessionStateMatch() {
+        Assertions.assertTrue(MysqlImportServiceHelper.isSessionStatement("/*!50503 SET NAMES utf8mb4 */"));
+        Assertions.assertTrue(MysqlImportServiceHelper.isSessionStatement(
+                "-- header\n/*!40101 SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='NO_AUTO_VALUE_ON_ZERO' */"));
+        Assertions.assertTrue(MysqlImportServiceHelper.isSessionStatement("set time_zone = '+00:00'"));
+        Assertions.assertFalse(MysqlImportServiceHelper.isSessionStatement("SET PASSWORD = 'secret'"));
+        Assertions.assertFalse(MysqlImportServiceHelper.isSessionStatement("SET DEFAULT ROLE ALL TO 'user'"));
+        Assertions.assertFalse(MysqlImportServiceHelper.isSessionStatement("SETTINGS"));
+        Assertions.assertFalse(MysqlImportServiceHelper.isSessionStatement("INSERT INTO `users` VALUES (1)"));
+    }
+
+    @Test
+    void givenSqlScript_whenReadWithSmallBuffer_thenReturnStatementsBetweenMarkers() throws Exception {
+        String sql = "-- header\n/*!40101 SET NAMES utf8 */;\n" +
+                "\n--\n-- start  table dump : users\n--\n\nCREATE TABLE `users` (`id` int);\n\n--\n-- end  table dump : users\n--\n" +
+                "\n--\n-- start table insert : users\n--\nINSERT INTO `users`(`id`) VALUES \n(1),\n(2);\n--\n-- end table insert : users\n--\n";
+
+        List<String> statements = new ArrayList<>();
+        try (StatementReader reader = new MarkerStatementReader(new StringReader(sql), 7)) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                statements.add(statement);
+            }
+        }
+
+        Assertions.assertEquals(Arrays.asList(
+                "-- start  table dump : users\n--\n\nCREATE TABLE `users` (`id` int);\n\n--",
+                "-- start table insert : users\n--\nINSERT INTO `users`(`id`) VALUES \n(1),\n(2);\n--"), statements);
+    }
+
+    @Test
+    void givenCompoundStatementBetweenDelimiterCommands_whenReadOnMarkersOrDelimiters_thenSameStatements() throws Exception {
+
+        String routine = "CREATE PROCEDURE `refresh`()\nBEGIN\n  DELETE FROM audit;\n  INSERT INTO audit VALUES (1);\nEND";
+        String sql = "\n\n--\n-- start  routine dump : PROCEDURE refresh\n--\n\nDROP PROCEDURE IF EXISTS `refresh`;" +
+                "\n\n--\n-- end  routine dump : PROCEDURE refresh\n--\n\n" +
+                "\n\n--\n-- start  routine dump : PROCEDURE refresh\n--\n\nDELIMITER ;;\n" + routine + ";;\nDELIMITER ;\n" +
+                "\n\n--\n-- end  routine dump : PROCEDURE refresh\n--\n\n";
+
+        List<String> markerStatements = new ArrayList<>();
+        List<String> delimiterStatements = new ArrayList<>();
+        try (StatementReader markerReader = new MarkerStatementReader(new StringReader(sql), 16);
+             StatementReader delimiterReader = new DelimiterStatementReader(new StringReader(sql), 16)) {
+            String statement;
+            while ((statement = markerReader.next()) != null) {
+                markerStatements.add(statement);
+            }
+            while ((statement = delimiterReader.next()) != null) {
+                delimiterStatements.add(statement);
+            }
+        }
+
+        Assertions.assertEquals(Arrays.asList(
+                "-- start  routine dump : PROCEDURE refresh\n--\n\nDROP PROCEDURE IF EXISTS `refresh`;\n\n--",
+                "-- start  routine dump : PROCEDURE refresh\n--\n\n" + routine), markerStatements);
+        Assertions.assertEquals(Arrays.asList("DROP PROCEDURE IF EXISTS `refresh`", routine), delimiterStatements);
+    }
+
+    @Test
+    void givenScriptWithQuotesCommentsAndDelimiters_whenReadWithDelimiterReader_thenSplitOnTheDelimiterOnly() throws Exception {
+
+        String sql = "-- a comment; with a semicolon\n" +
+                "/*!40101 SET NAMES utf8 */;\n" +
+                "INSERT INTO `a;b` VALUES ('x;y', 'it''s', 'back\\';', \"-- end\"); # trailing\n" +
+                "/* dropped; */ SELECT 1;\n" +
+                "DELIMITER ;;\n" +
+                "CREATE TRIGGER t BEFORE INSERT ON a FOR EACH ROW BEGIN SET @x = 1; END ;;\n" +
+                "DELIMITER ;\n" +
+                "SELECT 2";
+
+        List<String> statements = new ArrayList<>();
+        try (StatementReader reader = new DelimiterStatementReader(new StringReader(sql), 8)) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                statements.add(statement);
+            }
+        }
+
+        Assertions.assertEquals(Arrays.asList(
+                "/*!40101 SET NAMES utf8 */",
+                "INSERT INTO `a;b` VALUES ('x;y', 'it''s', 'back\\';', \"-- end\")",
+                "SELECT 1",
+                "CREATE TRIGGER t BEFORE INSERT ON a FOR EACH ROW BEGIN SET @x = 1; END",
+                "SELECT 2"), statements);
+    }
+
+    @Test
+    void givenLoadDataStatement_whenParsed_thenReturnFileAndTable() {
+
+        String sql = "--\n-- start table data : users\n--\n" +
+                "LOAD DATA LOCAL INFILE 'data/it''s.tsv' INTO TABLE `my``users` CHARACTER SET utf8mb4 (`id`)";
+        Assertions.assertEquals("data/it's.tsv", MysqlImportServiceHelper.getLoadDataFile(sql));
+        Assertions.assertEquals("my`users", MysqlImportServiceHelper.getLoadDataTable(sql));
+
+        Assertions.assertEquals("users", MysqlImportServiceHelper.getLoadDataTable("load data low_priority local infile \"users.csv\" replace into table users"));
+        Assertions.assertNull(MysqlImportServiceHelper.getLoadDataFile("LOAD DATA INFILE '/tmp/users.tsv' INTO TABLE users"));
+        Assertions.assertNull(MysqlImportServiceHelper.getLoadDataFile("INSERT INTO `users` VALUES (1)"));
+    }
+
+    @Test
+    void givenSpecialCharacters_whenEscapedForLoadData_thenBackslashEscaped() {
+
+        StringBuilder tsv = new StringBuilder();
+        DelimitedDataWriter.escape("a\tb\nc\\d\"e", false, tsv);
+        Assertions.assertEquals("a\\tb\\nc\\\\d\"e", tsv.toString());
+
+        StringBuilder csv = new StringBuilder();
+        DelimitedDataWriter.escape("say \"hi\", ok\r", true, csv);
+        Assertions.assertEquals("say \\\"hi\\\", ok\\r", csv.toString());
+    }
+
+    @Test
+    void givenBytesAndSpecialCharacters_whenEncodedForInsert_thenHexAndEscaped() {
+
+        Assertions.assertEquals("00017f80ff", MysqlExportServiceHelper.bytesToHex(new byte[]{0, 1, 127, (byte) 128, (byte) 255}));
+
+        StringBuilder out = new StringBuilder();
+        MysqlExportServiceHelper.appendEscaped("it's a \\ \"quote\"\n\0end", out);
+        Assertions.assertEquals("it\\'s a \\\\ \\\"quote\\\"\\n\\0end", out.toString());
+    }
+
+    @Test
+    void givenEveryCodec_whenCompressedAndDecompressed_thenSameBytesAreRead() throws Exception {
+
+        byte[] data = new byte[300_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ("INSERT INTO `users` VALUES (1, 'a');\n".charAt(i % 37));
+        }
+
+        for (String codec : Arrays.asList(Compression.NONE, Compression.ZIP, Compression.GZIP, Compression.ZSTD, Compression.LZ4)) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = Compression.compress(codec, compressed, -1, "dump.sql")) {
+                out.write(data);
+            }
+
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            try (InputStream in = Compression.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    decompressed.write(buffer, 0, read);
+                }
+            }
+            Assertions.assertArrayEquals(data, decompressed.toByteArray(), codec);
+        }
+    }
+
+    @Test
+    void givenSeveralThreads_whenCompressedInBlocks_thenStandardDecompressorReadsSameBytes() throws Exception {
+
+        byte[] data = new byte[300_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ("INSERT INTO `users` VALUES (1, 'a');\n".charAt(i % 37));
+        }
+
+        for (String codec : Arrays.asList(Compression.GZIP, Compression.ZSTD)) {
+            for (byte[] input : Arrays.asList(data, new byte[0])) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream out = Compression.compress(codec, compressed, -1, "dump.sql", 4, 16 * 1024)) {
+                    //single bytes and writes spanning several blocks
+                    out.write(input, 0, Math.min(input.length, 10));
+                    for (int i = 10; i < Math.min(input.length, 100); i++) out.write(input[i]);
+                    if (input.length > 100) out.write(input, 100, input.length - 100);
+                }
+
+                ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+                try (InputStream in = Compression.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        decompressed.write(buffer, 0, read);
+                    }
+                }
+                Assertions.assertArrayEquals(input, decompressed.toByteArray(), codec);
+            }
+        }
+    }
+
+    @Test
+    void givenGzipMembersReadFromAPipe_whenDecompressed_thenEveryMemberIsRead() throws Exception {
+
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ("INSERT INTO `users` VALUES (1, 'a');\n".charAt(i % 37));
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = Compression.compress(Compression.GZIP, compressed, -1, "dump.sql", 4, 16 * 1024)) {
+            out.write(data);
+        }
+
+        //a pipe delivers what has arrived, here a byte at a time, and has nothing available in between
+        InputStream pipe = new FilterInputStream(new ByteArrayInputStream(compressed.toByteArray())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+
+            @Override
+            public int available() {
+                return 0;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream in = Compression.decompress(pipe)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, read);
+            }
+        }
+        Assertions.assertArrayEquals(data, decompressed.toByteArray());
+    }
+
+    @Test
+    void givenPreviousWatermark_whenIncrementalExport_thenOnlyChangedRowsSelectedAndStateSaved() throws Exception {
+
+        Assertions.assertNull(new WatermarkStore.Watermark("users", "id", false, null, "10").getPredicate());
+        Assertions.assertEquals("`id` > '10' AND `id` <= '25'",
+                new WatermarkStore.Watermark("users", "id", false, "10", "25").getPredicate());
+        Assertions.assertEquals("`updated_at` >= '2024-01-01 10:00:00.5' AND `updated_at` <= '2024-01-02 00:00:00'",
+                new WatermarkStore.Watermark("users", "updated_at", true, "2024-01-01 10:00:00.5", "2024-01-02 00:00:00").getPredicate());
+        Assertions.assertEquals("`id` > '10'", new WatermarkStore.Watermark("users", "id", false, "10", null).getPredicate());
+
+        File stateFile = File.createTempFile("watermarks", ".properties");
+        Assertions.assertTrue(stateFile.delete());
+        try {
+            WatermarkStore store = new WatermarkStore(stateFile);
+            store.advance(new WatermarkStore.Watermark("users", "id", false, null, "25"));
+            store.advance(new WatermarkStore.Watermark("empty", "id", false, null, null));
+            store.save();
+
+            Properties saved = new Properties();
+            try (InputStream in = new FileInputStream(stateFile)) {
+                saved.load(in);
+            }
+            Assertions.assertEquals("id", saved.getProperty("users.column"));
+            Assertions.assertEquals("25", saved.getProperty("users.value"));
+            Assertions.assertNull(saved.getProperty("empty.value"));
+        } finally {
+            Assertions.assertTrue(stateFile.delete());
+        }
+    }
+
+    @Test
+    void givenBinlogRowImages_whenFormatted_thenStatementsMatchRowsOnTheKey() {
+
+        BinlogRowFormatter formatter = new BinlogRowFormatter("users",
+                new String[] {"id", "name", "balance", "created_at", "score", "full_name"},
+                new int[] {BinlogRowFormatter.TYPE_LONG, 15, 246, BinlogRowFormatter.TYPE_DATETIME_V2, BinlogRowFormatter.TYPE_DOUBLE, 15},
+                new boolean[] {true, false, false, false, false, false},
+                new boolean[] {true, false, false, false, false, false},
+                new boolean[] {false, false, false, false, false, true});
+        BitSet all = new BitSet();
+        all.set(0, 6);
+
+        Object[] row = {-1, "O'Neil".getBytes(StandardCharsets.UTF_8), new BigDecimal("10.50"), 1704067200_500000L, 1.5, null};
+        Assertions.assertEquals("INSERT INTO `users` (`id`, `name`, `balance`, `created_at`, `score`) VALUES " +
+                        "(4294967295, 0x4f274e65696c, 10.50, '2024-01-01 00:00:00.500000', 1.5)",
+                formatter.insert(all, Collections.singletonList(row)));
+
+        Object[] after = row.clone();
+        after[1] = new byte[0];
+        Assertions.assertEquals("UPDATE `users` SET `id` = 4294967295, `name` = '', `balance` = 10.50, " +
+                        "`created_at` = '2024-01-01 00:00:00.500000', `score` = 1.5 WHERE `id` <=> 4294967295 LIMIT 1",
+                formatter.update(all, all, row, after));
+
+        //without the key in the image, the row is matched on the columns that compare exactly
+        BitSet noKey = new BitSet();
+        noKey.set(1, 5);
+        Assertions.assertEquals("DELETE FROM `users` WHERE `name` <=> 0x4f274e65696c AND `balance` <=> 10.50 " +
+                        "AND `created_at` <=> '2024-01-01 00:00:00.500000' LIMIT 1",
+                formatter.delete(noKey, Arrays.copyOfRange(row, 1, 5)));
+
+        StringBuilder value = new StringBuilder();
+        BinlogRowFormatter.appendValue(Long.MIN_VALUE, BinlogRowFormatter.TYPE_DATE, false, value);
+        BinlogRowFormatter.appendValue(-86_400_000_000L, BinlogRowFormatter.TYPE_DATE, false, value.append(' '));
+        BinlogRowFormatter.appendValue(90_061_000_000L, BinlogRowFormatter.TYPE_TIME_V2, false, value.append(' '));
+        BinlogRowFormatter.appendValue(1900, BinlogRowFormatter.TYPE_YEAR, false, value.append(' '));
+        BinlogRowFormatter.appendValue((byte) -1, BinlogRowFormatter.TYPE_TINY, true, value.append(' '));
+        BinlogRowFormatter.appendValue(-1L, BinlogRowFormatter.TYPE_LONGLONG, true, value.append(' '));
+        Assertions.assertEquals("'0000-00-00' '1969-12-31' '25:01:01' 0 255 18446744073709551615", value.toString());
+    }
+
+    @Test
+    void givenArchivedTransactions_whenSegmentsRotate_thenSegmentsAndPositionAreReadBack() throws Exception {
+
+        Path directory = Files.createTempDirectory("binlog-archive");
+        try {
+            BinlogSegmentWriter writer = new BinlogSegmentWriter(directory, Compression.GZIP, -1, 1, 0);
+            Assertions.assertNull(writer.open());
+
+            writer.begin(1000, "uuid:1", new BinlogPosition("binlog.000001", 4, null));
+            writer.write("INSERT INTO `t` (`id`) VALUES (1)");
+            writer.commit(new BinlogPosition("binlog.000001", 200, "uuid:1"));
+            writer.writeStatement(2000, "uuid:2", new BinlogPosition("binlog.000001", 200, null),
+                    "ALTER TABLE `t` ADD `c` INT", new BinlogPosition("binlog.000001", 300, "uuid:1-2"));
+            writer.begin(3000, null, new BinlogPosition("binlog.000001", 300, null));
+            writer.write("DELETE FROM `t` WHERE `id` <=> 1 LIMIT 1");
+            writer.close();
+
+            List<Path> segments = BinlogSegmentWriter.listSegments(directory);
+            Assertions.assertEquals(3, segments.size());
+            Assertions.assertEquals("binlog-00000001.sql.gz", segments.get(0).getFileName().toString());
+
+            List<String> statements = new ArrayList<>();
+            for (Path segment : segments) {
+                try (StatementReader reader = new MarkerStatementReader(new InputStreamReader(
+                        Compression.decompress(Files.newInputStream(segment)), StandardCharsets.UTF_8))) {
+                    String sql;
+                    while ((sql = reader.next()) != null) {
+                        statements.add(sql);
+                    }
+                }
+            }
+            Assertions.assertEquals(7, statements.size());
+            Assertions.assertTrue(statements.get(0).startsWith(BinlogSegmentWriter.TRANSACTION_MARKER + "1000 uuid:1 binlog.000001:4"));
+            Assertions.assertTrue(statements.get(0).endsWith("BEGIN;\n--"));
+            Assertions.assertTrue(statements.get(3).contains("ALTER TABLE `t` ADD `c` INT;"));
+            Assertions.assertTrue(statements.get(6).contains("ROLLBACK;"));
+
+            //the interrupted transaction is archived again from the saved position
+            BinlogPosition position = new BinlogSegmentWriter(directory, Compression.GZIP, -1, 1, 0).open();
+            Assertions.assertEquals("binlog.000001", position.getFile());
+            Assertions.assertEquals(300, position.getPosition());
+            Assertions.assertEquals("uuid:1-2", position.getGtidSet());
+        } finally {
+            for (Path file : Files.list(directory).toArray(Path[]::new)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void givenSlightlyChangedDump_whenStoredInChunkRepository_thenUnchangedChunksAreShared() throws Exception {
+
+        StringBuilder dump = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            dump.append("(").append(i).append(", 'row ").append(random.nextInt()).append("'),\n");
+        }
+        byte[] first = dump.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] second = dump.insert(dump.length() / 2, "(-1, 'inserted'),\n").toString().getBytes(StandardCharsets.UTF_8);
+
+        Path directory = Files.createTempDirectory("chunk-repository");
+        try {
+            ChunkRepository repository = new ChunkRepository(directory);
+            Path firstManifest = store(repository, "first", first);
+            long firstChunks = countFiles(directory.resolve("chunks"));
+            Path secondManifest = store(repository, "second", second);
+            long newChunks = countFiles(directory.resolve("chunks")) - firstChunks;
+
+            Assertions.assertTrue(firstChunks > 10, "chunks: " + firstChunks);
+            Assertions.assertTrue(newChunks > 0 && newChunks <= 3, "new chunks: " + newChunks);
+            Assertions.assertArrayEquals(first, readAll(ChunkRepository.open(firstManifest)));
+            Assertions.assertArrayEquals(second, readAll(ChunkRepository.open(secondManifest)));
+
+            Files.delete(firstManifest);
+            Assertions.assertEquals(newChunks, repository.collectGarbage(0));
+            Assertions.assertEquals(Collections.singletonList(secondManifest), repository.getManifests());
+            Assertions.assertArrayEquals(second, readAll(ChunkRepository.open(secondManifest)));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    void givenTableFilterProperties_whenApplied_thenTablesColumnsAndRowsAreSelected() {
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.INCLUDE_TABLES, "users, orders_*, regex:log_\\d+");
+        properties.setProperty(MysqlExportService.EXCLUDE_TABLES, "orders_archive");
+        properties.setProperty(MysqlExportService.TABLE_COLUMNS + ".users", "id, email");
+        properties.setProperty(MysqlExportService.TABLE_WHERE + ".orders_2024", "status = 'paid'");
+        TableFilter filter = TableFilter.fromProperties(properties);
+
+        Assertions.assertTrue(filter.isIncluded("users"));
+        Assertions.assertTrue(filter.isIncluded("orders_2024"));
+        Assertions.assertTrue(filter.isIncluded("log_42"));
+        Assertions.assertFalse(filter.isIncluded("orders_archive"));
+        Assertions.assertFalse(filter.isIncluded("log_a"));
+        Assertions.assertFalse(filter.isIncluded("users.bak"));
+
+        Assertions.assertEquals("`id`, `email`", filter.getSelectList("users"));
+        Assertions.assertEquals("*", filter.getSelectList("orders_2024"));
+        Assertions.assertEquals("status = 'paid'", filter.getWhere("orders_2024", null));
+        Assertions.assertEquals("(status = 'paid') AND (`id` > '10')", filter.getWhere("orders_2024", "`id` > '10'"));
+        Assertions.assertNull(filter.getWhere("users", null));
+
+        Assertions.assertTrue(TableFilter.builder().isIncluded("anything"));
+        Assertions.assertFalse(TableFilter.builder().excludeTables("a?c").isIncluded("abc"));
+        Assertions.assertTrue(TableFilter.builder().excludeTables("a?c").isIncluded("abbc"));
+    }
+
+    @Test
+    void givenDependentViews_whenSorted_thenEveryViewFollowsTheViewsItSelectsFrom() {
+
+        Map<String, String> definitions = new HashMap<>();
+        definitions.put("a_totals", "select `db`.`c_orders`.`id` AS `id` from `db`.`c_orders` join `db`.`b_paid`");
+        definitions.put("b_paid", "select `db`.`c_orders`.`id` AS `id` from `db`.`c_orders`");
+        definitions.put("c_orders", "select `db`.`orders`.`id` AS `id` from `db`.`orders`");
+        definitions.put("d_loop", "select 1 AS `x` from `db`.`e_loop`");
+        definitions.put("e_loop", "select 1 AS `x` from `db`.`d_loop`");
+
+        List<String> sorted = SchemaObjectWriter.sortViews(
+                Arrays.asList("a_totals", "b_paid", "c_orders", "d_loop", "e_loop"), definitions, "`db`.");
+        Assertions.assertEquals(Arrays.asList("c_orders", "b_paid", "a_totals", "e_loop", "d_loop"), sorted);
+
+        Assertions.assertTrue(SchemaObjectWriter.isPostDataStatement("-- start  trigger dump : audit_insert\n--\n\nDROP TRIGGER IF EXISTS `audit_insert`"));
+        Assertions.assertTrue(SchemaObjectWriter.isPostDataStatement("CREATE EVENT `purge` ON SCHEDULE EVERY 1 DAY DO DELETE FROM audit"));
+        Assertions.assertTrue(SchemaObjectWriter.isPostDataStatement("/*!50003 CREATE*/ /*!50017 DEFINER=`root`@`%`*/ /*!50003 TRIGGER `t` BEFORE INSERT ON `a` FOR EACH ROW SET @x = 1 */"));
+        Assertions.assertTrue(SchemaObjectWriter.isPostDataStatement("/*!50106 ALTER DEFINER = 'root'@'localhost' EVENT `purge` DISABLE */"));
+        Assertions.assertFalse(SchemaObjectWriter.isPostDataStatement("-- start  event dump : purge\n--\n\nSET SESSION time_zone = 'SYSTEM'"));
+        Assertions.assertFalse(SchemaObjectWriter.isPostDataStatement("CREATE DEFINER=`root`@`%` PROCEDURE `event`() SELECT 1"));
+        Assertions.assertFalse(SchemaObjectWriter.isPostDataStatement("-- start  routine dump : procedure refresh\n--\n\nDROP PROCEDURE IF EXISTS `refresh`"));
+        Assertions.assertFalse(SchemaObjectWriter.isPostDataStatement("-- start  table dump : `trigger dump`\n--\n\nCREATE TABLE `trigger dump` (id int)"));
+    }
+
+    @Test
+    void givenSegmentsOfDifferentSizes_whenScheduled_thenLargestStartFirstAndTiesKeepListOrder() {
+
+        List<ParallelTableExporter.Segment> segments = new ArrayList<>();
+        segments.add(new ParallelTableExporter.Segment("small", 10, (c, w) -> { }));
+        segments.add(new ParallelTableExporter.Segment("large (1)", 500, (c, w) -> { }));
+        segments.add(new ParallelTableExporter.Segment("large (2)", 500, (c, w) -> { }));
+        segments.add(new ParallelTableExporter.Segment("empty", 0, (c, w) -> { }));
+        segments.add(new ParallelTableExporter.Segment("medium", 200, (c, w) -> { }));
+
+        List<String> order = new ArrayList<>();
+        for (ParallelTableExporter.Segment segment : ParallelTableExporter.getSchedule(segments)) {
+            order.add(segment.getName());
+        }
+        Assertions.assertEquals(Arrays.asList("large (1)", "large (2)", "medium", "small", "empty"), order);
+        Assertions.assertEquals("small", segments.get(0).getName());
+    }
+
+    @Test
+    void givenListener_whenTableIsExportedInSegments_thenItIsReportedOnceWithTheSumOfTheSegments() {
+
+        List<String> events = new ArrayList<>();
+        List<TableMetrics> finished = new ArrayList<>();
+        BackupMetrics metrics = new BackupMetrics(new BackupListener() {
+            @Override
+            public void tableStarted(Operation operation, String table, long estimatedRows) {
+                events.add("started " + table + " " + estimatedRows);
+            }
+
+            @Override
+            public void tableFinished(TableMetrics tableMetrics) {
+                finished.add(tableMetrics);
+            }
+
+            @Override
+            public void finished(BackupProgress progress, Throwable error) {
+                throw new IllegalStateException("a failing listener does not fail the backup");
+            }
+        }, BackupListener.Operation.EXPORT);
+        metrics.started("backup4j_test");
+
+        TableMetrics table = metrics.table("orders", 100, 2);
+        for (int segment = 0; segment < 2; segment++) {
+            table.begin();
+            //a phase that started a microsecond ago
+            long mark = table.lap(BackupListener.Phase.ENCODE, table.time() - 1000);
+            table.add(10, 250, mark);
+            table.end();
+        }
+        metrics.finished(null);
+
+        Assertions.assertEquals(Collections.singletonList("started orders 100"), events);
+        Assertions.assertEquals(1, finished.size());
+        Assertions.assertEquals(20, finished.get(0).getRows());
+        Assertions.assertEquals(500, finished.get(0).getBytes());
+        Assertions.assertTrue(finished.get(0).getNanos(BackupListener.Phase.ENCODE) >= 2000);
+        Assertions.assertEquals(0, finished.get(0).getNanos(BackupListener.Phase.WRITE));
+
+        //without a listener nothing is timed
+        BackupMetrics disabled = new BackupMetrics(null, BackupListener.Operation.EXPORT);
+        Assertions.assertEquals(0, disabled.time());
+        Assertions.assertEquals(0, disabled.table("orders", 100, 1).time());
+
+        //25 of 100 rows in 10 seconds leaves 30 seconds
+        BackupProgress progress = new BackupProgress(BackupListener.Operation.EXPORT, "db", 25, 100, 0, -1, 10_000_000_000L);
+        Assertions.assertEquals(30_000_000_000L, progress.getEtaNanos());
+        Assertions.assertEquals(0, new BackupProgress(BackupListener.Operation.EXPORT, "db", 120, 100, 0, -1, 1).getEtaNanos());
+        Assertions.assertEquals(-1, new BackupProgress(BackupListener.Operation.IMPORT, "db", 0, -1, 0, 4096, 1).getEtaNanos());
+        Assertions.assertEquals(3_000_000_000L, new BackupProgress(BackupListener.Operation.IMPORT, "db", 0, -1, 1024, 4096, 1_000_000_000L).getEtaNanos());
+    }
+
+    @Test
+    void givenPrefixedJdbcProperties_whenRead_thenPrefixIsStrippedAndDefaultsCanBeOverridden() {
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.JDBC_PROPERTIES + ".useCompression", " true ");
+        properties.setProperty(MysqlExportService.JDBC_PROPERTIES + ".useSSL", "true");
+        properties.setProperty(MysqlExportService.JDBC_PROPERTIES + ".", "ignored");
+        properties.setProperty(MysqlExportService.DB_NAME, "db");
+
+        Properties jdbcProperties = MysqlBaseService.getPrefixedProperties(properties, MysqlExportService.JDBC_PROPERTIES);
+        Assertions.assertEquals(2, jdbcProperties.size());
+        Assertions.assertEquals("true", jdbcProperties.getProperty("useCompression"));
+
+        Properties connectionProperties = MysqlBaseService.getDefaultConnectionProperties();
+        connectionProperties.putAll(jdbcProperties);
+        Assertions.assertEquals("true", connectionProperties.getProperty("useSSL"));
+        Assertions.assertEquals("UTC", connectionProperties.getProperty("serverTimezone"));
+    }
+
+    @Test
+    void givenRowAndByteLimits_whenRowsWritten_thenStatementsSplitAtTheBoundaries() throws Exception {
+        String prefix = "INSERT INTO `t` VALUES \n";
+
+        //at most 2 rows per statement
+        String sql = insertStatements(prefix, 2, 0, StandardCharsets.UTF_8, "(1)", "(2)", "(3)", "(4)", "(5)");
+        Assertions.assertEquals(3, sql.split("-- start table insert : t").length - 1);
+        Assertions.assertTrue(sql.contains(prefix + "(1),\n(2);"));
+        Assertions.assertTrue(sql.contains(prefix + "(3),\n(4);"));
+        Assertions.assertTrue(sql.contains(prefix + "(5);"));
+
+        //the prefix, two rows of 3 bytes, the separator and the semicolon fit exactly, a byte less does not
+        long twoRows = prefix.length() + 3 + 2 + 3 + 1;
+        sql = insertStatements(prefix, 0, twoRows, StandardCharsets.UTF_8, "(1)", "(2)", "(3)", "(4)");
+        Assertions.assertEquals(2, sql.split("-- start table insert : t").length - 1);
+        Assertions.assertTrue(sql.contains(prefix + "(3),\n(4);"));
+        sql = insertStatements(prefix, 0, twoRows - 1, StandardCharsets.UTF_8, "(1)", "(2)", "(3)", "(4)");
+        Assertions.assertEquals(4, sql.split("-- start table insert : t").length - 1);
+
+        //the bytes are counted in the charset of the output, where an e with an acute accent is 2 bytes in UTF-8 and 1 in ISO-8859-1
+        long twoRowsOfChars = prefix.length() + 5 + 2 + 5 + 1;
+        sql = insertStatements(prefix, 0, twoRowsOfChars, StandardCharsets.UTF_8, "('\u00e9')", "('\u00e9')");
+        Assertions.assertEquals(2, sql.split("-- start table insert : t").length - 1);
+        sql = insertStatements(prefix, 0, twoRowsOfChars, StandardCharsets.ISO_8859_1, "('\u00e9')", "('\u00e9')");
+        Assertions.assertEquals(1, sql.split("-- start table insert : t").length - 1);
+        sql = insertStatements(prefix, 0, twoRowsOfChars + 2, StandardCharsets.UTF_8, "('\u00e9')", "('\u00e9')");
+        Assertions.assertEquals(1, sql.split("-- start table insert : t").length - 1);
+
+        //a row over the limit gets a statement of its own, and no statement is empty
+        sql = insertStatements(prefix, 0, 1, StandardCharsets.UTF_8, "(1)", "(2)");
+        Assertions.assertEquals(2, sql.split("-- start table insert : t").length - 1);
+        Assertions.assertFalse(sql.contains(prefix + ";"));
+        Assertions.assertEquals("", insertStatements(prefix, 1, 1, StandardCharsets.UTF_8));
+    }
+
+    private static String insertStatements(String prefix, long maxRows, long maxBytes, Charset charset, String... rows) throws IOException {
+        StringWriter writer = new StringWriter();
+        InsertStatementWriter statements = new InsertStatementWriter(writer, "t", prefix, maxRows, maxBytes, charset);
+        for (String row : rows) {
+            statements.writeRow(row.toCharArray(), 0, row.length());
+        }
+        statements.finish();
+        return writer.toString();
+    }
+
+    @Test
+    void givenManyRows_whenWrittenByThePipeline_thenSameStatementsAsSequentialAndReadErrorsPropagate() throws Exception {
+        ColumnEncoder[] encoders = {ColumnEncoders.INTEGER, ColumnEncoders.STRING, ColumnEncoders.BINARY,
+                ColumnEncoders.DOUBLE, ColumnEncoders.BIT, ColumnEncoders.NUMERIC, ColumnEncoders.TEMPORAL};
+        int rows = PipelinedInsertWriter.BATCH_ROWS * 5 + 7;
+        TableMetrics metrics = new BackupMetrics(null, BackupListener.Operation.EXPORT).table("t", -1, 1);
+
+        //the rows encoded one at a time, the way the sequential export does
+        StringWriter expected = new StringWriter();
+        InsertStatementWriter sequential = new InsertStatementWriter(expected, "t", "INSERT INTO `t` VALUES \n", 100, 0, StandardCharsets.UTF_8);
+        ResultSet rs = rowsResultSet(rows, -1);
+        do {
+            StringBuilder row = new StringBuilder("(");
+            for (int i = 0; i < encoders.length; i++) {
+                if (i > 0) row.append(", ");
+                encoders[i].encode(rs, i + 1, row);
+            }
+            row.append(")");
+            sequential.writeRow(row.toString().toCharArray(), 0, row.length());
+        } while (rs.next());
+        sequential.finish();
+
+        StringWriter actual = new StringWriter();
+        InsertStatementWriter pipelined = new InsertStatementWriter(actual, "t", "INSERT INTO `t` VALUES \n", 100, 0, StandardCharsets.UTF_8);
+        new PipelinedInsertWriter(rowsResultSet(rows, -1), encoders, 2, metrics).writeTo(pipelined);
+        pipelined.finish();
+        Assertions.assertEquals(expected.toString(), actual.toString());
+        Assertions.assertTrue(actual.toString().contains("(1, 'it\\'s 1', 0x0102, 1.5, b'1', 1.10, '2020-01-01 00:00:01')"));
+        Assertions.assertTrue(actual.toString().contains("(2, null, null, null, null, null, null)"));
+
+        SQLException error = Assertions.assertThrows(SQLException.class, () -> new PipelinedInsertWriter(
+                rowsResultSet(rows, 1000), encoders, 2, metrics).writeTo(new InsertStatementWriter(new StringWriter(), "t", "", 0, 0, StandardCharsets.UTF_8)));
+        Assertions.assertEquals("connection lost", error.getMessage());
+    }
+
+    @Test
+    void givenStatementAndSizeLimits_whenStatementsAdded_thenBatchesSentAtTheThresholds() throws Exception {
+
+        List<String> events = new ArrayList<>();
+        try (ImportBatch batch = new ImportBatch(batchConnection(events), batchStatement(events), 3, 0, 0)) {
+            for (int i = 0; i < 7; i++) {
+                batch.add("INSERT INTO t VALUES (" + i + ")");
+            }
+            batch.finish();
+            Assertions.assertEquals(7, batch.getExecuted());
+            Assertions.assertEquals(7, batch.getUpdated());
+        }
+        Assertions.assertEquals(Arrays.asList("batch 3", "batch 3", "batch 1"), events);
+
+        //the batch is sent once it holds 10 characters or more
+        events.clear();
+        try (ImportBatch batch = new ImportBatch(batchConnection(events), batchStatement(events), 0, 10, 0)) {
+            batch.add("12345");
+            batch.add("6789");
+            Assertions.assertTrue(events.isEmpty());
+            batch.add("0");
+            batch.add("abc");
+            batch.finish();
+        }
+        Assertions.assertEquals(Arrays.asList("batch 3", "batch 1"), events);
+    }
+
+    @Test
+    void givenCommitInterval_whenStatementsAdded_thenCommittedEveryIntervalAndRolledBackOnFailure() throws Exception {
+
+        List<String> events = new ArrayList<>();
+        try (ImportBatch batch = new ImportBatch(batchConnection(events), batchStatement(events), 100, 0, 4)) {
+            for (int i = 0; i < 10; i++) {
+                batch.add("INSERT INTO t VALUES (" + i + ")");
+            }
+            batch.finish();
+        }
+        Assertions.assertEquals(Arrays.asList("autocommit false", "batch 4", "commit", "batch 4", "commit",
+                "batch 2", "commit", "autocommit true"), events);
+
+        //the third statement fails: the first two were sent but not committed
+        events.clear();
+        SQLException error;
+        try (ImportBatch batch = new ImportBatch(batchConnection(events), batchStatement(events), 2, 0, 4)) {
+            batch.add("INSERT INTO t VALUES (1)");
+            batch.add("INSERT INTO t VALUES (2)");
+            batch.add("INSERT INTO t VALUES ('FAIL')");
+            error = Assertions.assertThrows(SQLException.class, () -> batch.add("INSERT INTO t VALUES (4)"));
+        }
+        Assertions.assertEquals(Arrays.asList("autocommit false", "batch 2", "batch 2", "rollback", "autocommit true"), events);
+        Assertions.assertTrue(error.getMessage().contains("statement 3 of the import failed"), error.getMessage());
+        Assertions.assertTrue(error.getMessage().endsWith("\nINSERT INTO t VALUES ('FAIL')"), error.getMessage());
+        Assertions.assertEquals("23000", error.getSQLState());
+    }
+
+    /**
+     * A connection that records the changes of its transaction, starting in autocommit mode
+     * @param events the recorded events
+     * @return Connection
+     */
+    private static Connection batchConnection(List<String> events) {
+        boolean[] autoCommit = {true};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getAutoCommit": return autoCommit[0];
+                case "setAutoCommit":
+                    autoCommit[0] = (Boolean) args[0];
+                    events.add("autocommit " + autoCommit[0]);
+                    return null;
+                case "commit":
+                case "rollback":
+                    events.add(method.getName());
+                    return null;
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * A statement that records the size of every batch it executes.
+     * A batch fails at its first statement that contains FAIL
+     * @param events the recorded events
+     * @return Statement
+     */
+    private static Statement batchStatement(List<String> events) {
+        List<String> pending = new ArrayList<>();
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] {Statement.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "addBatch":
+                    pending.add((String) args[0]);
+                    return null;
+                case "clearBatch":
+                    pending.clear();
+                    return null;
+                case "executeLargeBatch":
+                    events.add("batch " + pending.size());
+                    long[] counts = new long[pending.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        if (pending.get(i).contains("FAIL")) {
+                            counts[i] = Statement.EXECUTE_FAILED;
+                            throw new BatchUpdateException("Duplicate entry", "23000", 1062, Arrays.copyOf(counts, i + 1), null);
+                        }
+                        counts[i] = 1;
+                    }
+                    return counts;
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * A result set positioned on the first of the supplied number of rows, whose even rows are all null
+     * @param rows the number of rows
+     * @param failAt the row next() fails on, or -1
+     * @return ResultSet
+     */
+    private static ResultSet rowsResultSet(int rows, int failAt) {
+        int[] row = {1};
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+            if (method.getName().equals("next")) {
+                if (row[0] == failAt) throw new SQLException("connection lost");
+                return ++row[0] <= rows;
+            }
+            if (method.getName().equals("wasNull")) {
+                return wasNull[0];
+            }
+            int column = (Integer) args[0];
+            wasNull[0] = row[0] % 2 == 0 && column > 1;
+            switch (method.getName()) {
+                case "getLong": return wasNull[0] ? 0L : (column == 1 ? row[0] : 1L);
+                case "getDouble": return wasNull[0] ? 0d : 1.5;
+                case "getBytes": return wasNull[0] ? null : new byte[] {1, 2};
+                case "getString":
+                    if (wasNull[0]) return null;
+                    return column == 2 ? "it's " + row[0] : column == 6 ? "1.10" : "2020-01-01 00:00:0" + (row[0] % 10);
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static Path store(ChunkRepository repository, String name, byte[] content) throws Exception {
+        try (ChunkingOutputStream out = repository.create(name, Compression.GZIP, -1, 16 * 1024)) {
+            //written in odd sizes, the boundaries must not depend on them
+            for (int offset = 0; offset < content.length; offset += 1000) {
+                out.write(content, offset, Math.min(1000, content.length - offset));
+            }
+            out.finish();
+            return out.getManifest();
+        }
+    }
+
+    private static long countFiles(Path directory) throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
 }